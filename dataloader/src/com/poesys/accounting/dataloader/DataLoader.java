@@ -26,7 +26,12 @@ import com.poesys.db.InvalidParametersException;
 import org.apache.log4j.Logger;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * The main driver class for the Poesys Data Loader, which loads the old Poesys accounting data into
@@ -47,6 +52,7 @@ public class DataLoader implements IDirector {
   // messages
 
   private static final String IO_ERROR = "IO exception writing statements";
+  private static final String REPORT_IO_ERROR = "IO exception writing comparative report";
   private static final String FATAL_LOADING_ERROR = "Fatal error loading accounting data";
   private static final String FATAL_BALANCE_ERROR = "Fatal error: statements don't balance";
   private static final String BALANCES_OK_MSG = "balances are zero and match for ";
@@ -91,7 +97,14 @@ public class DataLoader implements IDirector {
   public void construct(IParameters parameters, IBuilder builder, IStorageManager storageManager,
                         IDataAccessService dbService) {
     builder.buildCapitalStructure();
-    buildFiscalYears(builder, parameters);
+    int queueSize = parameters.getPipelineQueueSize();
+    if (queueSize > 0) {
+      buildAndStore(parameters, builder, storageManager, dbService, queueSize);
+      return;
+    }
+    buildFiscalYears(builder, parameters, storageManager, null);
+    freeze(builder);
+    writeComparativeReport(parameters, builder.getFiscalYears());
     if (storageManager.validate(builder.getFiscalYears())) {
       storageManager.store(parameters.getEntity(), builder.getCapitalStructure(),
                            builder.getFiscalYears(), builder.getTransactions(), dbService);
@@ -102,12 +115,56 @@ public class DataLoader implements IDirector {
   }
 
   /**
-   * Iterate through the fiscal years from start to end, building each year.
+   * Build the fiscal years and store each one on a storage pipeline while building the following
+   * years. If a year fails to validate, building a later year changes one already handed off, or
+   * anything else fails, roll back the transactions of the years already stored, so that, as with
+   * storing after building, a failed load stores no transactions.
+   *
+   * @param parameters     the program parameters
+   * @param builder        the builder
+   * @param storageManager the storage manager
+   * @param dbService      the data access service
+   * @param queueSize      the number of built years that can wait for storage
+   */
+  private void buildAndStore(IParameters parameters, IBuilder builder,
+                             IStorageManager storageManager, IDataAccessService dbService,
+                             int queueSize) {
+    StoragePipeline pipeline =
+      new StoragePipeline(parameters.getEntity(), builder.getCapitalStructure(), storageManager,
+                          dbService, queueSize);
+    boolean valid;
+    try {
+      valid = buildFiscalYears(builder, parameters, storageManager, pipeline);
+      if (valid) {
+        freeze(builder);
+        writeComparativeReport(parameters, builder.getFiscalYears());
+        // Each year validated before its hand-off; finish() fails if a later year changed it.
+        pipeline.finish();
+      }
+    } catch (RuntimeException e) {
+      pipeline.rollback();
+      throw e;
+    }
+    if (!valid) {
+      pipeline.rollback();
+      logger.fatal(FATAL_BALANCE_ERROR);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Iterate through the fiscal years from start to end, building each year. With a storage
+   * pipeline, validate each year after building it and hand it to the pipeline, stopping at the
+   * first year that fails to validate.
    *
-   * @param builder    the IBuilder instance to use to build the fiscal years
-   * @param parameters the IParameters object containing program parameters
+   * @param builder        the IBuilder instance to use to build the fiscal years
+   * @param parameters     the IParameters object containing program parameters
+   * @param storageManager the storage manager that validates the years
+   * @param pipeline       the storage pipeline, or null to store after building all the years
+   * @return true if all the years handed to the pipeline validated, false if one did not
    */
-  private void buildFiscalYears(IBuilder builder, IParameters parameters) {
+  private boolean buildFiscalYears(IBuilder builder, IParameters parameters,
+                                   IStorageManager storageManager, StoragePipeline pipeline) {
     // Get the years.
     Integer start = parameters.getStartYear();
     Integer end = parameters.getEndYear();
@@ -132,7 +189,39 @@ public class DataLoader implements IDirector {
       builder.buildReimbursements();
 
       writeStatements(parameters, builder.getFiscalYear());
+
+      if (pipeline != null) {
+        FiscalYear fiscalYear = builder.getFiscalYear();
+        if (!storageManager.validate(Collections.singletonList(fiscalYear))) {
+          return false;
+        }
+        pipeline.submit(fiscalYear, builder.getTransactions());
+      }
     }
+    return true;
+  }
+
+  /**
+   * Freeze the built model, replacing the collections of the capital structure, accounts, fiscal
+   * years, and transactions with immutable copies. Reporting, validation, and storage then read the
+   * model without synchronized wrappers or locks. Freeze only after building all the years, as a
+   * later year adds to the accounts and transactions of earlier ones.
+   *
+   * @param builder the builder that built the model
+   */
+  private void freeze(IBuilder builder) {
+    builder.getCapitalStructure().freeze();
+    for (Account account : builder.getAccounts()) {
+      account.freeze();
+    }
+    for (FiscalYear fiscalYear : builder.getFiscalYears()) {
+      fiscalYear.freeze();
+    }
+    for (Transaction transaction : builder.getTransactions()) {
+      transaction.freeze();
+    }
+    logger.debug("Froze model of " + builder.getAccounts().size() + " accounts and " +
+                 builder.getTransactions().size() + " transactions");
   }
 
   /**
@@ -189,11 +278,43 @@ public class DataLoader implements IDirector {
       logger.info(BALANCES_OK_MSG + fiscalYear.getYear());
     }
 
+    // Record the balances for reuse in validation.
+    fiscalYear.setStatementBalances(balanceSheetBalance, incomeStatementBalance);
+
     writeStatementData(parameters, fiscalYear, balanceSheet, incomeStatement);
   }
 
   /**
-   * Write out the files containing statements and statement data for a fiscal year.
+   * Write the multi-year comparative report for the fiscal years if the parameters call for it.
+   *
+   * @param parameters the parameters object giving writer access
+   * @param years      the fiscal years to report
+   */
+  private void writeComparativeReport(IParameters parameters, List<FiscalYear> years) {
+    Writer writer = parameters.createComparativeReportWriter();
+    if (writer != null) {
+      try {
+        if (years != null && !years.isEmpty()) {
+          new ComparativeReport(years).write(writer);
+        }
+      } catch (IOException e) {
+        logger.error(REPORT_IO_ERROR, e);
+        throw new RuntimeException(REPORT_IO_ERROR, e);
+      }
+      finally {
+        try {
+          writer.close();
+        } catch (IOException e) {
+          logger.error(REPORT_IO_ERROR, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write out the files containing statements and statement data for a fiscal year, plus the
+   * binary statement snapshot and the receivable aging report as of the end of the year if the
+   * parameters provide a stream or writer for them.
    *
    * @param parameters      the parameters object giving writer access
    * @param fiscalYear      the fiscal year to write
@@ -209,6 +330,20 @@ public class DataLoader implements IDirector {
       parameters.getIncomeStatementWriter().write(incomeStatement.toData());
       parameters.getBalanceSheetDetailsWriter().write(balanceSheet.toDetailData());
       parameters.getIncomeStatementDetailsWriter().write(incomeStatement.toDetailData());
+
+      OutputStream snapshotStream = parameters.getStatementSnapshotStream();
+      if (snapshotStream != null) {
+        new StatementSnapshot(fiscalYear).write(snapshotStream);
+      }
+
+      Writer agingWriter = parameters.getReceivableAgingWriter();
+      if (agingWriter != null) {
+        List<Account> accounts = new ArrayList<>();
+        for (FiscalYearAccount link : fiscalYear.getAccounts()) {
+          accounts.add(link.getAccount());
+        }
+        new ReceivableAging(accounts).write(agingWriter, fiscalYear.getEndDay());
+      }
     } catch (IOException e) {
       logger.error(IO_ERROR, e);
       throw new RuntimeException(IO_ERROR, e);
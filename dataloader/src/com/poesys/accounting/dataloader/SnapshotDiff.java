@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader;
+
+import com.poesys.accounting.dataloader.newaccounting.StatementSnapshot;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Command-line utility that compares two statement snapshot files written by the Data Loader and
+ * prints one tab-delimited line for each account whose total, detail hash, type, or order differs.
+ * The exit status is 0 if the snapshots match, 1 if they differ, and 2 if there was an error, in
+ * the manner of diff.
+ *
+ * @author Robert J. Muller
+ */
+public class SnapshotDiff {
+  /** Logger for this class */
+  private static final Logger logger = Logger.getLogger(SnapshotDiff.class);
+
+  // messages
+
+  private static final String USAGE = "usage: SnapshotDiff old-snapshot-file new-snapshot-file";
+  private static final String READ_ERROR = "IO exception reading statement snapshot ";
+
+  /**
+   * Main entry point for the snapshot comparison
+   *
+   * @param args the command line arguments: the old snapshot file and the new snapshot file
+   */
+  public static void main(String[] args) {
+    int status = 2;
+    if (args.length != 2) {
+      System.err.println(USAGE);
+    } else {
+      try {
+        StatementSnapshot oldSnapshot = read(args[0]);
+        StatementSnapshot newSnapshot = read(args[1]);
+        List<StatementSnapshot.Difference> differences =
+          StatementSnapshot.diff(oldSnapshot, newSnapshot);
+        for (StatementSnapshot.Difference difference : differences) {
+          System.out.println(difference.toData());
+        }
+        status = differences.isEmpty() ? 0 : 1;
+      } catch (IOException e) {
+        logger.fatal(e.getMessage(), e);
+      }
+    }
+    System.exit(status);
+  }
+
+  /**
+   * Read a snapshot from a file.
+   *
+   * @param filename the name of the snapshot file
+   * @return the snapshot
+   * @throws IOException when the file can't be read or is not a snapshot
+   */
+  private static StatementSnapshot read(String filename) throws IOException {
+    try (InputStream stream = new BufferedInputStream(new FileInputStream(filename))) {
+      return StatementSnapshot.read(stream);
+    } catch (IOException e) {
+      throw new IOException(READ_ERROR + filename, e);
+    }
+  }
+}
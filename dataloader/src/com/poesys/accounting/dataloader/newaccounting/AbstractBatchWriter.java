@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * <p> Writes rows into a table with a single prepared statement, sending the rows in JDBC batches
+ * of a configurable size and committing each batch (chunk) separately. If a chunk fails, the writer
+ * rolls back the chunk and sends it again, up to a configurable number of retries; if the chunk
+ * still fails, the writer throws an exception, leaving the chunks already committed in the
+ * database. </p> <p> The writer does not own the connection: the caller gets it, turns off
+ * auto-commit if necessary, and closes it after writing. Subclasses supply the SQL, the check of
+ * each row, and the parameter setting. </p>
+ *
+ * @param <T> the type of row the writer writes
+ * @author Robert J. Muller
+ */
+public abstract class AbstractBatchWriter<T> {
+  /** logger for this class */
+  private static final Logger logger = Logger.getLogger(AbstractBatchWriter.class);
+
+  /** the default number of rows per batch */
+  public static final int DEFAULT_BATCH_SIZE = 500;
+  /** the default number of times to retry a failed batch */
+  public static final int DEFAULT_RETRIES = 1;
+
+  /** the number of rows per batch */
+  private final int batchSize;
+  /** the number of times to retry a failed batch */
+  private final int retries;
+
+  // messages
+  private static final String INVALID_BATCH_SIZE_ERROR = "batch size must be positive: ";
+  private static final String INVALID_RETRIES_ERROR = "retries must not be negative: ";
+  private static final String NULL_CONNECTION_ERROR = "connection is required but is null";
+  private static final String CHUNK_FAILED_ERROR = "chunk failed after retries: chunk ";
+
+  /**
+   * Create an AbstractBatchWriter object.
+   *
+   * @param batchSize the number of rows to send and commit in each batch
+   * @param retries   the number of times to retry a failed batch
+   */
+  protected AbstractBatchWriter(int batchSize, int retries) {
+    if (batchSize < 1) {
+      throw new InvalidParametersException(INVALID_BATCH_SIZE_ERROR + batchSize);
+    }
+    if (retries < 0) {
+      throw new InvalidParametersException(INVALID_RETRIES_ERROR + retries);
+    }
+    this.batchSize = batchSize;
+    this.retries = retries;
+  }
+
+  /**
+   * Get the batch size.
+   *
+   * @return the number of rows per batch
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Get the SQL insert statement with a parameter for each column.
+   *
+   * @return the SQL
+   */
+  protected abstract String getSql();
+
+  /**
+   * Check that a row has all the required fields, throwing an InvalidParametersException if not.
+   *
+   * @param row the row to check
+   */
+  protected abstract void check(T row);
+
+  /**
+   * Set the parameters of the insert statement from a row.
+   *
+   * @param stmt the prepared insert statement
+   * @param row  the row
+   * @throws SQLException when a parameter can't be set
+   */
+  protected abstract void setParams(PreparedStatement stmt, T row) throws SQLException;
+
+  /**
+   * Write the rows to the table. The method checks all the rows before writing any of them.
+   *
+   * @param connection the open database connection
+   * @param rows       the rows to write
+   * @return the number of rows written
+   * @throws SQLException when a chunk fails after all retries or the statement can't be prepared
+   */
+  public int write(Connection connection, Collection<T> rows) throws SQLException {
+    if (connection == null) {
+      throw new InvalidParametersException(NULL_CONNECTION_ERROR);
+    }
+    if (rows == null || rows.isEmpty()) {
+      return 0;
+    }
+
+    for (T row : rows) {
+      check(row);
+    }
+
+    int count = 0;
+    int chunkNumber = 0;
+    List<T> chunk = new ArrayList<>(Math.min(batchSize, rows.size()));
+    try (PreparedStatement stmt = connection.prepareStatement(getSql())) {
+      for (T row : rows) {
+        chunk.add(row);
+        if (chunk.size() == batchSize) {
+          count += writeChunk(connection, stmt, chunk, ++chunkNumber);
+        }
+      }
+      if (!chunk.isEmpty()) {
+        count += writeChunk(connection, stmt, chunk, ++chunkNumber);
+      }
+    }
+    logger.debug("Wrote " + count + " rows in " + chunkNumber + " chunks with " + getSql());
+    return count;
+  }
+
+  /**
+   * Send a chunk of rows as one batch and commit it, rolling back and retrying on failure. The
+   * method clears the chunk after committing it.
+   *
+   * @param connection  the connection
+   * @param stmt        the prepared insert statement
+   * @param chunk       the rows to write
+   * @param chunkNumber the one-based number of the chunk for messages
+   * @return the number of rows written
+   * @throws SQLException when the chunk fails after all retries
+   */
+  private int writeChunk(Connection connection, PreparedStatement stmt, List<T> chunk,
+                         int chunkNumber) throws SQLException {
+    for (int attempt = 0; ; attempt++) {
+      try {
+        for (T row : chunk) {
+          setParams(stmt, row);
+          stmt.addBatch();
+        }
+        stmt.executeBatch();
+        connection.commit();
+        int size = chunk.size();
+        chunk.clear();
+        return size;
+      } catch (SQLException e) {
+        stmt.clearBatch();
+        connection.rollback();
+        if (attempt >= retries) {
+          throw new SQLException(CHUNK_FAILED_ERROR + chunkNumber, e);
+        }
+        logger.warn("Retrying chunk " + chunkNumber + " after error: " + e.getMessage());
+      }
+    }
+  }
+}
@@ -19,15 +19,25 @@ package com.poesys.accounting.dataloader.newaccounting;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.log4j.Logger;
 
 import com.poesys.db.InvalidParametersException;
 
 /**
- * Implementation of the IStorageManager interface that validates the data using statements
+ * Implementation of the IStorageManager interface that validates the data using statements. The
+ * validation checks the fiscal years concurrently on a thread pool no larger than the number of
+ * available processors. Every year is checked and every failing year is reported with its
+ * balances. The accounts contributing most to the balances are found for the first failing years;
+ * once any year fails, years not yet started skip that more expensive search.
  *
  * @author Robert J. Muller
  */
@@ -42,10 +52,53 @@ public abstract class AbstractValidatingStorageManager implements IStorageManage
   /** title for balance sheet */
   private static final String BALANCE_SHEET = "Balance Sheet";
 
+  /** format for the end date in the income statement title; thread-safe, unlike SimpleDateFormat */
+  private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("MM dd, yyyy");
+
+  /** the number of largest accounts to report for a year that doesn't balance */
+  private static final int CONTRIBUTING_ACCOUNTS = 5;
+
   // messages
 
   private static final String BALANCE_ERROR = "Statements don't balance for year ";
   private static final String NO_YEARS_TO_VALIDATE = "no years to validate";
+  private static final String SKIPPED_WARNING =
+    "Contributing accounts not computed after earlier failure for years ";
+  private static final String VALIDATION_ERROR = "Exception validating fiscal year";
+  private static final String INTERRUPTED_ERROR = "Interrupted while validating fiscal years";
+
+  /**
+   * The result of validating a single fiscal year
+   */
+  private static class YearResult {
+    /** the fiscal year */
+    private final FiscalYear year;
+    /** the balances of the year's statements */
+    private final StatementBalances balances;
+    /** whether the statements balance */
+    private final boolean balanced;
+    /**
+     * the accounts contributing most to the balances if the year doesn't balance, null if the year
+     * balances or another year failed first
+     */
+    private final List<Rollup> contributors;
+
+    /**
+     * Create a YearResult object.
+     *
+     * @param year         the fiscal year
+     * @param balances     the balances
+     * @param balanced     whether the statements balance
+     * @param contributors the largest contributing accounts or null if not computed
+     */
+    YearResult(FiscalYear year, StatementBalances balances, boolean balanced,
+               List<Rollup> contributors) {
+      this.year = year;
+      this.balances = balances;
+      this.balanced = balanced;
+      this.contributors = contributors;
+    }
+  }
 
   /**
    * Create a AbstractValidatingStorageManager object.
@@ -61,33 +114,167 @@ public abstract class AbstractValidatingStorageManager implements IStorageManage
     }
     Boolean valid = Boolean.TRUE;
 
-    SimpleDateFormat format = new SimpleDateFormat("MM dd, yyyy");
-
-    // Create the balance sheet and income statement for each year, then
-    // compare the balances by addition; if the sum is not zero, there's
-    // a validation problem somewhere. This method does not need any exception
-    // handling, as there are no possible explicit exceptions, just runtime
-    // exceptions like Java heap exhaustion.
-    for (FiscalYear year : years) {
-      Statement balanceSheet = new Statement(year, year.getYear() + " " + BALANCE_SHEET,
-                                             Statement.StatementType.BALANCE_SHEET);
-      String formattedEnd = format.format(year.getEnd());
-      Statement incomeStatement = new Statement(year, INCOME_STATEMENT + " " + formattedEnd,
-                                                Statement.StatementType.INCOME_STATEMENT);
-      BigDecimal balanceSheetBalance = balanceSheet.getBalance();
-      BigDecimal incomeStatementBalance = incomeStatement.getBalance();
-      BigDecimal zero = BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP);
-      logger.debug(
-        "Validating " + year.getYear() + " balance sheet balance: " + balanceSheetBalance);
-      logger.debug(
-        "Validating " + year.getYear() + " income statement balance: " + incomeStatementBalance);
-      BigDecimal systemBalance = balanceSheetBalance.add(incomeStatementBalance);
-      if (systemBalance.compareTo(zero) != 0) {
-        valid = Boolean.FALSE;
-        logger.error(BALANCE_ERROR + year);
-        break;
+    // Validate each year as a separate task. The failed flag lets tasks that haven't started yet
+    // skip the search for contributing accounts once any year fails, but every task still checks
+    // the balances of its year. This method does not need to handle exceptions from the
+    // statements, as there are no possible explicit exceptions, just runtime exceptions like Java
+    // heap exhaustion, which it rethrows.
+    AtomicBoolean failed = new AtomicBoolean(false);
+    int threads = Math.min(years.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<YearResult>> futures = new ArrayList<>(years.size());
+    List<Integer> skipped = new ArrayList<>();
+    try {
+      for (FiscalYear year : years) {
+        futures.add(executor.submit(() -> validateYear(year, failed)));
+      }
+      for (Future<YearResult> future : futures) {
+        YearResult result = future.get();
+        if (!result.balanced) {
+          valid = Boolean.FALSE;
+          reportFailure(result);
+          if (result.contributors == null) {
+            skipped.add(result.year.getYear());
+          }
+        }
+      }
+      if (!skipped.isEmpty()) {
+        logger.warn(SKIPPED_WARNING + skipped);
       }
+    } catch (ExecutionException e) {
+      throw new RuntimeException(VALIDATION_ERROR, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(INTERRUPTED_ERROR, e);
+    }
+    finally {
+      executor.shutdownNow();
     }
     return valid;
   }
-}
\ No newline at end of file
+
+  /**
+   * Validate a single fiscal year: create the balance sheet and income statement for the year, then
+   * compare the balances by addition; if the sum is not zero, there's a validation problem
+   * somewhere. The method reuses the balances recorded when the statements were produced unless
+   * the model has changed since then. For a year that doesn't balance, it also finds the largest
+   * contributing accounts unless another year has already failed.
+   *
+   * @param year   the fiscal year to validate
+   * @param failed the flag shared by all the validation tasks, set when any year fails
+   * @return the result of the validation
+   */
+  private YearResult validateYear(FiscalYear year, AtomicBoolean failed) {
+    StatementBalances balances = year.getStatementBalances();
+    if (balances == null) {
+      Statement balanceSheet = createBalanceSheet(year);
+      Statement incomeStatement = createIncomeStatement(year);
+      year.setStatementBalances(balanceSheet.getBalance(), incomeStatement.getBalance());
+      balances = year.getStatementBalances();
+    } else {
+      logger.debug("Reusing recorded statement balances for " + year.getYear());
+    }
+    BigDecimal balanceSheetBalance = balances.getBalanceSheetBalance();
+    BigDecimal incomeStatementBalance = balances.getIncomeStatementBalance();
+    BigDecimal zero = BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP);
+    logger.debug("Validating " + year.getYear() + " balance sheet balance: " + balanceSheetBalance);
+    logger.debug(
+      "Validating " + year.getYear() + " income statement balance: " + incomeStatementBalance);
+    BigDecimal systemBalance = balanceSheetBalance.add(incomeStatementBalance);
+    boolean balanced = systemBalance.compareTo(zero) == 0;
+    List<Rollup> contributors = null;
+    if (!balanced) {
+      // Search for the contributing accounts only if no other year has failed yet.
+      boolean first = !failed.get();
+      failed.set(true);
+      if (first) {
+        contributors = getContributingAccounts(year);
+      }
+    }
+    return new YearResult(year, balances, balanced, contributors);
+  }
+
+  /**
+   * Create the balance sheet for a fiscal year.
+   *
+   * @param year the fiscal year
+   * @return the balance sheet
+   */
+  private Statement createBalanceSheet(FiscalYear year) {
+    return new Statement(year, year.getYear() + " " + BALANCE_SHEET,
+                         Statement.StatementType.BALANCE_SHEET);
+  }
+
+  /**
+   * Create the income statement for a fiscal year.
+   *
+   * @param year the fiscal year
+   * @return the income statement
+   */
+  private Statement createIncomeStatement(FiscalYear year) {
+    String formattedEnd = FORMAT.format(year.getEnd().toLocalDateTime());
+    return new Statement(year, INCOME_STATEMENT + " " + formattedEnd,
+                         Statement.StatementType.INCOME_STATEMENT);
+  }
+
+  /**
+   * Get the rollups with the largest absolute totals across the balance sheet and income statement
+   * for a fiscal year, the accounts most likely to explain an imbalance.
+   *
+   * @param year the fiscal year
+   * @return a list of at most CONTRIBUTING_ACCOUNTS rollups, largest first
+   */
+  private List<Rollup> getContributingAccounts(FiscalYear year) {
+    Statement incomeStatement = createIncomeStatement(year);
+    List<Rollup> contributors = new ArrayList<>(CONTRIBUTING_ACCOUNTS);
+    List<BigDecimal> contributorTotals = new ArrayList<>(CONTRIBUTING_ACCOUNTS);
+    for (Rollup rollup : createBalanceSheet(year).getRollups().values()) {
+      // Total income and expense accounts for the income statement, others for the balance sheet.
+      AccountType type = rollup.getAccount().getAccountType(year);
+      if (type == AccountType.INCOME || type == AccountType.EXPENSES) {
+        rollup = new Rollup(incomeStatement, rollup.getAccount());
+      }
+      BigDecimal total = rollup.getTotal().abs();
+      // Insert into the short list in descending order of absolute total.
+      int index = 0;
+      while (index < contributorTotals.size() &&
+             contributorTotals.get(index).compareTo(total) >= 0) {
+        index++;
+      }
+      if (index < CONTRIBUTING_ACCOUNTS) {
+        contributors.add(index, rollup);
+        contributorTotals.add(index, total);
+        if (contributors.size() > CONTRIBUTING_ACCOUNTS) {
+          contributors.remove(CONTRIBUTING_ACCOUNTS);
+          contributorTotals.remove(CONTRIBUTING_ACCOUNTS);
+        }
+      }
+    }
+    return contributors;
+  }
+
+  /**
+   * Log the details of a fiscal year that doesn't balance.
+   *
+   * @param result the validation result for the year
+   */
+  private void reportFailure(YearResult result) {
+    StringBuilder builder = new StringBuilder(BALANCE_ERROR);
+    builder.append(result.year.getYear());
+    builder.append(": balance sheet ");
+    builder.append(result.balances.getBalanceSheetBalance());
+    builder.append(", income statement ");
+    builder.append(result.balances.getIncomeStatementBalance());
+    if (result.contributors != null) {
+      builder.append("; largest accounts:");
+      for (Rollup rollup : result.contributors) {
+        builder.append(" ");
+        builder.append(rollup.getAccount().getName());
+        builder.append(" ");
+        builder.append(rollup.getTotal());
+        builder.append(";");
+      }
+    }
+    logger.error(builder.toString());
+  }
+}
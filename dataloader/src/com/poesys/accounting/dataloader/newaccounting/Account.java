@@ -20,8 +20,10 @@ package com.poesys.accounting.dataloader.newaccounting;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
 
@@ -52,10 +54,21 @@ public class Account {
   /** whether the account is a Receivables account */
   private final Boolean receivable;
   /** an ordered list of fiscal years in which the account is active */
-  private final List<FiscalYearAccount> years = new ArrayList<>();
+  private List<FiscalYearAccount> years = new ArrayList<>();
+  /** the first link added for each fiscal year, indexed by year */
+  private final TreeMap<Integer, FiscalYearAccount> yearIndex = new TreeMap<>();
   /** the set of items against the account */
-  private final Set<Item> items = new HashSet<>();
+  private Set<Item> items = new HashSet<>();
+  /**
+   * the items indexed by date for as-of-date queries, built by the first query after items are
+   * added and once more when the account is frozen; null if items were added since
+   */
+  private BalanceIndex balanceIndex = null;
+  /** the receivable items not yet fully reimbursed, indexed by the year of their transactions */
+  private final TreeMap<Integer, Set<Item>> openReceivables = new TreeMap<>();
   private CapitalEntity capitalEntity = null;
+  /** whether the account is frozen, with immutable collections */
+  private boolean frozen = false;
 
   // Messages
 
@@ -137,15 +150,8 @@ public class Account {
    * @return the account type of the account in the year
    */
   public AccountType getAccountType(FiscalYear year) {
-    AccountType accountType = null;
-
-    for (FiscalYearAccount link : years) {
-      if (link.getFiscalYear().equals(year)) {
-        accountType = link.getAccountType();
-        break; // found year, done
-      }
-    }
-    return accountType;
+    FiscalYearAccount link = getFiscalYearAccount(year);
+    return link == null ? null : link.getAccountType();
   }
 
   /**
@@ -168,7 +174,8 @@ public class Account {
 
   /**
    * Add the fiscal year link to the list of links for the account. Ensure that the list of links is
-   * ordered by year, account type, group, and account.
+   * ordered by year, account type, group, and account by inserting the link in place, and index the
+   * link by year if it is the first link for its year.
    *
    * @param year the fiscal year account link to add
    */
@@ -176,17 +183,18 @@ public class Account {
     if (year == null) {
       throw new InvalidParametersException(NULL_YEAR_ERROR);
     }
-    years.add(year);
-    Collections.sort(years);
+    FiscalYearAccount.insert(years, year);
+    yearIndex.putIfAbsent(year.getFiscalYear().getYear(), year);
+    year.getFiscalYear().modified();
   }
 
   /**
    * Get the fiscal years in which the account is active.
    *
-   * @return a threadsafe list of fiscal-year-account links
+   * @return a threadsafe list of fiscal-year-account links, immutable once the account is frozen
    */
   public List<FiscalYearAccount> getYears() {
-    return Collections.synchronizedList(years);
+    return frozen ? years : Collections.synchronizedList(years);
   }
 
   /**
@@ -196,15 +204,27 @@ public class Account {
    * @return the account group that contains the account in the fiscal year
    */
   public AccountGroup getGroup(FiscalYear year) {
-    AccountGroup group = null;
+    FiscalYearAccount link = getFiscalYearAccount(year);
+    return link == null ? null : link.getGroup();
+  }
 
-    for (FiscalYearAccount link : years) {
-      if (link.getFiscalYear().equals(year)) {
-        group = link.getGroup();
-        break; // found group, done
-      }
-    }
-    return group;
+  /**
+   * Get the link between the account and a specified fiscal year.
+   *
+   * @param year the fiscal year
+   * @return the first link added for the year, or null if the account is not linked to the year
+   */
+  public FiscalYearAccount getFiscalYearAccount(FiscalYear year) {
+    return year == null ? null : yearIndex.get(year.getYear());
+  }
+
+  /**
+   * Get the latest fiscal year to which the account is linked.
+   *
+   * @return the year, or null if the account is not linked to any fiscal year
+   */
+  Integer getLastYear() {
+    return yearIndex.isEmpty() ? null : yearIndex.lastKey();
   }
 
   /**
@@ -213,17 +233,139 @@ public class Account {
    * @return an unmodifiable set of items
    */
   public Set<Item> getItems() {
-    return Collections.unmodifiableSet(items);
+    return frozen ? items : Collections.unmodifiableSet(items);
+  }
+
+  /**
+   * Freeze the account once the model is built, replacing the fiscal years and items with
+   * immutable copies that any number of threads can read without locks, and index the items by
+   * date for balance queries. Adding a year or an item to a frozen account throws an
+   * UnsupportedOperationException.
+   */
+  public void freeze() {
+    if (!frozen) {
+      years = Frozen.list(years);
+      items = Frozen.set(items);
+      balanceIndex = new BalanceIndex(items);
+      frozen = true;
+    }
+  }
+
+  /**
+   * Is the account frozen?
+   *
+   * @return true if the account is frozen, false if items may still be added
+   */
+  public boolean isFrozen() {
+    return frozen;
   }
 
   /**
-   * Add an item to the set of items in this account.
+   * Add an item to the set of items in this account. A new item changes the statements for the
+   * fiscal year containing its transaction date and for all later fiscal years linked to the
+   * account, and the next balance query rebuilds the balance index.
    *
    * @param item the item to add
    */
   public void addItem(Item item) {
     logger.debug("Adding item to " + name + " item list: " + item);
-    items.add(item);
+    if (items.add(item)) {
+      balanceIndex = null;
+      Integer itemYear = item.getTransaction().getYear();
+      if (item.isOpen()) {
+        openReceivables.computeIfAbsent(itemYear, k -> new LinkedHashSet<>()).add(item);
+      }
+      int itemDay = item.getTransaction().getEpochDay();
+      for (FiscalYearAccount link : years) {
+        if (link.getFiscalYear().getEndDay() >= itemDay) {
+          link.getFiscalYear().modified();
+        }
+      }
+    }
+  }
+
+  /**
+   * Remove a receivable item from the open receivables once reimbursements settle its amount.
+   *
+   * @param item the settled item
+   */
+  void settle(Item item) {
+    Integer itemYear = item.getTransaction().getYear();
+    Set<Item> open = openReceivables.get(itemYear);
+    if (open != null && open.remove(item) && open.isEmpty()) {
+      openReceivables.remove(itemYear);
+    }
+  }
+
+  /**
+   * Get the receivable items against the account with transactions in a year that reimbursements
+   * have not yet settled.
+   *
+   * @param year the year of the receivable transactions
+   * @return a read-only set of open receivable items in the order added, empty if none
+   */
+  public Set<Item> getOpenReceivables(Integer year) {
+    Set<Item> open = openReceivables.get(year);
+    return open == null ? Collections.emptySet() : Collections.unmodifiableSet(open);
+  }
+
+  /**
+   * Get all the receivable items against the account that reimbursements have not yet settled,
+   * for carrying open items forward into later years.
+   *
+   * @return a list of open receivable items in order of year, empty if none
+   */
+  public List<Item> getOpenReceivables() {
+    List<Item> open = new ArrayList<>();
+    for (Set<Item> yearItems : openReceivables.values()) {
+      open.addAll(yearItems);
+    }
+    return open;
+  }
+
+  /**
+   * Get the balance of the account as of the end of a day, the total of the items against the
+   * account with transactions on or before the day. The query is a binary search of the items in
+   * date order with their running totals, so it costs O(log n) in the number of items once the
+   * index exists. The balance sheet total for a fiscal year is the balance as of its last day.
+   *
+   * @param epochDay the day as days since 1970-01-01
+   * @return the balance in cents, taking credits as positive and debits as negative
+   */
+  public long getBalance(int epochDay) {
+    return getBalanceIndex().getBalance(epochDay);
+  }
+
+  /**
+   * Get the activity in the account over a range of days, the total of the items against the
+   * account with transactions from the first day through the last day. Like the balance, the
+   * query costs O(log n) in the number of items. The income statement total for a fiscal year is
+   * the activity from its first day through its last.
+   *
+   * @param fromDay the first day of the range as days since 1970-01-01
+   * @param toDay   the last day of the range as days since 1970-01-01
+   * @return the total in cents, taking credits as positive and debits as negative; zero if the last
+   * day is before the first
+   */
+  public long getActivity(int fromDay, int toDay) {
+    return getBalanceIndex().getActivity(fromDay, toDay);
+  }
+
+  /**
+   * Get the balance index, building it if items were added since the last query. While the model
+   * is being built, the loader adds a year's items before it queries the year's statements, so it
+   * builds the index about once per account and year, and only the loader thread queries an
+   * account that is not frozen. The frozen account keeps the index it built when frozen.
+   *
+   * @return the balance index
+   */
+  private BalanceIndex getBalanceIndex() {
+    BalanceIndex index = balanceIndex;
+    if (index == null) {
+      index = new BalanceIndex(items);
+      balanceIndex = index;
+    }
+    return index;
   }
 
   /**
@@ -18,8 +18,10 @@
 package com.poesys.accounting.dataloader.newaccounting;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -37,7 +39,12 @@ import com.poesys.db.InvalidParametersException;
  * class abstracts the distribution process, providing a clear set of process steps that you can
  * unit-test individually. It also exposes most of the logic of remainder distribution to enable
  * unit testing of the logic component methods. These methods may be of interest at some point for
- * use in other classes. </p>
+ * use in other classes. </p> <p> The distributor keeps the balances and item amounts in cents in
+ * primitive arrays in the order the accounts were added, so validation and the minimum and maximum
+ * searches are single passes and the remainder and equalization distributions compute their
+ * results directly instead of moving one penny at a time; the results are exact to the penny and
+ * depend only on the balances and the order of the accounts, which makes them deterministic for
+ * any number of accounts. </p>
  *
  * @author Robert J. Muller
  */
@@ -46,21 +53,22 @@ public class AccountCollectionDistributor {
   private static final Logger logger = Logger.getLogger(AccountCollectionDistributor.class);
   /** the amount to distribute */
   protected Integer amount;
-  /** map of integer balances indexed by Account */
-  protected final Map<Account, Integer> balances = new HashMap<>();
-  /** map of decimal item credits/debit amounts indexed by Account */
-  private final Map<Account, Integer> itemAmounts = new HashMap<>();
-  /** ordered list of balance accounts */
-  private Account firstAccount = null;
+  /** map of account indexes into the balance arrays, indexed by Account */
+  private final Map<Account, Integer> indexes = new HashMap<>();
+  /** the accounts in the order added to the distributor */
+  private final List<Account> accounts = new ArrayList<>();
+  /** integer balances in cents in account order */
+  private long[] balances = new long[INITIAL_CAPACITY];
+  /** integer item credit/debit amounts in cents in account order */
+  private long[] itemAmounts = new long[INITIAL_CAPACITY];
 
   // constants
   /** the scale for BigDecimal values */
   protected static final int SCALE = 2;
-  /** the multiplier that converts a BigDecimal monetary amount to integer */
-  private static final BigDecimal MULTIPLIER =
-    new BigDecimal("100.00").setScale(SCALE, RoundingMode.HALF_UP);
   /** the amount by which accounts may differ */
   private static final Integer PENNY = 1;
+  /** the initial size of the balance arrays */
+  private static final int INITIAL_CAPACITY = 4;
 
   // messages
   private static final String INVALID_COLLECTION_ERROR =
@@ -70,7 +78,6 @@ public class AccountCollectionDistributor {
   private static final String NULL_BALANCE_ERROR = "balance is required but is null";
   private static final String ACCOUNT_NOT_ADDED_ERROR = "account not added: ";
   private static final String NO_BALANCE_ERROR = "no balance for account ";
-  private static final String NO_AMOUNT_ERROR = "no item amount for account ";
   private static final String NO_BALANCES_ERROR = "no balances";
 
   /**
@@ -79,7 +86,7 @@ public class AccountCollectionDistributor {
    * @param amount the amount to distribute
    */
   public AccountCollectionDistributor(BigDecimal amount) {
-    this.amount = amount.multiply(MULTIPLIER).intValue();
+    this.amount = (int)Money.valueOf(amount).getCents();
   }
 
   /**
@@ -92,9 +99,10 @@ public class AccountCollectionDistributor {
   }
 
   /**
-   * Add an account and its current balance to the balance map, converting the BigDecimal monetary
-   * amount (scale SCALE) into an integer amount for computation with integer arithmetic. Add the
-   * account to the ordered list of accounts, which imposes an order on the set of accounts.
+   * Add an account and its current balance to the balance arrays, converting the BigDecimal
+   * monetary amount (scale SCALE) into cents for computation with integer arithmetic.
+   * The order in which the accounts are added imposes an order on the set of accounts; adding an
+   * account again replaces its balance and resets its item amount without changing its position.
    *
    * @param account the account that has the balance
    * @param balance the decimal monetary amount (scale SCALE)
@@ -106,12 +114,18 @@ public class AccountCollectionDistributor {
     if (balance == null) {
       throw new InvalidParametersException(NULL_BALANCE_ERROR);
     }
-    Integer intValue = balance.multiply(MULTIPLIER).intValue();
-    balances.put(account, intValue);
-    itemAmounts.put(account, 0);
-    if (firstAccount == null) {
-      firstAccount = account;
+    Integer index = indexes.get(account);
+    if (index == null) {
+      index = accounts.size();
+      if (index == balances.length) {
+        balances = Arrays.copyOf(balances, index * 2);
+        itemAmounts = Arrays.copyOf(itemAmounts, index * 2);
+      }
+      indexes.put(account, index);
+      accounts.add(account);
     }
+    balances[index] = Money.valueOf(balance).getCents();
+    itemAmounts[index] = 0L;
   }
 
   /**
@@ -121,16 +135,7 @@ public class AccountCollectionDistributor {
    * @return the balance as a monetary amount (scale SCALE)
    */
   public BigDecimal getBalance(Account account) {
-    if (account == null) {
-      throw new InvalidParametersException(NULL_ACCOUNT_ERROR);
-    }
-    Integer balance = balances.get(account);
-    if (balance == null) {
-      throw new InvalidParametersException(ACCOUNT_NOT_ADDED_ERROR + account);
-    }
-    BigDecimal decimalBalance = new BigDecimal(balance).setScale(SCALE, RoundingMode.HALF_UP);
-    return decimalBalance.divide(MULTIPLIER, RoundingMode.HALF_UP).setScale(SCALE,
-                                                                            RoundingMode.HALF_UP);
+    return BigDecimal.valueOf(balances[getIndex(account)], SCALE);
   }
 
   /**
@@ -140,45 +145,52 @@ public class AccountCollectionDistributor {
    * @return the balance as a monetary amount (scale SCALE)
    */
   public BigDecimal getItemAmount(Account account) {
+    return BigDecimal.valueOf(itemAmounts[getIndex(account)], SCALE);
+  }
+
+  /**
+   * Get the current item amount for an account in cents.
+   *
+   * @param account the account for which to get the amount
+   * @return the item amount
+   */
+  public Money getItemMoney(Account account) {
+    return Money.ofCents(itemAmounts[getIndex(account)]);
+  }
+
+  /**
+   * Get the index of an account in the balance arrays.
+   *
+   * @param account the account
+   * @return the index
+   */
+  private int getIndex(Account account) {
     if (account == null) {
       throw new InvalidParametersException(NULL_ACCOUNT_ERROR);
     }
-    Integer amount = itemAmounts.get(account);
-    if (amount == null) {
+    Integer index = indexes.get(account);
+    if (index == null) {
       throw new InvalidParametersException(ACCOUNT_NOT_ADDED_ERROR + account);
     }
-    BigDecimal decimalAmount = new BigDecimal(amount).setScale(SCALE, RoundingMode.HALF_UP);
-    return decimalAmount.divide(MULTIPLIER, RoundingMode.HALF_UP).setScale(SCALE,
-                                                                           RoundingMode.HALF_UP);
+    return index;
   }
 
   /**
    * There must be at least one balance. Compare the balances; all should be equal or differ by at
-   * most one penny.
+   * most one penny, which is true if the maximum and minimum balances differ by at most a penny.
    *
    * @return true if balances are equal or near-equal, false if not
    */
   public boolean isValid() {
     boolean valid = true;
-    if (balances.size() > 0) {
-      outer:
-      for (Account account : balances.keySet()) {
-        for (Account otherAccount : balances.keySet()) {
-          // Skip same-account comparisons
-          if (!account.equals(otherAccount)) {
-            int difference = balances.get(account) - balances.get(otherAccount);
-            if (difference < 0) {
-              difference = -difference;
-            }
-            if (difference != 0 && difference != PENNY) {
-              logger.warn("Imbalance between capital accounts " + account.getName() + " and " +
-                          otherAccount.getName() + ": " + balances.get(account) + " vs. " +
-                          balances.get(otherAccount));
-              valid = false;
-              break outer;
-            }
-          }
-        }
+    if (accounts.size() > 0) {
+      int min = getMinimumIndex();
+      int max = getMaximumIndex();
+      if (balances[max] - balances[min] > PENNY) {
+        logger.warn("Imbalance between capital accounts " + accounts.get(max).getName() + " and " +
+                    accounts.get(min).getName() + ": " + balances[max] + " vs. " +
+                    balances[min]);
+        valid = false;
       }
     } else {
       // no balances, mark invalid
@@ -190,35 +202,40 @@ public class AccountCollectionDistributor {
 
   /**
    * Equalize the balances by shifting pennies between the accounts until the account balances are
-   * equal or differ by at most a penny. The direction of penny-shifting depends on the sign of the
-   * balances, negative or positive.
+   * equal or differ by at most a penny. The method computes the final balances directly rather
+   * than shifting one penny at a time: each account gets the total divided by the number of
+   * accounts, and the pennies left over go to the accounts with the largest current balances, in
+   * the order added for equal balances, which keeps the shift to a minimum. The item amounts record
+   * the shift for each account.
    *
    * @return true if balances were equalized, false if they were unchanged
    */
   public boolean equalize() {
     boolean equalized = false;
-    if (!equal()) {
-      // At least a penny difference somewhere, possibly more
-      // Get the min and max accounts and shift a penny, then recurse.
-      Account min = getMinimumBalanceAccount();
-      Account max = getMaximumBalanceAccount();
-      Integer minBalance = balances.get(min);
-      Integer maxBalance = balances.get(max);
-      Integer minItemAmount = itemAmounts.get(min);
-      Integer maxItemAmount = itemAmounts.get(max);
-
-      if (Math.abs(maxBalance - minBalance) > 1) {
-        equalized = true;
-        // more than a penny different
-        minBalance++;
-        balances.put(min, minBalance);
-        minItemAmount++;
-        itemAmounts.put(min, minItemAmount);
-        maxBalance--;
-        balances.put(max, maxBalance);
-        maxItemAmount--;
-        itemAmounts.put(max, maxItemAmount);
+    int size = accounts.size();
+    if (size > 0 && !isNearlyEqual()) {
+      long total = 0L;
+      for (int i = 0; i < size; i++) {
+        total += balances[i];
+      }
+      long share = Math.floorDiv(total, size);
+      long leftOver = Math.floorMod(total, size);
+
+      // Order the accounts by descending balance, then by order added.
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> balances[a] != balances[b] ?
+                                   Long.compare(balances[b], balances[a]) : Integer.compare(a, b));
+
+      for (int i = 0; i < size; i++) {
+        int index = order[i];
+        long newBalance = i < leftOver ? share + PENNY : share;
+        itemAmounts[index] += newBalance - balances[index];
+        balances[index] = newBalance;
       }
+      equalized = true;
     }
     return equalized;
   }
@@ -236,39 +253,32 @@ public class AccountCollectionDistributor {
     }
     // Get the initial distribution amount by equally dividing by the count of
     // the balances.
-    Integer distAmount = amount / balances.size();
+    long distAmount = amount / accounts.size();
 
-    for (Account account : balances.keySet()) {
-      int currentBalance = balances.get(account);
-      int newBalance = currentBalance + distAmount;
-
-      // Put the new balance into the balances map.
-      balances.put(account, newBalance);
-
-      // Put the distribution amount into the itemAmount map.
-      itemAmounts.put(account, distAmount);
+    for (int i = 0; i < accounts.size(); i++) {
+      balances[i] += distAmount;
+      itemAmounts[i] = distAmount;
     }
   }
 
   /**
    * Distribute the number of pennies remaining after the main distribution across the current set
    * of account balances, keeping the balances within one penny of one another. The remainder can be
-   * positive or negative, and the balances can be positive, negative, or zero; the logic depends on
-   * the various combinations of these states. Also note that the remainder logic dictates that
-   * there must be at least two balances for there to be a remainder, as x%1 never produces a
-   * remainder.
+   * positive or negative, and the balances can be positive, negative, or zero. Also note that the
+   * remainder logic dictates that there must be at least two balances for there to be a remainder,
+   * as x%1 never produces a remainder.
    */
   public void distributeRemainder() {
-    if (balances.size() == 0) {
+    if (accounts.size() == 0) {
       throw new RuntimeException(INVALID_COLLECTION_ERROR);
     }
 
-    Integer remainder = amount % balances.size();
+    Integer remainder = amount % accounts.size();
 
     // Check validity to make sure everything is there that needs to be. Don't
     // do anything if there is no remainder to distribute.
     if (remainder != 0 && isValid()) {
-      distributePennyFromRemainder(remainder);
+      distributePennies(remainder);
     } else if (remainder != 0) {
       // isValid() failed, throw exception
       throw new RuntimeException(INVALID_COLLECTION_ERROR);
@@ -276,24 +286,32 @@ public class AccountCollectionDistributor {
   }
 
   /**
-   * Recursive method that distributes one penny for each recursion until the remainder is gone. The
-   * method ensures that the set of balances stays equal or nearly equal. Keep this private to hide
-   * the recursion structure.
+   * Distribute a remainder of fewer pennies than there are accounts to valid balances, one penny
+   * per account. A positive remainder goes first to the accounts with the minimum balance to bring
+   * them up to the maximum, then to the other accounts; a negative remainder goes first to the
+   * accounts with the maximum balance. Within each group the pennies go in the order in which the
+   * accounts were added, so if all the balances are equal the first account gets the first penny.
+   * Two passes over the balances replace the per-penny search for the minimum or maximum account.
    *
-   * @param remainder the current remainder
+   * @param remainder the remainder to distribute
    */
-  private void distributePennyFromRemainder(Integer remainder) {
-
-    if (equal()) {
-      // Distribute the penny to the first account.
-      remainder = setBalanceAndDecrementRemainder(remainder, firstAccount);
-    } else {
-      remainder = distributeRemainderNearlyEqual(remainder);
+  private void distributePennies(Integer remainder) {
+    int size = accounts.size();
+    long first = remainder > 0 ? balances[getMinimumIndex()] : balances[getMaximumIndex()];
+    int[] order = new int[size];
+    int next = 0;
+    for (int i = 0; i < size; i++) {
+      if (balances[i] == first) {
+        order[next++] = i;
+      }
     }
-
-    if (remainder != 0) {
-      // There is still a remainder to distribute, so recurse.
-      distributePennyFromRemainder(remainder);
+    for (int i = 0; i < size; i++) {
+      if (balances[i] != first) {
+        order[next++] = i;
+      }
+    }
+    for (int i = 0; i < size && remainder != 0; i++) {
+      remainder = setBalanceAndDecrementRemainder(remainder, order[i]);
     }
   }
 
@@ -337,7 +355,7 @@ public class AccountCollectionDistributor {
 
   /**
    * Compute a revised balance for an account from a remainder and set that balance into the
-   * balances map, then return the decremented remainder. If there is no balance for the specified
+   * balance array, then return the decremented remainder. If there is no balance for the specified
    * account, the method throws a RuntimeException. The method adds a penny to the balance and
    * decrements a penny from the remainder.
    *
@@ -346,83 +364,94 @@ public class AccountCollectionDistributor {
    * @return the decremented remainder
    */
   public Integer setBalanceAndDecrementRemainder(Integer remainder, Account account) {
-    // set penny as +1 or -1 depending on remainder sign
-    Integer penny = remainder > 0 ? 1 : -1;
-    Integer balance = balances.get(account);
-    if (balance == null) {
+    Integer index = indexes.get(account);
+    if (index == null) {
       throw new RuntimeException(NO_BALANCE_ERROR + account);
     }
+    return setBalanceAndDecrementRemainder(remainder, index);
+  }
 
-    Integer itemAmount = itemAmounts.get(account);
-    if (itemAmount == null) {
-      throw new RuntimeException(NO_AMOUNT_ERROR + account);
-    }
-
-    // Add the penny amount to the balance and amount.
-    balance += penny;
-    itemAmount += penny;
-    // Update the balance for the account.
-    balances.put(account, balance);
-    // Update the item amount for the account.
-    itemAmounts.put(account, itemAmount);
-    remainder -= penny;
-
-    return remainder;
+  /**
+   * Add a penny from a remainder to the balance and item amount at an index, then return the
+   * decremented remainder.
+   *
+   * @param remainder the current remainder
+   * @param index     the index of the account to set
+   * @return the decremented remainder
+   */
+  private Integer setBalanceAndDecrementRemainder(Integer remainder, int index) {
+    // set penny as +1 or -1 depending on remainder sign
+    int penny = remainder > 0 ? PENNY : -PENNY;
+    balances[index] += penny;
+    itemAmounts[index] += penny;
+    return remainder - penny;
   }
 
   /**
    * Get the account that contains the maximum balance. If several balances have this maximum,
-   * return the first one found. If there are no balances at all, the method throws a
+   * return the first one added. If there are no balances at all, the method throws a
    * RuntimeException.
    *
    * @return the account containing the maximum balance
    */
   public Account getMaximumBalanceAccount() {
-    if (balances.size() == 0) {
+    if (accounts.size() == 0) {
       throw new RuntimeException(NO_BALANCES_ERROR);
     }
-    Account maxAccount = null;
-    Integer maxBalance = null;
-    for (Account account : balances.keySet()) {
-      Integer balance = balances.get(account);
-      // iterating existing accounts, so there is always a balance.
-      if (maxAccount == null) {
-        // first one, set max.
-        maxAccount = account;
-        maxBalance = balance;
-      } else {
-        // not first, compare and set max.
-        if (balance > maxBalance) {
-          maxAccount = account;
-        }
-      }
-    }
-    return maxAccount;
+    return accounts.get(getMaximumIndex());
   }
 
   /**
    * Get the account that contains the minimum balance. If several balances have this minimum,
-   * return the first one found.
+   * return the first one added. If there are no balances at all, the method throws a
+   * RuntimeException.
    *
    * @return the account containing the minimum balance
    */
   public Account getMinimumBalanceAccount() {
-    Account minAccount = null;
-    Integer minBalance = null;
-    for (Account account : balances.keySet()) {
-      Integer balance = balances.get(account);
-      if (minAccount == null) {
-        // first one, set max.
-        minAccount = account;
-        minBalance = balance;
-      } else {
-        // not first, compare and set min.
-        if (balance < minBalance) {
-          minAccount = account;
-        }
+    if (accounts.size() == 0) {
+      throw new RuntimeException(NO_BALANCES_ERROR);
+    }
+    return accounts.get(getMinimumIndex());
+  }
+
+  /**
+   * Get the index of the first maximum balance.
+   *
+   * @return the index, 0 if there are no balances
+   */
+  private int getMaximumIndex() {
+    int max = 0;
+    for (int i = 1; i < accounts.size(); i++) {
+      if (balances[i] > balances[max]) {
+        max = i;
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Get the index of the first minimum balance.
+   *
+   * @return the index, 0 if there are no balances
+   */
+  private int getMinimumIndex() {
+    int min = 0;
+    for (int i = 1; i < accounts.size(); i++) {
+      if (balances[i] < balances[min]) {
+        min = i;
       }
     }
-    return minAccount;
+    return min;
+  }
+
+  /**
+   * Do the balances differ by at most a penny?
+   *
+   * @return true if the balances are equal or near-equal, true if there are no balances
+   */
+  private boolean isNearlyEqual() {
+    return accounts.isEmpty() || balances[getMaximumIndex()] - balances[getMinimumIndex()] <= PENNY;
   }
 
   /**
@@ -432,12 +461,8 @@ public class AccountCollectionDistributor {
    */
   public boolean equal() {
     boolean equal = true;
-    Integer value = null;
-    for (Integer integer : balances.values()) {
-      if (value == null) {
-        // first value, set comparison variable
-        value = integer;
-      } else if (value.compareTo(integer) != 0) {
+    for (int i = 1; i < accounts.size(); i++) {
+      if (balances[i] != balances[0]) {
         equal = false;
         break;
       }
@@ -27,14 +27,24 @@ import com.poesys.db.connection.IConnectionFactory.DBMS;
 import com.poesys.db.connection.JdbcConnectionManager;
 import com.poesys.db.pk.IPrimaryKey;
 import com.poesys.db.pk.NaturalPrimaryKey;
+import com.poesys.db.pk.PrimaryKeyFactory;
 import org.apache.log4j.Logger;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The production services for storing Accounting/DB data to the database given a set of
@@ -46,17 +56,30 @@ public class AccountingDbService implements IDataAccessService {
   /** logger for this class */
   private static final Logger logger = Logger.getLogger(AccountingDbService.class);
 
-  /** SQL for ID map insert */
-  private static final String ID_MAP_INSERT_SQL =
-    "INSERT INTO IdMap(entityName, year, oldId, newId) VALUES (?, ?, ?, ?)";
+  /** the subsystem for the id map connection */
+  private static final String TRANSACTION_SUBSYSTEM = "com.poesys.accounting.db.transaction";
+  /** the name of the transaction id column for transaction primary keys */
+  private static final String TRANSACTION_ID_COLUMN = "transactionId";
+  /** the class name of the database transaction for transaction primary keys */
+  private static final String TRANSACTION_CLASS =
+    "com.poesys.accounting.db.transaction.Transaction";
+  /** the default number of transactions to store and commit in each chunk */
+  public static final int DEFAULT_TRANSACTION_CHUNK_SIZE = 1000;
+  /** the default number of threads storing fiscal year partitions of transactions */
+  public static final int DEFAULT_STORE_THREADS = 1;
+  /** SQL for reading the stored transactions of an entity with the keys of their items */
+  private static final String STORED_ITEM_QUERY_SQL =
+    "SELECT m.year, m.oldId, m.newId, i.orderNumber, i.accountName FROM IdMap m " +
+    "JOIN Item i ON i.transactionId = m.newId WHERE m.entityName = ?";
+  /** SQL for removing the id map rows of a block of stored transactions */
+  private static final String ID_MAP_BLOCK_DELETE_SQL =
+    "DELETE FROM IdMap WHERE entityName = ? AND newId BETWEEN ? AND ?";
 
   // messages
-  private static final String NO_LINKS_IN_GROUP_ERROR = "no fiscal-year-account links in ";
   private static final String LINKING_SQL_ERROR =
     "SQL exception linking account to year and group: ";
-  private static final String REIMBURSEMENT_SQL_ERROR = "SQL exception creating reimbursement";
   private static final String NULL_ENTITY_ERROR = "Entity is null, run storeEntity() first";
-  private static final String ID_MAP_STORE_ERROR = "exception storing id map";
+  private static final String CHUNK_STORE_ERROR = "exception storing transaction chunk for ";
   private static final String NO_REIMBURSEMENTS_ERROR =
     "couldn't find reimbursement objects for receivable ";
   private static final String UNKNOWN_ACCOUNT_ERROR = "unknown account in item: ";
@@ -71,26 +94,251 @@ public class AccountingDbService implements IDataAccessService {
   private static final String GROUP_QUERY_ERROR = "group query failed for type ";
   private static final String NO_STRUCTURE_ERROR = "no capital structure for storing";
   private static final String FISCAL_YEAR_NOT_FOUND_ERROR = "Fiscal year not found: ";
+  private static final String INVALID_CHUNK_SIZE_ERROR =
+    "transaction chunk size must be positive: ";
+  private static final String STORED_ITEM_NOT_FOUND_ERROR = "could not find stored item ";
+  private static final String DUPLICATE_STORED_ITEM_ERROR =
+    "more than one stored item for account ";
+  private static final String IN_TRANSACTION_MSG = " in stored transaction ";
+  private static final String INVALID_THREADS_ERROR = "store threads must be positive: ";
+  private static final String PARTITION_ERROR = "exception storing fiscal year partition";
+  private static final String REIMBURSEMENT_SQL_ERROR = "SQL exception linking reimbursement";
+  private static final String REIMBURSEMENT_STORE_ERROR =
+    "exception storing cross-year reimbursements";
+  private static final String ID_MAP_READ_ERROR = "exception reading id map for entity ";
+  private static final String EXISTING_LINKS_ERROR = "exception reading fiscal years of account ";
+  private static final String REMOVE_TRANSACTIONS_ERROR =
+    "exception removing stored transactions for year ";
 
   /** the primary key of the stored, existing entity created by storeEntity() */
   private IPrimaryKey entityKey = null;
 
   /**
-   * a map of database accounts created by storeEntity() indexed on newaccounting account for lookup
-   * by storeTransactions()
+   * a map of database accounts created by storeEntity() indexed on newaccounting account, for
+   * checking the accounts of the items in storeTransactions()
    */
   private final Map<Account, BsAccount> accounts = new HashMap<>();
 
-  /** a map of item objects indexed by item, AR objects only for reimbursements */
-  private final Map<Item, BsItem> arItems = new HashMap<>();
+  /**
+   * a map of the keys of AR items stored in committed chunks of any fiscal year partition, for
+   * reimbursements that cross chunks or years; kept after a store for linking the transactions of
+   * a later store that follows it
+   */
+  private final Map<Item, StoredItemKey> storedArItems = new ConcurrentHashMap<>();
+
+  /** the allocator reserving a block of transaction ids for each chunk */
+  private final TransactionIdAllocator idAllocator = new TransactionIdAllocator();
+
+  /**
+   * the blocks of transaction ids of the chunks stored by this service, indexed by fiscal year, for
+   * removing what a load stored for a year
+   */
+  private final Map<Integer, Queue<IdBlock>> storedBlocks = new ConcurrentHashMap<>();
+
+  /** the reimbursements linking items in different fiscal years, stored after all the years */
+  private final Queue<Reimbursement> crossYearReimbursements = new ConcurrentLinkedQueue<>();
+
+  /**
+   * the accounts stored for the entity by earlier loads, indexed by name, read by the first
+   * storeEntity() call for the entity and reused by later calls storing more years
+   */
+  private final Map<String, BsAccount> storedAccounts = new HashMap<>();
+
+  /**
+   * the fiscal years linked to the accounts stored by earlier loads, indexed by account name, read
+   * with the stored accounts
+   */
+  private final Map<String, Set<Integer>> storedLinks = new HashMap<>();
 
   /** a map of account types indexed by type for lookup of database type object */
   private final Map<AccountType, BsAccountType> types = new HashMap<>();
 
+  /** the batch writer for the id map entries of each stored chunk */
+  private final IdMapWriter idMapWriter;
+
+  /** the number of transactions to store and commit in each chunk */
+  private final int transactionChunkSize;
+
+  /** the number of threads storing fiscal year partitions of transactions */
+  private final int storeThreads;
+
   /**
-   * Create an AccountingDbService object.
+   * whether to store only what is not already in the database (delta mode) rather than everything
+   */
+  private final boolean delta;
+
+  /**
+   * the transactions being stored by storeTransactions(); reimbursements linking to a transaction
+   * outside the set and not stored by an earlier call are left for a later store
+   */
+  private Set<Transaction> storing = Collections.emptySet();
+
+  /**
+   * The database key of a stored item: the transaction id and the item order number, enough to
+   * link the item by a reimbursement after its chunk is committed
+   */
+  private static class StoredItemKey {
+    /** the database transaction id */
+    private final BigInteger transactionId;
+    /** the order number of the item within the transaction */
+    private final int orderNumber;
+
+    /**
+     * Create a StoredItemKey object.
+     *
+     * @param transactionId the database transaction id
+     * @param orderNumber   the order number of the item within the transaction
+     */
+    StoredItemKey(BigInteger transactionId, int orderNumber) {
+      this.transactionId = transactionId;
+      this.orderNumber = orderNumber;
+    }
+  }
+
+  /**
+   * A block of consecutive transaction ids reserved for and stored with one chunk
+   */
+  private static class IdBlock {
+    /** the first id in the block */
+    private final BigInteger first;
+    /** the last id in the block */
+    private final BigInteger last;
+
+    /**
+     * Create an IdBlock object.
+     *
+     * @param first the first id in the block
+     * @param count the number of ids in the block
+     */
+    IdBlock(BigInteger first, int count) {
+      this.first = first;
+      this.last = first.add(BigInteger.valueOf(count - 1));
+    }
+
+    /**
+     * Is an id in the block?
+     *
+     * @param id the id
+     * @return true if the id is in the block, false if not
+     */
+    boolean contains(BigInteger id) {
+      return id.compareTo(first) >= 0 && id.compareTo(last) <= 0;
+    }
+  }
+
+  /**
+   * A transaction stored by an earlier run: its database transaction id and the order numbers of
+   * its stored items, read from the database. The items of a transaction each have a different
+   * account, so the account name identifies the stored row of an item within the transaction.
+   */
+  private static class StoredTransaction {
+    /** the database transaction id */
+    private final BigInteger transactionId;
+    /** the order numbers of the stored items indexed by account name */
+    private final Map<String, Integer> orderNumbers = new HashMap<>();
+
+    /**
+     * Create a StoredTransaction object.
+     *
+     * @param transactionId the database transaction id
+     */
+    StoredTransaction(BigInteger transactionId) {
+      this.transactionId = transactionId;
+    }
+
+    /**
+     * Add a stored item row to the transaction.
+     *
+     * @param accountName the name of the account of the item
+     * @param orderNumber the order number of the item within the transaction
+     */
+    void addItem(String accountName, int orderNumber) {
+      if (orderNumbers.put(accountName, orderNumber) != null) {
+        throw new RuntimeException(DUPLICATE_STORED_ITEM_ERROR + accountName + IN_TRANSACTION_MSG +
+                                   transactionId);
+      }
+    }
+
+    /**
+     * Get the stored key of an item of the transaction.
+     *
+     * @param item the newaccounting item
+     * @return the stored key
+     * @throws RuntimeException when the transaction has no stored row for the item
+     */
+    StoredItemKey getKey(Item item) {
+      Integer orderNumber = orderNumbers.get(item.getAccount().getName());
+      if (orderNumber == null) {
+        throw new RuntimeException(STORED_ITEM_NOT_FOUND_ERROR + item + IN_TRANSACTION_MSG +
+                                   transactionId);
+      }
+      return new StoredItemKey(transactionId, orderNumber);
+    }
+  }
+
+  /**
+   * Create an AccountingDbService object with the default id map batch size and transaction chunk
+   * size.
    */
   public AccountingDbService() {
+    this(IdMapWriter.DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Create an AccountingDbService object with the default transaction chunk size.
+   *
+   * @param idMapBatchSize the number of id map rows to insert and commit in each batch
+   */
+  public AccountingDbService(int idMapBatchSize) {
+    this(idMapBatchSize, DEFAULT_TRANSACTION_CHUNK_SIZE);
+  }
+
+  /**
+   * Create an AccountingDbService object that stores the transactions on a single thread.
+   *
+   * @param idMapBatchSize       the number of id map rows to insert and commit in each batch
+   * @param transactionChunkSize the number of transactions to store and commit in each chunk
+   */
+  public AccountingDbService(int idMapBatchSize, int transactionChunkSize) {
+    this(idMapBatchSize, transactionChunkSize, DEFAULT_STORE_THREADS);
+  }
+
+  /**
+   * Create an AccountingDbService object.
+   *
+   * @param idMapBatchSize       the number of id map rows to insert and commit in each batch
+   * @param transactionChunkSize the number of transactions to store and commit in each chunk
+   * @param storeThreads         the number of threads storing fiscal year partitions of
+   *                             transactions
+   */
+  public AccountingDbService(int idMapBatchSize, int transactionChunkSize, int storeThreads) {
+    this(idMapBatchSize, transactionChunkSize, storeThreads, false);
+  }
+
+  /**
+   * Create an AccountingDbService object. In delta mode, the service reads what is already stored
+   * for the entity and stores only the missing capital entities, accounts, fiscal-year-account
+   * links, and transactions, logging what it skips.
+   *
+   * @param idMapBatchSize       the number of id map rows to insert and commit in each batch
+   * @param transactionChunkSize the number of transactions to store and commit in each chunk
+   * @param storeThreads         the number of threads storing fiscal year partitions of
+   *                             transactions
+   * @param delta                true to store only what is not already stored, false to store
+   *                             everything
+   */
+  public AccountingDbService(int idMapBatchSize, int transactionChunkSize, int storeThreads,
+                             boolean delta) {
+    if (transactionChunkSize < 1) {
+      throw new InvalidParametersException(INVALID_CHUNK_SIZE_ERROR + transactionChunkSize);
+    }
+    if (storeThreads < 1) {
+      throw new InvalidParametersException(INVALID_THREADS_ERROR + storeThreads);
+    }
+    idMapWriter = new IdMapWriter(idMapBatchSize, IdMapWriter.DEFAULT_RETRIES);
+    this.transactionChunkSize = transactionChunkSize;
+    this.storeThreads = storeThreads;
+    this.delta = delta;
     refreshAccountTypeCache();
   }
 
@@ -121,11 +369,22 @@ public class AccountingDbService implements IDataAccessService {
 
     List<BsCapitalEntity> entities = new ArrayList<>(structure.getEntities().size());
 
+    int skipped = 0;
     for (CapitalEntity entity : structure.getEntities()) {
+      if (delta) {
+        IPrimaryKey key = AccountFactory.getCapitalEntityPrimaryKey(entity.getName());
+        if (delegate.getObject((NaturalPrimaryKey)key) != null) {
+          skipped++;
+          continue;
+        }
+      }
       BsCapitalEntity persistedEntity = delegate.createCapitalEntity(entity.getName());
       entities.add(persistedEntity);
     }
 
+    if (delta) {
+      logger.info("Delta store skipped " + skipped + " stored capital entities");
+    }
     delegate.process(entities);
   }
 
@@ -142,14 +401,20 @@ public class AccountingDbService implements IDataAccessService {
     }
 
     // Add fiscal years not already present.
+    int skipped = 0;
     for (FiscalYear year : years) {
       Integer yearNumber = year.getYear();
       if (fiscalYearMap.get(yearNumber) == null) {
         BsFiscalYear persistedYear =
           delegate.createFiscalYear(year.getYear(), year.getStart(), year.getEnd());
         persistedYears.add(persistedYear);
+      } else {
+        skipped++;
       }
     }
+    if (delta) {
+      logger.info("Delta store skipped " + skipped + " stored fiscal years");
+    }
 
     // Insert the new years.
     delegate.process(persistedYears);
@@ -168,7 +433,34 @@ public class AccountingDbService implements IDataAccessService {
     // type in the map contains the latest group information from the database.
     refreshAccountTypeCache();
 
-    BsEntity entity = entityDelegate.createEntity(entityName);
+    // A later call storing more years of the same entity reuses the entity stored by the first
+    // call and the index of what earlier loads stored, which the first call read.
+    BsEntity entity = null;
+    if (entityKey != null) {
+      entity = entityDelegate.getObject((NaturalPrimaryKey)entityKey);
+      if (entity != null && !entity.getEntityName().equals(entityName)) {
+        entity = null;
+      }
+    }
+    if (entity == null) {
+      storedAccounts.clear();
+      storedLinks.clear();
+      // In delta mode, start from the stored entity and its accounts and links if there are any.
+      if (delta) {
+        IPrimaryKey key = AccountFactory.getEntityPrimaryKey(entityName);
+        entity = entityDelegate.getObject((NaturalPrimaryKey)key);
+      }
+      if (entity != null) {
+        indexStoredAccounts(entity, storedAccounts, storedLinks);
+      } else {
+        entity = entityDelegate.createEntity(entityName);
+      }
+    }
+    int reusedAccounts = 0;
+    int skippedLinks = 0;
+
+    // Index the cached groups by type and name once for the whole store.
+    Map<String, Map<String, BsAccountGroup>> groupIndex = indexGroups();
 
     // list of accumulated links to insert later
     List<BsFiscalYearAccount> links = new ArrayList<>();
@@ -184,19 +476,31 @@ public class AccountingDbService implements IDataAccessService {
 
       // Create accounts.
       for (FiscalYearAccount link : year.getAccounts()) {
-        // Extract group and create if needed.
-        BsAccountGroup group = getPersistedGroup(link.getGroup());
-
         // Extract account and create if needed.
         Account account = link.getAccount();
         BsAccount persistedAccount = accounts.get(account);
         if (persistedAccount == null) {
-          persistedAccount = createAccount(entity, account);
+          persistedAccount = storedAccounts.get(account.getName());
+          if (persistedAccount != null) {
+            reusedAccounts++;
+          } else {
+            persistedAccount = createAccount(entity, account);
+          }
           // Add the account to the map for later lookups.
           logger.debug("Adding account to map: " + account);
           accounts.put(account, persistedAccount);
         }
 
+        // Skip the link if it is already stored.
+        Set<Integer> linkedYears = storedLinks.get(account.getName());
+        if (linkedYears != null && linkedYears.contains(year.getYear())) {
+          skippedLinks++;
+          continue;
+        }
+
+        // Extract group and create if needed.
+        BsAccountGroup group = getPersistedGroup(link, groupIndex);
+
         // Create the fiscal-year-account link but don't add it to the linked
         // objects for persisting yet. This works around a bug with
         // nested-object processing, you need to store the objects before the
@@ -224,9 +528,37 @@ public class AccountingDbService implements IDataAccessService {
     // Refresh the type map.
     refreshAccountTypeCache();
 
+    if (delta) {
+      logger.info("Delta store reused " + reusedAccounts + " stored accounts and skipped " +
+                  skippedLinks + " stored fiscal-year-account links");
+    }
     storeFiscalYearAccountLinks(links);
   }
 
+  /**
+   * Index the accounts of a stored entity by name, along with the fiscal years to which each
+   * account is already linked.
+   *
+   * @param entity         the stored entity
+   * @param storedAccounts the map of stored accounts indexed by name to fill in
+   * @param storedLinks    the map of linked fiscal years indexed by account name to fill in
+   */
+  private void indexStoredAccounts(BsEntity entity, Map<String, BsAccount> storedAccounts,
+                                   Map<String, Set<Integer>> storedLinks) {
+    for (BsAccount account : entity.getAccounts()) {
+      storedAccounts.put(account.getAccountName(), account);
+      Set<Integer> years = new HashSet<>();
+      try {
+        for (BsFiscalYearAccount link : account.getFiscalYearAccount()) {
+          years.add(link.getYear());
+        }
+      } catch (SQLException e) {
+        throw new RuntimeException(EXISTING_LINKS_ERROR + account.getAccountName(), e);
+      }
+      storedLinks.put(account.getAccountName(), years);
+    }
+  }
+
   private void storeFiscalYearAccountLinks(List<BsFiscalYearAccount> links) {
     FiscalYearDelegate yearDelegate = AccountDelegateFactory.getFiscalYearDelegate();
     EntityDelegate entityDelegate = AccountDelegateFactory.getEntityDelegate();
@@ -237,21 +569,33 @@ public class AccountingDbService implements IDataAccessService {
       throw new RuntimeException(CAP_ENTITY_CREATION_ERROR);
     }
 
+    // Index the committed accounts, groups, and years once rather than searching for each link.
+    Map<String, BsAccount> accountIndex = new HashMap<>();
+    for (BsAccount account : entity.getAccounts()) {
+      accountIndex.putIfAbsent(account.getAccountName(), account);
+    }
+    Map<String, Map<String, BsAccountGroup>> groupIndex = indexGroups();
+    Map<Integer, BsFiscalYear> yearIndex = new HashMap<>();
+
     // Link accounts to fiscal years, associate groups.
     for (BsFiscalYearAccount link : links) {
       try {
         // Recreate the link to get the committed objects from the cache.
-        BsAccount account = getAccountByEntityAndName(entity, link.getAccountName());
-        BsAccountGroup group =
-          getGroupByTypeAndName(link.getGroup().getType(), link.getGroupName());
+        BsAccount account = accountIndex.get(link.getAccountName());
+        Map<String, BsAccountGroup> typeGroups = groupIndex.get(link.getAccountType());
+        BsAccountGroup group = typeGroups == null ? null : typeGroups.get(link.getGroupName());
         if (group == null) {
           throw new RuntimeException(
-            GROUP_QUERY_ERROR + link.getGroup().getType() + " group name " + link.getGroupName());
+            GROUP_QUERY_ERROR + link.getAccountType() + " group name " + link.getGroupName());
         }
-        IPrimaryKey key = link.getFiscalYear().getPrimaryKey();
-        BsFiscalYear year = yearDelegate.getObject((NaturalPrimaryKey)key);
+        BsFiscalYear year = yearIndex.get(link.getFiscalYear().getYear());
         if (year == null) {
-          throw new RuntimeException(YEAR_QUERY_ERROR + link.getFiscalYear().getYear());
+          IPrimaryKey key = link.getFiscalYear().getPrimaryKey();
+          year = yearDelegate.getObject((NaturalPrimaryKey)key);
+          if (year == null) {
+            throw new RuntimeException(YEAR_QUERY_ERROR + link.getFiscalYear().getYear());
+          }
+          yearIndex.put(year.getYear(), year);
         }
 
         link = yearDelegate.createFiscalYearAccount(account, group, year, account.getAccountName(),
@@ -276,89 +620,57 @@ public class AccountingDbService implements IDataAccessService {
   }
 
   /**
-   * Get a persisted account business object by name from an entity.
+   * Index the groups of the cached account types by database account type and group name.
    *
-   * @param entity the entity that owns the accounts
-   * @param name   the name of the account to find
-   * @return the account
+   * @return a map of group maps indexed by group name, indexed by account type
    */
-  private BsAccount getAccountByEntityAndName(BsEntity entity, String name) {
-    BsAccount persistedAccount = null;
-
-    for (BsAccount account : entity.getAccounts()) {
-      if (account.getAccountName().equals(name)) {
-        persistedAccount = account;
-        break;
+  private Map<String, Map<String, BsAccountGroup>> indexGroups() {
+    Map<String, Map<String, BsAccountGroup>> index = new HashMap<>();
+    for (BsAccountType type : types.values()) {
+      Map<String, BsAccountGroup> groups = new HashMap<>();
+      for (BsAccountGroup group : type.getGroups()) {
+        groups.putIfAbsent(group.getGroupName(), group);
       }
+      index.put(type.getAccountType(), groups);
     }
-    return persistedAccount;
+    return index;
   }
 
   /**
-   * Get a persisted group business object by name from a type.
+   * Get a persisted group object based on the new-accounting group of a fiscal-year-account link;
+   * this looks up the group in the local account-type cache using the account type of the link,
+   * as a group doesn't change type (a constraint). The method reads only the link, not the links of
+   * the group, which a loader building later years may be adding to. If there is no persisted group
+   * with the same name as the specified group, the method creates a new group and returns that;
+   * note that the group is not yet persisted. The method adds the group to the type in the type map
+   * cache and to the group index.
    *
-   * @param type the account type business object
-   * @param name the group name
-   * @return the group with the specified name belonging to the type
-   */
-  private BsAccountGroup getGroupByTypeAndName(BsAccountType type, String name) {
-    AccountTypeDelegate delegate = AccountDelegateFactory.getAccountTypeDelegate();
-    BsAccountGroup persistedGroup = null;
-
-    // Re-query the type to make sure we've got the latest cached version.
-    type = delegate.getObject((NaturalPrimaryKey)type.getPrimaryKey());
-
-    for (BsAccountGroup group : type.getGroups()) {
-      if (group.getGroupName().equals(name)) {
-        persistedGroup = group;
-        break;
-      }
-    }
-
-    return persistedGroup;
-  }
-
-  /**
-   * Get a persisted group object based on the new-accounting group object; this looks up the group
-   * in the local account-type cache using the account type associated with the specified group. The
-   * group must have at least one fiscal year account link. If there is no persisted group with the
-   * same name as the specified group, the method creates a new group and returns that; note that
-   * the group is not yet persisted. The method adds the group to the type in the type map cache.
-   *
-   * @param group the group to look up
+   * @param link  the fiscal-year-account link with the group to look up
+   * @param index the groups of the cached types indexed by account type and group name
    * @return the persisted group corresponding to the specified group, or null if there is no
    * persisted group
    */
-  private BsAccountGroup getPersistedGroup(AccountGroup group) {
+  private BsAccountGroup getPersistedGroup(FiscalYearAccount link,
+                                           Map<String, Map<String, BsAccountGroup>> index) {
     AccountTypeDelegate typeDelegate = AccountDelegateFactory.getAccountTypeDelegate();
     BsAccountGroup returnGroup = null;
-
-    // Make sure there is at least one fiscal-year-account link.
-    if (group.getFiscalYearAccounts() == null || group.getFiscalYearAccounts().size() == 0) {
-      throw new RuntimeException(NO_LINKS_IN_GROUP_ERROR + group);
-    }
-
-    // Assume group doesn't change type (a constraint), so get the first link
-    // from the fiscal-year-account links for the group and take that type.
-    AccountType type = group.getFiscalYearAccounts().get(0).getAccountType();
+    AccountGroup group = link.getGroup();
+    AccountType type = link.getAccountType();
 
     // Get the persisted type from the types map.
     BsAccountType persistedType = types.get(type);
 
-    // Iterate through the type's groups to see if the group is already there.
-    for (BsAccountGroup persistedGroup : persistedType.getGroups()) {
-      if (persistedGroup.getGroupName().equals(group.getName())) {
-        // Found the named group, set the return and break out of the loop.
-        returnGroup = persistedGroup;
-        break;
-      }
-    }
+    // Look up the group in the index to see if the group is already there.
+    Map<String, BsAccountGroup> groups =
+      index.computeIfAbsent(persistedType.getAccountType(), k -> new HashMap<>());
+    returnGroup = groups.get(group.getName());
     if (returnGroup == null) {
       returnGroup = typeDelegate.createAccountGroup(persistedType, persistedType.getAccountType(),
                                                     group.getName());
       returnGroup.setType(persistedType);
-      // Add the new group to the persisted type to keep the cache consistent.
+      // Add the new group to the persisted type and the index to keep the cache consistent.
       persistedType.addGroupsAccountGroup(returnGroup);
+      groups.put(group.getName(), returnGroup);
     }
     return returnGroup;
   }
@@ -483,131 +795,214 @@ public class AccountingDbService implements IDataAccessService {
 
   @Override
   public void storeTransactions(Set<Transaction> transactions) {
-    // a map of database transaction ids indexed by old transaction id
-    Map<OldId, BigDecimal> idMap = new HashMap<>();
+    String entityName = getStoredEntityName();
+    // The set is complete, so start over; in delta mode, read the transactions already stored for
+    // the entity.
+    storedArItems.clear();
+    storeTransactions(entityName, transactions, Collections.emptySet(),
+                      delta ? readStoredTransactions(entityName) : Collections.emptyMap());
+  }
 
-    // Query the entity.
+  @Override
+  public void storeTransactions(Set<Transaction> transactions, Set<Transaction> stored) {
+    // Keep the keys of the AR items stored by earlier calls for linking the stored transactions.
+    storeTransactions(getStoredEntityName(), transactions, stored, Collections.emptyMap());
+  }
+
+  /**
+   * Get the name of the entity stored by storeEntity().
+   *
+   * @return the entity name
+   */
+  private String getStoredEntityName() {
     EntityDelegate entityDelegate = AccountDelegateFactory.getEntityDelegate();
     BsEntity entity = entityDelegate.getObject((NaturalPrimaryKey)entityKey);
 
     if (entity == null) {
       throw new RuntimeException(NULL_ENTITY_ERROR);
     }
-
-    logger.debug("Storing transactions");
-
-    TransactionDelegate delegate = TransactionDelegateFactory.getTransactionDelegate();
-
-    List<BsTransaction> transactionList = new ArrayList<>(transactions.size());
-
-    createTransactions(transactions, delegate, transactionList, idMap);
-    linkReimbursements(transactions, delegate);
-
-    // Everything is now in the transactions, so store them.
-    delegate.process(transactionList);
-    // Now store the id map, which uses a separate connection; store the
-    // transactions first, or the foreign key constraint will fail.
-    storeIds(idMap);
+    return entity.getEntityName();
   }
 
   /**
-   * Store the map of transaction ids indexed by old transaction id.
+   * Store the transactions that are not already stored in fiscal year partitions, then link the
+   * reimbursements across years. The keys of the stored AR items stay after the store for linking
+   * the transactions of a later call.
    *
-   * @param ids the map of old ids to new ids
+   * @param entityName   the name of the accounting entity
+   * @param transactions the set of transactions to store
+   * @param stored       the transactions stored by earlier calls, whose AR item keys are kept
+   * @param storedIds    the transactions of the set already in the database, indexed by old id
    */
-  private void storeIds(Map<OldId, BigDecimal> ids) {
-    Connection connection = null;
-    PreparedStatement stmt = null;
-
-    if (ids != null && ids.size() > 0) {
-      try {
-        connection =
-          JdbcConnectionManager.getConnection(DBMS.MYSQL, "com.poesys.accounting.db.transaction");
-        assert connection != null;
-        for (OldId id : ids.keySet()) {
-          // Verify existence of required fields.
-          if (id.getEntityName() == null) {
-            throw new RuntimeException("no entity name for ID map entry: " + id);
-          }
-          if (id.getId() == null) {
-            throw new RuntimeException("no id for ID map entry: " + id);
+  private void storeTransactions(String entityName, Set<Transaction> transactions,
+                                 Set<Transaction> stored,
+                                 Map<OldId, StoredTransaction> storedIds) {
+    long start = System.currentTimeMillis();
+
+    crossYearReimbursements.clear();
+    storing = transactions;
+
+    // Partition the transactions by fiscal year; the transactions in a year depend only on the
+    // entity and accounts already stored, so the years can be stored independently. Skip the
+    // transactions already stored, keeping the keys of their AR items for linking.
+    Map<Integer, YearPartition> partitions = new TreeMap<>();
+    List<Transaction> skipped = new ArrayList<>();
+    for (Transaction transaction : transactions) {
+      Integer year = transaction.getYear();
+      StoredTransaction storedTransaction =
+        storedIds.get(new OldId(entityName, year, new BigDecimal(transaction.getId())));
+      if (storedTransaction != null) {
+        skipped.add(transaction);
+        for (Item item : transaction.getItems()) {
+          if (item.getAccount().isReceivable()) {
+            storedArItems.put(item, storedTransaction.getKey(item));
           }
-          stmt = connection.prepareStatement(ID_MAP_INSERT_SQL);
-          stmt.setString(1, id.getEntityName());
-          stmt.setInt(2, id.getYear());
-          stmt.setBigDecimal(3, id.getId());
-          stmt.setBigDecimal(4, ids.get(id));
-          stmt.execute();
-        }
-        connection.commit();
-      } catch (SQLException | IOException e) {
-        try {
-          assert connection != null;
-          connection.rollback();
-        } catch (SQLException e1) {
-          // ignore
         }
-        throw new RuntimeException(ID_MAP_STORE_ERROR, e);
+      } else {
+        partitions.computeIfAbsent(year, k -> new YearPartition(k, new ArrayList<>(), entityName))
+          .transactions.add(transaction);
       }
-      finally {
-        if (stmt != null) {
-          try {
-            stmt.close();
-          } catch (SQLException e) {
-            // ignore
-          }
+    }
+    seedStoredReceivables(skipped, partitions);
+    seedStoredReceivables(stored, partitions);
+    if (delta) {
+      logger.info("Delta store skipped " + skipped.size() + " stored transactions");
+    }
+
+    int threads = Math.max(1, Math.min(storeThreads, partitions.size()));
+    logger.debug("Storing transactions for " + partitions.size() + " years on " + threads +
+                 " threads in chunks of " + transactionChunkSize);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Void>> results = new ArrayList<>(partitions.size());
+      for (YearPartition partition : partitions.values()) {
+        results.add(executor.submit(partition));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(PARTITION_ERROR, e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(PARTITION_ERROR, e.getCause());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    // Link the reimbursements across years now that all the items are stored.
+    long linkStart = System.currentTimeMillis();
+    int linked = storeCrossYearReimbursements();
+    storing = Collections.emptySet();
+    long end = System.currentTimeMillis();
+    logger.info("Linked " + linked + " cross-year reimbursements in " + (end - linkStart) + " ms");
+    logger.info("Stored " + (transactions.size() - skipped.size()) + " transactions for " +
+                partitions.size() +
+                " years on " + threads + " threads in " + (end - start) + " ms");
+  }
+
+  @Override
+  public void removeTransactions(String entityName, Set<Integer> years) {
+    TransactionDelegate delegate = TransactionDelegateFactory.getTransactionDelegate();
+    List<IdBlock> removed = new ArrayList<>();
+    int count = 0;
+    for (Integer year : years) {
+      Queue<IdBlock> blocks = storedBlocks.remove(year);
+      if (blocks == null) {
+        continue;
+      }
+      for (IdBlock block : blocks) {
+        // Remove the id map rows first, as they refer to the transactions.
+        try (Connection connection =
+               JdbcConnectionManager.getConnection(DBMS.MYSQL, TRANSACTION_SUBSYSTEM);
+             PreparedStatement stmt = connection.prepareStatement(ID_MAP_BLOCK_DELETE_SQL)) {
+          stmt.setString(1, entityName);
+          stmt.setBigDecimal(2, new BigDecimal(block.first));
+          stmt.setBigDecimal(3, new BigDecimal(block.last));
+          stmt.executeUpdate();
+          connection.commit();
+        } catch (SQLException | IOException e) {
+          throw new RuntimeException(REMOVE_TRANSACTIONS_ERROR + year, e);
         }
-        if (connection != null) {
-          try {
-            connection.close();
-          } catch (SQLException e) {
-            // ignore
+
+        // Delete the transactions, which deletes their items and reimbursements with them.
+        List<BsTransaction> transactionList = new ArrayList<>();
+        for (BigInteger id = block.first; block.contains(id); id = id.add(BigInteger.ONE)) {
+          BsTransaction transactionObject = delegate.getObject(
+            PrimaryKeyFactory.createSequenceKey(TRANSACTION_ID_COLUMN, id, TRANSACTION_CLASS));
+          if (transactionObject != null) {
+            transactionObject.delete();
+            transactionList.add(transactionObject);
           }
         }
+        delegate.deleteBatch(transactionList);
+        count += transactionList.size();
+        removed.add(block);
       }
     }
+
+    // Forget the removed AR items.
+    storedArItems.values()
+      .removeIf(key -> removed.stream().anyMatch(block -> block.contains(key.transactionId)));
+    logger.info("Removed " + count + " stored transactions of " + entityName + " for years " +
+                years);
   }
 
   /**
-   * Link receivable items to reimbursing items based on the input transaction items. Use the shared
-   * AR items map to look up the database item objects.
+   * Read the transactions already stored for an entity through the id map, with the order numbers
+   * of their stored items, so reimbursements can link the items by their full keys.
    *
-   * @param transactions set of transactions to link
-   * @param delegate     transaction delegate to use to create reimbursements
+   * @param entityName the name of the accounting entity
+   * @return the map of stored transactions indexed by old transaction id
    */
-  private void linkReimbursements(Set<Transaction> transactions, TransactionDelegate delegate) {
-    // After processing all the transactions, take a pass through the
-    // transactions again to create reimbursement links.
-    for (Transaction transaction : transactions) {
+  private Map<OldId, StoredTransaction> readStoredTransactions(String entityName) {
+    Map<OldId, StoredTransaction> ids = new HashMap<>();
+    try (Connection connection =
+           JdbcConnectionManager.getConnection(DBMS.MYSQL, TRANSACTION_SUBSYSTEM);
+         PreparedStatement stmt = connection.prepareStatement(STORED_ITEM_QUERY_SQL)) {
+      stmt.setString(1, entityName);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          BigInteger newId = rs.getBigDecimal("newId").toBigInteger();
+          ids.computeIfAbsent(new OldId(entityName, rs.getInt("year"), rs.getBigDecimal("oldId")),
+                              k -> new StoredTransaction(newId))
+            .addItem(rs.getString("accountName"), rs.getInt("orderNumber"));
+        }
+      }
+    } catch (SQLException | IOException e) {
+      throw new RuntimeException(ID_MAP_READ_ERROR + entityName, e);
+    }
+    return ids;
+  }
+
+  /**
+   * Queue the links from receivables stored by an earlier run or call to reimbursing items in new
+   * transactions: defer a link in the same year to the partition storing the reimbursing item and
+   * queue a link across years for the final pass. Links between two stored items are already
+   * stored, and links to items outside the transactions being stored wait for a later store.
+   *
+   * @param skipped    the transactions already stored
+   * @param partitions the partitions of new transactions indexed by year
+   */
+  private void seedStoredReceivables(Collection<Transaction> skipped,
+                                     Map<Integer, YearPartition> partitions) {
+    for (Transaction transaction : skipped) {
       for (Item item : transaction.getItems()) {
-        // Check only the receivables, not reimbursement items
-        if (item.getAccount().isReceivable() && item.isDebit() &&
-            item.getReimbursements().size() > 0) {
+        if (item.getAccount().isReceivable() && item.isDebit()) {
           for (Reimbursement reimbursement : item.getReimbursements()) {
-            BsItem receivablesObject = arItems.get(item);
-            BsItem reimbursingItemsObject = arItems.get(reimbursement.getReimbursingItem());
-            if (receivablesObject != null && reimbursingItemsObject != null) {
-              BsReimbursement reimbursementObject =
-                delegate.createReimbursement(receivablesObject, reimbursingItemsObject,
-                                             receivablesObject.getOrderNumber(),
-                                             reimbursingItemsObject.getOrderNumber(),
-                                             receivablesObject.getTransactionId(),
-                                             reimbursingItemsObject.getTransactionId(),
-                                             reimbursement.getReimbursedAmount(),
-                                             reimbursement.getAllocatedAmount());
-              // Link everything up in memory.
-              try {
-                receivablesObject.addReimbursingItemsReimbursementReimbursement(
-                  reimbursementObject);
-                receivablesObject.addReimbursingItemsItem(reimbursingItemsObject);
-                reimbursingItemsObject.addReceivablesReimbursementReimbursement(
-                  reimbursementObject);
-                reimbursingItemsObject.addReceivablesItem(receivablesObject);
-              } catch (SQLException e) {
-                throw new DelegateException(REIMBURSEMENT_SQL_ERROR, e);
-              }
+            Item reimbursingItem = reimbursement.getReimbursingItem();
+            if (storedArItems.containsKey(reimbursingItem) ||
+                !storing.contains(reimbursingItem.getTransaction())) {
+              continue;
+            }
+            Integer year = reimbursingItem.getTransaction().getYear();
+            if (year.equals(transaction.getYear())) {
+              partitions.get(year).deferredReimbursements
+                .computeIfAbsent(reimbursingItem, k -> new ArrayList<>()).add(reimbursement);
             } else {
-              throw new RuntimeException(NO_REIMBURSEMENTS_ERROR + item);
+              crossYearReimbursements.add(reimbursement);
             }
           }
         }
@@ -616,77 +1011,282 @@ public class AccountingDbService implements IDataAccessService {
   }
 
   /**
-   * Create the transactions and items from the input set of transactions and put them into a list
-   * of database transactions. This also fills in a map of transaction ids indexed by old
-   * transaction id.
-   *
-   * @param transactions    the input list of newaccounting transactions
-   * @param delegate        the transaction delegate to use to create objects
-   * @param transactionList the output list of database transactions
-   * @param idMap           the map into which to put the id mappings
+   * The transactions of a fiscal year, stored in date-ordered chunks. The partition creates the
+   * database objects for each chunk and its reimbursements, stores them with one call to the
+   * transaction delegate, then writes the id map entries of the chunk. After a chunk is stored,
+   * the partition drops its database objects and keeps only the keys of the stored AR items for
+   * linking reimbursements in later chunks. Reimbursements with an item in another year go to the
+   * cross-year queue for linking after all the years are stored.
    */
-  private void createTransactions(Set<Transaction> transactions, TransactionDelegate delegate,
-                                  List<BsTransaction> transactionList, Map<OldId, BigDecimal>
-                                    idMap) {
-    // Query the entity.
-    EntityDelegate entityDelegate = AccountDelegateFactory.getEntityDelegate();
+  private class YearPartition implements Callable<Void> {
+    /** the fiscal year */
+    private final Integer year;
+    /** the transactions in the fiscal year */
+    private final List<Transaction> transactions;
+    /** the name of the accounting entity */
+    private final String entityName;
+    /** the database objects of the AR items in the current chunk, for reimbursements */
+    private final Map<Item, BsItem> arItems = new HashMap<>();
+    /**
+     * a map of reimbursements whose receivable is already stored, indexed by the reimbursing item
+     * in a later chunk that will complete the link
+     */
+    private final Map<Item, List<Reimbursement>> deferredReimbursements = new HashMap<>();
+
+    /**
+     * Create a YearPartition object.
+     *
+     * @param year         the fiscal year
+     * @param transactions the transactions in the fiscal year
+     * @param entityName   the name of the accounting entity
+     */
+    YearPartition(Integer year, List<Transaction> transactions, String entityName) {
+      this.year = year;
+      this.transactions = transactions;
+      this.entityName = entityName;
+    }
 
-    BsEntity entity = entityDelegate.getObject((NaturalPrimaryKey)entityKey);
-    for (Transaction transaction : transactions) {
-      // Create the transaction object.
-      BsTransaction transactionObject =
-        delegate.createTransaction(null, transaction.getDescription(), transaction.getDate(),
-                                   transaction.isChecked(), transaction.isBalance());
+    @Override
+    public Void call() {
+      long start = System.currentTimeMillis();
+      TransactionDelegate delegate = TransactionDelegateFactory.getTransactionDelegate();
+
+      // Store the transactions in date order so most reimbursements link to a receivable in the
+      // same or an earlier chunk.
+      transactions.sort(Transaction.DATE_ORDER);
+
+      int chunkCount = 0;
+      for (int i = 0; i < transactions.size(); i += transactionChunkSize) {
+        List<Transaction> chunk =
+          transactions.subList(i, Math.min(i + transactionChunkSize, transactions.size()));
+        storeChunk(chunk, delegate);
+        chunkCount++;
+      }
+
+      if (!deferredReimbursements.isEmpty()) {
+        Item receivable = deferredReimbursements.values().iterator().next().get(0).getReceivable();
+        throw new RuntimeException(NO_REIMBURSEMENTS_ERROR + receivable);
+      }
+      logger.info("Stored " + transactions.size() + " transactions for " + year + " in " +
+                  chunkCount + " chunks in " + (System.currentTimeMillis() - start) + " ms");
+      return null;
+    }
+
+    /**
+     * Store one chunk of transactions with its reimbursements through the transaction delegate,
+     * then write its id map entries. If the id map entries fail, remove the chunk's transactions
+     * again so a delta store, which finds stored transactions through the id map, does not store
+     * them twice. Keep the keys of the stored AR items for linking reimbursements in later chunks
+     * and the block of ids for removing the chunk.
+     *
+     * @param chunk    the transactions in the chunk
+     * @param delegate the transaction delegate
+     */
+    private void storeChunk(List<Transaction> chunk, TransactionDelegate delegate) {
+      // Reserve the ids for the chunk in one database call rather than one per transaction.
+      BigInteger firstId = idAllocator.reserve(chunk.size());
+      BigInteger id = firstId;
+      List<BsTransaction> transactionList = new ArrayList<>(chunk.size());
+      Map<OldId, BigDecimal> ids = new LinkedHashMap<>(chunk.size());
+      for (Transaction transaction : chunk) {
+        transactionList.add(createTransaction(transaction, id, delegate));
+        ids.put(new OldId(entityName, year, new BigDecimal(transaction.getId())),
+                new BigDecimal(id));
+        id = id.add(BigInteger.ONE);
+      }
 
-      addIdsToMap(idMap, entity.getEntityName(), transaction, transactionObject);
+      // Store the chunk together with the stored transactions it links to by reimbursements.
+      Map<BigInteger, BsTransaction> linked = new HashMap<>();
+      linkReimbursements(chunk, delegate, linked);
+      List<BsTransaction> processList = new ArrayList<>(transactionList);
+      processList.addAll(linked.values());
+      delegate.process(processList);
+
+      try (Connection connection =
+             JdbcConnectionManager.getConnection(DBMS.MYSQL, TRANSACTION_SUBSYSTEM)) {
+        idMapWriter.write(connection, ids);
+      } catch (SQLException | IOException | RuntimeException e) {
+        for (BsTransaction transactionObject : transactionList) {
+          transactionObject.delete();
+        }
+        delegate.deleteBatch(transactionList);
+        throw new RuntimeException(CHUNK_STORE_ERROR + year, e);
+      }
+      storedBlocks.computeIfAbsent(year, k -> new ConcurrentLinkedQueue<>())
+        .add(new IdBlock(firstId, chunk.size()));
 
-      // Create the items. Order the items as they come from the transaction.
+      for (Map.Entry<Item, BsItem> entry : arItems.entrySet()) {
+        storedArItems.put(entry.getKey(), new StoredItemKey(entry.getValue().getTransactionId(),
+                                                            entry.getValue().getOrderNumber()));
+      }
+      arItems.clear();
+    }
+
+    /**
+     * Create the database transaction and items for a transaction, keeping the AR items of the
+     * chunk for linking reimbursements. Order the items as they come from the transaction.
+     *
+     * @param transaction the newaccounting transaction
+     * @param id          the transaction id reserved for the transaction
+     * @param delegate    the transaction delegate
+     * @return the database transaction
+     */
+    private BsTransaction createTransaction(Transaction transaction, BigInteger id,
+                                            TransactionDelegate delegate) {
+      BsTransaction transactionObject =
+        delegate.createTransaction(id, transaction.getDescription(), transaction.getDate(),
+                                   transaction.isChecked(), transaction.isBalance());
       int orderNumber = 1;
       for (Item item : transaction.getItems()) {
-        BsItem itemObject =
-          delegate.createItem(transactionObject, transactionObject.getTransactionId(), orderNumber,
-                              item.getAmount(), item.isDebit(), item.isChecked(),
-                              item.getAccount().getName(), entity.getEntityName());
-        orderNumber++;
-
-        // Set the account from the map of stored accounts created in
-        // storeEntity(), add the item to the transaction, and add the
-        // item to the account.
+        // Set the account from the map of stored accounts created in storeEntity(). Don't add
+        // the item to the account, which would keep the item after the chunk is stored.
         BsAccount storedAccount = accounts.get(item.getAccount());
         if (storedAccount == null) {
           throw new InvalidParametersException(UNKNOWN_ACCOUNT_ERROR + item);
         }
+        BsItem itemObject =
+          delegate.createItem(transactionObject, id, orderNumber, item.getAmount(), item.isDebit(),
+                              item.isChecked(), item.getAccount().getName(), entityName);
         itemObject.setAccount(storedAccount);
         transactionObject.addItemsItem(itemObject);
-        storedAccount.addItemsItem(itemObject);
-
-        // Add AR item to item map for later lookup.
         if (item.getAccount().isReceivable()) {
           arItems.put(item, itemObject);
         }
+        orderNumber++;
+      }
+      return transactionObject;
+    }
 
-        // Add the transaction to the accumulating list of transactions.
-        transactionList.add(transactionObject);
+    /**
+     * Link receivable items to reimbursing items for a chunk of transactions. Use the AR items of
+     * the chunk and the keys of the items already stored, loading the stored transactions the
+     * links change. If the other item of a reimbursement is in a later chunk, defer the link to
+     * that chunk; if it is in another year, queue the link for the cross-year pass.
+     *
+     * @param chunk    the chunk of transactions to link
+     * @param delegate the transaction delegate
+     * @param linked   the stored transactions the links change, indexed by transaction id
+     */
+    private void linkReimbursements(List<Transaction> chunk, TransactionDelegate delegate,
+                                    Map<BigInteger, BsTransaction> linked) {
+      for (Transaction transaction : chunk) {
+        for (Item item : transaction.getItems()) {
+          // Complete the links deferred from receivables in earlier chunks.
+          List<Reimbursement> deferred = deferredReimbursements.remove(item);
+          if (deferred != null) {
+            for (Reimbursement reimbursement : deferred) {
+              link(reimbursement, getStoredItem(reimbursement.getReceivable(), delegate, linked),
+                   arItems.get(item), delegate);
+            }
+          }
+          // Check only the receivables, not reimbursement items
+          if (item.getAccount().isReceivable() && item.isDebit() &&
+              item.getReimbursements().size() > 0) {
+            for (Reimbursement reimbursement : item.getReimbursements()) {
+              Item reimbursingItem = reimbursement.getReimbursingItem();
+              if (!storing.contains(reimbursingItem.getTransaction()) &&
+                  !storedArItems.containsKey(reimbursingItem)) {
+                // The reimbursing item comes with a later store, which links it.
+                logger.debug("Leaving reimbursement for a later store: " + reimbursement);
+              } else if (!year.equals(reimbursingItem.getTransaction().getYear())) {
+                crossYearReimbursements.add(reimbursement);
+              } else if (arItems.containsKey(reimbursingItem)) {
+                link(reimbursement, arItems.get(item), arItems.get(reimbursingItem), delegate);
+              } else if (storedArItems.containsKey(reimbursingItem)) {
+                link(reimbursement, arItems.get(item),
+                     getStoredItem(reimbursingItem, delegate, linked), delegate);
+              } else {
+                deferredReimbursements.computeIfAbsent(reimbursingItem, k -> new ArrayList<>())
+                  .add(reimbursement);
+              }
+            }
+          }
+        }
       }
     }
   }
 
   /**
-   * Add an old-id-to-new-id mapping to a map.
+   * Store the reimbursements that link items in different fiscal years, loading the stored
+   * transactions of the items through their keys and storing the linked transactions.
    *
-   * @param ids               the map to which to add the mapping
-   * @param entityName        the name of the entity owning the id
-   * @param transaction       the transaction with the old id
-   * @param transactionObject the transaction with the new id
+   * @return the number of reimbursements stored
    */
-  private void addIdsToMap(Map<OldId, BigDecimal> ids, String entityName, Transaction
-    transaction, BsTransaction transactionObject) {
-    Calendar cal = Calendar.getInstance();
-    cal.setTime(transaction.getDate());
-    int year = cal.get(Calendar.YEAR);
-
-    OldId oldId = new OldId(entityName, year, new BigDecimal(transaction.getId()));
-    BigDecimal newId = new BigDecimal(transactionObject.getTransactionId());
-    ids.put(oldId, newId);
+  private int storeCrossYearReimbursements() {
+    int count = 0;
+    if (!crossYearReimbursements.isEmpty()) {
+      TransactionDelegate delegate = TransactionDelegateFactory.getTransactionDelegate();
+      Map<BigInteger, BsTransaction> linked = new HashMap<>();
+      for (Reimbursement reimbursement : crossYearReimbursements) {
+        link(reimbursement, getStoredItem(reimbursement.getReceivable(), delegate, linked),
+             getStoredItem(reimbursement.getReimbursingItem(), delegate, linked), delegate);
+        count++;
+      }
+      crossYearReimbursements.clear();
+      try {
+        delegate.process(new ArrayList<>(linked.values()));
+      } catch (RuntimeException e) {
+        throw new RuntimeException(REIMBURSEMENT_STORE_ERROR, e);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Create a reimbursement linking a receivable item to a reimbursing item and link everything up
+   * in memory.
+   *
+   * @param reimbursement the newaccounting reimbursement
+   * @param receivable    the database receivable item
+   * @param reimbursing   the database reimbursing item
+   * @param delegate      the transaction delegate to use to create the reimbursement
+   */
+  private void link(Reimbursement reimbursement, BsItem receivable, BsItem reimbursing,
+                    TransactionDelegate delegate) {
+    if (receivable == null || reimbursing == null) {
+      throw new RuntimeException(NO_REIMBURSEMENTS_ERROR + reimbursement.getReceivable());
+    }
+    BsReimbursement reimbursementObject =
+      delegate.createReimbursement(receivable, reimbursing, receivable.getOrderNumber(),
+                                   reimbursing.getOrderNumber(), receivable.getTransactionId(),
+                                   reimbursing.getTransactionId(),
+                                   reimbursement.getReimbursedAmount(),
+                                   reimbursement.getAllocatedAmount());
+    try {
+      receivable.addReimbursingItemsReimbursementReimbursement(reimbursementObject);
+      receivable.addReimbursingItemsItem(reimbursing);
+      reimbursing.addReceivablesReimbursementReimbursement(reimbursementObject);
+      reimbursing.addReceivablesItem(receivable);
+    } catch (SQLException e) {
+      throw new DelegateException(REIMBURSEMENT_SQL_ERROR, e);
+    }
+  }
+
+  /**
+   * Get the database object of a stored AR item by its stored key, loading its transaction
+   * through the transaction delegate once for all the links that change it.
+   *
+   * @param item     the newaccounting item
+   * @param delegate the transaction delegate to use to query the transaction
+   * @param linked   the stored transactions already loaded, indexed by transaction id
+   * @return the stored item object
+   */
+  private BsItem getStoredItem(Item item, TransactionDelegate delegate,
+                               Map<BigInteger, BsTransaction> linked) {
+    StoredItemKey key = storedArItems.get(item);
+    if (key == null) {
+      throw new RuntimeException(NO_REIMBURSEMENTS_ERROR + item);
+    }
+    BsTransaction transactionObject = linked.computeIfAbsent(key.transactionId, id -> delegate
+      .getObject(PrimaryKeyFactory.createSequenceKey(TRANSACTION_ID_COLUMN, id,
+                                                     TRANSACTION_CLASS)));
+    if (transactionObject != null) {
+      for (BsItem itemObject : transactionObject.getItems()) {
+        if (itemObject.getOrderNumber() == key.orderNumber) {
+          return itemObject;
+        }
+      }
+    }
+    throw new RuntimeException(STORED_ITEM_NOT_FOUND_ERROR + item);
   }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An immutable index of the items of an account by date: the epoch days of the item transactions
+ * in ascending order and the running total of the item amounts through each day, taking credits as
+ * positive and debits as negative. The balance as of a day is a binary search for the last item on
+ * or before the day, and the activity over a range of days is the difference of two balances. The
+ * index copies the items when it is created; the account builds it once, when it is frozen.
+ *
+ * @author Robert J. Muller
+ */
+final class BalanceIndex {
+  /** the epoch day of each item, in ascending order */
+  private final int[] days;
+  /** the total of the first n items in day order at index n, so totals[0] is zero */
+  private final long[] totals;
+
+  /**
+   * Create a BalanceIndex object.
+   *
+   * @param items the items of the account
+   */
+  BalanceIndex(Collection<Item> items) {
+    int size = items.size();
+    long[] keys = new long[size];
+    int i = 0;
+    for (Item item : items) {
+      // Pack the day and the item's position into one key to sort both columns together.
+      keys[i] = ((long)item.getTransaction().getEpochDay() << 32) | i;
+      i++;
+    }
+    long[] amounts = new long[size];
+    i = 0;
+    for (Item item : items) {
+      amounts[i++] = item.isDebit() ? -item.getCents() : item.getCents();
+    }
+    Arrays.sort(keys);
+
+    days = new int[size];
+    totals = new long[size + 1];
+    for (int row = 0; row < size; row++) {
+      days[row] = (int)(keys[row] >> 32);
+      totals[row + 1] = totals[row] + amounts[(int)keys[row]];
+    }
+  }
+
+  /**
+   * Get the number of items in the index.
+   *
+   * @return the number of items
+   */
+  int size() {
+    return days.length;
+  }
+
+  /**
+   * Get the number of items on or before a day, the position after the last such item.
+   *
+   * @param epochDay the day
+   * @return the number of items
+   */
+  private int countThrough(int epochDay) {
+    int low = 0;
+    int high = days.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (days[mid] <= epochDay) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Get the balance as of the end of a day.
+   *
+   * @param epochDay the day
+   * @return the total in cents of the items on or before the day
+   */
+  long getBalance(int epochDay) {
+    return totals[countThrough(epochDay)];
+  }
+
+  /**
+   * Get the activity over a range of days.
+   *
+   * @param fromDay the first day of the range
+   * @param toDay   the last day of the range
+   * @return the total in cents of the items from the first day through the last, zero if the range
+   * is empty
+   */
+  long getActivity(int fromDay, int toDay) {
+    return toDay < fromDay ? 0L : totals[countThrough(toDay)] - totals[countThrough(fromDay - 1)];
+  }
+}
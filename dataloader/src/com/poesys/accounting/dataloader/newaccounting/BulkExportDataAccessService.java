@@ -0,0 +1,554 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.poesys.accounting.dataloader.newaccounting.Item.Reimbursement;
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * <p> A data access service that writes the Accounting/DB tables to bulk-load files instead of
+ * storing objects through the database delegates. Each table goes to its own tab-delimited file
+ * named after the table, with a header line of column names, \N for null, and backslash escapes
+ * for tabs, newlines, and backslashes in strings, the MySQL LOAD DATA defaults. The service assigns
+ * the transaction ids itself, starting from a configurable first id, and writes the IdMap rows that
+ * map the old ids to them. After storing the transactions, the service writes a load.sql script
+ * that loads the files in foreign-key order. </p> <p> The files are for loading into an empty
+ * schema in which the account types already exist, the same state the AccountingDbService expects
+ * for a full store. The service keeps only the names and keys it needs to write the rows that
+ * refer to earlier ones, the keys of the receivable items among them, so the memory does not grow
+ * with the number of other items. </p> <p> The first call that writes a table creates its file;
+ * later calls append the rows they add, so a load can store its years one at a time. </p>
+ *
+ * @author Robert J. Muller
+ */
+public class BulkExportDataAccessService implements IDataAccessService {
+  /** logger for this class */
+  private static final Logger logger = Logger.getLogger(BulkExportDataAccessService.class);
+
+  /** the default first transaction id */
+  public static final BigInteger DEFAULT_FIRST_ID = BigInteger.ONE;
+  /** the file name suffix of the bulk-load files */
+  private static final String SUFFIX = ".txt";
+  /** the name of the load script */
+  static final String LOAD_SCRIPT = "load.sql";
+  /** the column delimiter */
+  private static final char DELIMITER = '\t';
+  /** the null value */
+  private static final String NULL = "\\N";
+  /** the format of timestamps */
+  private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+  // tables and columns in load order
+  static final String CAPITAL_ENTITY = "CapitalEntity";
+  static final String FISCAL_YEAR = "FiscalYear";
+  static final String ENTITY = "Entity";
+  static final String ACCOUNT_GROUP = "AccountGroup";
+  static final String ACCOUNT = "Account";
+  static final String SIMPLE_ACCOUNT = "SimpleAccount";
+  static final String CAPITAL_ACCOUNT = "CapitalAccount";
+  static final String DISTRIBUTION_ACCOUNT = "DistributionAccount";
+  static final String FISCAL_YEAR_ACCOUNT = "FiscalYearAccount";
+  static final String TRANSACTION = "Transaction";
+  static final String ITEM = "Item";
+  static final String REIMBURSEMENT = "Reimbursement";
+  static final String ID_MAP = "IdMap";
+  private static final String[] TABLES =
+    {CAPITAL_ENTITY, FISCAL_YEAR, ENTITY, ACCOUNT_GROUP, ACCOUNT, SIMPLE_ACCOUNT, CAPITAL_ACCOUNT,
+     DISTRIBUTION_ACCOUNT, FISCAL_YEAR_ACCOUNT, TRANSACTION, ITEM, REIMBURSEMENT, ID_MAP};
+
+  /** the directory for the files */
+  private final File directory;
+  /** the next transaction id to assign */
+  private BigInteger nextId;
+  /** the tables whose files this service created, to which later calls append */
+  private final Set<String> created = new HashSet<>();
+  /** the names of the capital entities written by storeCapitalStructure() */
+  private final Set<String> capitalEntityNames = new HashSet<>();
+  /** the fiscal years written by storeFiscalYears() */
+  private final Set<Integer> fiscalYears = new HashSet<>();
+  /** the name of the entity written by storeEntity() */
+  private String entityName = null;
+  /** the names of the accounts written by storeEntity() */
+  private final Set<String> accountNames = new HashSet<>();
+  /** the account types and names of the groups written by storeEntity() */
+  private final Set<String> groups = new HashSet<>();
+  /** the transaction id and order number of each AR item written, for the reimbursements */
+  private final Map<Item, Object[]> arItems = new HashMap<>();
+  /** the formatter for timestamps */
+  private final SimpleDateFormat formatter = new SimpleDateFormat(TIMESTAMP_FORMAT);
+
+  // messages
+  private static final String NULL_DIRECTORY_ERROR = "bulk export directory is required";
+  private static final String DIRECTORY_ERROR = "could not create bulk export directory ";
+  private static final String WRITE_ERROR = "exception writing bulk export file ";
+  private static final String NO_STRUCTURE_ERROR = "no capital structure for storing";
+  private static final String NULL_ENTITY_ERROR = "Entity is null, run storeEntity() first";
+  private static final String UNKNOWN_ACCOUNT_ERROR = "unknown account in item: ";
+  private static final String NO_REIMBURSEMENTS_ERROR =
+    "couldn't find reimbursement objects for receivable ";
+  private static final String CAP_ENTITY_NULL_NO_ACCOUNTS_ERROR =
+    "capital entity is null and has no associated accounts";
+
+  /**
+   * A writer for one bulk-load file that writes delimited rows and counts them
+   */
+  private static class TableWriter implements AutoCloseable {
+    /** the buffered file writer */
+    private final Writer writer;
+    /** the number of rows written, not counting the header */
+    private int rows = 0;
+
+    /**
+     * Create a TableWriter object, opening the file and writing the header, or opening the file to
+     * append rows after the ones already written.
+     *
+     * @param file    the file
+     * @param append  true to append to the file, false to create it
+     * @param columns the column names
+     * @throws IOException when the file can't be opened or written
+     */
+    TableWriter(File file, boolean append, String... columns) throws IOException {
+      if (append) {
+        writer = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                                                            StandardOpenOption.APPEND));
+      } else {
+        writer = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8));
+        writer.write(String.join(String.valueOf(DELIMITER), columns));
+        writer.write('\n');
+      }
+    }
+
+    /**
+     * Write a row of values.
+     *
+     * @param values the column values; strings are escaped, booleans written as 1 or 0, and null
+     *               written as the null value
+     * @throws IOException when the row can't be written
+     */
+    void write(Object... values) throws IOException {
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+          writer.write(DELIMITER);
+        }
+        writer.write(format(values[i]));
+      }
+      writer.write('\n');
+      rows++;
+    }
+
+    /**
+     * Format a column value for the file.
+     *
+     * @param value the value
+     * @return the formatted value
+     */
+    private static String format(Object value) {
+      if (value == null) {
+        return NULL;
+      } else if (value instanceof Boolean) {
+        return (Boolean)value ? "1" : "0";
+      }
+      String string = value.toString();
+      StringBuilder builder = new StringBuilder(string.length());
+      for (char c : string.toCharArray()) {
+        switch (c) {
+          case '\\':
+            builder.append("\\\\");
+            break;
+          case '\t':
+            builder.append("\\t");
+            break;
+          case '\n':
+            builder.append("\\n");
+            break;
+          case '\r':
+            builder.append("\\r");
+            break;
+          default:
+            builder.append(c);
+        }
+      }
+      return builder.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+      writer.close();
+    }
+  }
+
+  /**
+   * Create a BulkExportDataAccessService object that assigns transaction ids from 1.
+   *
+   * @param directory the directory for the files, created if it does not exist
+   */
+  public BulkExportDataAccessService(File directory) {
+    this(directory, DEFAULT_FIRST_ID);
+  }
+
+  /**
+   * Create a BulkExportDataAccessService object.
+   *
+   * @param directory the directory for the files, created if it does not exist
+   * @param firstId   the first transaction id to assign
+   */
+  public BulkExportDataAccessService(File directory, BigInteger firstId) {
+    if (directory == null || firstId == null) {
+      throw new InvalidParametersException(NULL_DIRECTORY_ERROR);
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new RuntimeException(DIRECTORY_ERROR + directory);
+    }
+    this.directory = directory;
+    this.nextId = firstId;
+  }
+
+  /**
+   * Open a writer for a table file, creating the file on the first call for the table and
+   * appending to it on later calls.
+   *
+   * @param table   the table name
+   * @param columns the column names
+   * @return the writer
+   * @throws IOException when the file can't be opened
+   */
+  private TableWriter open(String table, String... columns) throws IOException {
+    return new TableWriter(getFile(table), !created.add(table), columns);
+  }
+
+  /**
+   * Get the file for a table.
+   *
+   * @param table the table name
+   * @return the file
+   */
+  File getFile(String table) {
+    return new File(directory, table + SUFFIX);
+  }
+
+  @Override
+  public void storeCapitalStructure(CapitalStructure structure) {
+    if (structure == null || structure.getEntities().isEmpty()) {
+      throw new InvalidParametersException(NO_STRUCTURE_ERROR);
+    }
+    try (TableWriter writer = open(CAPITAL_ENTITY, "capitalEntityName")) {
+      for (CapitalEntity entity : structure.getEntities()) {
+        if (capitalEntityNames.add(entity.getName())) {
+          writer.write(entity.getName());
+        }
+      }
+      logger.info("Exported " + writer.rows + " capital entities");
+    } catch (IOException e) {
+      throw new RuntimeException(WRITE_ERROR + CAPITAL_ENTITY, e);
+    }
+  }
+
+  @Override
+  public void storeFiscalYears(List<FiscalYear> years) {
+    try (TableWriter writer = open(FISCAL_YEAR, "year", "startDate", "endDate")) {
+      for (FiscalYear year : years) {
+        if (fiscalYears.add(year.getYear())) {
+          writer.write(year.getYear(), format(year.getStart()), format(year.getEnd()));
+        }
+      }
+      logger.info("Exported " + writer.rows + " fiscal years");
+    } catch (IOException e) {
+      throw new RuntimeException(WRITE_ERROR + FISCAL_YEAR, e);
+    }
+  }
+
+  /**
+   * Format a timestamp for the files.
+   *
+   * @param timestamp the timestamp
+   * @return the formatted timestamp
+   */
+  private String format(Timestamp timestamp) {
+    return timestamp == null ? null : formatter.format(timestamp);
+  }
+
+  @Override
+  public void storeEntity(String entityName, List<FiscalYear> years) {
+    try (TableWriter entityWriter = open(ENTITY, "entityName");
+         TableWriter groupWriter = open(ACCOUNT_GROUP, "accountType", "groupName");
+         TableWriter accountWriter = open(ACCOUNT, "accountName", "entityName", "description",
+                                          "debitDefault", "active");
+         TableWriter simpleWriter = open(SIMPLE_ACCOUNT, "accountName", "entityName",
+                                         "receivable");
+         TableWriter capitalWriter = open(CAPITAL_ACCOUNT, "accountName", "entityName",
+                                          "ownership", "capitalEntityName");
+         TableWriter distributionWriter = open(DISTRIBUTION_ACCOUNT, "accountName", "entityName",
+                                               "capitalEntityName");
+         TableWriter linkWriter = open(FISCAL_YEAR_ACCOUNT, "accountName", "entityName", "year",
+                                       "accountOrderNumber", "groupOrderNumber", "accountType",
+                                       "groupName")) {
+      if (this.entityName == null) {
+        entityWriter.write(entityName);
+      }
+      for (FiscalYear year : years) {
+        for (FiscalYearAccount link : year.getAccounts()) {
+          String type = link.getAccountType().toString();
+          String groupName = link.getGroup().getName();
+          if (groups.add(type + DELIMITER + groupName)) {
+            groupWriter.write(type, groupName);
+          }
+
+          Account account = link.getAccount();
+          if (accountNames.add(account.getName())) {
+            accountWriter.write(account.getName(), entityName, account.getDescription(),
+                                account.isDebitDefault(), Boolean.TRUE);
+            writeAccountSubtype(account, entityName, simpleWriter, capitalWriter,
+                                distributionWriter);
+          }
+
+          linkWriter.write(account.getName(), entityName, year.getYear(),
+                           link.getAccountOrderNumber(), link.getGroupOrderNumber(), type,
+                           groupName);
+        }
+      }
+      logger.info("Exported entity " + entityName + " with " + accountWriter.rows +
+                  " accounts, " + groupWriter.rows + " groups, and " + linkWriter.rows +
+                  " fiscal-year-account links");
+    } catch (IOException e) {
+      throw new RuntimeException(WRITE_ERROR + ACCOUNT, e);
+    }
+    this.entityName = entityName;
+  }
+
+  /**
+   * Write the subtype row of an account: a capital or distribution account for an account
+   * associated with a capital entity, a simple account otherwise.
+   *
+   * @param account            the account
+   * @param entityName         the name of the entity that owns the account
+   * @param simpleWriter       the simple account writer
+   * @param capitalWriter      the capital account writer
+   * @param distributionWriter the distribution account writer
+   * @throws IOException when the row can't be written
+   */
+  private void writeAccountSubtype(Account account, String entityName, TableWriter simpleWriter,
+                                   TableWriter capitalWriter, TableWriter distributionWriter)
+    throws IOException {
+    CapitalEntity capEntity = account.getCapitalEntity();
+    if (capEntity == null) {
+      simpleWriter.write(account.getName(), entityName, account.isReceivable());
+    } else if (account.getName().equals(capEntity.getCapitalAccountName())) {
+      capitalWriter.write(account.getName(), entityName, capEntity.getOwnership().doubleValue(),
+                          capEntity.getName());
+    } else if (account.getName().equals(capEntity.getDistributionAccountName())) {
+      distributionWriter.write(account.getName(), entityName, capEntity.getName());
+    } else {
+      throw new RuntimeException(CAP_ENTITY_NULL_NO_ACCOUNTS_ERROR);
+    }
+  }
+
+  @Override
+  public void storeTransactions(Set<Transaction> transactions) {
+    storeTransactions(transactions, Collections.emptySet());
+  }
+
+  @Override
+  public void storeTransactions(Set<Transaction> transactions, Set<Transaction> stored) {
+    if (entityName == null) {
+      throw new RuntimeException(NULL_ENTITY_ERROR);
+    }
+
+    // Assign the ids in date order, as the database sequence would for a full store, continuing
+    // from the ids of earlier calls.
+    List<Transaction> ordered = new ArrayList<>(transactions);
+    ordered.sort(Transaction.DATE_ORDER);
+
+    try (TableWriter transactionWriter = open(TRANSACTION, "transactionId", "description",
+                                              "transactionDate", "checked", "balance");
+         TableWriter itemWriter = open(ITEM, "orderNumber", "transactionId", "amount", "debit",
+                                       "checked", "accountName", "entityName");
+         TableWriter idWriter = open(ID_MAP, "entityName", "year", "oldId", "newId")) {
+      for (Transaction transaction : ordered) {
+        BigInteger id = nextId;
+        nextId = nextId.add(BigInteger.ONE);
+        transactionWriter.write(id, transaction.getDescription(), format(transaction.getDate()),
+                                transaction.isChecked(), transaction.isBalance());
+        idWriter.write(entityName, transaction.getYear(), transaction.getId(), id);
+
+        // Order the items as they come from the transaction.
+        int orderNumber = 1;
+        for (Item item : transaction.getItems()) {
+          if (!accountNames.contains(item.getAccount().getName())) {
+            throw new InvalidParametersException(UNKNOWN_ACCOUNT_ERROR + item);
+          }
+          itemWriter.write(orderNumber, id, item.getAmount(), item.isDebit(), item.isChecked(),
+                           item.getAccount().getName(), entityName);
+          if (item.getAccount().isReceivable()) {
+            arItems.put(item, new Object[] {id, orderNumber});
+          }
+          orderNumber++;
+        }
+      }
+      logger.info("Exported " + transactionWriter.rows + " transactions and " + itemWriter.rows +
+                  " items");
+    } catch (IOException e) {
+      throw new RuntimeException(WRITE_ERROR + TRANSACTION, e);
+    }
+
+    writeReimbursements(transactions, ordered, stored);
+    writeLoadScript();
+  }
+
+  /**
+   * Write the reimbursements linking receivable items to reimbursing items: those of the new
+   * receivables to reimbursing items written now or by an earlier call, and those of the stored
+   * receivables to reimbursing items written now. A reimbursement whose reimbursing item is not
+   * written yet is left for a later export.
+   *
+   * @param exported     the set of transactions exported now
+   * @param transactions the transactions exported now in date order
+   * @param stored       the transactions exported by earlier calls
+   */
+  private void writeReimbursements(Set<Transaction> exported, List<Transaction> transactions,
+                                   Set<Transaction> stored) {
+    try (TableWriter writer = open(REIMBURSEMENT, "receivablesOrderNumber",
+                                   "reimbursingItemsOrderNumber", "receivablesTransactionId",
+                                   "reimbursingItemsTransactionId", "reimbursedAmount",
+                                   "allocatedAmount")) {
+      for (Transaction transaction : transactions) {
+        writeReimbursements(writer, transaction, null);
+      }
+      for (Transaction transaction : stored) {
+        writeReimbursements(writer, transaction, exported);
+      }
+      logger.info("Exported " + writer.rows + " reimbursements");
+    } catch (IOException e) {
+      throw new RuntimeException(WRITE_ERROR + REIMBURSEMENT, e);
+    }
+  }
+
+  /**
+   * Write the reimbursements of the receivable items of a transaction whose reimbursing items are
+   * written.
+   *
+   * @param writer      the reimbursement writer
+   * @param transaction the transaction
+   * @param reimbursing the transactions whose items to link, or null for any written transaction
+   * @throws IOException when a row can't be written
+   */
+  private void writeReimbursements(TableWriter writer, Transaction transaction,
+                                   Set<Transaction> reimbursing) throws IOException {
+    for (Item item : transaction.getItems()) {
+      // Check only the receivables, not reimbursement items
+      if (item.getAccount().isReceivable() && item.isDebit()) {
+        for (Reimbursement reimbursement : item.getReimbursements()) {
+          Item reimbursingItem = reimbursement.getReimbursingItem();
+          Object[] receivableKey = arItems.get(item);
+          Object[] reimbursingKey = arItems.get(reimbursingItem);
+          if (reimbursingKey == null || (reimbursing != null &&
+                                         !reimbursing.contains(reimbursingItem.getTransaction()))) {
+            // not written yet, or linked by the earlier call that wrote both items
+            continue;
+          }
+          if (receivableKey == null) {
+            throw new RuntimeException(NO_REIMBURSEMENTS_ERROR + item);
+          }
+          writer.write(receivableKey[1], reimbursingKey[1], receivableKey[0], reimbursingKey[0],
+                       reimbursement.getReimbursedAmount(), reimbursement.getAllocatedAmount());
+        }
+      }
+    }
+  }
+
+  /**
+   * Remove the transactions of the years by deleting the files and forgetting what the service
+   * wrote. The files hold only what this service wrote for one load, and the load script loads them
+   * as a whole, so the files of a rolled-back load are of no use without the removed years.
+   *
+   * @param entityName the name of the accounting entity
+   * @param years      the fiscal years of the transactions to remove
+   */
+  @Override
+  public void removeTransactions(String entityName, Set<Integer> years) {
+    int count = 0;
+    for (String table : TABLES) {
+      if (getFile(table).delete()) {
+        count++;
+      }
+    }
+    new File(directory, LOAD_SCRIPT).delete();
+    created.clear();
+    capitalEntityNames.clear();
+    fiscalYears.clear();
+    this.entityName = null;
+    accountNames.clear();
+    groups.clear();
+    arItems.clear();
+    logger.info("Removed " + count + " bulk export files for " + entityName);
+  }
+
+  /**
+   * Write the SQL script that loads the files written so far in foreign-key order with MySQL LOAD
+   * DATA statements.
+   */
+  private void writeLoadScript() {
+    File script = new File(directory, LOAD_SCRIPT);
+    try (Writer writer = Files.newBufferedWriter(script.toPath(), StandardCharsets.UTF_8)) {
+      for (String table : TABLES) {
+        File file = getFile(table);
+        if (file.exists()) {
+          writer.write("LOAD DATA LOCAL INFILE '" + file.getAbsolutePath().replace("'", "''") +
+                       "' INTO TABLE " + table + " IGNORE 1 LINES (" + getHeader(file) + ");\n");
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(WRITE_ERROR + LOAD_SCRIPT, e);
+    }
+  }
+
+  /**
+   * Get the column list of a table file from its header line.
+   *
+   * @param file the file
+   * @return the comma-separated column names
+   * @throws IOException when the file can't be read
+   */
+  private static String getHeader(File file) throws IOException {
+    try (BufferedReader reader =
+           Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String header = reader.readLine();
+      return header == null ? "" : header.replace(String.valueOf(DELIMITER), ", ");
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.poesys.accounting.dataloader.IBuilder;
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * <p> The balances that the capital structure operations need for closing a fiscal year: the
+ * balance sheet balance of each capital and distribution account and the net income of the income
+ * statement. The constructor reads the balances once by the fiscal year dates, as Statement does,
+ * from the balance index of each account, so the cost grows with the number of accounts in the
+ * year and only logarithmically with the number of items in the account history, and the capital
+ * structure operations apply the transactions they create to the aggregate instead of building new
+ * statements. Create one aggregate per fiscal year update and pass it to each operation in turn.
+ * </p> <p> The balances follow the Statement rules: an account not linked to the fiscal year has a
+ * zero balance, and the net income sums the income and expense accounts linked to the year. </p>
+ *
+ * @author Robert J. Muller
+ */
+public class CapitalBalances {
+  /** logger for this class */
+  private static final Logger logger = Logger.getLogger(CapitalBalances.class);
+
+  /** the scale for BigDecimal monetary amounts */
+  private static final int SCALE = 2;
+
+  /** the fiscal year */
+  private final FiscalYear year;
+  /** the balance sheet balances of the capital and distribution accounts in cents */
+  private final Map<Account, Long> balances = new HashMap<>();
+  /** the account type of each account linked to the fiscal year */
+  private final Map<Account, AccountType> types = new HashMap<>();
+  /** the net income in cents, credits positive */
+  private long netIncome = 0L;
+
+  // messages
+  private static final String NULL_PARAMETER_ERROR =
+    "CapitalBalances parameters are required but one is null";
+  private static final String NOT_TRACKED_ERROR = "account balance not in capital balances: ";
+
+  /**
+   * Create a CapitalBalances object, reading the balances of the capital structure's accounts and
+   * the net income for the fiscal year.
+   *
+   * @param year      the fiscal year
+   * @param structure the capital structure
+   * @param builder   the builder containing the accounts
+   */
+  public CapitalBalances(FiscalYear year, CapitalStructure structure, IBuilder builder) {
+    if (year == null || structure == null || builder == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    this.year = year;
+
+    for (FiscalYearAccount link : year.getAccounts()) {
+      // Take only the first link for an account in the year, as Statement does.
+      if (types.putIfAbsent(link.getAccount(), link.getAccountType()) == null &&
+          isIncomeStatement(link.getAccountType())) {
+        netIncome += link.getAccount().getActivity(year.getStartDay(), year.getEndDay());
+      }
+    }
+
+    for (CapitalEntity entity : structure.getEntities()) {
+      track(builder.getAccountByName(entity.getCapitalAccount().getName()));
+      if (entity.getDistributionAccount() != null) {
+        track(entity.getDistributionAccount());
+      }
+    }
+    logger.debug("Capital balances for " + year.getYear() + ": net income " + netIncome + ", " +
+                 balances);
+  }
+
+  /**
+   * Is an account type an income statement type (income, expenses)?
+   *
+   * @param type the account type
+   * @return true if the type appears on the income statement
+   */
+  private static boolean isIncomeStatement(AccountType type) {
+    return type == AccountType.INCOME || type == AccountType.EXPENSES;
+  }
+
+  /**
+   * Read the balance sheet balance of an account into the aggregate.
+   *
+   * @param account the account
+   */
+  private void track(Account account) {
+    if (account != null && !balances.containsKey(account)) {
+      long balance = types.containsKey(account) ? account.getBalance(year.getEndDay()) : 0L;
+      balances.put(account, balance);
+    }
+  }
+
+  /**
+   * Get the fiscal year.
+   *
+   * @return a fiscal year
+   */
+  public FiscalYear getYear() {
+    return year;
+  }
+
+  /**
+   * Get the balance sheet balance of a capital or distribution account.
+   *
+   * @param account the account
+   * @return the balance (scale 2), credits positive
+   */
+  public BigDecimal getBalance(Account account) {
+    Long balance = balances.get(account);
+    if (balance == null) {
+      throw new InvalidParametersException(NOT_TRACKED_ERROR + account);
+    }
+    return BigDecimal.valueOf(balance, SCALE);
+  }
+
+  /**
+   * Get the net income, the balance of the income statement.
+   *
+   * @return the net income (scale 2), positive for a net gain
+   */
+  public BigDecimal getNetIncome() {
+    return BigDecimal.valueOf(netIncome, SCALE);
+  }
+
+  /**
+   * Apply a transaction created for the fiscal year to the balances, as if reading them again from
+   * the statements after adding the transaction.
+   *
+   * @param transaction the transaction, ignored if null
+   */
+  public void apply(Transaction transaction) {
+    if (transaction != null) {
+      for (Item item : transaction.getItems()) {
+        long amount = item.getCents();
+        amount = item.isDebit() ? -amount : amount;
+        Account account = item.getAccount();
+        AccountType type = types.get(account);
+        if (balances.containsKey(account) && type != null) {
+          balances.put(account, balances.get(account) + amount);
+        }
+        if (type != null && isIncomeStatement(type)) {
+          netIncome += amount;
+        }
+      }
+    }
+  }
+}
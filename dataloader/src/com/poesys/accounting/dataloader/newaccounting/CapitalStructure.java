@@ -25,7 +25,6 @@ import java.util.*;
 import org.apache.log4j.Logger;
 
 import com.poesys.accounting.dataloader.IBuilder;
-import com.poesys.accounting.dataloader.newaccounting.Statement.StatementType;
 import com.poesys.db.InvalidParametersException;
 
 /**
@@ -47,10 +46,6 @@ import com.poesys.db.InvalidParametersException;
 public class CapitalStructure {
   /** logger for this class */
   private static final Logger logger = Logger.getLogger(CapitalStructure.class);
-  /** name for balance sheet statement */
-  private static final String BALANCE_SHEET = "Balance Sheet";
-  /** name for income statement */
-  private static final String INCOME_STMT = "Income Statement";
   /** description for income summary transactions */
   private static final String INCOME_SUMMARY_DESCRIPTION = "Summarize income for ";
   /** description for distribution transactions */
@@ -58,16 +53,17 @@ public class CapitalStructure {
   /** description for capital account adjustment transaction */
   private static final String ADJUST_DESCRIPTION = "Adjust capital accounts to ownership";
 
-  /** constant divisor to translate integer to monetary amount */
-  private static final BigDecimal DIVISOR =
-    new BigDecimal("100.00").setScale(CapitalEntity.SCALE, RoundingMode.HALF_UP);
-
   /** the ordered list of entities in the capital structure */
-  private final List<CapitalEntity> entities = new ArrayList<>(2);
+  private List<CapitalEntity> entities = new ArrayList<>(2);
 
   /** the name of the income summary account */
   private final String incomeSummaryAccountName;
 
+  /** the ownership allocation buffer, reused for every fiscal year */
+  private final OwnershipAllocator allocator = new OwnershipAllocator();
+  /** whether the structure is frozen, with an immutable list of entities */
+  private boolean frozen = false;
+
   // messages
 
   private static final String OWNERSHIP_ERROR = "ownership across entities does not sum to 100%";
@@ -82,7 +78,19 @@ public class CapitalStructure {
    * @return a list of entities in order
    */
   public List<CapitalEntity> getEntities() {
-    return Collections.synchronizedList(entities);
+    return frozen ? entities : Collections.synchronizedList(entities);
+  }
+
+  /**
+   * Freeze the capital structure once the model is built, replacing the entities with an immutable
+   * copy that any number of threads can read without locks. Adding entities to a frozen structure
+   * throws an UnsupportedOperationException.
+   */
+  public void freeze() {
+    if (!frozen) {
+      entities = Frozen.list(entities);
+      frozen = true;
+    }
   }
 
   /**
@@ -154,32 +162,46 @@ public class CapitalStructure {
    * @return an adjusting transaction or null if no change is required
    */
   public Transaction getCapitalAdjustmentTransaction(IBuilder builder) {
-    FiscalYear year = builder.getFiscalYear();
-    Transaction transaction = null;
-    Statement balanceSheet = new Statement(year, "Balance Sheet", StatementType.BALANCE_SHEET);
-    AccountCollectionDistributor distributor = new AccountCollectionDistributor(
-      BigDecimal.ZERO.setScale(CapitalEntity.SCALE, RoundingMode.HALF_UP));
+    return getCapitalAdjustmentTransaction(builder,
+                                           new CapitalBalances(builder.getFiscalYear(), this,
+                                                               builder));
+  }
 
-    // Add the capital account balances to the distributor.
-    for (CapitalEntity entity : entities) {
-      Account account = builder.getAccountByName(entity.getCapitalAccount().getName());
-      distributor.addBalance(account, balanceSheet.getAccountBalance(account));
+  /**
+   * Get a transaction that transfers money between capital accounts to bring all the accounts to
+   * their desired balances, reading the capital account balances from an aggregate for the fiscal
+   * year and applying the adjusting transaction to the aggregate.
+   *
+   * @param builder  the builder containing the accounts of the accounting system
+   * @param balances the capital balances for the fiscal year
+   * @return an adjusting transaction or null if no change is required
+   */
+  public Transaction getCapitalAdjustmentTransaction(IBuilder builder, CapitalBalances balances) {
+    if (builder == null || balances == null) {
+      throw new InvalidParametersException(INVALID_PARAMETER_ERROR);
     }
+    FiscalYear year = balances.getYear();
+    Transaction transaction = null;
 
-    // Equalize the capital accounts.
-    boolean adjusted = distributor.equalize();
-
-    // If the distributor adjusted the value, create the adjusting transaction.
-    if (adjusted) {
-      BigInteger id = year.getNextId();
-      transaction = new Transaction(id, ADJUST_DESCRIPTION, year.getEnd(), false, false);
+    synchronized (allocator) {
+      // Add the capital account balances and ownership to the allocator.
+      allocator.clear();
       for (CapitalEntity entity : entities) {
         Account account = builder.getAccountByName(entity.getCapitalAccount().getName());
-        BigDecimal item = distributor.getItemAmount(account);
-        if (!item.equals(BigDecimal.ZERO.setScale(CapitalEntity.SCALE, RoundingMode.HALF_UP))) {
-          boolean debit =
-            item.compareTo(BigDecimal.ZERO.setScale(CapitalEntity.SCALE, RoundingMode.HALF_UP)) < 0;
-          transaction.addItem(item.abs().doubleValue(), account, debit, false);
+        allocator.add(entity.getOwnership(), balances.getBalance(account));
+      }
+
+      // Bring the capital accounts to their ownership shares; create the adjusting transaction
+      // if the allocator adjusted the balances.
+      if (allocator.adjust()) {
+        BigInteger id = year.getNextId();
+        transaction = new Transaction(id, ADJUST_DESCRIPTION, year.getEnd(), false, false);
+        for (int i = 0; i < entities.size(); i++) {
+          Account account = builder.getAccountByName(entities.get(i).getCapitalAccount().getName());
+          Money item = allocator.getItemMoney(i);
+          if (!item.isZero()) {
+            transaction.addItem(item.abs(), account, item.signum() < 0, false);
+          }
         }
       }
     }
@@ -189,6 +211,7 @@ public class CapitalStructure {
     if (transaction != null && transaction.isZero()) {
       transaction = null;
     } else if (transaction != null) {
+      balances.apply(transaction);
       logger.debug("Added capital adjustment: " + transaction);
     }
 
@@ -201,22 +224,42 @@ public class CapitalStructure {
    * debit/credit structure depends on the nature of net income, which can be either a credit
    * (positive net income) or a debit (negative net income). For a credit net income, the
    * transaction debits income summary and credits the capital accounts; for a debit net income, the
-   * transaction does the reverse. The allocation to multiple accounts should bring those accounts
-   * to equality or near equality (at most a one cent difference between any two capital accounts).
+   * transaction does the reverse. The allocation to multiple accounts follows the ownership
+   * percentages of the entities in exact cents; with equal ownership, it brings those accounts to
+   * equality or near equality (at most a one cent difference between any two capital accounts).
    *
    * @param year    the fiscal year for which to create the transaction
    * @param builder the builder containing the accounts
    * @return the transaction
    */
   public Transaction getIncomeToCapitalTransaction(FiscalYear year, IBuilder builder) {
-    List<Account> capitalAccounts = getCapitalAccounts(builder);
+    return getIncomeToCapitalTransaction(builder, new CapitalBalances(year, this, builder));
+  }
 
-    AccountCollectionDistributor distributor = getDistributor(year, capitalAccounts);
+  /**
+   * Get a transaction that transfers net income to the capital accounts, reading the net income and
+   * the capital account balances from an aggregate for the fiscal year and applying the transaction
+   * to the aggregate.
+   *
+   * @param builder  the builder containing the accounts
+   * @param balances the capital balances for the fiscal year
+   * @return the transaction
+   */
+  public Transaction getIncomeToCapitalTransaction(IBuilder builder, CapitalBalances balances) {
+    if (builder == null || balances == null) {
+      throw new InvalidParametersException(INVALID_PARAMETER_ERROR);
+    }
+    List<Account> capitalAccounts = getCapitalAccounts(builder);
 
-    Transaction capitalTransaction =
-      buildCapitalTransaction(year, builder, capitalAccounts, distributor);
+    Transaction capitalTransaction;
+    synchronized (allocator) {
+      loadAllocator(balances, capitalAccounts);
+      capitalTransaction = buildCapitalTransaction(balances.getYear(), builder, capitalAccounts,
+                                                   balances.getNetIncome());
+    }
 
     if (capitalTransaction != null) {
+      balances.apply(capitalTransaction);
       logger.debug("Added income-to-capital transaction: " + capitalTransaction);
     }
 
@@ -240,62 +283,40 @@ public class CapitalStructure {
   }
 
   /**
-   * Get an account distributor builder object for the fiscal year and set of entity capital
-   * accounts.
+   * Load the allocator with the ownership and capital account balance of each entity for the fiscal
+   * year.
    *
-   * @param year            the fiscal year
+   * @param balances        the capital balances for the fiscal year
    * @param capitalAccounts the list of capital accounts for the entities
-   * @return the distributor
    */
-  private AccountCollectionDistributor getDistributor(FiscalYear year, List<Account>
-    capitalAccounts) {
-    Statement balanceSheet = new Statement(year, BALANCE_SHEET, StatementType.BALANCE_SHEET);
-    Statement incomeStatement = new Statement(year, INCOME_STMT, StatementType.INCOME_STATEMENT);
-
-    // Set up the distributor with the income statement balance.
-    AccountCollectionDistributor distributor =
-      new AccountCollectionDistributor(incomeStatement.getBalance());
-
-    // Add the capital account balances to the distributor.
-    for (Account account : capitalAccounts) {
-      // Get the balance for the account from the balance sheet.
-      BigDecimal balance = balanceSheet.getAccountBalance(account);
-      distributor.addBalance(account, balance);
+  private void loadAllocator(CapitalBalances balances, List<Account> capitalAccounts) {
+    allocator.clear();
+    for (int i = 0; i < capitalAccounts.size(); i++) {
+      allocator.add(entities.get(i).getOwnership(), balances.getBalance(capitalAccounts.get(i)));
     }
-
-    return distributor;
   }
 
   /**
    * Build the capital account transaction with the income summary and capital items. Validate the
    * transaction. The income summary item will set the value for the Income Summary account in the
    * income statement to show the net income for the year. The capital items distribute that net
-   * income to the capital accounts for the accounting entities.
+   * income to the capital accounts for the accounting entities by their ownership shares.
    *
    * @param year            the fiscal year
    * @param builder         the builder containing the accounts for the fiscal year
    * @param capitalAccounts the list of capital accounts for the entities
-   * @param distributor     the distributor created with the net income amount
+   * @param netIncome       the net income to distribute
    * @return the validated transaction
    */
   private Transaction buildCapitalTransaction(FiscalYear year, IBuilder builder, List<Account>
-    capitalAccounts, AccountCollectionDistributor distributor) {
-    // Get the integer distributor amount, which will be positive for a net gain or
-    // negative for a net loss in the income statement.
-    Integer integerAmount = distributor.getAmount();
-    // Convert the integer to a BigDecimal and set the scale to monetary amount.
-    BigDecimal netIncome =
-      new BigDecimal(integerAmount).setScale(CapitalEntity.SCALE, RoundingMode.HALF_UP);
-    // Divide by the constant divisor to get the decimal amount.
-    netIncome = netIncome.divide(DIVISOR, CapitalEntity.SCALE, RoundingMode.HALF_UP);
-
+    capitalAccounts, BigDecimal netIncome) {
     // Translate the net income to unsigned amount and appropriate debit/credit
     // flag. The latter depends on the sign of the net income. For a net gain,
     // the net income will be a debit to subtract the income from the income
     // statement; for a net loss, the net income will be a credit to add the
     // loss to the income statement. The end result will be a 0 balance on the
     // income statement.
-    Double amount = netIncome.abs().doubleValue();
+    Money amount = Money.valueOf(netIncome).abs();
     Boolean debit = netIncome.compareTo(BigDecimal.ZERO) >= 0;
 
     // Create the income summary account transaction to summarize income.
@@ -307,13 +328,12 @@ public class CapitalStructure {
     Account incomeSummaryAccount = builder.getAccountByName(incomeSummaryAccountName);
     transaction.addItem(amount, incomeSummaryAccount, debit, false);
     // Create the capital account items.
-    distributor.distributeAmount();
-    distributor.distributeRemainder();
-    for (Account account : capitalAccounts) {
+    allocator.allocate(netIncome);
+    for (int i = 0; i < capitalAccounts.size(); i++) {
       // Get absolute value of amount.
-      amount = distributor.getItemAmount(account).abs().doubleValue();
+      amount = allocator.getItemMoney(i).abs();
       // debit flag is reverse of income summary item flag
-      transaction.addItem(amount, account, !debit, false);
+      transaction.addItem(amount, capitalAccounts.get(i), !debit, false);
     }
     if (!transaction.isValid()) {
       throw new RuntimeException(INVALID_TRANSACTION_ERROR + transaction);
@@ -348,10 +368,24 @@ public class CapitalStructure {
     if (year == null || builder == null) {
       throw new InvalidParametersException(INVALID_PARAMETER_ERROR);
     }
+    return getDistributionTransactions(new CapitalBalances(year, this, builder));
+  }
 
-    List<Transaction> transactions = new ArrayList<>(entities.size());
+  /**
+   * Get the transactions that transfer the distribution account balances to the capital accounts,
+   * reading the distribution balances from an aggregate for the fiscal year and applying the
+   * transactions to the aggregate.
+   *
+   * @param balances the capital balances for the fiscal year
+   * @return a list of transactions, one per capital entity with a non-zero distribution balance
+   */
+  public List<Transaction> getDistributionTransactions(CapitalBalances balances) {
+    if (balances == null) {
+      throw new InvalidParametersException(INVALID_PARAMETER_ERROR);
+    }
+    FiscalYear year = balances.getYear();
 
-    Statement stmt = new Statement(year, BALANCE_SHEET, StatementType.BALANCE_SHEET);
+    List<Transaction> transactions = new ArrayList<>(entities.size());
 
     for (CapitalEntity entity : entities) {
       // Get the accounts for this entity.
@@ -361,7 +395,7 @@ public class CapitalStructure {
       // Proceed only if there is a distribution account.
       if (distAccount != null) {
         // Get the distribution balance for this entity.
-        BigDecimal balance = stmt.getAccountBalance(distAccount);
+        BigDecimal balance = balances.getBalance(distAccount);
         // For non-zero balance, create the transaction to transfer distribution to capital.
         if (balance.compareTo(BigDecimal.ZERO) != 0) {
           BigInteger id = year.getNextId();
@@ -370,7 +404,7 @@ public class CapitalStructure {
                                                         year.getYear(), year.getEnd(), false,
                                                     false);
           // Convert amount to absolute value.
-          Double amount = balance.abs().doubleValue();
+          Money amount = Money.valueOf(balance).abs();
           // Set debit flag by sign of balance. A debit balance is a positive
           // distribution (contra account).
           Boolean debit =
@@ -384,6 +418,7 @@ public class CapitalStructure {
           if (!transaction.isZero()) {
             // Non-zero, add the transaction to the list to return.
             transactions.add(transaction);
+            balances.apply(transaction);
             logger.debug("Added distribution adjustment: " + transaction);
           }
         }
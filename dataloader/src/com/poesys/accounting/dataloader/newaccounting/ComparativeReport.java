@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * A multi-year report that computes a comparative balance sheet, a comparative income statement,
+ * and a trial balance for a list of fiscal years in a single sweep over the items of the accounts
+ * linked to those years. Each account gets an accumulator with one bucket per fiscal year; the
+ * sweep drops each item into the bucket for the year containing its transaction date, and the
+ * report then derives balance sheet totals (all items up to the end of the year) as running sums of
+ * the buckets and income statement totals (items in the year) as the buckets themselves, following
+ * the rules in Rollup. The report writes as one tab-delimited data set with a column per year.
+ *
+ * @author Robert J. Muller
+ */
+public class ComparativeReport {
+  /** logger for this class */
+  private static final Logger logger = Logger.getLogger(ComparativeReport.class);
+
+  /** the BigDecimal scale for money amounts */
+  private static final int SCALE = 2;
+  /** data value delimiter for data strings */
+  private static final String DELIMITER = "\t";
+  /** line delimiter for data strings */
+  private static final String LINE_DELIMITER = "\n";
+
+  // section and total labels
+  private static final String BALANCE_SHEET = "Balance Sheet";
+  private static final String INCOME_STATEMENT = "Income Statement";
+  private static final String TRIAL_BALANCE = "Trial Balance";
+  private static final String TOTAL = "Total";
+  private static final String DEBITS = "Debits";
+  private static final String CREDITS = "Credits";
+  private static final String NET = "Net";
+
+  /** the fiscal years of the report in year order */
+  private final FiscalYear[] years;
+  /** the start of each fiscal year in milliseconds, in year order */
+  private final long[] starts;
+  /** the end of each fiscal year in milliseconds, in year order */
+  private final long[] ends;
+  /** the accumulators for the accounts in the report, indexed by account */
+  private final Map<Account, Accumulator> accumulators = new LinkedHashMap<>();
+
+  // Messages
+
+  private static final String NO_YEARS_ERROR = "no fiscal years for comparative report";
+  private static final String NULL_PARAMETER_ERROR =
+    "ComparativeReport parameters are required but one is null";
+
+  /**
+   * The year-bucketed totals for a single account
+   */
+  private class Accumulator {
+    /** the account */
+    private final Account account;
+    /** the link between the account and each fiscal year, null if not linked in the year */
+    private final FiscalYearAccount[] links = new FiscalYearAccount[years.length];
+    /** the sum of the items in each fiscal year, in cents */
+    private final long[] activity = new long[years.length];
+    /** the sum of the items before each fiscal year but after the preceding year, in cents */
+    private final long[] prior = new long[years.length];
+    /** the sum of all items up to the end of each fiscal year, in cents */
+    private final long[] cumulative = new long[years.length];
+
+    /**
+     * Create an Accumulator object.
+     *
+     * @param account the account
+     */
+    Accumulator(Account account) {
+      this.account = account;
+    }
+
+    /**
+     * Get the most recent link for the account, which determines where the account appears in the
+     * report.
+     *
+     * @return the link
+     */
+    FiscalYearAccount getLatestLink() {
+      FiscalYearAccount latest = null;
+      for (FiscalYearAccount link : links) {
+        latest = link != null ? link : latest;
+      }
+      return latest;
+    }
+
+    /**
+     * Get the statement total for the account in a year, or null if the account is not linked to
+     * the year. Balance sheet accounts total all items up to the end of the year, income statement
+     * accounts total the items in the year.
+     *
+     * @param index the index of the fiscal year
+     * @return the total in cents or null
+     */
+    Long getTotal(int index) {
+      Long total = null;
+      if (links[index] != null) {
+        if (isBalanceSheet(links[index].getAccount().getAccountType(years[index]))) {
+          total = cumulative[index];
+        } else {
+          total = activity[index];
+        }
+      }
+      return total;
+    }
+  }
+
+  /**
+   * Create a ComparativeReport object, accumulating the totals for all the accounts linked to the
+   * fiscal years in one pass over the account items.
+   *
+   * @param fiscalYears the fiscal years to report, in any order
+   */
+  public ComparativeReport(List<FiscalYear> fiscalYears) {
+    if (fiscalYears == null || fiscalYears.isEmpty()) {
+      throw new InvalidParametersException(NO_YEARS_ERROR);
+    }
+    years = fiscalYears.toArray(new FiscalYear[fiscalYears.size()]);
+    Arrays.sort(years, Comparator.comparing(FiscalYear::getYear));
+    starts = new long[years.length];
+    ends = new long[years.length];
+    for (int i = 0; i < years.length; i++) {
+      starts[i] = years[i].getStart().getTime();
+      ends[i] = years[i].getEnd().getTime();
+      for (FiscalYearAccount link : years[i].getAccounts()) {
+        Accumulator accumulator = accumulators.get(link.getAccount());
+        if (accumulator == null) {
+          accumulator = new Accumulator(link.getAccount());
+          accumulators.put(link.getAccount(), accumulator);
+        }
+        // Take only the first link for an account in the year, as Statement does.
+        if (accumulator.links[i] == null) {
+          accumulator.links[i] = link;
+        }
+      }
+    }
+    accumulate();
+  }
+
+  /**
+   * Sweep the items of every account once, adding each item to the bucket for its fiscal year.
+   */
+  private void accumulate() {
+    int count = 0;
+    for (Accumulator accumulator : accumulators.values()) {
+      for (Item item : accumulator.account.getItems()) {
+        long date = item.getTransaction().getDate().getTime();
+        // Find the first year that ends on or after the date.
+        int index = Arrays.binarySearch(ends, date);
+        index = index < 0 ? -index - 1 : index;
+        if (index < years.length) {
+          long amount = item.getCents();
+          amount = item.isDebit() ? -amount : amount;
+          if (date >= starts[index]) {
+            accumulator.activity[index] += amount;
+          } else {
+            accumulator.prior[index] += amount;
+          }
+          count++;
+        }
+      }
+      // Derive the balance sheet totals as running sums of the buckets.
+      long sum = 0L;
+      for (int i = 0; i < years.length; i++) {
+        sum += accumulator.prior[i] + accumulator.activity[i];
+        accumulator.cumulative[i] = sum;
+      }
+    }
+    logger.debug("Accumulated " + count + " items for " + accumulators.size() + " accounts in " +
+                 years.length + " fiscal years");
+  }
+
+  /**
+   * Is an account type a balance sheet type (assets, liabilities, equity)?
+   *
+   * @param type the account type
+   * @return true if the type appears on the balance sheet, false if on the income statement
+   */
+  private static boolean isBalanceSheet(AccountType type) {
+    return type == AccountType.ASSETS || type == AccountType.LIABILITIES ||
+           type == AccountType.EQUITY;
+  }
+
+  /**
+   * Get the statement total for an account in a fiscal year, the same amount as the account's
+   * rollup in the balance sheet or income statement for the year.
+   *
+   * @param account the account
+   * @param year    the fiscal year number
+   * @return the total or null if the account is not linked to the fiscal year in the report
+   */
+  public BigDecimal getTotal(Account account, Integer year) {
+    if (account == null || year == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    BigDecimal total = null;
+    Accumulator accumulator = accumulators.get(account);
+    int index = getIndex(year);
+    if (accumulator != null && index >= 0) {
+      Long cents = accumulator.getTotal(index);
+      total = cents == null ? null : BigDecimal.valueOf(cents, SCALE);
+    }
+    return total;
+  }
+
+  /**
+   * Get the index of a fiscal year in the report.
+   *
+   * @param year the fiscal year number
+   * @return the index or -1 if the year is not in the report
+   */
+  private int getIndex(Integer year) {
+    for (int i = 0; i < years.length; i++) {
+      if (years[i].getYear().equals(year)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Write the report as a tab-delimited data set. The header line names the columns section, type,
+   * group, account, and one column per fiscal year. The balance sheet rows and total come first,
+   * then the income statement rows and total, then the trial balance debit, credit, and net totals
+   * for each year. Accounts appear in the section, type, group, and order of their most recent
+   * fiscal year; a year column is empty if the account is not linked to that year.
+   *
+   * @param writer the writer to which to write the report
+   * @throws IOException when there is a problem writing the data
+   */
+  public void write(Writer writer) throws IOException {
+    if (writer == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    List<Accumulator> sorted = new ArrayList<>(accumulators.values());
+    sorted.sort(Comparator.comparing((Accumulator a) -> a.getLatestLink().getAccountType())
+                  .thenComparing(a -> a.getLatestLink().getGroupOrderNumber())
+                  .thenComparing(a -> a.getLatestLink().getAccountOrderNumber())
+                  .thenComparing(a -> a.account.getName()));
+
+    long[] balanceSheetTotals = new long[years.length];
+    long[] incomeStatementTotals = new long[years.length];
+    long[] debits = new long[years.length];
+    long[] credits = new long[years.length];
+
+    StringBuilder builder = new StringBuilder("Section\tType\tGroup\tAccount");
+    for (FiscalYear year : years) {
+      builder.append(DELIMITER);
+      builder.append(year.getYear());
+    }
+
+    for (boolean balanceSheet : new boolean[] {true, false}) {
+      String section = balanceSheet ? BALANCE_SHEET : INCOME_STATEMENT;
+      long[] sectionTotals = balanceSheet ? balanceSheetTotals : incomeStatementTotals;
+      for (Accumulator accumulator : sorted) {
+        FiscalYearAccount latest = accumulator.getLatestLink();
+        if (isBalanceSheet(latest.getAccountType()) == balanceSheet) {
+          builder.append(LINE_DELIMITER);
+          builder.append(section).append(DELIMITER);
+          builder.append(latest.getAccountType()).append(DELIMITER);
+          builder.append(latest.getGroup().getName()).append(DELIMITER);
+          builder.append(accumulator.account.getName());
+          for (int i = 0; i < years.length; i++) {
+            Long total = accumulator.getTotal(i);
+            builder.append(DELIMITER);
+            if (total != null) {
+              builder.append(BigDecimal.valueOf(total, SCALE));
+              sectionTotals[i] += total;
+              if (total < 0) {
+                debits[i] += total;
+              } else {
+                credits[i] += total;
+              }
+            }
+          }
+        }
+      }
+      appendTotalLine(builder, section, TOTAL, sectionTotals);
+    }
+
+    long[] net = new long[years.length];
+    for (int i = 0; i < years.length; i++) {
+      net[i] = debits[i] + credits[i];
+    }
+    appendTotalLine(builder, TRIAL_BALANCE, DEBITS, debits);
+    appendTotalLine(builder, TRIAL_BALANCE, CREDITS, credits);
+    appendTotalLine(builder, TRIAL_BALANCE, NET, net);
+
+    writer.write(builder.toString());
+  }
+
+  /**
+   * Append a line with a label and one total per year to the report.
+   *
+   * @param builder the in-progress report
+   * @param section the report section of the line
+   * @param label   the label for the totals
+   * @param totals  the totals in cents, one per year
+   */
+  private void appendTotalLine(StringBuilder builder, String section, String label,
+                               long[] totals) {
+    builder.append(LINE_DELIMITER);
+    builder.append(section).append(DELIMITER).append(DELIMITER).append(DELIMITER).append(label);
+    for (long total : totals) {
+      builder.append(DELIMITER);
+      builder.append(BigDecimal.valueOf(total, SCALE));
+    }
+  }
+}
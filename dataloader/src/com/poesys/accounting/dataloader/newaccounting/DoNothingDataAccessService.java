@@ -47,4 +47,14 @@ public class DoNothingDataAccessService implements IDataAccessService {
   public void storeTransactions(Set<Transaction> transactions) {
     // Does nothing, no exceptions thrown
   }
+
+  @Override
+  public void storeTransactions(Set<Transaction> transactions, Set<Transaction> stored) {
+    // Does nothing, no exceptions thrown
+  }
+
+  @Override
+  public void removeTransactions(String entityName, Set<Integer> years) {
+    // Does nothing, no exceptions thrown
+  }
 }
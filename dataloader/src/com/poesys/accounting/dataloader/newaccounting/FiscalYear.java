@@ -20,8 +20,12 @@ package com.poesys.accounting.dataloader.newaccounting;
 import com.poesys.db.InvalidParametersException;
 import org.apache.log4j.Logger;
 
+import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -41,17 +45,25 @@ import java.util.List;
  */
 public class FiscalYear {
   private static final Logger logger = Logger.getLogger(FiscalYear.class);
+  /** the time at which the last day of a fiscal year ends */
+  private static final LocalTime END_OF_DAY = LocalTime.of(23, 59, 59);
   /** the name of the fiscal year; usually the calendar year of the start date */
   private final Integer year;
-  /** the date and time at which the fiscal year starts */
-  private final Timestamp start;
-  /** the date and time at which the fiscal year ends */
-  private final Timestamp end;
+  /** the first day of the fiscal year as a number of days since 1970-01-01 */
+  private final int startDay;
+  /** the last day of the fiscal year as a number of days since 1970-01-01 */
+  private final int endDay;
   /** the last "old" identifier allocated to a transaction */
   private BigInteger id = BigInteger.ZERO;
 
   /** the set of accounts in the fiscal year */
-  private final List<FiscalYearAccount> accounts = new ArrayList<>();
+  private List<FiscalYearAccount> accounts = new ArrayList<>();
+  /** the number of changes to the model that affect the statements for the year */
+  private long version = 0L;
+  /** the most recently recorded statement balances for the year, null if none */
+  private StatementBalances statementBalances = null;
+  /** whether the fiscal year is frozen, with an immutable list of accounts */
+  private boolean frozen = false;
 
   // Messages
 
@@ -60,6 +72,8 @@ public class FiscalYear {
   private static final String NULL_ACCOUNT_ERROR = "account to add is null but is required";
   private static final String NO_DATE_ERROR = "date for comparison is null but is required";
   public static final String NO_ID_ERROR = "no last id supplied but one is required";
+  private static final String NULL_BALANCE_ERROR = "statement balance is null but is required";
+  private static final String END_BEFORE_START_ERROR = "fiscal year ends before it starts: ";
 
   /**
    * Create a FiscalYear object.
@@ -72,8 +86,27 @@ public class FiscalYear {
     }
     this.year = year;
     // Set start and end to calendar year values assumed by old accounting
-    this.start = Timestamp.valueOf(year + "-01-01 00:00:00");
-    this.end = Timestamp.valueOf(year + "-12-31 23:59:59");
+    this.startDay = (int)LocalDate.of(year, 1, 1).toEpochDay();
+    this.endDay = (int)LocalDate.of(year, 12, 31).toEpochDay();
+  }
+
+  /**
+   * Create a FiscalYear object for a fiscal year that need not be a calendar year.
+   *
+   * @param year  the name of the fiscal year; usually the calendar year of the start date
+   * @param start the first day of the fiscal year
+   * @param end   the last day of the fiscal year, on or after the first day
+   */
+  public FiscalYear(Integer year, LocalDate start, LocalDate end) {
+    if (year == null || start == null || end == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    if (end.isBefore(start)) {
+      throw new InvalidParametersException(END_BEFORE_START_ERROR + start + " to " + end);
+    }
+    this.year = year;
+    this.startDay = (int)start.toEpochDay();
+    this.endDay = (int)end.toEpochDay();
   }
 
   /**
@@ -86,21 +119,39 @@ public class FiscalYear {
   }
 
   /**
-   * Get the start timestamp.
+   * Get the start timestamp, midnight at the start of the first day.
    *
    * @return a timestamp
    */
   public Timestamp getStart() {
-    return start;
+    return Timestamp.valueOf(LocalDate.ofEpochDay(startDay).atStartOfDay());
   }
 
   /**
-   * Get the end timestamp.
+   * Get the end timestamp, the last second of the last day.
    *
    * @return a timestamp
    */
   public Timestamp getEnd() {
-    return end;
+    return Timestamp.valueOf(LocalDateTime.of(LocalDate.ofEpochDay(endDay), END_OF_DAY));
+  }
+
+  /**
+   * Get the first day of the fiscal year.
+   *
+   * @return the number of days since 1970-01-01
+   */
+  public int getStartDay() {
+    return startDay;
+  }
+
+  /**
+   * Get the last day of the fiscal year.
+   *
+   * @return the number of days since 1970-01-01
+   */
+  public int getEndDay() {
+    return endDay;
   }
 
   /**
@@ -154,11 +205,18 @@ public class FiscalYear {
     if (date == null) {
       throw new InvalidParametersException(NO_DATE_ERROR);
     }
-    Boolean in = Boolean.FALSE;
-    if (date.compareTo(start) >= 0 && date.compareTo(end) <= 0) {
-      in = Boolean.TRUE;
-    }
-    return in;
+    return isIn(toEpochDay(date));
+  }
+
+  /**
+   * Is a day in the fiscal year? This is the test the rollups apply to every item, comparing the
+   * epoch day of the transaction to the start and end days.
+   *
+   * @param epochDay the number of days since 1970-01-01
+   * @return true if the day is within the year, false if not
+   */
+  boolean isIn(int epochDay) {
+    return epochDay >= startDay && epochDay <= endDay;
   }
 
   /**
@@ -174,25 +232,62 @@ public class FiscalYear {
     if (date == null) {
       throw new InvalidParametersException(NO_DATE_ERROR);
     }
-    Boolean in = Boolean.FALSE;
-    if (date.compareTo(end) <= 0) {
-      in = Boolean.TRUE;
-    }
-    return in;
+    return isInYearOrPriorYear(toEpochDay(date));
+  }
+
+  /**
+   * Is a day in the fiscal year or a previous year? That means the day is not after the end day.
+   *
+   * @param epochDay the number of days since 1970-01-01
+   * @return true if the day is not after the end day of the fiscal year, false if it is
+   */
+  boolean isInYearOrPriorYear(int epochDay) {
+    return epochDay <= endDay;
+  }
+
+  /**
+   * Get the epoch day of a timestamp in the local time zone.
+   *
+   * @param date the timestamp
+   * @return the number of days since 1970-01-01
+   */
+  private static int toEpochDay(Timestamp date) {
+    return (int)date.toLocalDateTime().toLocalDate().toEpochDay();
   }
 
   /**
    * Get a threadsafe version of the set of accounts.
    *
-   * @return a threadsafe list of fiscal-year-account links
+   * @return a threadsafe list of fiscal-year-account links, immutable once the year is frozen
    */
   public List<FiscalYearAccount> getAccounts() {
-    return Collections.synchronizedList(accounts);
+    return frozen ? accounts : Collections.synchronizedList(accounts);
+  }
+
+  /**
+   * Freeze the fiscal year once the model is built, replacing the accounts with an immutable copy
+   * that any number of threads can read without locks. Adding an account to a frozen year throws an
+   * UnsupportedOperationException; the statement balances can still be recorded.
+   */
+  public void freeze() {
+    if (!frozen) {
+      accounts = Frozen.list(accounts);
+      frozen = true;
+    }
+  }
+
+  /**
+   * Is the fiscal year frozen?
+   *
+   * @return true if the fiscal year is frozen, false if accounts may still be added
+   */
+  public boolean isFrozen() {
+    return frozen;
   }
 
   /**
    * Link an account to the fiscal year. Ensure that the links are ordered by account type, group,
-   * and account within the year.
+   * and account within the year by inserting the link in place rather than sorting the list.
    *
    * @param account the account to add
    */
@@ -200,8 +295,57 @@ public class FiscalYear {
     if (account == null) {
       throw new InvalidParametersException(NULL_ACCOUNT_ERROR);
     }
-    accounts.add(account);
-    Collections.sort(accounts);
+    FiscalYearAccount.insert(accounts, account);
+    modified();
+  }
+
+  /**
+   * Register a change to the model that affects the statements for the fiscal year, such as a new
+   * account link or a new item dated in or before the year. Any recorded statement balances become
+   * stale.
+   */
+  void modified() {
+    version++;
+  }
+
+  /**
+   * Get the number of changes registered with modified(), which tells whether the model changed in
+   * a way that affects the year's statements since an earlier call.
+   *
+   * @return the version of the fiscal year
+   */
+  long getVersion() {
+    return version;
+  }
+
+  /**
+   * Record the balances of the balance sheet and income statement for the fiscal year as computed
+   * from the current model. The balances remain available through getStatementBalances() until the
+   * model changes in a way that affects the year's statements.
+   *
+   * @param balanceSheetBalance    the balance of the balance sheet
+   * @param incomeStatementBalance the balance of the income statement
+   */
+  public void setStatementBalances(BigDecimal balanceSheetBalance,
+                                   BigDecimal incomeStatementBalance) {
+    if (balanceSheetBalance == null || incomeStatementBalance == null) {
+      throw new InvalidParametersException(NULL_BALANCE_ERROR);
+    }
+    statementBalances = new StatementBalances(balanceSheetBalance, incomeStatementBalance, version);
+  }
+
+  /**
+   * Get the recorded statement balances for the fiscal year if the model has not changed since they
+   * were recorded.
+   *
+   * @return the balances or null if there are none or they are stale
+   */
+  public StatementBalances getStatementBalances() {
+    StatementBalances balances = null;
+    if (statementBalances != null && statementBalances.getVersion() == version) {
+      balances = statementBalances;
+    }
+    return balances;
   }
 
   @Override
@@ -229,6 +373,6 @@ public class FiscalYear {
 
   @Override
   public String toString() {
-    return "FiscalYear [year=" + year + ", start=" + start + ", end=" + end + "]";
+    return "FiscalYear [year=" + year + ", start=" + getStart() + ", end=" + getEnd() + "]";
   }
 }
@@ -17,6 +17,8 @@
  */
 package com.poesys.accounting.dataloader.newaccounting;
 
+import java.util.List;
+
 /**
  * A Data Transfer Object that represents a link between a fiscal year and an account. The link
  * specifies the account type and account group that contain the account in the year. The group has
@@ -133,6 +135,28 @@ public class FiscalYearAccount implements Comparable<FiscalYearAccount> {
     return returnValue;
   }
 
+  /**
+   * Insert a link into a list of links kept in natural order, after any links that compare equal
+   * to it. The result is the same as adding the link and sorting the list with a stable sort, but
+   * the method finds the position with a binary search instead of sorting the whole list.
+   *
+   * @param links the ordered list of links
+   * @param link  the link to insert
+   */
+  static void insert(List<FiscalYearAccount> links, FiscalYearAccount link) {
+    int low = 0;
+    int high = links.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (links.get(mid).compareTo(link) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    links.add(low, link);
+  }
+
   /**
    * Get the fiscal year.
    *
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Creates the immutable, exactly sized copies of collections that the model objects switch to when
+ * frozen. Once frozen, the model has no writers, so any number of threads can read the collections
+ * without locks or wrappers. Small sets, such as the items of a transaction or the reimbursements
+ * of an item, are arrays searched linearly, which is smaller than a hash table and as fast for a
+ * few elements.
+ *
+ * @author Robert J. Muller
+ */
+final class Frozen {
+  /** the largest set kept as an array */
+  private static final int SMALL_SET = 8;
+
+  /**
+   * Prevent instantiation of the utility class.
+   */
+  private Frozen() {
+  }
+
+  /**
+   * Copy a collection into an immutable list of the same size and order.
+   *
+   * @param collection the collection to copy
+   * @param <E>        the type of element
+   * @return the immutable list
+   */
+  static <E> List<E> list(Collection<E> collection) {
+    List<E> list;
+    if (collection.isEmpty()) {
+      list = Collections.emptyList();
+    } else if (collection.size() == 1) {
+      list = Collections.singletonList(collection.iterator().next());
+    } else {
+      list = Collections.unmodifiableList(new ArrayList<>(collection));
+    }
+    return list;
+  }
+
+  /**
+   * Copy a collection into an immutable set of the same elements and iteration order.
+   *
+   * @param collection the collection to copy
+   * @param <E>        the type of element
+   * @return the immutable set
+   */
+  static <E> Set<E> set(Collection<E> collection) {
+    Set<E> set;
+    if (collection.isEmpty()) {
+      set = Collections.emptySet();
+    } else if (collection.size() == 1) {
+      set = Collections.singleton(collection.iterator().next());
+    } else if (collection.size() <= SMALL_SET) {
+      set = new ArraySet<>(collection.toArray());
+    } else {
+      set = Collections.unmodifiableSet(new HashSet<>(collection));
+    }
+    return set;
+  }
+
+  /**
+   * An immutable set of a few distinct elements held in an array
+   *
+   * @param <E> the type of element
+   */
+  private static final class ArraySet<E> extends AbstractSet<E> {
+    /** the elements */
+    private final Object[] elements;
+
+    /**
+     * Create an ArraySet object.
+     *
+     * @param elements the distinct elements, not copied
+     */
+    ArraySet(Object[] elements) {
+      this.elements = elements;
+    }
+
+    @Override
+    public int size() {
+      return elements.length;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      for (Object element : elements) {
+        if (element.equals(o)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+      return new Iterator<E>() {
+        /** the index of the next element */
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+          return next < elements.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+          if (next >= elements.length) {
+            throw new NoSuchElementException();
+          }
+          return (E)elements[next++];
+        }
+      };
+    }
+
+    @Override
+    public Object[] toArray() {
+      return Arrays.copyOf(elements, elements.length);
+    }
+  }
+}
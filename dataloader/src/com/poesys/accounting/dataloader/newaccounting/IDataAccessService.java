@@ -67,12 +67,40 @@ public interface IDataAccessService {
   /**
    * Create and store Accounting/DB transaction-related objects to the database for a set of
    * transactions. This method assumes that entity, fiscal year, account group, and account data is
-   * already stored to the database. It also makes no assumptions about the transaction set. As this
-   * method represents a complete database transaction, the caller should submit a list of
-   * transactions that is complete with respect to the logical unit of work, usually transactions
-   * for all the existing fiscal years.
+   * already stored to the database. It also makes no assumptions about the transaction set. The
+   * caller should submit a set of transactions that is complete with respect to the logical unit of
+   * work, usually transactions for all the existing fiscal years, as reimbursements may link
+   * transactions in different years. An implementation may store the transactions in several
+   * database transactions, in which case a failure leaves the earlier ones stored. A
+   * reimbursement whose reimbursing item is in a transaction outside the set waits for a later
+   * call that includes it.
    *
    * @param transactions the set of transactions to store
    */
   void storeTransactions(Set<Transaction> transactions);
+
+  /**
+   * Store a set of new transactions that follow transactions stored by earlier calls on this
+   * service, linking the reimbursements between the new transactions and the stored ones. The
+   * method stores only the new transactions and does not look for them in the database, so a call
+   * neither stores nor reads again what earlier calls stored. A reimbursement whose reimbursing
+   * item is in a transaction neither new nor stored waits for a later call that includes it.
+   *
+   * @param transactions the set of new transactions to store
+   * @param stored       the transactions stored by earlier calls whose receivables the new
+   *                     transactions may reimburse; transactions without receivables may be left
+   *                     out
+   */
+  void storeTransactions(Set<Transaction> transactions, Set<Transaction> stored);
+
+  /**
+   * Remove the transactions that this service stored for an entity in a set of fiscal years, with
+   * their items, reimbursements, and id map rows. This method rolls back the years a load stored a
+   * year at a time. What earlier loads stored stays, as do the fiscal years, accounts, and
+   * fiscal-year-account links, which a later store reuses.
+   *
+   * @param entityName the name of the accounting entity
+   * @param years      the fiscal years of the transactions to remove
+   */
+  void removeTransactions(String entityName, Set<Integer> years);
 }
@@ -50,4 +50,30 @@ public interface IStorageManager {
    */
   void store(String entityName, CapitalStructure structure, List<FiscalYear> years,
              Set<Transaction> transactions, IDataAccessService storageService);
+
+  /**
+   * Start storing an entity a year at a time with storeYear(), storing what all the years share
+   * once, before the first year.
+   *
+   * @param entityName     the name of the accounting entity being stored
+   * @param structure      the capital structure of the accounting system
+   * @param storageService the storage service to call; the same service that stores the years
+   */
+  void startYears(String entityName, CapitalStructure structure,
+                  IDataAccessService storageService);
+
+  /**
+   * Store one more fiscal year of an entity after startYears() and the earlier years, storing only
+   * the year and its new transactions.
+   *
+   * @param entityName     the name of the accounting entity being stored
+   * @param year           the new fiscal year
+   * @param transactions   the set of transactions not yet stored
+   * @param stored         the transactions already stored whose receivables the new transactions
+   *                       reimburse, for linking the reimbursements
+   * @param storageService the storage service to call; the same service that stored the earlier
+   *                       years
+   */
+  void storeYear(String entityName, FiscalYear year, Set<Transaction> transactions,
+                 Set<Transaction> stored, IDataAccessService storageService);
 }
\ No newline at end of file
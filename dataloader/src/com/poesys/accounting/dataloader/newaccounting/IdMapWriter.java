@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * Writes the map of old transaction ids to new transaction ids into the IdMap table in committed
+ * JDBC batches
+ *
+ * @author Robert J. Muller
+ */
+public class IdMapWriter extends AbstractBatchWriter<Map.Entry<OldId, BigDecimal>> {
+  /** SQL for ID map insert */
+  static final String ID_MAP_INSERT_SQL =
+    "INSERT INTO IdMap(entityName, year, oldId, newId) VALUES (?, ?, ?, ?)";
+
+  // messages
+  private static final String NO_ENTITY_NAME_ERROR = "no entity name for ID map entry: ";
+  private static final String NO_ID_ERROR = "no id for ID map entry: ";
+  private static final String NO_NEW_ID_ERROR = "no new id for ID map entry: ";
+
+  /**
+   * Create an IdMapWriter object with the default batch size and retries.
+   */
+  public IdMapWriter() {
+    this(DEFAULT_BATCH_SIZE, DEFAULT_RETRIES);
+  }
+
+  /**
+   * Create an IdMapWriter object.
+   *
+   * @param batchSize the number of rows to send and commit in each batch
+   * @param retries   the number of times to retry a failed batch
+   */
+  public IdMapWriter(int batchSize, int retries) {
+    super(batchSize, retries);
+  }
+
+  /**
+   * Write the ids to the IdMap table. The method checks all the entries before writing any of them.
+   *
+   * @param connection the open database connection
+   * @param ids        the map of new transaction ids indexed by old transaction id
+   * @return the number of rows written
+   * @throws SQLException when a chunk fails after all retries or the statement can't be prepared
+   */
+  public int write(Connection connection, Map<OldId, BigDecimal> ids) throws SQLException {
+    return write(connection, ids == null ? null : ids.entrySet());
+  }
+
+  @Override
+  protected String getSql() {
+    return ID_MAP_INSERT_SQL;
+  }
+
+  @Override
+  protected void check(Map.Entry<OldId, BigDecimal> entry) {
+    // Verify existence of required fields.
+    if (entry.getKey().getEntityName() == null) {
+      throw new InvalidParametersException(NO_ENTITY_NAME_ERROR + entry.getKey());
+    }
+    if (entry.getKey().getId() == null) {
+      throw new InvalidParametersException(NO_ID_ERROR + entry.getKey());
+    }
+    if (entry.getValue() == null) {
+      throw new InvalidParametersException(NO_NEW_ID_ERROR + entry.getKey());
+    }
+  }
+
+  @Override
+  protected void setParams(PreparedStatement stmt, Map.Entry<OldId, BigDecimal> entry)
+    throws SQLException {
+    OldId id = entry.getKey();
+    stmt.setString(1, id.getEntityName());
+    stmt.setInt(2, id.getYear());
+    stmt.setBigDecimal(3, id.getId());
+    stmt.setBigDecimal(4, entry.getValue());
+  }
+}
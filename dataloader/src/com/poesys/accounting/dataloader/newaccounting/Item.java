@@ -18,11 +18,9 @@
 package com.poesys.accounting.dataloader.newaccounting;
 
 import java.math.BigInteger;
-import java.sql.Timestamp;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
@@ -40,16 +38,24 @@ public class Item implements Comparable<Item> {
   private static final Logger logger = Logger.getLogger(Item.class);
   /** the parent transaction that owns this item */
   private final Transaction transaction;
-  /** the dollar amount of the item */
-  private final Double amount;
+  /** the dollar amount of the item in cents */
+  private final long cents;
   /** the account to which the item applies */
   private final Account account;
   /** whether the item is a debit (true) or credit (false) item */
-  private final Boolean debit;
+  private final boolean debit;
   /** whether the item has been reconciled against an external data source */
-  private final Boolean checked;
-  /** the set of reimbursements for a receivable item */
-  private final Set<Reimbursement> reimbursements = new HashSet<>();
+  private final boolean checked;
+  /** the hash code of the item, computed once from the account and transaction */
+  private final int hash;
+  /**
+   * the set of reimbursements for an item against a receivable account; concurrent, as a pipelined
+   * store may iterate the set while a later year's reimbursements are added; items against other
+   * accounts can't have reimbursements and share an empty set
+   */
+  private Set<Reimbursement> reimbursements;
+  /** the total reimbursed and allocated amount of the reimbursements in cents */
+  private long settledCents = 0L;
 
   // messages
 
@@ -78,9 +84,9 @@ public class Item implements Comparable<Item> {
     /** the item that reimburses the receivable item */
     private final Item reimbursingItem;
     /** the dollar amount reimbursed by the reimbursing item */
-    private final Double reimbursedAmount;
+    private final Money reimbursedAmount;
     /** the dollar amount written off by the reimbursing transaction */
-    private final Double allocatedAmount;
+    private final Money allocatedAmount;
 
     /**
      * Create a Reimbursement object. The reimbursed amount must be less than or equal to the amount
@@ -93,6 +99,21 @@ public class Item implements Comparable<Item> {
      */
     public Reimbursement(Item receivable, Item reimbursingItem, Double reimbursedAmount, Double
       allocatedAmount) {
+      this(receivable, reimbursingItem,
+           reimbursedAmount == null ? null : Money.valueOf(reimbursedAmount),
+           allocatedAmount == null ? null : Money.valueOf(allocatedAmount));
+    }
+
+    /**
+     * Create a Reimbursement object with amounts in cents.
+     *
+     * @param receivable       the item being reimbursed
+     * @param reimbursingItem  the item reimbursing this receivable item
+     * @param reimbursedAmount the amount reimbursed
+     * @param allocatedAmount  the amount written off, default zero
+     */
+    private Reimbursement(Item receivable, Item reimbursingItem, Money reimbursedAmount,
+                          Money allocatedAmount) {
       if (receivable == null) {
         throw new InvalidParametersException(NULL_RECEIVABLE_ERROR);
       }
@@ -106,12 +127,12 @@ public class Item implements Comparable<Item> {
       this.reimbursingItem = reimbursingItem;
       this.reimbursedAmount = reimbursedAmount;
       // default allocated amount to 0.00
-      this.allocatedAmount = allocatedAmount == null ? 0.00D : allocatedAmount;
+      this.allocatedAmount = allocatedAmount == null ? Money.ZERO : allocatedAmount;
 
       // Validate reimbursed amount against reimbursing item amount
-      if (reimbursedAmount.compareTo(reimbursingItem.amount) > 0) {
+      if (reimbursedAmount.getCents() > reimbursingItem.cents) {
         throw new InvalidParametersException(
-          INVALID_AMOUNT_ERROR + reimbursingItem.amount + ": " + reimbursedAmount);
+          INVALID_AMOUNT_ERROR + reimbursingItem.getMoney() + ": " + reimbursedAmount);
       }
 
       if (!receivable.getAccount().isReceivable()) {
@@ -190,6 +211,15 @@ public class Item implements Comparable<Item> {
      * @return a reimbursedAmount
      */
     public Double getReimbursedAmount() {
+      return reimbursedAmount.doubleValue();
+    }
+
+    /**
+     * Get the reimbursed amount in cents.
+     *
+     * @return a reimbursed amount
+     */
+    public Money getReimbursedMoney() {
       return reimbursedAmount;
     }
 
@@ -199,6 +229,15 @@ public class Item implements Comparable<Item> {
      * @return a allocatedAmount
      */
     public Double getAllocatedAmount() {
+      return allocatedAmount.doubleValue();
+    }
+
+    /**
+     * Get the allocated amount in cents.
+     *
+     * @return an allocated amount
+     */
+    public Money getAllocatedMoney() {
       return allocatedAmount;
     }
 
@@ -209,7 +248,8 @@ public class Item implements Comparable<Item> {
     @Override
     public String toString() {
       return "Reimbursement [receivable=" + receivable + ", reimbursingItem=" + reimbursingItem +
-             ", reimbursedAmount=" + reimbursedAmount + ", allocatedAmount=" + allocatedAmount +
+             ", reimbursedAmount=" + getReimbursedAmount() + ", allocatedAmount=" +
+             getAllocatedAmount() +
              "]";
     }
   }
@@ -225,28 +265,46 @@ public class Item implements Comparable<Item> {
    *                    default false
    */
   public Item(Transaction transaction, Double amount, Account account, Boolean debit, Boolean
+    checked) {
+    this(transaction, amount == null ? null : Money.valueOf(amount), account, debit, checked);
+  }
+
+  /**
+   * Create an Item object with an amount in cents.
+   *
+   * @param transaction the parent transaction that owns this item
+   * @param amount      the amount of the item
+   * @param account     the account to which the item applies
+   * @param debit       whether the item is a debit (true) or credit (false) item
+   * @param checked     whether the item has been reconciled against an external data source;
+   *                    default false
+   */
+  public Item(Transaction transaction, Money amount, Account account, Boolean debit, Boolean
     checked) {
     if (transaction == null || amount == null || account == null || debit == null) {
       throw new InvalidParametersException(
         NULL_PARAMETER_ERROR + ": " + transaction + ", " + amount + ", " + account + ", " + debit);
     }
     this.transaction = transaction;
-    this.amount = amount;
+    this.cents = amount.getCents();
     this.account = account;
-    // Set the item into the account.
+    this.debit = debit;
+    this.checked = checked != null && checked;
+    this.reimbursements = Boolean.TRUE.equals(account.isReceivable()) ?
+                          ConcurrentHashMap.newKeySet() : Collections.emptySet();
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + account.hashCode();
+    result = prime * result + transaction.hashCode();
+    this.hash = result;
+    // Set the item into the account after setting all the fields the account uses.
     account.addItem(this);
     logger.debug("Added item to account " + account.getName() + ": " + this);
-    this.debit = debit;
-    this.checked = checked == null ? Boolean.FALSE : checked;
   }
 
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + ((account == null) ? 0 : account.hashCode());
-    result = prime * result + ((transaction == null) ? 0 : transaction.hashCode());
-    return result;
+    return hash;
   }
 
   @Override
@@ -261,6 +319,9 @@ public class Item implements Comparable<Item> {
       return false;
     }
     Item other = (Item)obj;
+    if (hash != other.hash) {
+      return false;
+    }
     if (account == null) {
       if (other.account != null) {
         return false;
@@ -319,9 +380,7 @@ public class Item implements Comparable<Item> {
           returnValue = thisAccountOrder.compareTo(thatAccountOrder);
           if (returnValue == 0) {
             // same account order, compare date
-            Timestamp thisDate = transaction.getDate();
-            Timestamp thatDate = other.transaction.getDate();
-            returnValue = thisDate.compareTo(thatDate);
+            returnValue = transaction.compareDate(other.transaction);
             if (returnValue == 0) {
               BigInteger thisId = transaction.getId();
               BigInteger thatId = other.transaction.getId();
@@ -344,22 +403,13 @@ public class Item implements Comparable<Item> {
    * @return a fiscal-year-account link
    */
   private FiscalYearAccount getFiscalYearAccount(FiscalYear transactionYear, Account account) {
-    FiscalYearAccount returnLink = null;
-    List<FiscalYearAccount> years = account.getYears();
-    if (years != null) {
-      Integer lastYear = years.get(0).getFiscalYear().getYear();
-
-      for (FiscalYearAccount link : account.getYears()) {
-        if (link.getFiscalYear().equals(transactionYear)) {
-          returnLink = link;
-          break;
-        }
-        lastYear = link.getFiscalYear().getYear();
-      }
-      // if no link found for fiscal year, test against range and throw exception if not in range
-      if (returnLink == null && transactionYear.getYear().compareTo(lastYear) > 0) {
-        throw new RuntimeException(YEAR_OUT_OF_RANGE_ERROR + lastYear + " for transaction year " + transactionYear.getYear());
-      }
+    FiscalYearAccount returnLink = account.getFiscalYearAccount(transactionYear);
+    Integer lastYear = account.getLastYear();
+    // if no link found for fiscal year, test against range and throw exception if not in range
+    if (returnLink == null && lastYear != null &&
+        transactionYear.getYear().compareTo(lastYear) > 0) {
+      throw new RuntimeException(
+        YEAR_OUT_OF_RANGE_ERROR + lastYear + " for transaction year " + transactionYear.getYear());
     }
 
     return returnLink;
@@ -389,7 +439,25 @@ public class Item implements Comparable<Item> {
    * @return a dollar amount
    */
   public Double getAmount() {
-    return amount;
+    return cents / 100D;
+  }
+
+  /**
+   * Get the amount in cents.
+   *
+   * @return an amount
+   */
+  public Money getMoney() {
+    return Money.ofCents(cents);
+  }
+
+  /**
+   * Get the amount as a number of cents, without creating a Money object.
+   *
+   * @return the amount in cents
+   */
+  public long getCents() {
+    return cents;
   }
 
   /**
@@ -399,7 +467,34 @@ public class Item implements Comparable<Item> {
    * @return a set of reimbursements or an empty set if not a receivable
    */
   public Set<Reimbursement> getReimbursements() {
-    return Collections.synchronizedSet(reimbursements);
+    return reimbursements;
+  }
+
+  /**
+   * Get the amount of a receivable that reimbursements have not yet settled.
+   *
+   * @return the item amount less the reimbursed and allocated amounts, in cents
+   */
+  public long getRemainingCents() {
+    return cents - settledCents;
+  }
+
+  /**
+   * Is the item an open receivable? That means it is a debit against a receivable account with an
+   * amount that reimbursements have not fully settled.
+   *
+   * @return true if the item is an open receivable, false if not
+   */
+  public boolean isOpen() {
+    return debit && Boolean.TRUE.equals(account.isReceivable()) && settledCents < cents;
+  }
+
+  /**
+   * Freeze the item, replacing its reimbursements with an immutable copy; the transaction freezes
+   * its items when it is frozen.
+   */
+  void freeze() {
+    reimbursements = Frozen.set(reimbursements);
   }
 
   /**
@@ -437,24 +532,29 @@ public class Item implements Comparable<Item> {
     if (!(account.isReceivable() && debit)) {
       throw new InvalidParametersException("Cannot reimburse non-receivable item " + this);
     }
-    // Validate against receivable amount and current set of reimbursements.
-    Double total = reimbursedAmount + allocatedAmount;
-    // Sum up the existing reimbursement amounts along with the current ones.
-    for (Reimbursement reimbursement : reimbursements) {
-      total += reimbursement.reimbursedAmount + reimbursement.allocatedAmount;
-    }
+    Money reimbursed = reimbursedAmount == null ? null : Money.valueOf(reimbursedAmount);
+    Money allocated = allocatedAmount == null ? Money.ZERO : Money.valueOf(allocatedAmount);
+    // Validate the current amounts plus the running total of the existing reimbursements against
+    // the receivable amount.
+    long amount = (reimbursed == null ? 0L : reimbursed.getCents()) + allocated.getCents();
+    long total = settledCents + amount;
     // Total must be less than or equal to the receivable amount.
-    if (total.compareTo(amount) > 0) {
+    if (total > cents) {
       throw new InvalidParametersException(
-        "Total reimbursement is " + total + " but receivable amount is " + amount +
-        "; check for prior-year reimbursement of receivable in these reimbursements " +
+        "Total reimbursement is " + Money.ofCents(total) + " but receivable amount is " +
+        getMoney() + "; check for prior-year reimbursement of receivable in these reimbursements " +
         reimbursements + ")");
     }
     // Add the reimbursement to the set of reimbursements in both this item and
     // the reimbursing item (two-way visibility).
     Reimbursement reimbursement =
-      new Reimbursement(this, reimbursingItem, reimbursedAmount, allocatedAmount);
-    reimbursements.add(reimbursement);
+      new Reimbursement(this, reimbursingItem, reimbursed, allocated);
+    if (reimbursements.add(reimbursement)) {
+      settledCents = total;
+      if (settledCents == cents) {
+        account.settle(this);
+      }
+    }
     reimbursingItem.getReimbursements().add(reimbursement);
   }
 
@@ -464,7 +564,7 @@ public class Item implements Comparable<Item> {
     // of items within transaction
     return "Item [year=" + transaction.getYear() + ", transaction=" +
            (transaction.getId() == null ? "(no trans id)" : transaction.getId()) +
-           ", description=" + transaction.getDescription() + ", amount=" + amount + ", account=" +
-           account + ", debit=" + debit + ", checked=" + checked + "]";
+           ", description=" + transaction.getDescription() + ", amount=" + getAmount() +
+           ", account=" + account + ", debit=" + debit + ", checked=" + checked + "]";
   }
 }
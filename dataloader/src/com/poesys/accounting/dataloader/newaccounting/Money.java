@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * <p> An immutable monetary amount held as a whole number of cents. Addition, negation, and
+ * comparison are exact long arithmetic, so summing the items of a transaction or an account does
+ * not allocate BigDecimal values or accumulate floating-point error. </p> <p> The conversion from
+ * a double gives exactly the cents of new BigDecimal(amount).setScale(2, RoundingMode.HALF_DOWN),
+ * the conversion the model has always used for item amounts: the amount times 100 is rounded
+ * directly when it is clearly away from a half cent, and only amounts within rounding error of a
+ * half cent go through BigDecimal to break the tie exactly. </p>
+ *
+ * @author Robert J. Muller
+ */
+public final class Money implements Comparable<Money> {
+  /** the zero amount */
+  public static final Money ZERO = new Money(0L);
+
+  /** the scale of the amount as a decimal */
+  private static final int SCALE = 2;
+  /** the number of cents in a dollar */
+  private static final double CENTS = 100D;
+  /** the largest magnitude in cents that a double holds as an exact whole number */
+  private static final double EXACT_LIMIT = 4503599627370496D; // 2^52
+  /** the number of units in the last place of the scaled amount treated as near a half cent */
+  private static final double TIE_MARGIN = 4D;
+
+  /** the amount in cents */
+  private final long cents;
+
+  // messages
+  private static final String NULL_AMOUNT_ERROR = "monetary amount is required but is null";
+
+  /**
+   * Create a Money object.
+   *
+   * @param cents the amount in cents
+   */
+  private Money(long cents) {
+    this.cents = cents;
+  }
+
+  /**
+   * Get the amount for a number of cents.
+   *
+   * @param cents the amount in cents
+   * @return the amount
+   */
+  public static Money ofCents(long cents) {
+    return cents == 0L ? ZERO : new Money(cents);
+  }
+
+  /**
+   * Get the amount for a double dollar amount, rounded to cents as new BigDecimal(amount)
+   * .setScale(2, RoundingMode.HALF_DOWN) rounds it.
+   *
+   * @param amount the dollar amount
+   * @return the amount
+   */
+  public static Money valueOf(Double amount) {
+    if (amount == null) {
+      throw new InvalidParametersException(NULL_AMOUNT_ERROR);
+    }
+    return ofCents(toCents(amount));
+  }
+
+  /**
+   * Get the amount for a decimal dollar amount, rounded to cents with RoundingMode.HALF_DOWN.
+   *
+   * @param amount the dollar amount
+   * @return the amount
+   */
+  public static Money valueOf(BigDecimal amount) {
+    if (amount == null) {
+      throw new InvalidParametersException(NULL_AMOUNT_ERROR);
+    }
+    return ofCents(amount.setScale(SCALE, RoundingMode.HALF_DOWN).unscaledValue().longValue());
+  }
+
+  /**
+   * Convert a double dollar amount to cents, rounding half cents toward zero. The exact product of
+   * the amount and 100 is within half a unit in the last place of the computed product, so when the
+   * computed product is clearly away from a half cent, rounding it gives the exact result; near a
+   * half cent, and for amounts too large or not finite, the method uses BigDecimal.
+   *
+   * @param amount the dollar amount
+   * @return the amount in cents
+   */
+  static long toCents(double amount) {
+    double scaled = Math.abs(amount * CENTS);
+    if (scaled < EXACT_LIMIT) {
+      double floor = Math.floor(scaled);
+      double fraction = scaled - floor;
+      if (Math.abs(fraction - 0.5D) > Math.ulp(scaled) * TIE_MARGIN) {
+        long result = (long)floor + (fraction > 0.5D ? 1L : 0L);
+        return amount < 0D ? -result : result;
+      }
+    }
+    return new BigDecimal(amount).setScale(SCALE, RoundingMode.HALF_DOWN).unscaledValue()
+      .longValue();
+  }
+
+  /**
+   * Get the amount in cents.
+   *
+   * @return the number of cents
+   */
+  public long getCents() {
+    return cents;
+  }
+
+  /**
+   * Add an amount to this amount.
+   *
+   * @param other the amount to add
+   * @return the sum
+   */
+  public Money add(Money other) {
+    return ofCents(cents + other.cents);
+  }
+
+  /**
+   * Subtract an amount from this amount.
+   *
+   * @param other the amount to subtract
+   * @return the difference
+   */
+  public Money subtract(Money other) {
+    return ofCents(cents - other.cents);
+  }
+
+  /**
+   * Negate the amount.
+   *
+   * @return the negated amount
+   */
+  public Money negate() {
+    return ofCents(-cents);
+  }
+
+  /**
+   * Get the absolute value of the amount.
+   *
+   * @return the amount if non-negative, the negated amount if negative
+   */
+  public Money abs() {
+    return cents < 0L ? negate() : this;
+  }
+
+  /**
+   * Get the sign of the amount.
+   *
+   * @return -1, 0, or 1 as the amount is negative, zero, or positive
+   */
+  public int signum() {
+    return Long.signum(cents);
+  }
+
+  /**
+   * Is the amount zero?
+   *
+   * @return true if the amount is zero, false if not
+   */
+  public boolean isZero() {
+    return cents == 0L;
+  }
+
+  /**
+   * Get the amount as a decimal dollar amount.
+   *
+   * @return the amount (scale 2)
+   */
+  public BigDecimal toBigDecimal() {
+    return BigDecimal.valueOf(cents, SCALE);
+  }
+
+  /**
+   * Get the amount as a double dollar amount, the double closest to the exact decimal amount.
+   *
+   * @return the amount
+   */
+  public double doubleValue() {
+    return cents / CENTS;
+  }
+
+  @Override
+  public int compareTo(Money other) {
+    return Long.compare(cents, other.cents);
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(cents);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    return cents == ((Money)obj).cents;
+  }
+
+  @Override
+  public String toString() {
+    return toBigDecimal().toPlainString();
+  }
+}
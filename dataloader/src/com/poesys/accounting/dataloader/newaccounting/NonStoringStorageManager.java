@@ -33,4 +33,16 @@ public class NonStoringStorageManager extends AbstractValidatingStorageManager i
                     Set<Transaction> transactions, IDataAccessService storageService) {
     // do nothing
   }
+
+  @Override
+  public void startYears(String entityName, CapitalStructure structure,
+                         IDataAccessService storageService) {
+    // do nothing
+  }
+
+  @Override
+  public void storeYear(String entityName, FiscalYear year, Set<Transaction> transactions,
+                        Set<Transaction> stored, IDataAccessService storageService) {
+    // do nothing
+  }
 }
@@ -87,6 +87,33 @@ public class OldId {
     return id;
   }
 
+  // Compare the ids as integers so that ids read from the database with a scale match.
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + entityName.hashCode();
+    result = prime * result + year.hashCode();
+    result = prime * result + id.toBigInteger().hashCode();
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null) {
+      return false;
+    }
+    if (getClass() != obj.getClass()) {
+      return false;
+    }
+    OldId other = (OldId)obj;
+    return entityName.equals(other.entityName) && year.equals(other.year) &&
+           id.toBigInteger().equals(other.id.toBigInteger());
+  }
+
   @Override
   public String toString() {
     return "OldId [entityName=" + entityName + ", year=" + year + ", id=" + id.toBigInteger() + "]";
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * <p> Allocates a monetary amount among a set of capital entities by their ownership shares in
+ * exact integer cents. The ownership percentages have CapitalEntity.SCALE decimal digits, so the
+ * allocator works in thousandths: each entity first gets the floor of the amount times its share,
+ * and the few pennies left over go to the entities with the largest fractional remainders (the
+ * largest-remainder method). The allocation is linear in the number of entities: the remainders
+ * fall into one of a thousand buckets, and only the entities in the last bucket that gets pennies
+ * need ordering by balance to break the tie. </p> <p> Ties break by balance so that equal ownership
+ * brings the balances to equality or near equality as AccountCollectionDistributor does: a
+ * positive amount goes to the smaller balances first, a negative amount to the larger ones, and
+ * equal balances in the order added. </p> <p> The allocator is a reusable buffer: clear it, add
+ * each entity's ownership and balance, then allocate or adjust and get the item amounts. The arrays
+ * grow to the largest structure and are then reused, so repeating the allocation every fiscal year
+ * does not allocate. The allocator is not thread safe. </p>
+ *
+ * @author Robert J. Muller
+ */
+public class OwnershipAllocator {
+  /** the number of ownership units in 100% */
+  private static final int UNITS = 1000;
+  /** the scale for BigDecimal monetary amounts */
+  private static final int SCALE = 2;
+  /** the initial size of the buffers */
+  private static final int INITIAL_CAPACITY = 4;
+
+  /** the number of entities in the current allocation */
+  private int size = 0;
+  /** the ownership of each entity in thousandths */
+  private long[] weights = new long[INITIAL_CAPACITY];
+  /** the balance of each entity in cents */
+  private long[] balances = new long[INITIAL_CAPACITY];
+  /** the item amount allocated to each entity in cents */
+  private long[] items = new long[INITIAL_CAPACITY];
+  /** the fractional remainder of each entity's share in thousandths of a cent */
+  private int[] fractions = new int[INITIAL_CAPACITY];
+  /** the entities tied at the boundary remainder */
+  private Integer[] ties = new Integer[INITIAL_CAPACITY];
+  /** the count of entities for each fractional remainder */
+  private final int[] counts = new int[UNITS];
+
+  // messages
+  private static final String NULL_PARAMETER_ERROR = "ownership and balance are required";
+  private static final String OWNERSHIP_ERROR = "ownership across entities does not sum to 100%";
+  private static final String NO_ENTITY_ERROR = "no entity at index ";
+
+  /**
+   * Clear the allocator for a new allocation, keeping the buffers.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Get the number of entities added since the last clear.
+   *
+   * @return the number of entities
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Add an entity's ownership and current balance to the allocation.
+   *
+   * @param ownership the decimal ownership percentage (0.5 for 50%)
+   * @param balance   the current balance (scale 2)
+   */
+  public void add(BigDecimal ownership, BigDecimal balance) {
+    if (ownership == null || balance == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    if (size == weights.length) {
+      int capacity = size * 2;
+      weights = Arrays.copyOf(weights, capacity);
+      balances = Arrays.copyOf(balances, capacity);
+      items = Arrays.copyOf(items, capacity);
+      fractions = Arrays.copyOf(fractions, capacity);
+      ties = Arrays.copyOf(ties, capacity);
+    }
+    weights[size] =
+      ownership.setScale(CapitalEntity.SCALE, RoundingMode.HALF_UP).unscaledValue().longValue();
+    balances[size] = toCents(balance);
+    items[size] = 0L;
+    size++;
+  }
+
+  /**
+   * Convert a monetary amount to integer cents, rounding as the model rounds item amounts.
+   *
+   * @param amount the amount
+   * @return the amount in cents
+   */
+  private static long toCents(BigDecimal amount) {
+    return Money.valueOf(amount).getCents();
+  }
+
+  /**
+   * Get the item amount allocated to an entity by the last allocate() or adjust().
+   *
+   * @param index the index of the entity in the order added
+   * @return the item amount (scale 2)
+   */
+  public BigDecimal getItemAmount(int index) {
+    if (index < 0 || index >= size) {
+      throw new InvalidParametersException(NO_ENTITY_ERROR + index);
+    }
+    return BigDecimal.valueOf(items[index], SCALE);
+  }
+
+  /**
+   * Get the item amount allocated to an entity by the last allocate() or adjust() in cents.
+   *
+   * @param index the index of the entity in the order added
+   * @return the item amount
+   */
+  public Money getItemMoney(int index) {
+    if (index < 0 || index >= size) {
+      throw new InvalidParametersException(NO_ENTITY_ERROR + index);
+    }
+    return Money.ofCents(items[index]);
+  }
+
+  /**
+   * Allocate an amount to the entities by ownership, setting the item amount for each entity to its
+   * share. The shares sum exactly to the amount.
+   *
+   * @param amount the amount to allocate (scale 2)
+   */
+  public void allocate(BigDecimal amount) {
+    if (amount == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    validate();
+    distribute(toCents(amount), true);
+  }
+
+  /**
+   * Compute the item amounts that move the current balances to the ownership shares of their total.
+   * If every balance is already within a penny of its exact share, there is nothing to adjust and
+   * the method leaves the item amounts at zero. Otherwise the total is allocated by ownership, with
+   * the left-over pennies going to the larger balances to keep the adjustment small, and the item
+   * amounts are the differences between the allocated and the current balances.
+   *
+   * @return true if there is an adjustment, false if the balances are already in proportion
+   */
+  public boolean adjust() {
+    validate();
+    long total = 0L;
+    for (int i = 0; i < size; i++) {
+      total += balances[i];
+    }
+    boolean adjusted = false;
+    for (int i = 0; i < size && !adjusted; i++) {
+      // Compare the balance to the exact share in thousandths of a cent.
+      adjusted = Math.abs(balances[i] * UNITS - total * weights[i]) >= UNITS;
+    }
+    if (adjusted) {
+      distribute(total, false);
+      for (int i = 0; i < size; i++) {
+        items[i] -= balances[i];
+      }
+    } else {
+      Arrays.fill(items, 0, size, 0L);
+    }
+    return adjusted;
+  }
+
+  /**
+   * Check that there are entities and that their ownership sums to 100%.
+   */
+  private void validate() {
+    long sum = 0L;
+    for (int i = 0; i < size; i++) {
+      sum += weights[i];
+    }
+    if (size == 0 || sum != UNITS) {
+      throw new RuntimeException(OWNERSHIP_ERROR);
+    }
+  }
+
+  /**
+   * Distribute an amount by the largest-remainder method, setting the item amounts. The method
+   * allocates the magnitude of the amount and applies the sign afterward, so a negative amount
+   * rounds toward zero like a positive one.
+   *
+   * @param amount        the amount in cents
+   * @param smallestFirst true to give left-over pennies to the smallest signed balances first
+   *                      (evening out the balances), false to give them to the largest first
+   */
+  private void distribute(long amount, boolean smallestFirst) {
+    long sign = amount < 0 ? -1L : 1L;
+    long magnitude = Math.abs(amount);
+    long leftOver = magnitude;
+    Arrays.fill(counts, 0);
+    for (int i = 0; i < size; i++) {
+      long product = magnitude * weights[i];
+      items[i] = product / UNITS;
+      fractions[i] = (int)(product % UNITS);
+      leftOver -= items[i];
+      counts[fractions[i]]++;
+    }
+
+    // Find the boundary remainder: every entity above it gets a penny, some at it do.
+    int boundary = UNITS - 1;
+    while (leftOver > 0 && leftOver >= counts[boundary]) {
+      leftOver -= counts[boundary];
+      boundary--;
+    }
+
+    int tieCount = 0;
+    for (int i = 0; i < size; i++) {
+      if (fractions[i] > boundary) {
+        items[i]++;
+      } else if (fractions[i] == boundary && leftOver > 0) {
+        ties[tieCount++] = i;
+      }
+    }
+    if (leftOver > 0) {
+      // Only the tied entities need ordering, by signed balance and then order added.
+      Arrays.sort(ties, 0, tieCount, (a, b) -> {
+        int result = Long.compare(sign * balances[a], sign * balances[b]);
+        return result != 0 ? (smallestFirst ? result : -result) : Integer.compare(a, b);
+      });
+      for (int i = 0; i < leftOver; i++) {
+        items[ties[i]]++;
+      }
+    }
+
+    for (int i = 0; i < size; i++) {
+      items[i] *= sign;
+    }
+  }
+}
@@ -38,13 +38,15 @@ public class PoesysFiscalYearUpdater implements IFiscalYearUpdater {
     // Update the fiscal year with closing transactions.
 
     CapitalStructure capStruct = builder.getCapitalStructure();
+    // Read the capital balances once; each operation applies its transactions to them.
+    CapitalBalances balances = new CapitalBalances(fiscalYear, capStruct, builder);
 
     // Add a transaction to transfer net income to capital.
-    Transaction capitalTransaction = capStruct.getIncomeToCapitalTransaction(fiscalYear, builder);
+    Transaction capitalTransaction = capStruct.getIncomeToCapitalTransaction(builder, balances);
     transactions.add(capitalTransaction);
 
     // Add transactions to close the distributions accounts by removing the distributions from the capital accounts.
-    List<Transaction> distTransactions = capStruct.getDistributionTransactions(fiscalYear, builder);
+    List<Transaction> distTransactions = capStruct.getDistributionTransactions(balances);
     if (!distTransactions.isEmpty()) {
       logger.debug("Adding distribution adjustment transactions: " + distTransactions);
       transactions.addAll(distTransactions);
@@ -52,7 +54,7 @@ public class PoesysFiscalYearUpdater implements IFiscalYearUpdater {
 
     // Ensure that the capital accounts are nearly equal. Create a balance sheet
     // and a distributor.
-    Transaction adjustingTransaction = capStruct.getCapitalAdjustmentTransaction(builder);
+    Transaction adjustingTransaction = capStruct.getCapitalAdjustmentTransaction(builder, balances);
     if (adjustingTransaction != null) {
       transactions.add(adjustingTransaction);
       logger.debug("Adding capital adjustment transactions: " + distTransactions);
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * <p> An aging report of the receivable items of a set of receivable accounts, bucketing the
+ * outstanding amount of each receivable by the number of days it has been open: 0 to 30, 31 to
+ * 60, 61 to 90, 91 to 120, and over 120 days. </p> <p> The report indexes the receivable graph
+ * once as a compact list of events sorted by day: each receivable item opens with its amount on
+ * its transaction date, and each reimbursement settles its reimbursed and allocated amounts on the
+ * date of the reimbursing transaction. Every event carries the open day of its receivable, so the
+ * aging as of any date is a single pass over the events up to that date, adding each event to the
+ * bucket for the age of its receivable. A receivable reimbursed after the date is still
+ * outstanding as of the date. </p>
+ *
+ * @author Robert J. Muller
+ */
+public class ReceivableAging {
+  /** logger for this class */
+  private static final Logger logger = Logger.getLogger(ReceivableAging.class);
+
+  /** the BigDecimal scale for money amounts */
+  private static final int SCALE = 2;
+  /** data value delimiter for data strings */
+  private static final String DELIMITER = "\t";
+  /** line delimiter for data strings */
+  private static final String LINE_DELIMITER = "\n";
+  /** the oldest age in days of each bucket but the last, which has no limit */
+  private static final int[] AGE_LIMITS = {30, 60, 90, 120};
+  /** the number of aging buckets */
+  public static final int BUCKETS = AGE_LIMITS.length + 1;
+  /** the column labels of the buckets */
+  private static final String[] BUCKET_LABELS = {"0-30", "31-60", "61-90", "91-120", "Over 120"};
+  private static final String AS_OF = "As of ";
+  private static final String TOTAL = "Total";
+
+  /** the receivable accounts in name order, indexed by the account column */
+  private final Account[] accounts;
+  /** the day of each event, in ascending order */
+  private final int[] eventDays;
+  /** the open day of the receivable of each event */
+  private final int[] openDays;
+  /** the ordinal of the account of each event */
+  private final int[] accountOrdinals;
+  /** the amount of each event in cents, positive for a receivable, negative for a settlement */
+  private final long[] cents;
+
+  // Messages
+
+  private static final String NULL_PARAMETER_ERROR =
+    "ReceivableAging parameters are required but one is null";
+  private static final String NO_ACCOUNT_ERROR = "no receivable account ";
+
+  /**
+   * Create a ReceivableAging object, indexing the receivable items and reimbursements of the
+   * receivable accounts in a collection; the index ignores the other accounts.
+   *
+   * @param accounts the accounts
+   */
+  public ReceivableAging(Collection<Account> accounts) {
+    if (accounts == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    Set<Account> receivables = new HashSet<>();
+    for (Account account : accounts) {
+      if (Boolean.TRUE.equals(account.isReceivable())) {
+        receivables.add(account);
+      }
+    }
+    this.accounts = receivables.toArray(new Account[receivables.size()]);
+    Arrays.sort(this.accounts, Comparator.comparing(Account::getName));
+
+    // Collect the events: a receivable opening, then its settlements no earlier than the opening.
+    List<int[]> days = new ArrayList<>();
+    List<Long> amounts = new ArrayList<>();
+    for (int ordinal = 0; ordinal < this.accounts.length; ordinal++) {
+      for (Item item : this.accounts[ordinal].getItems()) {
+        if (item.isDebit()) {
+          int openDay = item.getTransaction().getEpochDay();
+          days.add(new int[] {openDay, openDay, ordinal});
+          amounts.add(item.getCents());
+          for (Item.Reimbursement reimbursement : item.getReimbursements()) {
+            if (reimbursement.getReceivable() == item) {
+              int settledDay = reimbursement.getReimbursingItem().getTransaction().getEpochDay();
+              days.add(new int[] {Math.max(settledDay, openDay), openDay, ordinal});
+              amounts.add(-(reimbursement.getReimbursedMoney().getCents() +
+                            reimbursement.getAllocatedMoney().getCents()));
+            }
+          }
+        }
+      }
+    }
+
+    // Sort the events by day, then put them into the columns.
+    int size = days.size();
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Integer.compare(days.get(a)[0], days.get(b)[0]));
+    eventDays = new int[size];
+    openDays = new int[size];
+    accountOrdinals = new int[size];
+    cents = new long[size];
+    for (int row = 0; row < size; row++) {
+      int[] event = days.get(order[row]);
+      eventDays[row] = event[0];
+      openDays[row] = event[1];
+      accountOrdinals[row] = event[2];
+      cents[row] = amounts.get(order[row]);
+    }
+    logger.debug("Indexed " + size + " receivable events for " + this.accounts.length +
+                 " receivable accounts");
+  }
+
+  /**
+   * Get the number of receivable accounts.
+   *
+   * @return the number of accounts in the report
+   */
+  public int getAccountCount() {
+    return accounts.length;
+  }
+
+  /**
+   * Get a receivable account by its position in name order.
+   *
+   * @param ordinal the position of the account
+   * @return the account
+   */
+  public Account getAccount(int ordinal) {
+    if (ordinal < 0 || ordinal >= accounts.length) {
+      throw new InvalidParametersException(NO_ACCOUNT_ERROR + ordinal);
+    }
+    return accounts[ordinal];
+  }
+
+  /**
+   * Get the aging bucket for an age.
+   *
+   * @param age the number of days a receivable has been open
+   * @return the index of the bucket
+   */
+  private static int getBucket(int age) {
+    int bucket = 0;
+    while (bucket < AGE_LIMITS.length && age > AGE_LIMITS[bucket]) {
+      bucket++;
+    }
+    return bucket;
+  }
+
+  /**
+   * Age the receivables as of a day in one pass over the events up to that day.
+   *
+   * @param asOfDay the day as of which to age the receivables, as days since 1970-01-01
+   * @return the outstanding cents of each account (in name order) in each bucket
+   */
+  public long[][] age(int asOfDay) {
+    long[][] buckets = new long[accounts.length][BUCKETS];
+    for (int row = 0; row < eventDays.length && eventDays[row] <= asOfDay; row++) {
+      buckets[accountOrdinals[row]][getBucket(asOfDay - openDays[row])] += cents[row];
+    }
+    return buckets;
+  }
+
+  /**
+   * Write the aging as of a day as a tab-delimited data set with a line per receivable account, a
+   * column per bucket, and a total line and column.
+   *
+   * @param writer  the writer
+   * @param asOfDay the day as of which to age the receivables, as days since 1970-01-01
+   * @throws IOException when there is a problem writing the report
+   */
+  public void write(Writer writer, int asOfDay) throws IOException {
+    if (writer == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    long[][] buckets = age(asOfDay);
+    long[] totals = new long[BUCKETS];
+    StringBuilder builder = new StringBuilder(AS_OF).append(LocalDate.ofEpochDay(asOfDay));
+    for (String label : BUCKET_LABELS) {
+      builder.append(DELIMITER).append(label);
+    }
+    builder.append(DELIMITER).append(TOTAL);
+    for (int ordinal = 0; ordinal < accounts.length; ordinal++) {
+      builder.append(LINE_DELIMITER).append(accounts[ordinal].getName());
+      appendAmounts(builder, buckets[ordinal]);
+      for (int bucket = 0; bucket < BUCKETS; bucket++) {
+        totals[bucket] += buckets[ordinal][bucket];
+      }
+    }
+    builder.append(LINE_DELIMITER).append(TOTAL);
+    appendAmounts(builder, totals);
+    builder.append(LINE_DELIMITER);
+    writer.write(builder.toString());
+  }
+
+  /**
+   * Append the amounts of the buckets and their total to a line of the report.
+   *
+   * @param builder the report builder
+   * @param amounts the amounts of the buckets in cents
+   */
+  private static void appendAmounts(StringBuilder builder, long[] amounts) {
+    long total = 0L;
+    for (long amount : amounts) {
+      builder.append(DELIMITER).append(BigDecimal.valueOf(amount, SCALE));
+      total += amount;
+    }
+    builder.append(DELIMITER).append(BigDecimal.valueOf(total, SCALE));
+  }
+}
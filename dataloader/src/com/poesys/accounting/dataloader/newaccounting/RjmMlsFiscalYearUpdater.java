@@ -34,9 +34,11 @@ public class RjmMlsFiscalYearUpdater implements IFiscalYearUpdater {
     // Update the fiscal year with closing transactions.
 
     CapitalStructure capStruct = builder.getCapitalStructure();
+    // Read the capital balances once; each operation applies its transactions to them.
+    CapitalBalances balances = new CapitalBalances(fiscalYear, capStruct, builder);
 
     // Add a transaction to transfer net income to capital.
-    Transaction capitalTransaction = capStruct.getIncomeToCapitalTransaction(fiscalYear, builder);
+    Transaction capitalTransaction = capStruct.getIncomeToCapitalTransaction(builder, balances);
     transactions.add(capitalTransaction);
   }
 }
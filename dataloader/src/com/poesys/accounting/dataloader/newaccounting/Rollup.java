@@ -18,7 +18,6 @@
 package com.poesys.accounting.dataloader.newaccounting;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -87,32 +86,26 @@ public class Rollup implements Comparable<Rollup> {
 
   /**
    * Sum the items against the account for the fiscal year and return the total. Arithmetic uses
-   * BigDecimal and the total returned is a BigDecimal for accurately scaled comparisons.
+   * exact cents and the total returned is a BigDecimal for accurately scaled comparisons. The
+   * balance sheet total is the account balance as of the end of the fiscal year, and the income
+   * statement total is the account activity over the year, both by the fiscal year dates from the
+   * account's balance index, which spares scanning the items.
    *
    * @return the sum of the items against the account taking credits as positive numbers and debits
    * as negative numbers
    */
   public BigDecimal getTotal() {
-    BigDecimal total = BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP);
     FiscalYear year = statement.getYear();
-    for (Item item : account.getItems()) {
-      Transaction transaction = item.getTransaction();
-      Statement.StatementType type = statement.getType();
-      // Iterate through all years up to the current year for balance sheet,
-      // only current year for income statement.
-      if ((type.equals(StatementType.BALANCE_SHEET) &&
-           year.isInYearOrPriorYear(transaction.getDate())) ||
-          (type.equals(StatementType.INCOME_STATEMENT) && year.isIn(transaction.getDate()))) {
-        BigDecimal amount = new BigDecimal(item.getAmount()).setScale(2, RoundingMode.HALF_DOWN);
-        // Negate the amount for debit items.
-        amount = item.isDebit() ? amount.negate() : amount;
-        total = total.add(amount);
-        logger.debug(
-          "Added item to " + account.getName() + " total for fiscal year " + year.getYear() + ": " +
-          amount + ", total = " + total);
-      }
+    long total;
+    boolean balanceSheet = statement.getType().equals(StatementType.BALANCE_SHEET);
+    if (balanceSheet) {
+      total = account.getBalance(year.getEndDay());
+    } else {
+      total = account.getActivity(year.getStartDay(), year.getEndDay());
     }
-    return total;
+    logger.debug("Total for " + account.getName() + " for fiscal year " + year.getYear() + ": " +
+                 Money.ofCents(total));
+    return BigDecimal.valueOf(total, 2);
   }
 
   @Override
@@ -152,8 +145,8 @@ public class Rollup implements Comparable<Rollup> {
     if (!this.equals(obj)) {
       // not equal, compare account type
       // Get the fiscal-year-account links for the two objects.
-      FiscalYearAccount thisLink = getFiscalYearAccount(statement.getYear(), account);
-      FiscalYearAccount thatLink = getFiscalYearAccount(statement.getYear(), obj.account);
+      FiscalYearAccount thisLink = account.getFiscalYearAccount(statement.getYear());
+      FiscalYearAccount thatLink = obj.account.getFiscalYearAccount(statement.getYear());
       AccountType thisType = account.getAccountType(statement.getYear());
       AccountType thatType = obj.account.getAccountType(statement.getYear());
       returnValue = thisType.compareTo(thatType);
@@ -174,25 +167,6 @@ public class Rollup implements Comparable<Rollup> {
     return returnValue;
   }
 
-  /**
-   * Build a fiscal-year-account link given a year and account.
-   *
-   * @param year    the fiscal year to link
-   * @param account the account to link
-   * @return a fiscal-year-account link
-   */
-  private FiscalYearAccount getFiscalYearAccount(FiscalYear year, Account account) {
-    FiscalYearAccount returnLink = null;
-
-    for (FiscalYearAccount link : account.getYears()) {
-      if (link.getFiscalYear().equals(year)) {
-        returnLink = link;
-        break;
-      }
-    }
-    return returnLink;
-  }
-
   @Override
   public String toString() {
     return "Rollup [statement=" + statement + ", account=" + account + ", total=" +
@@ -251,8 +225,8 @@ public class Rollup implements Comparable<Rollup> {
 
       // Process all transactions for balance sheet accounts, only those for the
       // current year for income statement accounts.
-      if ((balanceSheetAccount && year.isInYearOrPriorYear(transaction.getDate())) ||
-          year.isIn(transaction.getDate())) {
+      if ((balanceSheetAccount && year.isInYearOrPriorYear(transaction.getEpochDay())) ||
+          year.isIn(transaction.getEpochDay())) {
         // Item is in year
 
         // Construct the date formatted as an Oracle date.
@@ -261,8 +235,7 @@ public class Rollup implements Comparable<Rollup> {
         String date = formatter.format(transaction.getDate());
 
         // Scale the amount as 2digit, then negate the amount for debit items.
-        BigDecimal amount = new BigDecimal(item.getAmount()).setScale(2, RoundingMode.HALF_DOWN);
-        amount = item.isDebit() ? amount.negate() : amount;
+        Money amount = item.isDebit() ? item.getMoney().negate() : item.getMoney();
 
         // Build the data line.
         data.append(line);
@@ -47,4 +47,14 @@ public class RuntimeExceptionDataAccessService implements IDataAccessService {
   public void storeTransactions(Set<Transaction> transactions) {
     throw new RuntimeException("storeTransactions() runtime exception");
   }
+
+  @Override
+  public void storeTransactions(Set<Transaction> transactions, Set<Transaction> stored) {
+    throw new RuntimeException("storeTransactions() runtime exception");
+  }
+
+  @Override
+  public void removeTransactions(String entityName, Set<Integer> years) {
+    throw new RuntimeException("removeTransactions() runtime exception");
+  }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.math.BigDecimal;
+
+/**
+ * An immutable data transfer object containing the balance sheet and income statement balances
+ * computed for a fiscal year, recorded with the version of the fiscal year at the time of the
+ * computation so that later users of the balances can tell whether the underlying model has changed
+ * since then
+ *
+ * @author Robert J. Muller
+ */
+public class StatementBalances {
+  /** the balance of the balance sheet */
+  private final BigDecimal balanceSheetBalance;
+  /** the balance of the income statement */
+  private final BigDecimal incomeStatementBalance;
+  /** the fiscal year version at which the balances were computed */
+  private final long version;
+
+  /**
+   * Create a StatementBalances object.
+   *
+   * @param balanceSheetBalance    the balance of the balance sheet
+   * @param incomeStatementBalance the balance of the income statement
+   * @param version                the fiscal year version at which the balances were computed
+   */
+  StatementBalances(BigDecimal balanceSheetBalance, BigDecimal incomeStatementBalance,
+                    long version) {
+    this.balanceSheetBalance = balanceSheetBalance;
+    this.incomeStatementBalance = incomeStatementBalance;
+    this.version = version;
+  }
+
+  /**
+   * Get the balance sheet balance.
+   *
+   * @return a balance
+   */
+  public BigDecimal getBalanceSheetBalance() {
+    return balanceSheetBalance;
+  }
+
+  /**
+   * Get the income statement balance.
+   *
+   * @return a balance
+   */
+  public BigDecimal getIncomeStatementBalance() {
+    return incomeStatementBalance;
+  }
+
+  /**
+   * Get the version.
+   *
+   * @return a version
+   */
+  long getVersion() {
+    return version;
+  }
+
+  @Override
+  public String toString() {
+    return "StatementBalances [balanceSheetBalance=" + balanceSheetBalance +
+           ", incomeStatementBalance=" + incomeStatementBalance + ", version=" + version + "]";
+  }
+}
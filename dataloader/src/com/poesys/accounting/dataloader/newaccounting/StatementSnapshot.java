@@ -0,0 +1,546 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * A compact, binary summary of the balance sheet and income statement for a fiscal year, suitable
+ * for comparing the results of one data loader run against another without reparsing the text
+ * statement files. The snapshot contains one entry per account linked to the fiscal year with the
+ * account type, group and account order numbers, the rollup total in cents, and a hash of the
+ * detail items that make up the total. Entries are held in account-name order, so comparing two
+ * snapshots with diff() is a single merge pass over the two entry lists.
+ *
+ * @author Robert J. Muller
+ */
+public class StatementSnapshot {
+  /** logger for this class */
+  private static final Logger logger = Logger.getLogger(StatementSnapshot.class);
+
+  /** the file signature ("PSNP") that starts every snapshot */
+  private static final int MAGIC = 0x50534E50;
+  /** the snapshot format version */
+  private static final int VERSION = 2;
+  /** the BigDecimal scale for money amounts */
+  private static final int SCALE = 2;
+  /** the number of seconds in a day, for the local date and time of an item in the detail hash */
+  private static final long SECONDS_PER_DAY = 86400L;
+
+  /** the fiscal year number of the snapshot */
+  private final Integer year;
+  /** the account entries sorted by account name */
+  private final List<Entry> entries;
+
+  // Messages
+
+  private static final String NULL_PARAMETER_ERROR =
+    "StatementSnapshot parameters are required but one is null";
+  private static final String NOT_A_SNAPSHOT_ERROR = "input is not a statement snapshot";
+  private static final String UNSUPPORTED_VERSION_ERROR = "unsupported statement snapshot version ";
+  private static final String UNSORTED_ERROR = "statement snapshot entries out of order at account ";
+  private static final String INVALID_COUNT_ERROR = "invalid statement snapshot account count ";
+  private static final String INVALID_TYPE_ERROR = "invalid statement snapshot account type ";
+  private static final String OFFSET_MSG = " at offset ";
+
+  /**
+   * One account in a statement snapshot
+   */
+  public static class Entry {
+    /** the account name, the identifier for the account */
+    private final String name;
+    /** the type of the account in the fiscal year */
+    private final AccountType type;
+    /** the order of the account group within the account type */
+    private final Integer groupOrderNumber;
+    /** the order of the account within the account group */
+    private final Integer accountOrderNumber;
+    /** the rollup total in cents, credits positive and debits negative */
+    private final long total;
+    /** an order-independent hash of the detail items in the total */
+    private final long detailHash;
+
+    /**
+     * Create an Entry object.
+     *
+     * @param name               the account name
+     * @param type               the type of the account in the fiscal year
+     * @param groupOrderNumber   the order of the account group within the account type
+     * @param accountOrderNumber the order of the account within the account group
+     * @param total              the rollup total in cents
+     * @param detailHash         the hash of the detail items in the total
+     */
+    Entry(String name, AccountType type, Integer groupOrderNumber, Integer accountOrderNumber,
+          long total, long detailHash) {
+      this.name = name;
+      this.type = type;
+      this.groupOrderNumber = groupOrderNumber;
+      this.accountOrderNumber = accountOrderNumber;
+      this.total = total;
+      this.detailHash = detailHash;
+    }
+
+    /**
+     * Get the name.
+     *
+     * @return a name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Get the type.
+     *
+     * @return a type
+     */
+    public AccountType getType() {
+      return type;
+    }
+
+    /**
+     * Get the group order number.
+     *
+     * @return a group order number
+     */
+    public Integer getGroupOrderNumber() {
+      return groupOrderNumber;
+    }
+
+    /**
+     * Get the account order number.
+     *
+     * @return an account order number
+     */
+    public Integer getAccountOrderNumber() {
+      return accountOrderNumber;
+    }
+
+    /**
+     * Get the total in cents.
+     *
+     * @return a total
+     */
+    public long getTotal() {
+      return total;
+    }
+
+    /**
+     * Get the detail hash.
+     *
+     * @return a hash
+     */
+    public long getDetailHash() {
+      return detailHash;
+    }
+
+    /**
+     * Get the total as a money amount.
+     *
+     * @return a BigDecimal amount with two decimal places
+     */
+    public BigDecimal getAmount() {
+      return BigDecimal.valueOf(total, SCALE);
+    }
+
+    @Override
+    public String toString() {
+      return "Entry [name=" + name + ", type=" + type + ", groupOrderNumber=" + groupOrderNumber +
+             ", accountOrderNumber=" + accountOrderNumber + ", total=" + getAmount() +
+             ", detailHash=" + Long.toHexString(detailHash) + "]";
+    }
+  }
+
+  /**
+   * A changed, added, or removed account found by comparing two snapshots
+   */
+  public static class Difference {
+    /** the entry from the old snapshot, null if the account was added */
+    private final Entry oldEntry;
+    /** the entry from the new snapshot, null if the account was removed */
+    private final Entry newEntry;
+
+    /**
+     * Create a Difference object.
+     *
+     * @param oldEntry the entry from the old snapshot, null if the account was added
+     * @param newEntry the entry from the new snapshot, null if the account was removed
+     */
+    Difference(Entry oldEntry, Entry newEntry) {
+      this.oldEntry = oldEntry;
+      this.newEntry = newEntry;
+    }
+
+    /**
+     * Get the name of the account that differs.
+     *
+     * @return a name
+     */
+    public String getName() {
+      return oldEntry != null ? oldEntry.getName() : newEntry.getName();
+    }
+
+    /**
+     * Get the old entry.
+     *
+     * @return an entry or null if the account was added
+     */
+    public Entry getOldEntry() {
+      return oldEntry;
+    }
+
+    /**
+     * Get the new entry.
+     *
+     * @return an entry or null if the account was removed
+     */
+    public Entry getNewEntry() {
+      return newEntry;
+    }
+
+    /**
+     * Return the difference as a tab-delimited line with the account name, the old total, the new
+     * total, and a description of the change.
+     *
+     * @return the tab-delimited data string
+     */
+    public String toData() {
+      StringBuilder builder = new StringBuilder(getName());
+      builder.append("\t");
+      builder.append(oldEntry == null ? "" : oldEntry.getAmount().toString());
+      builder.append("\t");
+      builder.append(newEntry == null ? "" : newEntry.getAmount().toString());
+      builder.append("\t");
+      if (oldEntry == null) {
+        builder.append("added");
+      } else if (newEntry == null) {
+        builder.append("removed");
+      } else if (oldEntry.getTotal() != newEntry.getTotal()) {
+        builder.append("total changed");
+      } else if (oldEntry.getDetailHash() != newEntry.getDetailHash()) {
+        builder.append("details changed");
+      } else {
+        builder.append("type or order changed");
+      }
+      return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+      return "Difference [oldEntry=" + oldEntry + ", newEntry=" + newEntry + "]";
+    }
+  }
+
+  /**
+   * Create a StatementSnapshot object by summarizing the accounts linked to a fiscal year. Balance
+   * sheet accounts (assets, liabilities, and equity) total all items up to the end of the year;
+   * income statement accounts (income and expenses) total only the items in the year, following
+   * the rules in Rollup.
+   *
+   * @param fiscalYear the fiscal year to summarize
+   */
+  public StatementSnapshot(FiscalYear fiscalYear) {
+    if (fiscalYear == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    this.year = fiscalYear.getYear();
+    List<Entry> list = new ArrayList<>();
+    Set<Account> accounts = new HashSet<>();
+    for (FiscalYearAccount link : fiscalYear.getAccounts()) {
+      Account account = link.getAccount();
+      // Take only the first link for an account in the year, as Statement does.
+      if (accounts.add(account)) {
+        list.add(summarize(fiscalYear, link));
+      }
+    }
+    list.sort((e1, e2) -> e1.getName().compareTo(e2.getName()));
+    this.entries = Collections.unmodifiableList(list);
+  }
+
+  /**
+   * Create a StatementSnapshot object from a list of entries already sorted by account name.
+   *
+   * @param year    the fiscal year number
+   * @param entries the sorted entries
+   */
+  private StatementSnapshot(Integer year, List<Entry> entries) {
+    this.year = year;
+    this.entries = Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Summarize an account in a fiscal year as a snapshot entry, computing the total and the detail
+   * hash in a single pass over the items.
+   *
+   * @param fiscalYear the fiscal year being summarized
+   * @param link       the link between the fiscal year and the account to summarize
+   * @return the entry
+   */
+  private static Entry summarize(FiscalYear fiscalYear, FiscalYearAccount link) {
+    Account account = link.getAccount();
+    AccountType type = account.getAccountType(fiscalYear);
+    boolean balanceSheetAccount =
+      type == AccountType.ASSETS || type == AccountType.LIABILITIES || type == AccountType.EQUITY;
+    long total = 0L;
+    long hash = 0L;
+    for (Item item : account.getItems()) {
+      Transaction transaction = item.getTransaction();
+      if ((balanceSheetAccount && fiscalYear.isInYearOrPriorYear(transaction.getEpochDay())) ||
+          (!balanceSheetAccount && fiscalYear.isIn(transaction.getEpochDay()))) {
+        long amount = item.getCents();
+        amount = item.isDebit() ? -amount : amount;
+        total += amount;
+        // Sum the item hashes so the account hash does not depend on item order.
+        long second = transaction.getEpochDay() * SECONDS_PER_DAY + transaction.getSecondOfDay();
+        hash += mix(mix(mix(transaction.getId().longValue()) + second) + amount);
+      }
+    }
+    return new Entry(account.getName(), type, link.getGroupOrderNumber(),
+                     link.getAccountOrderNumber(), total, hash);
+  }
+
+  /**
+   * Scramble the bits of a long value so that small changes in the input produce widespread changes
+   * in the output (the SplitMix64 finalizer).
+   *
+   * @param value the value to scramble
+   * @return the scrambled value
+   */
+  private static long mix(long value) {
+    long z = value + 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Get the fiscal year number.
+   *
+   * @return a year
+   */
+  public Integer getYear() {
+    return year;
+  }
+
+  /**
+   * Get the entries, sorted by account name.
+   *
+   * @return an immutable list of entries
+   */
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Write the snapshot to an output stream in binary form. The method flushes but does not close
+   * the stream.
+   *
+   * @param stream the output stream
+   * @throws IOException when there is a problem writing the stream
+   */
+  public void write(OutputStream stream) throws IOException {
+    if (stream == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    DataOutputStream out = new DataOutputStream(stream);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(year);
+    out.writeInt(entries.size());
+    for (Entry entry : entries) {
+      out.writeUTF(entry.getName());
+      out.writeByte(entry.getType().ordinal());
+      out.writeInt(entry.getGroupOrderNumber());
+      out.writeInt(entry.getAccountOrderNumber());
+      out.writeLong(entry.getTotal());
+      out.writeLong(entry.getDetailHash());
+    }
+    out.flush();
+  }
+
+  /**
+   * Read a snapshot written by write() from an input stream. The method does not close the stream.
+   *
+   * @param stream the input stream
+   * @return the snapshot
+   * @throws IOException when there is a problem reading the stream or the stream does not contain a
+   *                     valid snapshot; the message gives the offset of the invalid data
+   */
+  public static StatementSnapshot read(InputStream stream) throws IOException {
+    if (stream == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    CountingInputStream counter = new CountingInputStream(stream);
+    DataInputStream in = new DataInputStream(counter);
+    if (in.readInt() != MAGIC) {
+      throw new IOException(NOT_A_SNAPSHOT_ERROR);
+    }
+    long offset = counter.getCount();
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException(UNSUPPORTED_VERSION_ERROR + version + OFFSET_MSG + offset);
+    }
+    int year = in.readInt();
+    offset = counter.getCount();
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IOException(INVALID_COUNT_ERROR + count + OFFSET_MSG + offset);
+    }
+    AccountType[] types = AccountType.values();
+    List<Entry> entries = new ArrayList<>();
+    String previous = null;
+    for (int i = 0; i < count; i++) {
+      offset = counter.getCount();
+      String name = in.readUTF();
+      if (previous != null && previous.compareTo(name) >= 0) {
+        throw new IOException(UNSORTED_ERROR + name + OFFSET_MSG + offset);
+      }
+      previous = name;
+      offset = counter.getCount();
+      int ordinal = in.readUnsignedByte();
+      if (ordinal >= types.length) {
+        throw new IOException(INVALID_TYPE_ERROR + ordinal + OFFSET_MSG + offset);
+      }
+      AccountType type = types[ordinal];
+      int groupOrderNumber = in.readInt();
+      int accountOrderNumber = in.readInt();
+      long total = in.readLong();
+      long detailHash = in.readLong();
+      entries.add(new Entry(name, type, groupOrderNumber, accountOrderNumber, total, detailHash));
+    }
+    logger.debug("Read statement snapshot for " + year + " with " + count + " accounts");
+    return new StatementSnapshot(year, entries);
+  }
+
+  /**
+   * Compare two snapshots and list the accounts that were added, removed, or changed in total,
+   * detail hash, type, or order. The comparison is a single merge pass over the two sorted entry
+   * lists, so it runs in time linear in the number of accounts.
+   *
+   * @param oldSnapshot the snapshot from the earlier run
+   * @param newSnapshot the snapshot from the later run
+   * @return a list of differences in account-name order, empty if the snapshots match
+   */
+  public static List<Difference> diff(StatementSnapshot oldSnapshot,
+                                      StatementSnapshot newSnapshot) {
+    if (oldSnapshot == null || newSnapshot == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    List<Difference> differences = new ArrayList<>();
+    List<Entry> oldEntries = oldSnapshot.getEntries();
+    List<Entry> newEntries = newSnapshot.getEntries();
+    int i = 0;
+    int j = 0;
+    while (i < oldEntries.size() || j < newEntries.size()) {
+      Entry oldEntry = i < oldEntries.size() ? oldEntries.get(i) : null;
+      Entry newEntry = j < newEntries.size() ? newEntries.get(j) : null;
+      int comparison = oldEntry == null ? 1 :
+                       newEntry == null ? -1 : oldEntry.getName().compareTo(newEntry.getName());
+      if (comparison < 0) {
+        differences.add(new Difference(oldEntry, null));
+        i++;
+      } else if (comparison > 0) {
+        differences.add(new Difference(null, newEntry));
+        j++;
+      } else {
+        if (oldEntry.getTotal() != newEntry.getTotal() ||
+            oldEntry.getDetailHash() != newEntry.getDetailHash() ||
+            oldEntry.getType() != newEntry.getType() ||
+            !oldEntry.getGroupOrderNumber().equals(newEntry.getGroupOrderNumber()) ||
+            !oldEntry.getAccountOrderNumber().equals(newEntry.getAccountOrderNumber())) {
+          differences.add(new Difference(oldEntry, newEntry));
+        }
+        i++;
+        j++;
+      }
+    }
+    return differences;
+  }
+
+  @Override
+  public String toString() {
+    return "StatementSnapshot [year=" + year + ", entries=" + entries.size() + "]";
+  }
+
+  /**
+   * An input stream that counts the bytes read through it, so read() can report the offset of
+   * invalid data in a snapshot
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    /** the number of bytes read or skipped so far */
+    private long count = 0L;
+
+    /**
+     * Create a CountingInputStream object.
+     *
+     * @param in the stream to count
+     */
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    /**
+     * Get the number of bytes read or skipped so far, the offset of the next byte.
+     *
+     * @return the number of bytes
+     */
+    long getCount() {
+      return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+  }
+}
@@ -17,6 +17,7 @@
  */
 package com.poesys.accounting.dataloader.newaccounting;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -34,6 +35,8 @@ public class StorageManager extends AbstractValidatingStorageManager {
   // messages
 
   private static final String STORED_MSG = "stored objects for all years";
+  private static final String STORED_YEAR_MSG = "stored objects for year ";
+  private static final String STORE_ERROR = "exception in fiscal year storage operation";
 
   @Override
   public void store(String entityName, CapitalStructure structure, List<FiscalYear> years,
@@ -45,13 +48,43 @@ public class StorageManager extends AbstractValidatingStorageManager {
       storageService.storeFiscalYears(years);
       // Store the entity, fiscal years, account groups, and accounts.
       storageService.storeEntity(entityName, years);
-      // Store all the transactions in one committed transaction.
+      // Store the transactions by fiscal year in committed chunks, then link across years.
       storageService.storeTransactions(transactions);
     } catch (Throwable e) {
       // Pass on exception with store failed message
-      throw new RuntimeException("exception in fiscal year storage operation", e);
+      throw new RuntimeException(STORE_ERROR, e);
     }
 
     logger.info(STORED_MSG);
   }
+
+  @Override
+  public void startYears(String entityName, CapitalStructure structure,
+                         IDataAccessService storageService) {
+    try {
+      // Store the capital structure first, as for all the years.
+      storageService.storeCapitalStructure(structure);
+    } catch (Throwable e) {
+      // Pass on exception with store failed message
+      throw new RuntimeException(STORE_ERROR, e);
+    }
+  }
+
+  @Override
+  public void storeYear(String entityName, FiscalYear year, Set<Transaction> transactions,
+                        Set<Transaction> stored, IDataAccessService storageService) {
+    List<FiscalYear> years = Collections.singletonList(year);
+    try {
+      storageService.storeFiscalYears(years);
+      // Store the year's account links with any new accounts.
+      storageService.storeEntity(entityName, years);
+      // Store only the new transactions, linking them to the stored ones.
+      storageService.storeTransactions(transactions, stored);
+    } catch (Throwable e) {
+      // Pass on exception with store failed message
+      throw new RuntimeException(STORE_ERROR, e);
+    }
+
+    logger.info(STORED_YEAR_MSG + year.getYear());
+  }
 }
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * <p> Stores fiscal years on a consumer thread while the loader builds the following years. The
+ * loader submits each fiscal year once it is built and validated; the pipeline hands the year and
+ * its new transactions to the consumer through a bounded queue, so the loader waits when the store
+ * falls that many years behind. The consumer stores what the years share once, then, for each
+ * year, only the year and its new transactions, passing as context the stored transactions whose
+ * receivables the new transactions reimburse; the data access service leaves
+ * reimbursements linking to later years for the later store and, as it stores the entity a year at
+ * a time, must reuse the entity and accounts stored with earlier years. With a data access service
+ * in delta mode, the entity may already have data stored by earlier loads. </p> <p> If a later
+ * year fails to build or validate, or the store fails, the loader rolls back the pipeline, which
+ * discards the years still in the queue and removes the transactions the consumer stored for the
+ * years it started, with their items, reimbursements, and id map rows. What earlier loads stored
+ * stays, as do the fiscal years, accounts, and links this load stored, which a later delta load
+ * reuses. </p> <p> The loader freezes each year as it hands it off and works out the context on its
+ * own thread, so the consumer doesn't read the account list of a year or the groups the loader is
+ * still adding to; the only model data both threads change are the reimbursement sets of
+ * receivables, which are concurrent. The pipeline keeps only the handed-off receivables that are
+ * still open, as reimbursements can't exceed the amount of a receivable, so working out the context
+ * doesn't grow with the years already stored. </p> <p> A year stored early would go stale if
+ * building a later year changed it, so the pipeline records the version of each year it hands off
+ * and fails the next submit() or finish() if one has changed, which makes the loader roll back. A
+ * later year can't add an account to a frozen year at all. </p>
+ *
+ * @author Robert J. Muller
+ */
+public class StoragePipeline {
+  /** logger for this class */
+  private static final Logger logger = Logger.getLogger(StoragePipeline.class);
+
+  /** the marker batch that ends the queue */
+  private static final Batch END = new Batch(null, null, null);
+  /** the time to wait for space in the queue before checking the consumer again */
+  private static final long OFFER_TIMEOUT_MS = 100L;
+
+  /** the name of the accounting entity */
+  private final String entityName;
+  /** the capital structure */
+  private final CapitalStructure structure;
+  /** the storage manager */
+  private final IStorageManager storageManager;
+  /** the data access service */
+  private final IDataAccessService service;
+  /** the queue of years waiting for the consumer */
+  private final BlockingQueue<Batch> queue;
+  /** the executor running the consumer thread */
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  /** the result of the consumer thread */
+  private final Future<Void> consumer;
+  /**
+   * the years handed off so far with their versions at the time, in order; used only on the loader
+   * thread
+   */
+  private final Map<FiscalYear, Long> versions = new LinkedHashMap<>();
+  /** the transactions handed off so far; used only on the loader thread */
+  private final Set<Transaction> handedOff = new HashSet<>();
+  /**
+   * the handed-off transactions with open receivables, which later transactions may reimburse; used
+   * only on the loader thread
+   */
+  private final Set<Transaction> openReceivables = new HashSet<>();
+  /**
+   * the years the consumer has started storing, with the years of the transactions it stored with
+   * them, in order
+   */
+  private final Set<Integer> started = Collections.synchronizedSet(new TreeSet<>());
+  /** whether the pipeline is rolling back, telling the consumer to stop */
+  private volatile boolean cancelled = false;
+
+  // messages
+  private static final String NULL_PARAMETER_ERROR =
+    "storage pipeline parameters are required but one is null";
+  private static final String INVALID_CAPACITY_ERROR = "pipeline queue size must be positive: ";
+  private static final String STORE_ERROR = "exception storing fiscal year in pipeline";
+  private static final String INTERRUPTED_ERROR = "interrupted waiting for storage pipeline";
+  private static final String STOPPED_ERROR = "storage pipeline stopped";
+  private static final String CHANGED_YEARS_ERROR =
+    "fiscal years changed after the storage pipeline was handed them: ";
+
+  /**
+   * A fiscal year and the transactions built with it, handed to the consumer
+   */
+  private static class Batch {
+    /** the fiscal year */
+    private final FiscalYear year;
+    /** the transactions not handed off with an earlier year */
+    private final Set<Transaction> transactions;
+    /** the transactions handed off earlier whose receivables the new transactions reimburse */
+    private final Set<Transaction> context;
+
+    /**
+     * Create a Batch object.
+     *
+     * @param year         the fiscal year
+     * @param transactions the new transactions
+     * @param context      the earlier transactions with receivables the new transactions
+     *                     reimburse
+     */
+    Batch(FiscalYear year, Set<Transaction> transactions, Set<Transaction> context) {
+      this.year = year;
+      this.transactions = transactions;
+      this.context = context;
+    }
+  }
+
+  /**
+   * Create a StoragePipeline object and start the consumer thread.
+   *
+   * @param entityName     the name of the accounting entity being stored
+   * @param structure      the capital structure of the accounting system
+   * @param storageManager the storage manager that stores the years
+   * @param service        the data access service the storage manager calls
+   * @param capacity       the number of built years that can wait for the consumer
+   */
+  public StoragePipeline(String entityName, CapitalStructure structure,
+                         IStorageManager storageManager, IDataAccessService service,
+                         int capacity) {
+    if (entityName == null || structure == null || storageManager == null || service == null) {
+      throw new InvalidParametersException(NULL_PARAMETER_ERROR);
+    }
+    if (capacity < 1) {
+      throw new InvalidParametersException(INVALID_CAPACITY_ERROR + capacity);
+    }
+    this.entityName = entityName;
+    this.structure = structure;
+    this.storageManager = storageManager;
+    this.service = service;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.consumer = executor.submit(this::consume);
+  }
+
+  /**
+   * Hand a built and validated fiscal year to the consumer, waiting if the queue is full. Freeze
+   * the year, so building a later year can't change its accounts while the consumer reads them,
+   * and fail if building the year changed the statements of a year handed off earlier, such as by
+   * adding an item dated in that year, as the stored year would no longer match the model.
+   *
+   * @param year         the fiscal year
+   * @param transactions all the transactions built so far; the pipeline hands off only the ones
+   *                     not handed off with an earlier year
+   */
+  public void submit(FiscalYear year, Set<Transaction> transactions) {
+    checkHandedOffYears();
+    year.freeze();
+    versions.put(year, year.getVersion());
+    Set<Transaction> added = new HashSet<>();
+    for (Transaction transaction : transactions) {
+      if (handedOff.add(transaction)) {
+        added.add(transaction);
+      }
+    }
+
+    // Find the open receivables the new transactions reimburse, and forget the ones now settled,
+    // as no later transaction can reimburse them.
+    Set<Transaction> context = new HashSet<>();
+    for (Iterator<Transaction> i = openReceivables.iterator(); i.hasNext(); ) {
+      Transaction receivable = i.next();
+      if (isReimbursedBy(receivable, added)) {
+        context.add(receivable);
+      }
+      if (!hasOpenReceivable(receivable)) {
+        i.remove();
+      }
+    }
+    for (Transaction transaction : added) {
+      if (hasOpenReceivable(transaction)) {
+        openReceivables.add(transaction);
+      }
+    }
+    put(new Batch(year, added, context));
+    logger.debug("Handed off " + year.getYear() + " with " + added.size() + " transactions");
+  }
+
+  /**
+   * Put a batch on the queue, checking that the consumer is still running while waiting.
+   *
+   * @param batch the batch
+   */
+  private void put(Batch batch) {
+    try {
+      while (!queue.offer(batch, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        if (consumer.isDone()) {
+          waitForConsumer();
+          throw new RuntimeException(STOPPED_ERROR);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(INTERRUPTED_ERROR, e);
+    }
+  }
+
+  /**
+   * Wait for the consumer to store the years in the queue and stop.
+   */
+  public void finish() {
+    try {
+      checkHandedOffYears();
+      put(END);
+      waitForConsumer();
+      logger.info("Storage pipeline stored years " + started);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Stop the consumer, discarding the years still in the queue, and remove the transactions stored
+   * for the years the consumer started storing.
+   */
+  public void rollback() {
+    cancelled = true;
+    queue.clear();
+    try {
+      queue.offer(END);
+      waitForConsumer();
+    } catch (RuntimeException e) {
+      // The consumer failure is what caused the rollback in the first place, so just log it.
+      logger.debug("Storage pipeline consumer failed before rollback", e);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // The consumer has stopped, so the started years no longer change.
+    Set<Integer> years = new TreeSet<>(started);
+    if (!years.isEmpty()) {
+      service.removeTransactions(entityName, years);
+    }
+    logger.warn("Storage pipeline rolled back years " + years);
+  }
+
+  /**
+   * Check that the statements of the years handed off so far haven't changed since their hand-off.
+   *
+   * @throws IllegalStateException when a handed-off year has changed
+   */
+  private void checkHandedOffYears() {
+    List<Integer> changed = new ArrayList<>();
+    for (Map.Entry<FiscalYear, Long> entry : versions.entrySet()) {
+      if (entry.getKey().getVersion() != entry.getValue()) {
+        changed.add(entry.getKey().getYear());
+      }
+    }
+    if (!changed.isEmpty()) {
+      throw new IllegalStateException(CHANGED_YEARS_ERROR + changed);
+    }
+  }
+
+  /**
+   * Wait for the consumer thread to end, rethrowing its exception if it failed.
+   */
+  private void waitForConsumer() {
+    try {
+      consumer.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(INTERRUPTED_ERROR, e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(STORE_ERROR, e.getCause());
+    }
+  }
+
+  /**
+   * Store what the years share, then take the batches from the queue until the end marker, storing
+   * the year and the new transactions of each one with its context.
+   *
+   * @return nothing
+   * @throws InterruptedException when the thread is interrupted waiting for a batch
+   */
+  private Void consume() throws InterruptedException {
+    storageManager.startYears(entityName, structure, service);
+    for (Batch batch = queue.take(); batch != END && !cancelled; batch = queue.take()) {
+      long start = System.currentTimeMillis();
+      // Record the years before storing, so a rollback removes what a failed store stored.
+      started.add(batch.year.getYear());
+      for (Transaction transaction : batch.transactions) {
+        started.add(transaction.getYear());
+      }
+      storageManager.storeYear(entityName, batch.year, batch.transactions, batch.context,
+                               service);
+      logger.info("Pipeline stored " + batch.year.getYear() + " with " +
+                  batch.transactions.size() + " transactions in " +
+                  (System.currentTimeMillis() - start) + " ms");
+    }
+    return null;
+  }
+
+  /**
+   * Does a transaction have an open receivable item, one that a later transaction can reimburse?
+   *
+   * @param transaction the transaction
+   * @return true if the transaction debits a receivable account with an amount not yet settled,
+   * false if not
+   */
+  private static boolean hasOpenReceivable(Transaction transaction) {
+    for (Item item : transaction.getItems()) {
+      if (item.isOpen()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Does a set of transactions reimburse a receivable item of a transaction?
+   *
+   * @param receivable   the transaction with receivable items
+   * @param transactions the reimbursing transactions to look for
+   * @return true if a reimbursement of a receivable item of the transaction has its reimbursing
+   * item in one of the transactions, false if not
+   */
+  private static boolean isReimbursedBy(Transaction receivable, Set<Transaction> transactions) {
+    for (Item item : receivable.getItems()) {
+      if (item.getAccount().isReceivable() && item.isDebit()) {
+        for (Item.Reimbursement reimbursement : item.getReimbursements()) {
+          if (transactions.contains(reimbursement.getReimbursingItem().getTransaction())) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -17,13 +17,13 @@
  */
 package com.poesys.accounting.dataloader.newaccounting;
 
-import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.math.RoundingMode;
 import java.sql.Timestamp;
-import java.text.DecimalFormat;
-import java.util.Calendar;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -46,21 +46,37 @@ public class Transaction {
   /** Logger for this class */
   private static final Logger logger = Logger.getLogger(Transaction.class);
 
+  /**
+   * the order of transactions by date and time, then by id, comparing the stored day, second, and
+   * nanoseconds rather than allocating a timestamp for each comparison
+   */
+  static final Comparator<Transaction> DATE_ORDER = (first, second) -> {
+    int result = first.compareDate(second);
+    return result != 0 ? result : first.id.compareTo(second.id);
+  };
+
   /** unique id within year from old accounting system */
   private final BigInteger id;
   /** text describing the nature of the transaction, including ids */
   private final String description;
-  /** date and time at which the transaction occurred */
-  private final Timestamp date;
+  /** the date on which the transaction occurred as a number of days since 1970-01-01 */
+  private final int epochDay;
+  /** the time of day at which the transaction occurred as a number of seconds since midnight */
+  private final int secondOfDay;
+  /** the fraction of a second at which the transaction occurred in nanoseconds */
+  private final int nanos;
+  /** the calendar year of the date, computed once for the identity of the transaction */
+  private final Integer year;
+  /** the hash code of the transaction, computed once from the year and id */
+  private final int hash;
   /** whether the transaction amounts have been fully reconciled */
   private final Boolean checked;
   /** whether the transaction is a balance transaction */
   private final Boolean balance;
   /** the set of items */
-  private final Set<Item> items = new HashSet<>();
-
-  /** format for double data values - [n]+.nn */
-  private static DecimalFormat format = new DecimalFormat("0.00");
+  private Set<Item> items = new HashSet<>();
+  /** whether the transaction is frozen, with immutable sets of items and reimbursements */
+  private boolean frozen = false;
 
   // Messages
 
@@ -86,18 +102,23 @@ public class Transaction {
     }
     this.id = id;
     this.description = description;
-    this.date = date;
+    LocalDateTime dateTime = date.toLocalDateTime();
+    this.epochDay = (int)dateTime.toLocalDate().toEpochDay();
+    this.secondOfDay = dateTime.toLocalTime().toSecondOfDay();
+    this.nanos = dateTime.getNano();
     this.checked = checked == null ? Boolean.FALSE : checked;
     this.balance = balance == null ? Boolean.FALSE : balance;
+    this.year = dateTime.getYear();
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + year;
+    result = prime * result + id.hashCode();
+    this.hash = result;
   }
 
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + (getYear());
-    result = prime * result + id.hashCode();
-    return result;
+    return hash;
   }
 
   @Override
@@ -112,7 +133,7 @@ public class Transaction {
       return false;
     }
     Transaction other = (Transaction)obj;
-    return getYear().equals(other.getYear()) && id.equals(other.id);
+    return hash == other.hash && year.equals(other.year) && id.equals(other.id);
   }
 
   /**
@@ -134,12 +155,49 @@ public class Transaction {
   }
 
   /**
-   * Get the date.
+   * Get the date. The transaction holds the date as a day and a time of day, so this method
+   * creates a new timestamp on each call for storage and formatting; date filters should use
+   * getEpochDay() instead.
    *
    * @return a date
    */
   public Timestamp getDate() {
-    return date;
+    return Timestamp.valueOf(LocalDateTime.of(LocalDate.ofEpochDay(epochDay),
+                                              LocalTime.ofSecondOfDay(secondOfDay)
+                                                .withNano(nanos)));
+  }
+
+  /**
+   * Get the day on which the transaction occurred.
+   *
+   * @return the number of days since 1970-01-01
+   */
+  public int getEpochDay() {
+    return epochDay;
+  }
+
+  /**
+   * Get the time of day at which the transaction occurred.
+   *
+   * @return the number of seconds since midnight
+   */
+  public int getSecondOfDay() {
+    return secondOfDay;
+  }
+
+  /**
+   * Compare the date and time of this transaction to those of another transaction.
+   *
+   * @param other the other transaction
+   * @return a negative number, zero, or a positive number as this transaction occurred before, at
+   * the same time as, or after the other transaction
+   */
+  int compareDate(Transaction other) {
+    int result = Integer.compare(epochDay, other.epochDay);
+    if (result == 0) {
+      result = Integer.compare(secondOfDay, other.secondOfDay);
+    }
+    return result != 0 ? result : Integer.compare(nanos, other.nanos);
   }
 
   /**
@@ -148,9 +206,7 @@ public class Transaction {
    * @return a year
    */
   public Integer getYear() {
-    Calendar calendar = Calendar.getInstance();
-    calendar.setTime(date);
-    return calendar.get(Calendar.YEAR);
+    return year;
   }
 
   /**
@@ -217,18 +273,15 @@ public class Transaction {
    */
   private Boolean isBalanced() {
     Boolean valid = Boolean.FALSE;
-    // Use BigDecimal to maintain correct scale 2.
-    BigDecimal sum = BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP);
-    BigDecimal zero = BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP);
+    // Sum the amounts in cents to maintain exact arithmetic.
+    long sum = 0L;
     for (Item item : items) {
-      // Convert amount to BigDecimal at scale 2 to insure correct arithmetic.
-      BigDecimal amount = new BigDecimal(item.getAmount()).setScale(2, RoundingMode.HALF_DOWN);
+      long amount = item.getCents();
       // Negate the amount for debit items.
-      amount = item.isDebit() ? amount.negate() : amount;
-      sum = sum.add(amount);
+      sum += item.isDebit() ? -amount : amount;
     }
-    if (sum.compareTo(zero) != 0) {
-      logger.error(BALANCE_ERROR + format.format(sum) + "): " + this);
+    if (sum != 0L) {
+      logger.error(BALANCE_ERROR + Money.ofCents(sum) + "): " + this);
     } else {
       valid = Boolean.TRUE;
     }
@@ -258,7 +311,22 @@ public class Transaction {
    * @return a set of items
    */
   public Set<Item> getItems() {
-    return Collections.synchronizedSet(items);
+    return frozen ? items : Collections.synchronizedSet(items);
+  }
+
+  /**
+   * Freeze the transaction and its items once the model is built, replacing the items and their
+   * reimbursements with immutable copies that any number of threads can read without locks. Adding
+   * an item or a reimbursement to a frozen transaction throws an UnsupportedOperationException.
+   */
+  public void freeze() {
+    if (!frozen) {
+      items = Frozen.set(items);
+      for (Item item : items) {
+        item.freeze();
+      }
+      frozen = true;
+    }
   }
 
   /**
@@ -277,9 +345,25 @@ public class Transaction {
     return item;
   }
 
+  /**
+   * Add a regular item to the set of items with an amount in cents.
+   *
+   * @param amount  the amount of the item (non-negative)
+   * @param account the account against which the item applies
+   * @param debit   whether the item is a debit or credit
+   * @param checked whether the system has reconciled the item against an external data source
+   * @return the created item
+   */
+  public Item addItem(Money amount, Account account, Boolean debit, Boolean checked) {
+    Item item = new Item(this, amount, account, debit, checked);
+    items.add(item);
+    account.addItem(item);
+    return item;
+  }
+
   @Override
   public String toString() {
-    return "Transaction [id=" + id + ", description=" + description + ", date=" + date +
+    return "Transaction [id=" + id + ", description=" + description + ", date=" + getDate() +
            ", checked=" + checked + ", balance=" + balance + ", items=" + items + "]";
   }
 
@@ -290,12 +374,9 @@ public class Transaction {
    */
   public boolean isZero() {
     boolean isZero = true;
-    BigDecimal zero = BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP);
 
     for (Item item : items) {
-      // Convert amount to BigDecimal at scale 2 to insure correct arithmetic.
-      BigDecimal amount = new BigDecimal(item.getAmount()).setScale(2, RoundingMode.HALF_DOWN);
-      if (amount.compareTo(zero) != 0) {
+      if (item.getCents() != 0L) {
         isZero = false;
         break;
       }
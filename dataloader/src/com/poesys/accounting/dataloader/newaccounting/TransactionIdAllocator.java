@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.poesys.db.InvalidParametersException;
+import com.poesys.db.connection.IConnectionFactory.DBMS;
+import com.poesys.db.connection.JdbcConnectionManager;
+
+/**
+ * Reserves blocks of transaction ids from the MySQL Sequence table that Poesys/DB uses for
+ * transaction keys. Poesys/DB allocates one id per transaction by incrementing the sequence and
+ * reading it back; the allocator increments the sequence by the size of the block in the same way,
+ * so the ids in the block can't go to another caller, and the caller hands them out locally
+ * without a round trip per id, passing each one to the transaction delegate when it creates the
+ * transaction. The allocator is stateless and thread safe.
+ *
+ * @author Robert J. Muller
+ */
+public class TransactionIdAllocator {
+  /** the subsystem for the sequence connection */
+  private static final String TRANSACTION_SUBSYSTEM = "com.poesys.accounting.db.transaction";
+  /** the name of the transaction id sequence */
+  static final String SEQUENCE_NAME = "transactionId";
+  /** SQL for reserving a block of ids */
+  static final String RESERVE_SQL = "UPDATE Sequence SET sequence = sequence + ? WHERE name = ?";
+  /** SQL for reading the last id in the reserved block */
+  static final String QUERY_SQL = "SELECT sequence FROM Sequence WHERE name = ?";
+
+  // messages
+  private static final String INVALID_COUNT_ERROR = "id block size must be positive: ";
+  private static final String NO_SEQUENCE_ERROR = "no row in Sequence table for ";
+  private static final String RESERVE_ERROR = "exception reserving transaction ids: ";
+
+  /**
+   * Reserve a block of transaction ids on a new connection.
+   *
+   * @param count the number of ids to reserve
+   * @return the first id in the block; the block is the count ids starting with this one
+   */
+  public BigInteger reserve(int count) {
+    try (Connection connection =
+           JdbcConnectionManager.getConnection(DBMS.MYSQL, TRANSACTION_SUBSYSTEM)) {
+      return reserve(connection, count);
+    } catch (SQLException | IOException e) {
+      throw new RuntimeException(RESERVE_ERROR + count, e);
+    }
+  }
+
+  /**
+   * Reserve a block of transaction ids on an open connection, committing the reservation. The
+   * update locks the sequence row until the commit, so the block read back is this caller's.
+   *
+   * @param connection the open database connection
+   * @param count      the number of ids to reserve
+   * @return the first id in the block; the block is the count ids starting with this one
+   * @throws SQLException when the sequence can't be updated or read
+   */
+  public BigInteger reserve(Connection connection, int count) throws SQLException {
+    if (count < 1) {
+      throw new InvalidParametersException(INVALID_COUNT_ERROR + count);
+    }
+    connection.setAutoCommit(false);
+    try (PreparedStatement update = connection.prepareStatement(RESERVE_SQL);
+         PreparedStatement query = connection.prepareStatement(QUERY_SQL)) {
+      update.setInt(1, count);
+      update.setString(2, SEQUENCE_NAME);
+      if (update.executeUpdate() != 1) {
+        throw new SQLException(NO_SEQUENCE_ERROR + SEQUENCE_NAME);
+      }
+      query.setString(1, SEQUENCE_NAME);
+      BigInteger last;
+      try (ResultSet rs = query.executeQuery()) {
+        if (!rs.next()) {
+          throw new SQLException(NO_SEQUENCE_ERROR + SEQUENCE_NAME);
+        }
+        last = rs.getBigDecimal("sequence").toBigInteger();
+      }
+      connection.commit();
+      return last.subtract(BigInteger.valueOf(count - 1));
+    } catch (SQLException e) {
+      connection.rollback();
+      throw e;
+    }
+  }
+}
@@ -23,6 +23,7 @@ import java.io.Reader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -52,6 +53,8 @@ public class OldDataBuilder implements IBuilder {
   private FiscalYear fiscalYear;
   /** the list of all fiscal years built so far */
   private List<FiscalYear> fiscalYears = new ArrayList<>();
+  /** the canonical descriptions and names shared by the objects built across all the years */
+  private final StringPool strings = new StringPool();
 
   /** the set of transactions built from the data */
   private final Set<com.poesys.accounting.dataloader.newaccounting.Transaction> transactions =
@@ -298,7 +301,8 @@ public class OldDataBuilder implements IBuilder {
       AccountGroup group = new AccountGroup(fiscalYear.getYear(), r);
       // Create new group, add to set for fiscal year
       com.poesys.accounting.dataloader.newaccounting.AccountGroup newGroup =
-        new com.poesys.accounting.dataloader.newaccounting.AccountGroup(group.getName());
+        new com.poesys.accounting.dataloader.newaccounting.AccountGroup(
+          strings.canonicalize(group.getName()));
       Set<com.poesys.accounting.dataloader.newaccounting.AccountGroup> groupSet =
         groupSetsMap.computeIfAbsent(fiscalYear, k -> new HashSet<>());
       // No set yet, create it.
@@ -333,7 +337,7 @@ public class OldDataBuilder implements IBuilder {
       AccountMap map = new AccountMap(r);
       // Convert account number from float to int, e.g., 100.21 -> 10021.
       Integer accountNumber = new Float(map.getAccountNumber() * 100F).intValue();
-      accountMap.put(accountNumber, map.getName());
+      accountMap.put(accountNumber, strings.canonicalize(map.getName()));
     }
   }
 
@@ -384,7 +388,7 @@ public class OldDataBuilder implements IBuilder {
       // name to a "standardized" name rather than to the old name.
       String name = accountMap.get(intAccountNumber);
       // If not mapped, use the input name.
-      name = (name == null ? oldAccount.getName() : name);
+      name = (name == null ? strings.canonicalize(oldAccount.getName()) : name);
 
       // Create new account, add to set
       com.poesys.accounting.dataloader.newaccounting.Account newAccount =
@@ -775,6 +779,9 @@ public class OldDataBuilder implements IBuilder {
     if (!validateTransactions()) {
       throw new RuntimeException(INVALID_TRANSACTIONS_ERROR + " for year " + fiscalYear.getYear());
     }
+    logger.info("Pooled " + strings.size() + " distinct strings through " + fiscalYear.getYear() +
+                ", " + strings.getHits() + " duplicates of " + strings.getLookups() +
+                " saving about " + strings.getBytesSaved() + " bytes");
     // Get the updater if any and update with generated transactions.
     IFiscalYearUpdater updater = parameters.getUpdater();
     if (updater != null) {
@@ -804,7 +811,9 @@ public class OldDataBuilder implements IBuilder {
       BigInteger id = new BigInteger(transaction.getTransactionId().toString());
       com.poesys.accounting.dataloader.newaccounting.Transaction newTransaction =
         new com.poesys.accounting.dataloader.newaccounting.Transaction(id,
-                                                                       transaction.getDescription(),
+                                                                       strings.canonicalize(
+                                                                         transaction
+                                                                           .getDescription()),
                                                                        transaction
                                                                          .getTransactionDate(),
                                                                        false, false);
@@ -957,6 +966,13 @@ public class OldDataBuilder implements IBuilder {
           reimbursementYear + " as a reimbursement.");
       }
     }
+
+    for (com.poesys.accounting.dataloader.newaccounting.Account account : accounts) {
+      if (account.isReceivable()) {
+        logger.debug(account.getName() + " has " + account.getOpenReceivables().size() +
+                     " open receivables after reimbursements for " + fiscalYear.getYear());
+      }
+    }
   }
 
   /**
@@ -971,17 +987,40 @@ public class OldDataBuilder implements IBuilder {
   private Integer getBalanceReceivableId(Integer receivableYear, Float receivableAccountNumber) {
     com.poesys.accounting.dataloader.newaccounting.Account account =
       getAccountFromNumber(receivableYear, receivableAccountNumber);
-    // Find the balance transaction for the account.
+    // Find the balance transaction for the account, first among the few open receivables for the
+    // year, then among all the items of the account if the balance item is settled or a credit.
+    com.poesys.accounting.dataloader.newaccounting.Transaction balanceTransaction =
+      findBalanceTransaction(account.getOpenReceivables(receivableYear), receivableYear,
+                             receivableAccountNumber);
+    if (balanceTransaction == null) {
+      balanceTransaction =
+        findBalanceTransaction(account.getItems(), receivableYear, receivableAccountNumber);
+    }
+
+    return balanceTransaction != null ? balanceTransaction.getId().intValue() : null;
+  }
+
+  /**
+   * Find the balance transaction among a set of items of a receivable account, validating the
+   * balance item.
+   *
+   * @param items                   the items to search
+   * @param receivableYear          the designated receivable year of a reimbursement
+   * @param receivableAccountNumber the old-accounting account number for the receivable account
+   * @return the last balance transaction among the items, or null if there is none
+   */
+  private com.poesys.accounting.dataloader.newaccounting.Transaction findBalanceTransaction(
+    Collection<com.poesys.accounting.dataloader.newaccounting.Item> items, Integer receivableYear,
+    Float receivableAccountNumber) {
     com.poesys.accounting.dataloader.newaccounting.Transaction balanceTransaction = null;
-    for (com.poesys.accounting.dataloader.newaccounting.Item item : account.getItems()) {
+    for (com.poesys.accounting.dataloader.newaccounting.Item item : items) {
       if (item.getTransaction().isBalance()) {
         balanceTransaction = item.getTransaction();
         validateBalanceReceivable(receivableYear, receivableAccountNumber, balanceTransaction,
                                   item);
       }
     }
-
-    return balanceTransaction != null ? balanceTransaction.getId().intValue() : null;
+    return balanceTransaction;
   }
 
   /**
@@ -1136,4 +1175,13 @@ public class OldDataBuilder implements IBuilder {
   public Set<com.poesys.accounting.dataloader.newaccounting.Transaction> getTransactions() {
     return transactions;
   }
+
+  /**
+   * Get the pool of canonical descriptions and names, which reports the duplicates it removed.
+   *
+   * @return the string pool
+   */
+  public StringPool getStringPool() {
+    return strings;
+  }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.oldaccounting;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of canonical strings for the lifetime of a build. Every line the builder reads produces
+ * new strings, but transaction descriptions, account names, and group names repeat across lines
+ * and years; canonicalizing them as the builder creates the new-accounting objects means the model
+ * keeps one copy of each distinct value. Unlike String.intern(), the pool goes away with the
+ * builder. The pool is not threadsafe, as a builder reads its files on a single thread.
+ *
+ * @author Robert J. Muller
+ */
+public class StringPool {
+  /** the estimated bytes of a String object and its empty character array */
+  private static final long STRING_OVERHEAD = 40L;
+
+  /** the canonical strings, each mapped to itself */
+  private final Map<String, String> strings = new HashMap<>();
+  /** the number of strings looked up */
+  private long lookups = 0L;
+  /** the number of lookups that returned an existing, different string */
+  private long hits = 0L;
+  /** the estimated number of bytes no longer retained through hits */
+  private long bytesSaved = 0L;
+
+  /**
+   * Get the canonical instance of a string, adding the string to the pool if it is not already
+   * there.
+   *
+   * @param string the string to canonicalize; may be null
+   * @return the canonical string equal to the string, or null if the string is null
+   */
+  public String canonicalize(String string) {
+    if (string == null) {
+      return null;
+    }
+    lookups++;
+    String canonical = strings.putIfAbsent(string, string);
+    if (canonical == null) {
+      canonical = string;
+    } else if (canonical != string) {
+      hits++;
+      bytesSaved += estimateBytes(string);
+    }
+    return canonical;
+  }
+
+  /**
+   * Estimate the heap taken by a string: the String object, the character array header, and two
+   * bytes per character, rounded up to the eight-byte alignment of objects.
+   *
+   * @param string the string
+   * @return the estimated number of bytes
+   */
+  static long estimateBytes(String string) {
+    return STRING_OVERHEAD + ((2L * string.length() + 7L) & ~7L);
+  }
+
+  /**
+   * Get the number of distinct strings in the pool.
+   *
+   * @return the number of canonical strings
+   */
+  public int size() {
+    return strings.size();
+  }
+
+  /**
+   * Get the number of strings looked up.
+   *
+   * @return the number of lookups
+   */
+  public long getLookups() {
+    return lookups;
+  }
+
+  /**
+   * Get the number of lookups that replaced a string with an equal canonical string.
+   *
+   * @return the number of hits
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * Get the estimated number of bytes saved by replacing strings with canonical strings, assuming
+   * the replaced strings are otherwise garbage.
+   *
+   * @return the estimated bytes saved
+   */
+  public long getBytesSaved() {
+    return bytesSaved;
+  }
+
+  @Override
+  public String toString() {
+    return "StringPool [size=" + strings.size() + ", lookups=" + lookups + ", hits=" + hits +
+           ", bytesSaved=" + bytesSaved + "]";
+  }
+}
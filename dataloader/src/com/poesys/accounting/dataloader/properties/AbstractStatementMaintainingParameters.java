@@ -18,7 +18,9 @@
 package com.poesys.accounting.dataloader.properties;
 
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
@@ -41,6 +43,10 @@ public abstract class AbstractStatementMaintainingParameters implements
   protected Writer balanceSheetDetailsWriter = null;
   /** the writer for income statement details */
   protected Writer incomeStatementDetailsWriter = null;
+  /** the stream for statement snapshots, null if there are no snapshots */
+  protected OutputStream statementSnapshotStream = null;
+  /** the writer for receivable aging reports, null if there are no aging reports */
+  protected Writer receivableAgingWriter = null;
 
   /** map of balance sheet data sets indexed by year */
   protected final Map<Integer, String> balanceSheets = new HashMap<>();
@@ -50,6 +56,10 @@ public abstract class AbstractStatementMaintainingParameters implements
   protected final Map<Integer, String> balanceSheetDetails = new HashMap<>();
   /** map of income statement detail data sets indexed by year */
   protected final Map<Integer, String> incomeStatementDetails = new HashMap<>();
+  /** map of statement snapshots indexed by year */
+  protected final Map<Integer, byte[]> statementSnapshots = new HashMap<>();
+  /** map of receivable aging reports indexed by year */
+  protected final Map<Integer, String> receivableAgings = new HashMap<>();
 
   /** current year for writers */
   protected Integer year;
@@ -88,6 +98,21 @@ public abstract class AbstractStatementMaintainingParameters implements
         incomeStatementDetailsWriter = null;
       }
 
+      if (statementSnapshotStream != null) {
+        if (statementSnapshotStream instanceof ByteArrayOutputStream) {
+          statementSnapshots.put(year,
+                                 ((ByteArrayOutputStream)statementSnapshotStream).toByteArray());
+        }
+        statementSnapshotStream.close();
+        statementSnapshotStream = null;
+      }
+
+      if (receivableAgingWriter != null) {
+        receivableAgings.put(year, receivableAgingWriter.toString());
+        receivableAgingWriter.close();
+        receivableAgingWriter = null;
+      }
+
       year = null;
     } catch (IOException e) {
       throw new RuntimeException("Exception closing writer", e);
@@ -133,4 +158,36 @@ public abstract class AbstractStatementMaintainingParameters implements
   public String getIncomeStatementDetailsData(int year) {
     return incomeStatementDetails.toString();
   }
+
+  @Override
+  public OutputStream getStatementSnapshotStream() {
+    return statementSnapshotStream;
+  }
+
+  @Override
+  public byte[] getStatementSnapshotData(int year) {
+    return statementSnapshots.get(year);
+  }
+
+  @Override
+  public Writer getReceivableAgingWriter() {
+    return receivableAgingWriter;
+  }
+
+  @Override
+  public String getReceivableAgingData(int year) {
+    return receivableAgings.get(year);
+  }
+
+  @Override
+  public Writer createComparativeReportWriter() {
+    // No comparative report by default
+    return null;
+  }
+
+  @Override
+  public int getPipelineQueueSize() {
+    // Store after building all the years by default
+    return 0;
+  }
 }
\ No newline at end of file
@@ -18,6 +18,7 @@
 package com.poesys.accounting.dataloader.properties;
 
 
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 
@@ -230,6 +231,59 @@ public interface IParameters {
    */
   String getIncomeStatementDetailsData(int year);
 
+  /**
+   * Get an output stream for the binary statement snapshot of the year for which the writers were
+   * created. Snapshots are optional; the stream is null if the parameters do not call for them.
+   * 
+   * @return an output stream or null
+   */
+  OutputStream getStatementSnapshotStream();
+
+  /**
+   * Get the statement snapshot data for unit test validation.
+   * 
+   * @param year the year of the snapshot to get
+   * 
+   * @return the snapshot as a byte array or null if there is no such data set
+   */
+  byte[] getStatementSnapshotData(int year);
+
+  /**
+   * Get a writer for the receivable aging report of the year for which the writers were created,
+   * aged as of the end of the year. The report is optional; the writer is null if the parameters
+   * do not call for it.
+   * 
+   * @return a writer or null
+   */
+  Writer getReceivableAgingWriter();
+
+  /**
+   * Get the receivable aging report data for unit test validation.
+   * 
+   * @param year the year of the report to get
+   * 
+   * @return the report data set as a String or null if there is no such data set
+   */
+  String getReceivableAgingData(int year);
+
+  /**
+   * Create a writer for the multi-year comparative report, which covers all the fiscal years from
+   * the start year to the end year. The report is optional; the method returns null if the
+   * parameters do not call for it. The caller owns the writer and must close it.
+   * 
+   * @return a writer or null
+   */
+  Writer createComparativeReportWriter();
+
+  /**
+   * Get the number of built fiscal years that can wait for storage when the loader stores each
+   * year while building the following years, or 0 to store everything after building all the
+   * years.
+   * 
+   * @return the queue size, 0 for no pipelining
+   */
+  int getPipelineQueueSize();
+
   /**
    * Get the fiscal-year updater based on a program parameter. This is a factory
    * method for updaters.
@@ -17,11 +17,15 @@
  */
 package com.poesys.accounting.dataloader.properties;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.Properties;
@@ -30,9 +34,11 @@ import org.apache.log4j.Logger;
 
 import com.poesys.accounting.dataloader.FatalProgramException;
 import com.poesys.accounting.dataloader.newaccounting.AccountingDbService;
+import com.poesys.accounting.dataloader.newaccounting.BulkExportDataAccessService;
 import com.poesys.accounting.dataloader.newaccounting.DoNothingDataAccessService;
 import com.poesys.accounting.dataloader.newaccounting.IDataAccessService;
 import com.poesys.accounting.dataloader.newaccounting.IFiscalYearUpdater;
+import com.poesys.accounting.dataloader.newaccounting.IdMapWriter;
 import com.poesys.accounting.dataloader.newaccounting.IStorageManager;
 import com.poesys.accounting.dataloader.newaccounting.NonStoringStorageManager;
 import com.poesys.accounting.dataloader.newaccounting.PoesysFiscalYearUpdater;
@@ -85,6 +91,12 @@ public class PropertyFileParameters extends AbstractStatementMaintainingParamete
   private static final String INCOME_STMT_FILE = "income_statement_file";
   private static final String BALANCE_SHEET_DETAILS_FILE = "balance_sheet_details_file";
   private static final String INCOME_STMT_DETAILS_FILE = "income_statement_details_file";
+  /** optional key for the binary statement snapshot filename */
+  private static final String STATEMENT_SNAPSHOT_FILE = "statement_snapshot_file";
+  /** optional key for the multi-year comparative report filename */
+  private static final String COMPARATIVE_REPORT_FILE = "comparative_report_file";
+  /** optional key for the receivable aging report filename */
+  private static final String RECEIVABLE_AGING_FILE = "receivable_aging_file";
 
   // plug-in class specifications
   /** keyword for updater */
@@ -93,6 +105,20 @@ public class PropertyFileParameters extends AbstractStatementMaintainingParamete
   private static final String DATA_ACCESS_SERVICE = "data_access_service";
   /** keyword for storage manager */
   private static final String STORAGE_MGR = "storage_manager";
+  /** optional key for the number of id map rows per database batch */
+  private static final String ID_MAP_BATCH_SIZE = "id_map_batch_size";
+  /** optional key for the number of transactions stored and committed per chunk */
+  private static final String TRANSACTION_CHUNK_SIZE = "transaction_chunk_size";
+  /** optional key for the number of threads storing fiscal years of transactions */
+  private static final String TRANSACTION_STORE_THREADS = "transaction_store_threads";
+  /** optional key for storing only what is not already stored (true) or everything (false) */
+  private static final String DELTA_STORE = "delta_store";
+  /** optional key for the bulk export directory, default the bulkexport directory under the path */
+  private static final String BULK_EXPORT_DIRECTORY = "bulk_export_directory";
+  /** optional key for the number of built years waiting for storage, 0 for no pipelining */
+  private static final String PIPELINE_QUEUE_SIZE = "pipeline_queue_size";
+  /** the default bulk export directory name */
+  private static final String DEFAULT_BULK_EXPORT_DIRECTORY = "bulkexport";
 
   // messages
   private static final String FILE_NOT_FOUND = "file not found: ";
@@ -201,6 +227,28 @@ public class PropertyFileParameters extends AbstractStatementMaintainingParamete
     return w;
   }
 
+  /**
+   * Get the OutputStream that writes binary data to the specified file. The filename is required.
+   *
+   * @param filename the fully qualified filename for the file
+   * @return a buffered OutputStream pointing at the file
+   */
+  private OutputStream getOutputStream(String filename) {
+    OutputStream stream;
+
+    if (filename == null || filename.isEmpty()) {
+      throw new InvalidParametersException(NULL_PARAMETERS);
+    }
+
+    try {
+      stream = new BufferedOutputStream(new FileOutputStream(filename));
+    } catch (IOException e) {
+      throw new RuntimeException(FILE_NOT_FOUND + filename);
+    }
+
+    return stream;
+  }
+
   /**
    * Get the fully qualified filename based on the fiscal year number and the file name; this
    * appends the file name from the properties file to the path and year, producing the fully
@@ -293,6 +341,34 @@ public class PropertyFileParameters extends AbstractStatementMaintainingParamete
       getWriter(getFullyQualifiedFilename(year, BALANCE_SHEET_DETAILS_FILE));
     incomeStatementDetailsWriter =
       getWriter(getFullyQualifiedFilename(year, INCOME_STMT_DETAILS_FILE));
+    // Snapshots are optional, create only if there is a file name.
+    String snapshotFile = properties.getProperty(STATEMENT_SNAPSHOT_FILE);
+    if (snapshotFile != null && !snapshotFile.isEmpty()) {
+      statementSnapshotStream =
+        getOutputStream(getFullyQualifiedFilename(year, STATEMENT_SNAPSHOT_FILE));
+    }
+    // Aging reports are optional, create only if there is a file name.
+    String agingFile = properties.getProperty(RECEIVABLE_AGING_FILE);
+    if (agingFile != null && !agingFile.isEmpty()) {
+      receivableAgingWriter = getWriter(getFullyQualifiedFilename(year, RECEIVABLE_AGING_FILE));
+    }
+  }
+
+  @Override
+  public Writer createComparativeReportWriter() {
+    Writer writer = null;
+    // The report is optional, create only if there is a file name.
+    String reportFile = properties.getProperty(COMPARATIVE_REPORT_FILE);
+    if (reportFile != null && !reportFile.isEmpty()) {
+      writer = getWriter(getEntityFilename(COMPARATIVE_REPORT_FILE));
+    }
+    return writer;
+  }
+
+  @Override
+  public int getPipelineQueueSize() {
+    String size = properties.getProperty(PIPELINE_QUEUE_SIZE);
+    return size == null ? 0 : Integer.parseInt(size.trim());
   }
 
   @Override
@@ -325,7 +401,23 @@ public class PropertyFileParameters extends AbstractStatementMaintainingParamete
         service = new DoNothingDataAccessService();
         break;
       case "AccountingDbService":
-        service = new AccountingDbService();
+        String batchSize = properties.getProperty(ID_MAP_BATCH_SIZE);
+        String chunkSize = properties.getProperty(TRANSACTION_CHUNK_SIZE);
+        String threads = properties.getProperty(TRANSACTION_STORE_THREADS);
+        service = new AccountingDbService(
+          batchSize == null ? IdMapWriter.DEFAULT_BATCH_SIZE : Integer.parseInt(batchSize.trim()),
+          chunkSize == null ? AccountingDbService.DEFAULT_TRANSACTION_CHUNK_SIZE :
+          Integer.parseInt(chunkSize.trim()),
+          threads == null ? AccountingDbService.DEFAULT_STORE_THREADS :
+          Integer.parseInt(threads.trim()),
+          // The pipeline stores the years one at a time, which requires delta mode.
+          Boolean.parseBoolean(properties.getProperty(DELTA_STORE, "false").trim()) ||
+          getPipelineQueueSize() > 0);
+        break;
+      case "BulkExportDataAccessService":
+        String directory = properties.getProperty(BULK_EXPORT_DIRECTORY);
+        service = new BulkExportDataAccessService(new File(
+          directory == null ? getPath() + DEFAULT_BULK_EXPORT_DIRECTORY : directory.trim()));
         break;
       default:
         logger.warn("data_access_service parameter value not supported: " + plugin);
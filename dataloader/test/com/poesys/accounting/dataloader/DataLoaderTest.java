@@ -24,6 +24,7 @@ import org.junit.Test;
 
 import com.poesys.accounting.dataloader.newaccounting.IDataAccessService;
 import com.poesys.accounting.dataloader.newaccounting.IStorageManager;
+import com.poesys.accounting.dataloader.newaccounting.UnitTestNoExceptionsStorageManager;
 import com.poesys.accounting.dataloader.properties.IParameters;
 import com.poesys.accounting.dataloader.properties
   .UnitTestParametersCapitalOneEntityOneYearNoDistribution;
@@ -99,6 +100,37 @@ public class DataLoaderTest {
     }
   }
 
+  /**
+   * Test method for {@link com.poesys.accounting.dataloader.DataLoader#construct(com.poesys
+   * .accounting.dataloader.properties.IParameters, * com.poesys.accounting.dataloader.IBuilder,
+   * com.poesys.accounting.dataloader.newaccounting.IStorageManager, * com.poesys.accounting
+   * .dataloader.newaccounting.IDataAccessService)} . Tests the pipelined store, which validates
+   * and stores each year after building it.
+   */
+  @Test
+  public void testValidConstructPipelined() {
+    DataLoader loader = new DataLoader();
+    UnitTestParametersCapitalOneEntityOneYearNoDistribution parameters =
+      new UnitTestParametersCapitalOneEntityOneYearNoDistribution() {
+        @Override
+        public int getPipelineQueueSize() {
+          return 1;
+        }
+      };
+    UnitTestNoExceptionsBuilder builder = new UnitTestNoExceptionsBuilder();
+    UnitTestNoExceptionsStorageManager storageManager = new UnitTestNoExceptionsStorageManager();
+    IDataAccessService dbService = parameters.getDataAccessService();
+
+    loader.construct(parameters, builder, storageManager, dbService);
+
+    assertTrue("buildYear() not called: " + builder.getYearCalls(), builder.getYearCalls() == 1);
+    // One validation for the year before its hand-off, none after building
+    assertTrue("wrong validate() calls: " + storageManager.getValidateCalls(),
+               storageManager.getValidateCalls() == 1);
+    assertTrue("wrong store() calls: " + storageManager.getStoreCalls(),
+               storageManager.getStoreCalls() == 1);
+  }
+
   /**
    * Test method for {@link com.poesys.accounting.dataloader.DataLoader#construct(com.poesys
    * .accounting.dataloader.properties.IParameters, * com.poesys.accounting.dataloader.IBuilder,
@@ -23,6 +23,7 @@ import static org.junit.Assert.fail;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
+import org.apache.log4j.Logger;
 import org.junit.Test;
 
 import com.poesys.db.InvalidParametersException;
@@ -33,6 +34,9 @@ import com.poesys.db.InvalidParametersException;
  * @author Robert J. Muller
  */
 public class AccountCollectionDistributorTest {
+  /** logger for this class */
+  private static final Logger logger = Logger.getLogger(AccountCollectionDistributorTest.class);
+
   /** one cent in decimal form */
   private static final BigDecimal PENNY = new BigDecimal(".01");
   /** negative one cent in decimal form */
@@ -1976,4 +1980,86 @@ public class AccountCollectionDistributorTest {
                distributor.getItemAmount(equityAccount3).equals(
                  NEG_PENNY.setScale(SCALE, RoundingMode.HALF_UP)));
   }
+
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.AccountCollectionDistributor#distributeAmount()}
+   * and
+   * {@link com.poesys.accounting.dataloader.newaccounting.AccountCollectionDistributor#distributeRemainder()}
+   * . Tests distribution of positive and negative amounts to 2 to 10,000 nearly equal accounts,
+   * checking that every penny is distributed, that the balances stay nearly equal, and that
+   * distributing again to the same balances gives the same result; logs the time for each size.
+   */
+  @Test
+  public void testDistributeScaling() {
+    int[] sizes = {2, 3, 10, 100, 1000, 10000};
+    BigDecimal[] amounts = {INDIV_AMOUNT_R1, NEG_INDIV_AMOUNT_R2};
+    for (int size : sizes) {
+      Account[] accounts = new Account[size];
+      for (int i = 0; i < size; i++) {
+        accounts[i] =
+          new Account(EQUITY_ACCOUNT_NAME_1 + i, DESCRIPTION, AccountType.EQUITY, !DEBIT_DEFAULT,
+                      NOT_RECEIVABLE);
+      }
+      for (BigDecimal amount : amounts) {
+        long start = System.nanoTime();
+        AccountCollectionDistributor distributor = distribute(accounts, amount);
+        long time = System.nanoTime() - start;
+        logger.info("Distributed " + amount + " to " + size + " accounts in " + time / 1000 +
+                    " microseconds");
+
+        AccountCollectionDistributor again = distribute(accounts, amount);
+        BigDecimal total = BigDecimal.ZERO.setScale(SCALE, RoundingMode.HALF_UP);
+        for (Account account : accounts) {
+          total = total.add(distributor.getItemAmount(account));
+          assertTrue("distribution not deterministic for " + account.getName(),
+                     distributor.getItemAmount(account).equals(again.getItemAmount(account)));
+        }
+        assertTrue("distributed total " + total + " != " + amount + " for " + size + " accounts",
+                   total.compareTo(amount) == 0);
+        assertTrue("balances not nearly equal for " + size + " accounts", distributor.isValid());
+      }
+    }
+  }
+
+  /**
+   * Distribute an amount to a set of accounts with alternating nearly equal balances.
+   *
+   * @param accounts the accounts
+   * @param amount   the amount to distribute
+   * @return the distributor
+   */
+  private AccountCollectionDistributor distribute(Account[] accounts, BigDecimal amount) {
+    AccountCollectionDistributor distributor = new AccountCollectionDistributor(amount);
+    for (int i = 0; i < accounts.length; i++) {
+      distributor.addBalance(accounts[i], i % 3 == 0 ? NEAR_AMOUNT : AMOUNT);
+    }
+    distributor.distributeAmount();
+    distributor.distributeRemainder();
+    return distributor;
+  }
+
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.AccountCollectionDistributor#equalize()}
+   * . Tests that balances several pennies apart are equalized in one call and that the total is
+   * unchanged.
+   */
+  @Test
+  public void testEqualizeWideSpread() {
+    AccountCollectionDistributor distributor = new AccountCollectionDistributor(BigDecimal.ZERO);
+    distributor.addBalance(equityAccount1, new BigDecimal("100.00"));
+    distributor.addBalance(equityAccount2, new BigDecimal("100.07"));
+    distributor.addBalance(equityAccount3, new BigDecimal("99.94"));
+    boolean equalized = distributor.equalize();
+    assertTrue("balances not equalized", equalized);
+    assertTrue("balances not nearly equal", distributor.isValid());
+    BigDecimal total = distributor.getItemAmount(equityAccount1)
+      .add(distributor.getItemAmount(equityAccount2))
+      .add(distributor.getItemAmount(equityAccount3));
+    assertTrue("equalization changed total: " + total, total.compareTo(BigDecimal.ZERO) == 0);
+    assertTrue("largest balance did not keep extra penny: " +
+               distributor.getBalance(equityAccount2),
+               distributor.getBalance(equityAccount2).compareTo(new BigDecimal("100.01")) == 0);
+  }
 }
@@ -20,6 +20,11 @@ package com.poesys.accounting.dataloader.newaccounting;
 import com.poesys.db.InvalidParametersException;
 import org.junit.Test;
 
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -210,6 +215,168 @@ public class AccountTest {
     }
   }
 
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.Account#addYear(FiscalYearAccount)}
+   * . Tests that links added out of order are kept in year order.
+   */
+  @Test
+  public void testAddYearOutOfOrder() {
+    Account account = new Account(NAME, DESCRIPTION, ACCOUNT_TYPE, DEBIT_DEFAULT, RECEIVABLE);
+    AccountGroup group = new AccountGroup(GROUP_NAME);
+    for (FiscalYear year : new FiscalYear[] {YEAR3, YEAR1, YEAR2}) {
+      account.addYear(new FiscalYearAccount(year, ACCOUNT_TYPE, group, 1, account, 1));
+    }
+    assertTrue("wrong number of years: " + account.getYears().size(),
+               account.getYears().size() == 3);
+    assertTrue("first year not 2010", account.getYears().get(0).getFiscalYear().equals(YEAR1));
+    assertTrue("second year not 2011", account.getYears().get(1).getFiscalYear().equals(YEAR2));
+    assertTrue("third year not 2012", account.getYears().get(2).getFiscalYear().equals(YEAR3));
+    assertTrue("wrong last year: " + account.getLastYear(),
+               account.getLastYear().equals(YEAR3.getYear()));
+  }
+
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.Account#getFiscalYearAccount(FiscalYear)}
+   * . Tests lookup of the link, account type, and group by year, including a year with no link.
+   */
+  @Test
+  public void testGetFiscalYearAccount() {
+    Account account = new Account(NAME, DESCRIPTION, ACCOUNT_TYPE, DEBIT_DEFAULT, RECEIVABLE);
+    assertTrue("last year for account with no years", account.getLastYear() == null);
+    AccountGroup group1 = new AccountGroup(GROUP_NAME);
+    AccountGroup group3 = new AccountGroup(OTHER_NAME);
+    FiscalYearAccount link1 = new FiscalYearAccount(YEAR1, ACCOUNT_TYPE, group1, 1, account, 1);
+    FiscalYearAccount link3 =
+      new FiscalYearAccount(YEAR3, AccountType.LIABILITIES, group3, 2, account, 1);
+    account.addYear(link3);
+    account.addYear(link1);
+    // A second link for the same year does not replace the first.
+    account.addYear(new FiscalYearAccount(YEAR1, AccountType.EQUITY, group3, 1, account, 1));
+
+    assertTrue("wrong 2010 link", account.getFiscalYearAccount(new FiscalYear(2010)) == link1);
+    assertTrue("wrong 2012 link", account.getFiscalYearAccount(YEAR3) == link3);
+    assertTrue("link for unlinked year", account.getFiscalYearAccount(YEAR2) == null);
+    assertTrue("link for null year", account.getFiscalYearAccount(null) == null);
+    assertTrue("wrong 2010 type", account.getAccountType(YEAR1) == ACCOUNT_TYPE);
+    assertTrue("wrong 2012 type", account.getAccountType(YEAR3) == AccountType.LIABILITIES);
+    assertTrue("type for unlinked year", account.getAccountType(YEAR2) == null);
+    assertTrue("wrong 2010 group", account.getGroup(YEAR1) == group1);
+    assertTrue("wrong 2012 group", account.getGroup(YEAR3) == group3);
+    assertTrue("group for unlinked year", account.getGroup(YEAR2) == null);
+  }
+
+  /**
+   * Test method for {@link Account#freeze()}. Tests that a frozen account keeps its years and items
+   * in immutable collections and that adding a year fails.
+   */
+  @Test
+  public void testFreeze() {
+    Account account = new Account(NAME, DESCRIPTION, ACCOUNT_TYPE, DEBIT_DEFAULT, RECEIVABLE);
+    AccountGroup group = new AccountGroup(GROUP_NAME);
+    FiscalYearAccount link1 = new FiscalYearAccount(YEAR1, ACCOUNT_TYPE, group, 1, account, 1);
+    FiscalYearAccount link2 = new FiscalYearAccount(YEAR2, ACCOUNT_TYPE, group, 1, account, 1);
+    account.addYear(link1);
+    account.addYear(link2);
+
+    account.freeze();
+    List<FiscalYearAccount> years = account.getYears();
+    assertTrue("frozen years not the same list", years == account.getYears());
+    assertTrue("frozen items not the same set", account.getItems() == account.getItems());
+    assertTrue("wrong frozen years",
+               years.size() == 2 && years.get(0) == link1 && years.get(1) == link2);
+    assertTrue("items in frozen account", account.getItems().isEmpty());
+    assertTrue("wrong frozen 2011 link", account.getFiscalYearAccount(YEAR2) == link2);
+    try {
+      account.addYear(new FiscalYearAccount(YEAR3, ACCOUNT_TYPE, group, 1, account, 1));
+      fail("added year to frozen account");
+    } catch (UnsupportedOperationException e) {
+      // success
+    }
+  }
+
+  /**
+   * Create a transaction on a day with an item against an account, balanced by an item against an
+   * income account.
+   *
+   * @param account the account
+   * @param id      the transaction id
+   * @param date    the transaction date
+   * @param amount  the amount
+   * @param debit   whether the item against the account is a debit
+   */
+  private static void addItem(Account account, long id, String date, Double amount,
+                              Boolean debit) {
+    Account income =
+      new Account("Income", DESCRIPTION, AccountType.INCOME, Boolean.FALSE, Boolean.FALSE);
+    Transaction transaction = new Transaction(BigInteger.valueOf(id), DESCRIPTION,
+                                              Timestamp.valueOf(date + " 00:00:00"), false, false);
+    transaction.addItem(amount, account, debit, false);
+    transaction.addItem(amount, income, !debit, false);
+  }
+
+  /**
+   * Get the epoch day of a date.
+   *
+   * @param date the date string
+   * @return the number of days since 1970-01-01
+   */
+  private static int day(String date) {
+    return (int)LocalDate.parse(date).toEpochDay();
+  }
+
+  /**
+   * Test method for {@link Account#getBalance(int)} and {@link Account#getActivity(int, int)}.
+   * Tests that the balances of an account that is not frozen include items added after a query.
+   */
+  @Test
+  public void testGetBalanceNotFrozen() {
+    Account account = new Account(NAME, DESCRIPTION, ACCOUNT_TYPE, DEBIT_DEFAULT, RECEIVABLE);
+    assertTrue("balance with no items", account.getBalance(day("2011-12-31")) == 0L);
+    addItem(account, 1L, "2011-03-01", 100.00D, Boolean.TRUE);
+    addItem(account, 2L, "2010-06-15", 50.25D, Boolean.TRUE);
+    assertTrue("wrong balance", account.getBalance(day("2011-12-31")) == -15025L);
+
+    // A later item changes the balance and activity.
+    addItem(account, 3L, "2011-12-31", 1.00D, Boolean.FALSE);
+    assertTrue("balance missing added item", account.getBalance(day("2011-12-31")) == -14925L);
+    assertTrue("activity missing added item",
+               account.getActivity(day("2011-01-01"), day("2011-12-31")) == -9900L);
+  }
+
+  /**
+   * Test method for {@link Account#getBalance(int)} and {@link Account#getActivity(int, int)}.
+   * Tests balances before, on, and between item dates and activity over ranges, and that freezing
+   * the account doesn't change them.
+   */
+  @Test
+  public void testGetBalance() {
+    Account account = new Account(NAME, DESCRIPTION, ACCOUNT_TYPE, DEBIT_DEFAULT, RECEIVABLE);
+    addItem(account, 1L, "2011-03-01", 100.00D, Boolean.TRUE);
+    addItem(account, 2L, "2010-06-15", 50.25D, Boolean.TRUE);
+    addItem(account, 3L, "2011-03-01", 10.00D, Boolean.FALSE);
+    addItem(account, 4L, "2012-01-01", 5.00D, Boolean.FALSE);
+    long unfrozenBalance = account.getBalance(day("2011-12-31"));
+
+    account.freeze();
+    assertTrue("balance before first item", account.getBalance(day("2010-06-14")) == 0L);
+    assertTrue("wrong balance on first day", account.getBalance(day("2010-06-15")) == -5025L);
+    assertTrue("wrong balance before second day",
+               account.getBalance(day("2011-02-28")) == -5025L);
+    assertTrue("wrong balance on second day", account.getBalance(day("2011-03-01")) == -14025L);
+    assertTrue("wrong balance after last item", account.getBalance(day("2013-01-01")) == -13525L);
+    assertTrue("frozen balance does not match balance before freezing",
+               account.getBalance(day("2011-12-31")) == unfrozenBalance);
+
+    assertTrue("wrong 2011 activity",
+               account.getActivity(day("2011-01-01"), day("2011-12-31")) == -9000L);
+    assertTrue("wrong activity on one day",
+               account.getActivity(day("2012-01-01"), day("2012-01-01")) == 500L);
+    assertTrue("activity in empty range",
+               account.getActivity(day("2012-01-01"), day("2011-01-01")) == 0L);
+  }
+
   /**
    * Test method for {@link com.poesys.accounting.dataloader.newaccounting.Account#hashCode()}.
    * Tests hashCode() for equality.
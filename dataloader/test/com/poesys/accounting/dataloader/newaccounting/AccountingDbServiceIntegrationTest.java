@@ -567,6 +567,148 @@ public class AccountingDbServiceIntegrationTest {
     }
   }
 
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.AccountingDbService#storeTransactions(java.util.Set)}
+   * with one transaction per chunk, so that the reimbursements link items stored in different
+   * chunks. Depends on storeEntity(), tested separately.
+   */
+  @Test
+  public void testStoreTransactionsChunked() {
+    CapitalStructure capitalStructure = createCapitalStructure();
+
+    FiscalYear year1 = new FiscalYear(YEAR1);
+    FiscalYear year2 = new FiscalYear(YEAR2);
+    FiscalYear year3 = new FiscalYear(YEAR3);
+
+    List<FiscalYear> years = new ArrayList<>();
+    years.add(year1);
+    years.add(year2);
+    years.add(year3);
+
+    Set<Transaction> transactions = createFiscalYearTransactions(years);
+
+    try {
+      clearDatabase();
+      logger.info("Storing transaction subsystem in chunks: entity, transactions");
+      IDataAccessService service = new AccountingDbService(IdMapWriter.DEFAULT_BATCH_SIZE, 1);
+      service.storeCapitalStructure(capitalStructure);
+      service.storeFiscalYears(years);
+      createAccounts(years);
+      service.storeEntity(ENTITY_NAME, years);
+      service.storeTransactions(transactions);
+      assertTrue("transaction subsystem not stored correctly",
+                 validateTransactionSubsystem(transactions));
+    } catch (java.lang.AssertionError e) {
+      // pass through to JUnit
+      throw e;
+    } catch (Throwable e) {
+      logger.error("exception storing entity and transactions in chunks", e);
+      fail("exception storing entity and transactions in chunks");
+    }
+    finally {
+      clearDatabase();
+    }
+  }
+
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.AccountingDbService#storeTransactions(java.util.Set)}
+   * with the fiscal years stored on parallel threads, so that reimbursements across years link in
+   * the final pass. Depends on storeEntity(), tested separately.
+   */
+  @Test
+  public void testStoreTransactionsParallel() {
+    CapitalStructure capitalStructure = createCapitalStructure();
+
+    FiscalYear year1 = new FiscalYear(YEAR1);
+    FiscalYear year2 = new FiscalYear(YEAR2);
+    FiscalYear year3 = new FiscalYear(YEAR3);
+
+    List<FiscalYear> years = new ArrayList<>();
+    years.add(year1);
+    years.add(year2);
+    years.add(year3);
+
+    Set<Transaction> transactions = createFiscalYearTransactions(years);
+
+    try {
+      clearDatabase();
+      logger.info("Storing transaction subsystem in parallel: entity, transactions");
+      IDataAccessService service = new AccountingDbService(IdMapWriter.DEFAULT_BATCH_SIZE, 1, 3);
+      service.storeCapitalStructure(capitalStructure);
+      service.storeFiscalYears(years);
+      createAccounts(years);
+      service.storeEntity(ENTITY_NAME, years);
+      service.storeTransactions(transactions);
+      assertTrue("transaction subsystem not stored correctly",
+                 validateTransactionSubsystem(transactions));
+    } catch (java.lang.AssertionError e) {
+      // pass through to JUnit
+      throw e;
+    } catch (Throwable e) {
+      logger.error("exception storing entity and transactions in parallel", e);
+      fail("exception storing entity and transactions in parallel");
+    }
+    finally {
+      clearDatabase();
+    }
+  }
+
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.AccountingDbService#storeTransactions(java.util.Set)}
+   * in delta mode. Stores everything, then stores it all again in delta mode, which should skip
+   * everything already stored and leave the database as it was. Depends on storeEntity(), tested
+   * separately.
+   */
+  @Test
+  public void testStoreTransactionsDelta() {
+    CapitalStructure capitalStructure = createCapitalStructure();
+
+    FiscalYear year1 = new FiscalYear(YEAR1);
+    FiscalYear year2 = new FiscalYear(YEAR2);
+    FiscalYear year3 = new FiscalYear(YEAR3);
+
+    List<FiscalYear> years = new ArrayList<>();
+    years.add(year1);
+    years.add(year2);
+    years.add(year3);
+
+    Set<Transaction> transactions = createFiscalYearTransactions(years);
+
+    try {
+      clearDatabase();
+      logger.info("Storing transaction subsystem, then storing again in delta mode");
+      IDataAccessService service = new AccountingDbService();
+      service.storeCapitalStructure(capitalStructure);
+      service.storeFiscalYears(years);
+      createAccounts(years);
+      service.storeEntity(ENTITY_NAME, years);
+      service.storeTransactions(transactions);
+
+      IDataAccessService deltaService =
+        new AccountingDbService(IdMapWriter.DEFAULT_BATCH_SIZE,
+                                AccountingDbService.DEFAULT_TRANSACTION_CHUNK_SIZE,
+                                AccountingDbService.DEFAULT_STORE_THREADS, true);
+      deltaService.storeCapitalStructure(capitalStructure);
+      deltaService.storeFiscalYears(years);
+      deltaService.storeEntity(ENTITY_NAME, years);
+      deltaService.storeTransactions(transactions);
+      assertTrue("transaction subsystem not stored correctly",
+                 validateTransactionSubsystem(transactions));
+    } catch (java.lang.AssertionError e) {
+      // pass through to JUnit
+      throw e;
+    } catch (Throwable e) {
+      logger.error("exception storing entity and transactions in delta mode", e);
+      fail("exception storing entity and transactions in delta mode");
+    }
+    finally {
+      clearDatabase();
+    }
+  }
+
   /**
    * Validate the transactions, items, and reimbursements stored by the storeEntity() method against
    * the database. Use the IdMap table to look up the new transaction id based on the old one. This
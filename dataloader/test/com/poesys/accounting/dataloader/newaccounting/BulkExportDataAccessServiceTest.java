@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * CUT: BulkExportDataAccessService
+ *
+ * @author Robert J. Muller
+ */
+public class BulkExportDataAccessServiceTest {
+  private static final Logger logger = Logger.getLogger(BulkExportDataAccessServiceTest.class);
+
+  private static final String ENTITY_NAME = "Test Entity";
+  private static final String DESCRIPTION = "description";
+  private static final Boolean DEBIT = Boolean.TRUE;
+  private static final Boolean CREDIT = Boolean.FALSE;
+  private static final Boolean CHECKED = Boolean.TRUE;
+  private static final Boolean NOT_CHECKED = Boolean.FALSE;
+  private static final Boolean NOT_BALANCE = Boolean.FALSE;
+  private static final Boolean RECEIVABLE = Boolean.TRUE;
+  private static final Boolean NOT_RECEIVABLE = Boolean.FALSE;
+
+  /** temporary directory for the export files */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final FiscalYear year2017 = new FiscalYear(2017);
+  private final CapitalEntity partner =
+    new CapitalEntity("Partner", "Capital", null, BigDecimal.ONE);
+  private final Account checking =
+    new Account("Checking", "Checking\taccount", AccountType.ASSETS, DEBIT, NOT_RECEIVABLE);
+  private final Account receivable =
+    new Account("Receivable", DESCRIPTION, AccountType.ASSETS, DEBIT, RECEIVABLE);
+  private final Account capital =
+    new Account("Capital", DESCRIPTION, AccountType.EQUITY, CREDIT, NOT_RECEIVABLE);
+
+  /**
+   * Link an account to the fiscal year.
+   *
+   * @param account the account
+   * @param type    the account type
+   * @param order   the group and account order number
+   */
+  private void link(Account account, AccountType type, Integer order) {
+    FiscalYearAccount link =
+      new FiscalYearAccount(year2017, type, new AccountGroup(type.toString()), order, account,
+                            order);
+    account.addYear(link);
+    year2017.addAccount(link);
+  }
+
+  /**
+   * Create the transactions: a receivable, issued second by id but first by date, and a payment
+   * that reimburses it.
+   *
+   * @return the set of transactions
+   */
+  private Set<Transaction> createTransactions() {
+    capital.setCapitalEntity(partner);
+    link(checking, AccountType.ASSETS, 1);
+    link(receivable, AccountType.ASSETS, 2);
+    link(capital, AccountType.EQUITY, 1);
+
+    Transaction payment =
+      new Transaction(BigInteger.ONE, DESCRIPTION, Timestamp.valueOf("2017-03-01 00:00:00"),
+                      NOT_CHECKED, NOT_BALANCE);
+    Item reimbursing = payment.addItem(100.00D, receivable, CREDIT, CHECKED);
+    payment.addItem(100.00D, checking, DEBIT, CHECKED);
+
+    Transaction loan =
+      new Transaction(BigInteger.valueOf(2L), "loan", Timestamp.valueOf("2017-01-15 00:00:00"),
+                      CHECKED, NOT_BALANCE);
+    Item receivableItem = loan.addItem(100.00D, receivable, DEBIT, CHECKED);
+    loan.addItem(100.00D, checking, CREDIT, CHECKED);
+    receivableItem.reimburse(reimbursing, 100.00D, 0.00D);
+
+    Set<Transaction> transactions = new HashSet<>();
+    transactions.add(payment);
+    transactions.add(loan);
+    return transactions;
+  }
+
+  /**
+   * Export the capital structure, fiscal year, entity, and transactions.
+   *
+   * @param service the service
+   */
+  private void export(BulkExportDataAccessService service) {
+    CapitalStructure structure = new CapitalStructure("Income Summary");
+    List<CapitalEntity> entities = new ArrayList<>();
+    entities.add(partner);
+    structure.addEntities(entities);
+    Set<Transaction> transactions = createTransactions();
+    List<FiscalYear> years = new ArrayList<>();
+    years.add(year2017);
+
+    service.storeCapitalStructure(structure);
+    service.storeFiscalYears(years);
+    service.storeEntity(ENTITY_NAME, years);
+    service.storeTransactions(transactions);
+  }
+
+  /**
+   * Read the lines of a table file.
+   *
+   * @param service the service
+   * @param table   the table name
+   * @return the lines, including the header
+   * @throws IOException when the file can't be read
+   */
+  private static List<String> read(BulkExportDataAccessService service, String table)
+    throws IOException {
+    return Files.readAllLines(service.getFile(table).toPath(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Test method for {@link BulkExportDataAccessService#storeEntity(String, List)}. Tests the
+   * entity, account, subtype, group, and link files, including escaping.
+   *
+   * @throws IOException when a file can't be read
+   */
+  @Test
+  public void testStoreEntity() throws IOException {
+    BulkExportDataAccessService service = new BulkExportDataAccessService(folder.getRoot());
+    export(service);
+
+    List<String> lines = read(service, BulkExportDataAccessService.CAPITAL_ENTITY);
+    assertTrue("wrong capital entities: " + lines,
+               lines.size() == 2 && lines.get(1).equals("Partner"));
+    lines = read(service, BulkExportDataAccessService.FISCAL_YEAR);
+    assertTrue("wrong fiscal years: " + lines, lines.size() == 2 &&
+                                               lines.get(1).equals(
+                                                 "2017\t2017-01-01 00:00:00\t2017-12-31 23:59:59"));
+    lines = read(service, BulkExportDataAccessService.ACCOUNT);
+    assertTrue("wrong number of accounts: " + lines, lines.size() == 4);
+    assertTrue("wrong account header: " + lines.get(0),
+               lines.get(0).equals("accountName\tentityName\tdescription\tdebitDefault\tactive"));
+    assertTrue("description not escaped: " + lines,
+               lines.contains("Checking\tTest Entity\tChecking\\taccount\t1\t1"));
+    lines = read(service, BulkExportDataAccessService.SIMPLE_ACCOUNT);
+    assertTrue("wrong simple accounts: " + lines,
+               lines.size() == 3 && lines.contains("Receivable\tTest Entity\t1"));
+    lines = read(service, BulkExportDataAccessService.CAPITAL_ACCOUNT);
+    assertTrue("wrong capital accounts: " + lines,
+               lines.size() == 2 && lines.get(1).equals("Capital\tTest Entity\t1.0\tPartner"));
+    lines = read(service, BulkExportDataAccessService.ACCOUNT_GROUP);
+    assertTrue("wrong groups: " + lines, lines.size() == 3);
+    lines = read(service, BulkExportDataAccessService.FISCAL_YEAR_ACCOUNT);
+    assertTrue("wrong links: " + lines, lines.size() == 4);
+  }
+
+  /**
+   * Test method for {@link BulkExportDataAccessService#storeTransactions(Set)}. Tests the local
+   * ids assigned in date order, the items, the reimbursement, the id map, and the load script.
+   *
+   * @throws IOException when a file can't be read
+   */
+  @Test
+  public void testStoreTransactions() throws IOException {
+    BulkExportDataAccessService service =
+      new BulkExportDataAccessService(folder.getRoot(), BigInteger.valueOf(100L));
+    export(service);
+
+    List<String> lines = read(service, BulkExportDataAccessService.TRANSACTION);
+    assertTrue("wrong transactions: " + lines, lines.size() == 3);
+    assertTrue("loan not first: " + lines.get(1),
+               lines.get(1).equals("100\tloan\t2017-01-15 00:00:00\t1\t0"));
+    lines = read(service, BulkExportDataAccessService.ID_MAP);
+    assertTrue("wrong id map: " + lines, lines.contains("Test Entity\t2017\t2\t100") &&
+                                         lines.contains("Test Entity\t2017\t1\t101"));
+    lines = read(service, BulkExportDataAccessService.ITEM);
+    assertTrue("wrong number of items: " + lines, lines.size() == 5);
+
+    // Find the order numbers of the receivable items and check the reimbursement against them.
+    String loanOrder = null;
+    String paymentOrder = null;
+    for (String line : lines) {
+      String[] fields = line.split("\t");
+      if (fields[5].equals("Receivable")) {
+        if (fields[1].equals("100")) {
+          loanOrder = fields[0];
+        } else {
+          paymentOrder = fields[0];
+        }
+      }
+    }
+    lines = read(service, BulkExportDataAccessService.REIMBURSEMENT);
+    assertTrue("wrong reimbursements: " + lines, lines.size() == 2 && lines.get(1).equals(
+      loanOrder + "\t" + paymentOrder + "\t100\t101\t100.0\t0.0"));
+
+    lines = Files.readAllLines(
+      new File(folder.getRoot(), BulkExportDataAccessService.LOAD_SCRIPT).toPath(),
+      StandardCharsets.UTF_8);
+    assertTrue("wrong number of load statements: " + lines.size(), lines.size() == 13);
+    assertTrue("capital entity not loaded first: " + lines.get(0),
+               lines.get(0).contains("INTO TABLE CapitalEntity IGNORE 1 LINES"));
+    assertTrue("id map not loaded last: " + lines.get(12),
+               lines.get(12).endsWith("INTO TABLE IdMap IGNORE 1 LINES " +
+                                      "(entityName, year, oldId, newId);"));
+  }
+
+  /**
+   * Test method for {@link BulkExportDataAccessService#storeTransactions(Set, Set)}. Tests that a
+   * later call appends its transactions with the ids following the earlier ones and links the
+   * stored receivable to the new reimbursing item.
+   *
+   * @throws IOException when a file can't be read
+   */
+  @Test
+  public void testStoreTransactionsStored() throws IOException {
+    BulkExportDataAccessService service =
+      new BulkExportDataAccessService(folder.getRoot(), BigInteger.valueOf(100L));
+    Set<Transaction> transactions = createTransactions();
+    Set<Transaction> loans = new HashSet<>();
+    Set<Transaction> payments = new HashSet<>();
+    for (Transaction transaction : transactions) {
+      (transaction.getDescription().equals("loan") ? loans : payments).add(transaction);
+    }
+    List<FiscalYear> years = new ArrayList<>();
+    years.add(year2017);
+    service.storeEntity(ENTITY_NAME, years);
+    service.storeTransactions(loans, new HashSet<>());
+    List<String> lines = read(service, BulkExportDataAccessService.REIMBURSEMENT);
+    assertTrue("reimbursement written before its reimbursing item: " + lines, lines.size() == 1);
+
+    service.storeTransactions(payments, loans);
+    lines = read(service, BulkExportDataAccessService.TRANSACTION);
+    assertTrue("wrong transactions: " + lines, lines.size() == 3 &&
+                                               lines.get(1).startsWith("100\tloan\t") &&
+                                               lines.get(2).startsWith("101\t"));
+    lines = read(service, BulkExportDataAccessService.ITEM);
+    assertTrue("wrong number of items: " + lines, lines.size() == 5);
+    lines = read(service, BulkExportDataAccessService.REIMBURSEMENT);
+    assertTrue("wrong reimbursements: " + lines,
+               lines.size() == 2 && lines.get(1).contains("\t100\t101\t100.0\t0.0"));
+  }
+
+  /**
+   * Test method for {@link BulkExportDataAccessService#storeTransactions(Set)} with no entity.
+   */
+  @Test
+  public void testStoreTransactionsNoEntity() {
+    BulkExportDataAccessService service = new BulkExportDataAccessService(folder.getRoot());
+    try {
+      service.storeTransactions(new HashSet<>());
+      fail("no entity stored but no exception");
+    } catch (RuntimeException e) {
+      // success
+    }
+  }
+
+  /**
+   * Test method for {@link BulkExportDataAccessService#storeTransactions(Set)}. Tests the export of
+   * 1,000 and 10,000 two-item transactions; logs the time for each size.
+   *
+   * @throws IOException when there is a problem reading the exported files
+   */
+  @Test
+  public void testStoreTransactionsScaling() throws IOException {
+    int[] sizes = {1000, 10000};
+    link(checking, AccountType.ASSETS, 1);
+    link(capital, AccountType.EQUITY, 1);
+    List<FiscalYear> years = new ArrayList<>();
+    years.add(year2017);
+    long base = Timestamp.valueOf("2017-01-01 00:00:00").getTime();
+    for (int size : sizes) {
+      Set<Transaction> transactions = new HashSet<>();
+      for (int i = 0; i < size; i++) {
+        Transaction transaction =
+          new Transaction(BigInteger.valueOf(i), DESCRIPTION, new Timestamp(base + i * 60000L),
+                          NOT_CHECKED, NOT_BALANCE);
+        transaction.addItem(10.00D, checking, DEBIT, CHECKED);
+        transaction.addItem(10.00D, capital, CREDIT, CHECKED);
+        transactions.add(transaction);
+      }
+      BulkExportDataAccessService service =
+        new BulkExportDataAccessService(folder.newFolder("export" + size));
+      service.storeEntity(ENTITY_NAME, years);
+
+      long start = System.nanoTime();
+      service.storeTransactions(transactions);
+      long time = System.nanoTime() - start;
+      logger.info("Exported " + size + " transactions in " + time / 1000 + " microseconds");
+
+      List<String> lines = read(service, BulkExportDataAccessService.TRANSACTION);
+      assertTrue("wrong number of transaction lines: " + lines.size(), lines.size() == size + 1);
+      lines = read(service, BulkExportDataAccessService.ITEM);
+      assertTrue("wrong number of item lines: " + lines.size(), lines.size() == size * 2 + 1);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.poesys.accounting.dataloader.IBuilder;
+import com.poesys.accounting.dataloader.newaccounting.Statement.StatementType;
+import com.poesys.accounting.dataloader.oldaccounting.OldDataBuilder;
+import com.poesys.accounting.dataloader.properties.IParameters;
+import com.poesys.accounting.dataloader.properties.UnitTestParametersCapitalPoesys1998Bug;
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * CUT: CapitalBalances
+ *
+ * @author Robert J. Muller
+ */
+public class CapitalBalancesTest {
+  /**
+   * Check that the aggregate balances match the balance sheet and income statement for the year.
+   *
+   * @param balances  the aggregate
+   * @param structure the capital structure
+   * @param step      the name of the update step for messages
+   */
+  private void checkBalances(CapitalBalances balances, CapitalStructure structure, String step) {
+    FiscalYear year = balances.getYear();
+    Statement balanceSheet = new Statement(year, "Balance Sheet", StatementType.BALANCE_SHEET);
+    Statement incomeStatement =
+      new Statement(year, "Income Statement", StatementType.INCOME_STATEMENT);
+    assertTrue("wrong net income " + step + ": " + balances.getNetIncome(),
+               balances.getNetIncome().compareTo(incomeStatement.getBalance()) == 0);
+    for (CapitalEntity entity : structure.getEntities()) {
+      for (Account account : new Account[] {entity.getCapitalAccount(),
+                                            entity.getDistributionAccount()}) {
+        assertTrue("wrong balance for " + account.getName() + " " + step + ": " +
+                   balances.getBalance(account),
+                   balances.getBalance(account)
+                     .compareTo(balanceSheet.getAccountBalance(account)) == 0);
+      }
+    }
+  }
+
+  /**
+   * Test method for
+   * {@link CapitalBalances#CapitalBalances(FiscalYear, CapitalStructure, IBuilder)} and
+   * {@link CapitalBalances#apply(Transaction)}. Tests that the aggregate matches the statements
+   * before the update and after each capital structure operation applies its transactions.
+   */
+  @Test
+  public void testCapitalBalances() {
+    IParameters parameters = new UnitTestParametersCapitalPoesys1998Bug();
+    IBuilder builder = new OldDataBuilder(parameters);
+    builder.buildCapitalStructure();
+    builder.buildFiscalYear(parameters.getStartYear());
+    builder.buildAccountGroups();
+    builder.buildAccountMap();
+    builder.buildAccounts();
+    builder.buildBalances();
+    builder.buildTransactions();
+
+    FiscalYear year = builder.getFiscalYear();
+    CapitalStructure structure = builder.getCapitalStructure();
+    CapitalBalances balances = new CapitalBalances(year, structure, builder);
+    checkBalances(balances, structure, "before update");
+
+    structure.getIncomeToCapitalTransaction(builder, balances);
+    checkBalances(balances, structure, "after income transfer");
+
+    List<Transaction> transactions = structure.getDistributionTransactions(balances);
+    assertTrue("no distribution transactions", !transactions.isEmpty());
+    checkBalances(balances, structure, "after distribution transfer");
+
+    Transaction adjustment = structure.getCapitalAdjustmentTransaction(builder, balances);
+    assertTrue("no adjusting transaction", adjustment != null);
+    checkBalances(balances, structure, "after capital adjustment");
+  }
+
+  /**
+   * Test method for {@link CapitalBalances#getBalance(Account)} with an account that is not part of
+   * the capital structure.
+   */
+  @Test
+  public void testGetBalanceNotTracked() {
+    IParameters parameters = new UnitTestParametersCapitalPoesys1998Bug();
+    IBuilder builder = new OldDataBuilder(parameters);
+    builder.buildCapitalStructure();
+    builder.buildFiscalYear(parameters.getStartYear());
+    builder.buildAccountGroups();
+    builder.buildAccountMap();
+    builder.buildAccounts();
+    CapitalBalances balances =
+      new CapitalBalances(builder.getFiscalYear(), builder.getCapitalStructure(), builder);
+    try {
+      balances.getBalance(new Account("Other", "other", AccountType.ASSETS, true, false));
+      fail("got balance for account not in capital structure");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.poesys.accounting.dataloader.newaccounting.Statement.StatementType;
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * CUT: ComparativeReport
+ *
+ * @author Robert J. Muller
+ */
+public class ComparativeReportTest {
+  private static final String DESCRIPTION = "description";
+  private static final Boolean DEBIT = Boolean.TRUE;
+  private static final Boolean CREDIT = Boolean.FALSE;
+  private static final Boolean CHECKED = Boolean.TRUE;
+  private static final Boolean NOT_CHECKED = Boolean.FALSE;
+  private static final Boolean BALANCE = Boolean.TRUE;
+  private static final Boolean NOT_BALANCE = Boolean.FALSE;
+  private static final Boolean NOT_RECEIVABLE = Boolean.FALSE;
+
+  private final FiscalYear year2016 = new FiscalYear(2016);
+  private final FiscalYear year2017 = new FiscalYear(2017);
+  private final Account checking =
+    new Account("Checking", DESCRIPTION, AccountType.ASSETS, DEBIT, NOT_RECEIVABLE);
+  private final Account capital =
+    new Account("Capital", DESCRIPTION, AccountType.EQUITY, CREDIT, NOT_RECEIVABLE);
+  private final Account salary =
+    new Account("Salary", DESCRIPTION, AccountType.INCOME, CREDIT, NOT_RECEIVABLE);
+  private final Account food =
+    new Account("Food", DESCRIPTION, AccountType.EXPENSES, DEBIT, NOT_RECEIVABLE);
+  private BigInteger nextId = BigInteger.ONE;
+
+  /**
+   * Link an account to a fiscal year.
+   *
+   * @param year    the fiscal year
+   * @param account the account
+   * @param type    the account type
+   * @param order   the group and account order number
+   */
+  private void link(FiscalYear year, Account account, AccountType type, Integer order) {
+    FiscalYearAccount link =
+      new FiscalYearAccount(year, type, new AccountGroup(type.toString()), order, account, order);
+    account.addYear(link);
+    year.addAccount(link);
+  }
+
+  /**
+   * Create a two-item transaction.
+   *
+   * @param date    the transaction date
+   * @param amount  the amount
+   * @param from    the credited account
+   * @param to      the debited account
+   * @param balance whether the transaction is a balance transaction
+   */
+  private void transfer(String date, Double amount, Account from, Account to, Boolean balance) {
+    Transaction transaction =
+      new Transaction(nextId, DESCRIPTION, Timestamp.valueOf(date), NOT_CHECKED, balance);
+    transaction.addItem(amount, from, CREDIT, CHECKED);
+    transaction.addItem(amount, to, DEBIT, CHECKED);
+    nextId = nextId.add(BigInteger.ONE);
+  }
+
+  /**
+   * Create two fiscal years of data with an opening balance, income in both years, and an expense
+   * in the second year only. The expense account is linked only to the second year.
+   *
+   * @return the list of fiscal years, out of order
+   */
+  private List<FiscalYear> createYears() {
+    for (FiscalYear year : new FiscalYear[] {year2016, year2017}) {
+      link(year, checking, AccountType.ASSETS, 1);
+      link(year, capital, AccountType.EQUITY, 2);
+      link(year, salary, AccountType.INCOME, 1);
+    }
+    link(year2017, food, AccountType.EXPENSES, 1);
+
+    transfer("2016-01-01 00:00:00", 100.00D, capital, checking, BALANCE);
+    transfer("2016-06-15 00:00:00", 1000.10D, salary, checking, NOT_BALANCE);
+    transfer("2017-03-01 00:00:00", 500.01D, salary, checking, NOT_BALANCE);
+    transfer("2017-12-31 00:00:00", 237.45D, checking, food, NOT_BALANCE);
+    // Item after the last year, ignored
+    transfer("2018-01-02 00:00:00", 5.00D, salary, checking, NOT_BALANCE);
+
+    List<FiscalYear> years = new ArrayList<>();
+    years.add(year2017);
+    years.add(year2016);
+    return years;
+  }
+
+  /**
+   * Test method for
+   * {@link ComparativeReport#getTotal(Account, Integer)}.
+   * Tests that every total matches the corresponding Statement rollup for every year.
+   */
+  @Test
+  public void testGetTotal() {
+    ComparativeReport report = new ComparativeReport(createYears());
+    for (FiscalYear year : new FiscalYear[] {year2016, year2017}) {
+      Statement balanceSheet = new Statement(year, "Balance Sheet", StatementType.BALANCE_SHEET);
+      Statement incomeStatement =
+        new Statement(year, "Income Statement", StatementType.INCOME_STATEMENT);
+      for (Account account : new Account[] {checking, capital}) {
+        BigDecimal total = report.getTotal(account, year.getYear());
+        assertTrue("wrong total for " + account.getName() + " in " + year.getYear() + ": " + total,
+                   total.compareTo(balanceSheet.getAccountBalance(account)) == 0);
+      }
+      BigDecimal total = report.getTotal(salary, year.getYear());
+      assertTrue("wrong salary total in " + year.getYear() + ": " + total,
+                 total.compareTo(incomeStatement.getAccountBalance(salary)) == 0);
+    }
+    assertTrue("food total in year with no link",
+               report.getTotal(food, year2016.getYear()) == null);
+    assertTrue("wrong food total",
+               report.getTotal(food, year2017.getYear()).compareTo(new BigDecimal("-237.45")) ==
+               0);
+    assertTrue("wrong 2017 checking balance",
+               report.getTotal(checking, year2017.getYear())
+                 .compareTo(new BigDecimal("-1362.66")) == 0);
+  }
+
+  /**
+   * Test method for {@link ComparativeReport#ComparativeReport(List)} with no years.
+   */
+  @Test
+  public void testComparativeReportNoYears() {
+    try {
+      new ComparativeReport(new ArrayList<>());
+      fail("no years for comparative report but no exception");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+  }
+
+  /**
+   * Test method for {@link ComparativeReport#write(java.io.Writer)}. Tests the header, the
+   * account and total rows, and the trial balance.
+   *
+   * @throws IOException when there is a problem writing the report
+   */
+  @Test
+  public void testWrite() throws IOException {
+    ComparativeReport report = new ComparativeReport(createYears());
+    StringWriter writer = new StringWriter();
+    report.write(writer);
+    String[] lines = writer.toString().split("\n");
+    assertTrue("wrong number of lines: " + lines.length, lines.length == 10);
+    assertTrue("wrong header: " + lines[0],
+               lines[0].equals("Section\tType\tGroup\tAccount\t2016\t2017"));
+    assertTrue("wrong first account line: " + lines[1],
+               lines[1].equals("Balance Sheet\tAssets\tAssets\tChecking\t-1100.10\t-1362.66"));
+    assertTrue("wrong balance sheet total: " + lines[3],
+               lines[3].equals("Balance Sheet\t\t\tTotal\t-1000.10\t-1262.66"));
+    assertTrue("wrong food line: " + lines[5],
+               lines[5].equals("Income Statement\tExpenses\tExpenses\tFood\t\t-237.45"));
+    assertTrue("wrong income statement total: " + lines[6],
+               lines[6].equals("Income Statement\t\t\tTotal\t1000.10\t262.56"));
+    assertTrue("wrong debits: " + lines[7],
+               lines[7].equals("Trial Balance\t\t\tDebits\t-1100.10\t-1600.11"));
+    assertTrue("wrong credits: " + lines[8],
+               lines[8].equals("Trial Balance\t\t\tCredits\t1100.10\t600.01"));
+    assertTrue("wrong net: " + lines[9], lines[9].equals("Trial Balance\t\t\tNet\t0.00\t-1000.10"));
+  }
+}
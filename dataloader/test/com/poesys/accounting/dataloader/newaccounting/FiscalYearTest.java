@@ -24,8 +24,10 @@ import com.poesys.db.InvalidParametersException;
 import org.apache.log4j.Logger;
 import org.junit.Test;
 
+import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Objects;
 
@@ -60,6 +62,36 @@ public class FiscalYearTest {
     assertTrue("wrong end date", end.equals(year.getEnd()));
   }
 
+  /**
+   * Test method for {@link FiscalYear#FiscalYear(Integer, LocalDate, LocalDate)}. Tests a fiscal
+   * year that doesn't start on January 1.
+   */
+  @Test
+  public void testFiscalYearDates() {
+    FiscalYear year = new FiscalYear(YEAR, LocalDate.of(YEAR, 7, 1), LocalDate.of(YEAR + 1, 6, 30));
+    assertTrue("wrong year", Objects.equals(year.getYear(), YEAR));
+    assertTrue("wrong start date",
+               Timestamp.valueOf(YEAR + "-07-01 00:00:00").equals(year.getStart()));
+    assertTrue("wrong end date",
+               Timestamp.valueOf((YEAR + 1) + "-06-30 23:59:59").equals(year.getEnd()));
+    assertTrue("date after calendar year not in year",
+               year.isIn(Timestamp.valueOf((YEAR + 1) + "-03-01 00:00:00")));
+  }
+
+  /**
+   * Test method for {@link FiscalYear#FiscalYear(Integer, LocalDate, LocalDate)}. Tests exception
+   * from constructor with an end date before the start date.
+   */
+  @Test
+  public void testFiscalYearEndBeforeStart() {
+    try {
+      new FiscalYear(YEAR, LocalDate.of(YEAR, 7, 1), LocalDate.of(YEAR, 6, 30));
+      fail("end before start but no exception");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+  }
+
   /**
    * Test method for
    * {@link com.poesys.accounting.dataloader.newaccounting.FiscalYear#FiscalYear(java.lang.Integer)}
@@ -287,6 +319,91 @@ public class FiscalYearTest {
     assertTrue("fiscal year not in account year list: " + year, found);
   }
 
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.FiscalYear#addAccount(com.poesys.accounting.dataloader.newaccounting.FiscalYearAccount)}
+   * . Tests that accounts added out of order are kept in account type, group, and account order,
+   * with accounts of the same order in the order added.
+   */
+  @Test
+  public void testAddAccountOrder() {
+    FiscalYear year = new FiscalYear(YEAR);
+    AccountGroup group = new AccountGroup("Group");
+    Account expense = new Account("Expense", "Expense", AccountType.EXPENSES, true, false);
+    Account income2 = new Account("Income 2", "Income", AccountType.INCOME, false, false);
+    Account income1 = new Account("Income 1", "Income", AccountType.INCOME, false, false);
+    Account cash = new Account("Cash", "Cash", AccountType.ASSETS, true, false);
+    Account checking = new Account("Checking", "Checking", AccountType.ASSETS, true, false);
+    year.addAccount(new FiscalYearAccount(year, AccountType.EXPENSES, group, 1, expense, 1));
+    year.addAccount(new FiscalYearAccount(year, AccountType.INCOME, group, 1, income2, 2));
+    year.addAccount(new FiscalYearAccount(year, AccountType.ASSETS, group, 1, cash, 1));
+    year.addAccount(new FiscalYearAccount(year, AccountType.INCOME, group, 1, income1, 1));
+    year.addAccount(new FiscalYearAccount(year, AccountType.ASSETS, group, 1, checking, 1));
+
+    Account[] expected = {cash, checking, income1, income2, expense};
+    List<FiscalYearAccount> list = year.getAccounts();
+    assertTrue("wrong number of accounts: " + list.size(), list.size() == expected.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertTrue("wrong account at " + i + ": " + list.get(i),
+                 list.get(i).getAccount() == expected[i]);
+    }
+  }
+
+  /**
+   * Test method for {@link FiscalYear#isIn(int)} and {@link FiscalYear#isInYearOrPriorYear(int)}.
+   * Tests the first and last days of the year and the days on either side, along with the start
+   * and end timestamps.
+   */
+  @Test
+  public void testIsInEpochDay() {
+    FiscalYear year = new FiscalYear(YEAR);
+    int first = (int)LocalDate.of(YEAR, 1, 1).toEpochDay();
+    int last = (int)LocalDate.of(YEAR, 12, 31).toEpochDay();
+    assertTrue("wrong start day", year.getStartDay() == first);
+    assertTrue("wrong end day", year.getEndDay() == last);
+    assertTrue("wrong start", year.getStart().equals(Timestamp.valueOf("2017-01-01 00:00:00")));
+    assertTrue("wrong end", year.getEnd().equals(Timestamp.valueOf("2017-12-31 23:59:59")));
+
+    assertTrue("day before year in year", !year.isIn(first - 1));
+    assertTrue("first day not in year", year.isIn(first));
+    assertTrue("last day not in year", year.isIn(last));
+    assertTrue("day after year in year", !year.isIn(last + 1));
+    assertTrue("prior day not in year or prior year", year.isInYearOrPriorYear(first - 1));
+    assertTrue("last day not in year or prior year", year.isInYearOrPriorYear(last));
+    assertTrue("later day in year or prior year", !year.isInYearOrPriorYear(last + 1));
+    assertTrue("last second not in year", year.isIn(Timestamp.valueOf("2017-12-31 23:59:59")));
+    assertTrue("next year in year", !year.isIn(Timestamp.valueOf("2018-01-01 00:00:00")));
+  }
+
+  /**
+   * Test method for {@link FiscalYear#freeze()}. Tests that a frozen year keeps its accounts in
+   * order in an immutable list and that adding an account fails.
+   */
+  @Test
+  public void testFreeze() {
+    FiscalYear year = new FiscalYear(YEAR);
+    AccountGroup group = new AccountGroup("Group");
+    Account income = new Account("Income", "Income", AccountType.INCOME, false, false);
+    Account cash = new Account("Cash", "Cash", AccountType.ASSETS, true, false);
+    year.addAccount(new FiscalYearAccount(year, AccountType.INCOME, group, 1, income, 1));
+    year.addAccount(new FiscalYearAccount(year, AccountType.ASSETS, group, 1, cash, 1));
+
+    year.freeze();
+    List<FiscalYearAccount> list = year.getAccounts();
+    assertTrue("frozen accounts not the same list", list == year.getAccounts());
+    assertTrue("wrong number of frozen accounts: " + list.size(), list.size() == 2);
+    assertTrue("frozen accounts out of order",
+               list.get(0).getAccount() == cash && list.get(1).getAccount() == income);
+    try {
+      year.addAccount(new FiscalYearAccount(year, AccountType.ASSETS, group, 1,
+                                            new Account("Checking", "Checking",
+                                                        AccountType.ASSETS, true, false), 2));
+      fail("added account to frozen year");
+    } catch (UnsupportedOperationException e) {
+      // success
+    }
+  }
+
   /**
    * Test method for
    * {@link com.poesys.accounting.dataloader.newaccounting.FiscalYear#addAccount(com.poesys.accounting.dataloader.newaccounting.FiscalYearAccount)}
@@ -358,4 +475,49 @@ public class FiscalYearTest {
       throw e;
     }
   }
+
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.FiscalYear#getStatementBalances()}
+   * . Tests that recorded balances survive changes to later years but become stale when an item
+   * dated in the year or a new account link changes the year's statements.
+   */
+  @Test
+  public void testStatementBalances() {
+    FiscalYear year = new FiscalYear(YEAR);
+    FiscalYear laterYear = new FiscalYear(LATER_YEAR);
+    Account account = new Account("Checking", "Checking", AccountType.ASSETS, true, false);
+    for (FiscalYear fiscalYear : new FiscalYear[] {year, laterYear}) {
+      FiscalYearAccount link = new FiscalYearAccount(fiscalYear, AccountType.ASSETS,
+                                                     new AccountGroup("Cash"), 1, account, 1);
+      account.addYear(link);
+      fiscalYear.addAccount(link);
+    }
+    assertTrue("balances before recording", year.getStatementBalances() == null);
+
+    year.setStatementBalances(BigDecimal.ONE, BigDecimal.TEN);
+    StatementBalances balances = year.getStatementBalances();
+    assertTrue("no balances after recording", balances != null);
+    assertTrue("wrong balance sheet balance",
+               balances.getBalanceSheetBalance().equals(BigDecimal.ONE));
+    assertTrue("wrong income statement balance",
+               balances.getIncomeStatementBalance().equals(BigDecimal.TEN));
+
+    // An item in a later year doesn't affect the year.
+    Transaction later = new Transaction(BigInteger.ONE, "later", laterYear.getStart(), false, false);
+    later.addItem(10.00D, account, true, false);
+    assertTrue("balances stale after later-year item", year.getStatementBalances() != null);
+
+    // An item in the year does.
+    Transaction current = new Transaction(BigInteger.ONE, "current", year.getStart(), false, false);
+    current.addItem(10.00D, account, true, false);
+    assertTrue("balances not stale after item in year", year.getStatementBalances() == null);
+
+    // So does a new account link.
+    year.setStatementBalances(BigDecimal.ONE, BigDecimal.TEN);
+    Account other = new Account("Savings", "Savings", AccountType.ASSETS, true, false);
+    year.addAccount(
+      new FiscalYearAccount(year, AccountType.ASSETS, new AccountGroup("Cash"), 1, other, 2));
+    assertTrue("balances not stale after new link", year.getStatementBalances() == null);
+  }
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * CUT: IdMapWriter
+ *
+ * @author Robert J. Muller
+ */
+public class IdMapWriterTest {
+  private static final String ENTITY = "Transaction";
+  private static final Integer YEAR = 2017;
+
+  /**
+   * An in-process stand-in for a JDBC connection and its prepared statement that counts the calls
+   * the writer makes and fails a configurable number of batch executions
+   */
+  private static class FakeDatabase {
+    int prepares = 0;
+    int rows = 0;
+    int batches = 0;
+    int commits = 0;
+    int rollbacks = 0;
+    int committedRows = 0;
+    boolean closed = false;
+    /** the number of the batch execution (one-based) at which failures start, 0 for none */
+    int failAt = 0;
+    /** the number of consecutive executions that fail starting at failAt */
+    int failures = 0;
+    private int executions = 0;
+    private int pending = 0;
+
+    Connection getConnection() {
+      PreparedStatement stmt =
+        (PreparedStatement)Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                  new Class<?>[] {PreparedStatement.class},
+                                                  (proxy, method, args) -> {
+                                                    switch (method.getName()) {
+                                                      case "addBatch":
+                                                        rows++;
+                                                        pending++;
+                                                        return null;
+                                                      case "executeBatch":
+                                                        return execute();
+                                                      case "clearBatch":
+                                                        pending = 0;
+                                                        return null;
+                                                      case "close":
+                                                        closed = true;
+                                                        return null;
+                                                      default:
+                                                        return null;
+                                                    }
+                                                  });
+      return (Connection)Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                new Class<?>[] {Connection.class},
+                                                (proxy, method, args) -> {
+                                                  switch (method.getName()) {
+                                                    case "prepareStatement":
+                                                      prepares++;
+                                                      return stmt;
+                                                    case "commit":
+                                                      commits++;
+                                                      return null;
+                                                    case "rollback":
+                                                      rollbacks++;
+                                                      return null;
+                                                    default:
+                                                      return null;
+                                                  }
+                                                });
+    }
+
+    private int[] execute() throws SQLException {
+      executions++;
+      if (failAt > 0 && executions >= failAt && executions < failAt + failures) {
+        throw new SQLException("simulated batch failure " + executions);
+      }
+      batches++;
+      committedRows += pending;
+      int[] counts = new int[pending];
+      pending = 0;
+      return counts;
+    }
+  }
+
+  /**
+   * Create a map of ids.
+   *
+   * @param count the number of entries
+   * @return the map of new ids indexed by old id
+   */
+  private Map<OldId, BigDecimal> createIds(int count) {
+    Map<OldId, BigDecimal> ids = new LinkedHashMap<>();
+    for (int i = 1; i <= count; i++) {
+      ids.put(new OldId(ENTITY, YEAR, new BigDecimal(i)), new BigDecimal(i + 10000));
+    }
+    return ids;
+  }
+
+  /**
+   * Test method for {@link IdMapWriter#write(Connection, Map)}. Tests that the writer prepares one
+   * statement and sends and commits the rows in chunks of the batch size.
+   *
+   * @throws SQLException when there is a problem writing
+   */
+  @Test
+  public void testWrite() throws SQLException {
+    FakeDatabase db = new FakeDatabase();
+    IdMapWriter writer = new IdMapWriter(500, 1);
+    int count = writer.write(db.getConnection(), createIds(1050));
+    assertTrue("wrong count: " + count, count == 1050);
+    assertTrue("wrong number of prepares: " + db.prepares, db.prepares == 1);
+    assertTrue("wrong number of batches: " + db.batches, db.batches == 3);
+    assertTrue("wrong number of commits: " + db.commits, db.commits == 3);
+    assertTrue("wrong number of rows: " + db.rows, db.rows == 1050);
+    assertTrue("rollback without failure", db.rollbacks == 0);
+    assertTrue("statement not closed", db.closed);
+  }
+
+  /**
+   * Test method for {@link IdMapWriter#write(Connection, Map)}. Tests that a chunk that fails once
+   * is rolled back and sent again.
+   *
+   * @throws SQLException when there is a problem writing
+   */
+  @Test
+  public void testWriteRetry() throws SQLException {
+    FakeDatabase db = new FakeDatabase();
+    db.failAt = 2;
+    db.failures = 1;
+    IdMapWriter writer = new IdMapWriter(500, 1);
+    int count = writer.write(db.getConnection(), createIds(1050));
+    assertTrue("wrong count: " + count, count == 1050);
+    assertTrue("wrong number of rollbacks: " + db.rollbacks, db.rollbacks == 1);
+    assertTrue("wrong number of commits: " + db.commits, db.commits == 3);
+    assertTrue("wrong committed rows: " + db.committedRows, db.committedRows == 1050);
+    assertTrue("wrong number of rows sent: " + db.rows, db.rows == 1550);
+  }
+
+  /**
+   * Test method for {@link IdMapWriter#write(Connection, Map)}. Tests that a chunk that fails on
+   * every retry throws an exception, leaving the earlier chunks committed.
+   */
+  @Test
+  public void testWriteRetriesExhausted() {
+    FakeDatabase db = new FakeDatabase();
+    db.failAt = 2;
+    db.failures = 2;
+    IdMapWriter writer = new IdMapWriter(500, 1);
+    try {
+      writer.write(db.getConnection(), createIds(1050));
+      fail("chunk failed after retries but no exception");
+    } catch (SQLException e) {
+      assertTrue("wrong number of commits: " + db.commits, db.commits == 1);
+      assertTrue("wrong committed rows: " + db.committedRows, db.committedRows == 500);
+      assertTrue("wrong number of rollbacks: " + db.rollbacks, db.rollbacks == 2);
+      assertTrue("statement not closed", db.closed);
+    }
+  }
+
+  /**
+   * Test method for {@link IdMapWriter#write(Connection, Map)}. Tests that an entry with no new id
+   * throws an exception before writing anything.
+   *
+   * @throws SQLException when there is a problem writing
+   */
+  @Test
+  public void testWriteNoNewId() throws SQLException {
+    FakeDatabase db = new FakeDatabase();
+    Map<OldId, BigDecimal> ids = createIds(10);
+    ids.put(new OldId(ENTITY, YEAR, new BigDecimal(11)), null);
+    try {
+      new IdMapWriter().write(db.getConnection(), ids);
+      fail("no new id but no exception");
+    } catch (InvalidParametersException e) {
+      assertTrue("statement prepared for invalid entries", db.prepares == 0);
+    }
+  }
+
+  /**
+   * Test method for {@link IdMapWriter#IdMapWriter(int, int)} with an invalid batch size.
+   */
+  @Test
+  public void testIdMapWriterInvalidBatchSize() {
+    try {
+      new IdMapWriter(0, 1);
+      fail("zero batch size but no exception");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+  }
+}
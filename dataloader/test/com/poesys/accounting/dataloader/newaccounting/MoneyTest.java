@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * CUT: Money
+ *
+ * @author Robert J. Muller
+ */
+public class MoneyTest {
+  /** amounts at or near half cents and other hard cases for the double conversion */
+  private static final double[] EDGE_AMOUNTS =
+    {0D, -0D, 0.005D, -0.005D, 0.015D, 0.125D, -0.125D, 0.375D, 0.625D, 0.875D, 1.005D, 2.675D,
+     10.00D, 100.10D, 1000.10D, 237.45D, 999999.995D, 1234567.125D, 0.0049999999999999D,
+     0.0050000000000001D, 1e15D, -1e15D, 4.5035996273704955e13D, 1e20D, Double.MIN_VALUE};
+
+  /**
+   * Convert a double amount to cents the way the model always has.
+   *
+   * @param amount the amount
+   * @return the amount in cents
+   */
+  private static long expected(double amount) {
+    return new BigDecimal(amount).setScale(2, RoundingMode.HALF_DOWN).unscaledValue().longValue();
+  }
+
+  /**
+   * Test method for {@link Money#valueOf(Double)}. Tests that the conversion matches BigDecimal
+   * with RoundingMode.HALF_DOWN for amounts at and near half cents.
+   */
+  @Test
+  public void testValueOfDoubleEdges() {
+    for (double amount : EDGE_AMOUNTS) {
+      long cents = Money.valueOf(amount).getCents();
+      assertTrue("wrong cents for " + amount + ": " + cents + " vs. " + expected(amount),
+                 cents == expected(amount));
+    }
+  }
+
+  /**
+   * Test method for {@link Money#valueOf(Double)}. Tests that the conversion matches BigDecimal
+   * with RoundingMode.HALF_DOWN for random amounts of every magnitude up to a trillion dollars,
+   * including random amounts with whole cents and with half cents.
+   */
+  @Test
+  public void testValueOfDoubleRandom() {
+    Random random = new Random(20180101L);
+    for (int i = 0; i < 200000; i++) {
+      double magnitude = Math.pow(10D, random.nextInt(13));
+      double amount;
+      switch (i % 3) {
+        case 0:
+          amount = random.nextDouble() * magnitude;
+          break;
+        case 1:
+          amount = Math.floor(random.nextDouble() * magnitude * 100D) / 100D;
+          break;
+        default:
+          amount = (Math.floor(random.nextDouble() * magnitude * 100D) + 0.5D) / 100D;
+          break;
+      }
+      amount = random.nextBoolean() ? amount : -amount;
+      long cents = Money.valueOf(amount).getCents();
+      assertTrue("wrong cents for " + amount + ": " + cents + " vs. " + expected(amount),
+                 cents == expected(amount));
+    }
+  }
+
+  /**
+   * Test method for {@link Money#valueOf(Double)} and {@link Money#valueOf(BigDecimal)}. Tests
+   * null amounts.
+   */
+  @Test
+  public void testValueOfNull() {
+    try {
+      Money.valueOf((Double)null);
+      fail("no exception for null double amount");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+    try {
+      Money.valueOf((BigDecimal)null);
+      fail("no exception for null decimal amount");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+  }
+
+  /**
+   * Test method for {@link Money#valueOf(BigDecimal)}. Tests scale 2 amounts and rounding of half
+   * cents toward zero.
+   */
+  @Test
+  public void testValueOfBigDecimal() {
+    assertTrue("wrong cents for 100.10",
+               Money.valueOf(new BigDecimal("100.10")).getCents() == 10010L);
+    assertTrue("wrong cents for 1.005", Money.valueOf(new BigDecimal("1.005")).getCents() == 100L);
+    assertTrue("wrong cents for -1.006",
+               Money.valueOf(new BigDecimal("-1.006")).getCents() == -101L);
+  }
+
+  /**
+   * Test method for {@link Money#add(Money)}, {@link Money#subtract(Money)},
+   * {@link Money#negate()}, {@link Money#abs()}, and {@link Money#signum()}. Tests exact
+   * arithmetic on amounts that don't add exactly as doubles.
+   */
+  @Test
+  public void testArithmetic() {
+    Money total = Money.ZERO;
+    for (int i = 0; i < 10; i++) {
+      total = total.add(Money.valueOf(0.10D));
+    }
+    assertTrue("ten dimes not a dollar: " + total, total.equals(Money.ofCents(100L)));
+    assertTrue("wrong difference", total.subtract(Money.valueOf(0.01D)).getCents() == 99L);
+    assertTrue("wrong negation", total.negate().getCents() == -100L);
+    assertTrue("wrong absolute value", total.negate().abs().equals(total));
+    assertTrue("wrong sign of negative", total.negate().signum() == -1);
+    assertTrue("wrong sign of zero", Money.ZERO.signum() == 0);
+    assertTrue("zero not zero", total.subtract(total).isZero());
+  }
+
+  /**
+   * Test method for {@link Money#compareTo(Money)}, {@link Money#equals(Object)}, and
+   * {@link Money#hashCode()}.
+   */
+  @Test
+  public void testCompareToEquals() {
+    Money small = Money.ofCents(-5L);
+    Money large = Money.valueOf(0.05D);
+    assertTrue("negative not less than positive", small.compareTo(large) < 0);
+    assertTrue("positive not greater than negative", large.compareTo(small) > 0);
+    assertTrue("not equal to negated negation", large.negate().negate().compareTo(large) == 0);
+    assertTrue("equal amounts not equal", large.equals(Money.ofCents(5L)));
+    assertTrue("equal amounts with different hash codes",
+               large.hashCode() == Money.ofCents(5L).hashCode());
+    assertTrue("different amounts equal", !large.equals(small));
+    assertTrue("equal to null", !large.equals(null));
+  }
+
+  /**
+   * Test method for {@link Money#toBigDecimal()}, {@link Money#doubleValue()}, and
+   * {@link Money#toString()}.
+   */
+  @Test
+  public void testConversions() {
+    Money amount = Money.valueOf(1000.10D);
+    assertTrue("wrong decimal: " + amount.toBigDecimal(),
+               amount.toBigDecimal().equals(new BigDecimal("1000.10")));
+    assertTrue("wrong double: " + amount.doubleValue(), amount.doubleValue() == 1000.10D);
+    assertTrue("wrong string: " + amount, amount.toString().equals("1000.10"));
+    assertTrue("wrong negative string: " + amount.negate(),
+               amount.negate().toString().equals("-1000.10"));
+    assertTrue("wrong zero string: " + Money.ZERO, Money.ZERO.toString().equals("0.00"));
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+/**
+ * CUT: OwnershipAllocator
+ *
+ * @author Robert J. Muller
+ */
+public class OwnershipAllocatorTest {
+  /** logger for this class */
+  private static final Logger logger = Logger.getLogger(OwnershipAllocatorTest.class);
+
+  private static final BigDecimal HALF = new BigDecimal("0.500");
+  private static final BigDecimal BALANCE = new BigDecimal("23455.20");
+  private static final BigDecimal NEAR_BALANCE = new BigDecimal("23455.19");
+  private static final String DESCRIPTION = "description";
+  private static final Boolean CREDIT = Boolean.FALSE;
+  private static final Boolean NOT_RECEIVABLE = Boolean.FALSE;
+
+  private final Account account1 =
+    new Account("Capital 1", DESCRIPTION, AccountType.EQUITY, CREDIT, NOT_RECEIVABLE);
+  private final Account account2 =
+    new Account("Capital 2", DESCRIPTION, AccountType.EQUITY, CREDIT, NOT_RECEIVABLE);
+
+  /**
+   * Test method for {@link OwnershipAllocator#allocate(BigDecimal)}. Tests that equal ownership
+   * splits positive and negative odd amounts evenly, giving a positive left-over penny to the
+   * smaller balance, a negative one to the larger balance, and either to the first entity added
+   * when the balances are equal.
+   */
+  @Test
+  public void testAllocateEqualOwnership() {
+    OwnershipAllocator allocator = new OwnershipAllocator();
+    String[] amounts = {"100.01", "-100.01", "0.01", "-0.01", "2000.00"};
+    BigDecimal[][] balanceSets = {{BALANCE, BALANCE}, {BALANCE, NEAR_BALANCE},
+                                  {NEAR_BALANCE, BALANCE}};
+    // the expected items for each amount and balance set
+    String[][][] expected = {{{"50.01", "50.00"}, {"50.00", "50.01"}, {"50.01", "50.00"}},
+                             {{"-50.01", "-50.00"}, {"-50.01", "-50.00"}, {"-50.00", "-50.01"}},
+                             {{"0.01", "0.00"}, {"0.00", "0.01"}, {"0.01", "0.00"}},
+                             {{"-0.01", "0.00"}, {"-0.01", "0.00"}, {"0.00", "-0.01"}},
+                             {{"1000.00", "1000.00"}, {"1000.00", "1000.00"},
+                              {"1000.00", "1000.00"}}};
+    for (int i = 0; i < amounts.length; i++) {
+      BigDecimal amount = new BigDecimal(amounts[i]);
+      for (int j = 0; j < balanceSets.length; j++) {
+        allocator.clear();
+        allocator.add(HALF, balanceSets[j][0]);
+        allocator.add(HALF, balanceSets[j][1]);
+        allocator.allocate(amount);
+
+        assertTrue("wrong item 1 for " + amount + ": " + allocator.getItemAmount(0),
+                   allocator.getItemAmount(0).compareTo(new BigDecimal(expected[i][j][0])) == 0);
+        assertTrue("wrong item 2 for " + amount + ": " + allocator.getItemAmount(1),
+                   allocator.getItemAmount(1).compareTo(new BigDecimal(expected[i][j][1])) == 0);
+      }
+    }
+  }
+
+  /**
+   * Test method for {@link OwnershipAllocator#allocate(BigDecimal)}. Tests that equal ownership
+   * gives the same items as the equal distribution of AccountCollectionDistributor for positive and
+   * negative odd amounts and for equal and nearly equal balances.
+   */
+  @Test
+  public void testAllocateEqualOwnershipMatchesDistributor() {
+    OwnershipAllocator allocator = new OwnershipAllocator();
+    String[] amounts = {"100.01", "-100.01", "0.01", "-0.01", "2000.00"};
+    BigDecimal[][] balanceSets = {{BALANCE, BALANCE}, {BALANCE, NEAR_BALANCE},
+                                  {NEAR_BALANCE, BALANCE}};
+    for (String value : amounts) {
+      BigDecimal amount = new BigDecimal(value);
+      for (BigDecimal[] balances : balanceSets) {
+        AccountCollectionDistributor distributor = new AccountCollectionDistributor(amount);
+        distributor.addBalance(account1, balances[0]);
+        distributor.addBalance(account2, balances[1]);
+        distributor.distributeAmount();
+        distributor.distributeRemainder();
+
+        allocator.clear();
+        allocator.add(HALF, balances[0]);
+        allocator.add(HALF, balances[1]);
+        allocator.allocate(amount);
+
+        assertTrue("item 1 differs for " + amount + ": " + allocator.getItemAmount(0),
+                   allocator.getItemAmount(0).compareTo(distributor.getItemAmount(account1)) == 0);
+        assertTrue("item 2 differs for " + amount + ": " + allocator.getItemAmount(1),
+                   allocator.getItemAmount(1).compareTo(distributor.getItemAmount(account2)) == 0);
+      }
+    }
+  }
+
+  /**
+   * Test method for {@link OwnershipAllocator#allocate(BigDecimal)}. Tests a weighted allocation
+   * with a left-over penny going to the largest fractional remainder.
+   */
+  @Test
+  public void testAllocateWeighted() {
+    OwnershipAllocator allocator = new OwnershipAllocator();
+    allocator.add(new BigDecimal("0.458"), BigDecimal.ZERO);
+    allocator.add(new BigDecimal("0.333"), BigDecimal.ZERO);
+    allocator.add(new BigDecimal("0.209"), BigDecimal.ZERO);
+    allocator.allocate(new BigDecimal("1000.03"));
+    // exact shares 458.01374, 333.00999, 209.00627
+    assertTrue("wrong item 1: " + allocator.getItemAmount(0),
+               allocator.getItemAmount(0).compareTo(new BigDecimal("458.01")) == 0);
+    assertTrue("wrong item 2: " + allocator.getItemAmount(1),
+               allocator.getItemAmount(1).compareTo(new BigDecimal("333.01")) == 0);
+    assertTrue("wrong item 3: " + allocator.getItemAmount(2),
+               allocator.getItemAmount(2).compareTo(new BigDecimal("209.01")) == 0);
+
+    allocator.allocate(new BigDecimal("-1000.03"));
+    BigDecimal total =
+      allocator.getItemAmount(0).add(allocator.getItemAmount(1)).add(allocator.getItemAmount(2));
+    assertTrue("negative allocation total wrong: " + total,
+               total.compareTo(new BigDecimal("-1000.03")) == 0);
+  }
+
+  /**
+   * Test method for {@link OwnershipAllocator#allocate(BigDecimal)} and
+   * {@link OwnershipAllocator#adjust()}. Tests allocation of positive and negative amounts (net
+   * income and net loss) among 2 to 10,000 entities, checking that every penny is allocated, that
+   * each item is within a penny of the entity's exact share, and that allocating again to the same
+   * entities gives the same items; logs the time for each size. The ownership is in thousandths,
+   * so above 1,000 entities the extra entities own nothing.
+   */
+  @Test
+  public void testAllocateScaling() {
+    int[] sizes = {2, 3, 10, 100, 300, 1000, 10000};
+    String[] amounts = {"100000.03", "-100000.03", "0.01", "-9999.99"};
+    OwnershipAllocator allocator = new OwnershipAllocator();
+    OwnershipAllocator again = new OwnershipAllocator();
+    for (int size : sizes) {
+      for (String value : amounts) {
+        BigDecimal amount = new BigDecimal(value);
+        long start = System.nanoTime();
+        addEntities(allocator, size);
+        allocator.allocate(amount);
+        long time = System.nanoTime() - start;
+        logger.info("Allocated " + amount + " to " + size + " entities in " + time / 1000 +
+                    " microseconds");
+
+        addEntities(again, size);
+        again.allocate(amount);
+        long cents = amount.movePointRight(2).longValueExact();
+        long total = 0L;
+        for (int i = 0; i < size; i++) {
+          long item = allocator.getItemMoney(i).getCents();
+          total += item;
+          assertTrue("allocation not deterministic for entity " + i + " of " + size,
+                     item == again.getItemMoney(i).getCents());
+          // Compare the item to the exact share in thousandths of a cent.
+          assertTrue("item " + item + " not within a penny of share for entity " + i + " of " +
+                     size, Math.abs(item * 1000L - cents * getUnits(i, size)) < 1000L);
+        }
+        assertTrue("allocated total " + total + " != " + cents + " for " + size + " entities",
+                   total == cents);
+      }
+      // The balances are out of proportion, so the adjustment moves money without changing the
+      // total.
+      addEntities(allocator, size);
+      allocator.adjust();
+      long total = 0L;
+      for (int i = 0; i < size; i++) {
+        total += allocator.getItemMoney(i).getCents();
+      }
+      assertTrue("adjustment changed total by " + total + " for " + size + " entities",
+                 total == 0L);
+    }
+  }
+
+  /**
+   * Get the ownership of an entity in thousandths for a structure of a given size: 1,000 units
+   * spread as evenly as possible over the first 1,000 entities, with the first entities getting
+   * the extra units.
+   *
+   * @param index the index of the entity
+   * @param size  the number of entities
+   * @return the ownership in thousandths
+   */
+  private static long getUnits(int index, int size) {
+    int owners = Math.min(size, 1000);
+    return index >= owners ? 0L : 1000 / owners + (index < 1000 % owners ? 1 : 0);
+  }
+
+  /**
+   * Clear an allocator and add a structure of entities with the ownership from getUnits() and
+   * balances that differ from one entity to the next.
+   *
+   * @param allocator the allocator
+   * @param size      the number of entities
+   */
+  private static void addEntities(OwnershipAllocator allocator, int size) {
+    allocator.clear();
+    for (int i = 0; i < size; i++) {
+      allocator.add(BigDecimal.valueOf(getUnits(i, size), 3), BigDecimal.valueOf(i % 7 * 101, 2));
+    }
+  }
+
+  /**
+   * Test method for {@link OwnershipAllocator#adjust()}. Tests that balances in proportion are left
+   * alone and that balances out of proportion move to their shares without changing the total.
+   */
+  @Test
+  public void testAdjust() {
+    OwnershipAllocator allocator = new OwnershipAllocator();
+    allocator.add(new BigDecimal("0.750"), new BigDecimal("750.01"));
+    allocator.add(new BigDecimal("0.250"), new BigDecimal("250.00"));
+    assertTrue("adjusted balances in proportion", !allocator.adjust());
+
+    allocator.clear();
+    allocator.add(new BigDecimal("0.750"), new BigDecimal("500.00"));
+    allocator.add(new BigDecimal("0.250"), new BigDecimal("500.01"));
+    assertTrue("did not adjust balances out of proportion", allocator.adjust());
+    assertTrue("wrong adjustment 1: " + allocator.getItemAmount(0),
+               allocator.getItemAmount(0).compareTo(new BigDecimal("250.01")) == 0);
+    assertTrue("wrong adjustment 2: " + allocator.getItemAmount(1),
+               allocator.getItemAmount(1).compareTo(new BigDecimal("-250.01")) == 0);
+  }
+
+  /**
+   * Test method for {@link OwnershipAllocator#allocate(BigDecimal)} with ownership that does not
+   * sum to 100%.
+   */
+  @Test
+  public void testAllocateInvalidOwnership() {
+    OwnershipAllocator allocator = new OwnershipAllocator();
+    allocator.add(new BigDecimal("0.250"), BigDecimal.ZERO);
+    allocator.add(HALF, BigDecimal.ZERO);
+    try {
+      allocator.allocate(BigDecimal.TEN);
+      fail("allocated with invalid ownership but no exception");
+    } catch (RuntimeException e) {
+      // success
+    }
+  }
+}
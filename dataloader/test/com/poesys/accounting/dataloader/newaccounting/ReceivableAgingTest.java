@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * CUT: ReceivableAging
+ *
+ * @author Robert J. Muller
+ */
+public class ReceivableAgingTest {
+  private static final String DESCRIPTION = "description";
+  private static final Boolean DEBIT = Boolean.TRUE;
+  private static final Boolean CREDIT = Boolean.FALSE;
+  private static final Boolean NOT_CHECKED = Boolean.FALSE;
+  private static final Boolean NOT_BALANCE = Boolean.FALSE;
+  private static final Boolean RECEIVABLE = Boolean.TRUE;
+  private static final Boolean NOT_RECEIVABLE = Boolean.FALSE;
+  private static final Double ZERO = 0.00D;
+
+  private final Account receivables =
+    new Account("Receivables", DESCRIPTION, AccountType.ASSETS, DEBIT, RECEIVABLE);
+  private final Account advances =
+    new Account("Advances", DESCRIPTION, AccountType.ASSETS, DEBIT, RECEIVABLE);
+  private final Account checking =
+    new Account("Checking", DESCRIPTION, AccountType.ASSETS, DEBIT, NOT_RECEIVABLE);
+  private final Account income =
+    new Account("Income", DESCRIPTION, AccountType.INCOME, CREDIT, NOT_RECEIVABLE);
+  private long nextId = 1L;
+
+  /**
+   * Create a transaction that debits a receivable account.
+   *
+   * @param date    the transaction date
+   * @param amount  the amount
+   * @param account the receivable account
+   * @return the receivable item
+   */
+  private Item receive(String date, Double amount, Account account) {
+    Transaction transaction = createTransaction(date);
+    transaction.addItem(amount, income, CREDIT, NOT_CHECKED);
+    return transaction.addItem(amount, account, DEBIT, NOT_CHECKED);
+  }
+
+  /**
+   * Create a transaction that reimburses a receivable item.
+   *
+   * @param receivable the receivable item
+   * @param date       the transaction date
+   * @param amount     the amount reimbursed
+   */
+  private void reimburse(Item receivable, String date, Double amount) {
+    Transaction transaction = createTransaction(date);
+    transaction.addItem(amount, checking, DEBIT, NOT_CHECKED);
+    Item reimbursing = transaction.addItem(amount, receivable.getAccount(), CREDIT, NOT_CHECKED);
+    receivable.reimburse(reimbursing, amount, ZERO);
+  }
+
+  /**
+   * Create a transaction with the next id.
+   *
+   * @param date the transaction date
+   * @return the transaction
+   */
+  private Transaction createTransaction(String date) {
+    return new Transaction(BigInteger.valueOf(nextId++), DESCRIPTION,
+                           Timestamp.valueOf(date + " 00:00:00"), NOT_CHECKED, NOT_BALANCE);
+  }
+
+  /**
+   * Get the epoch day of a date.
+   *
+   * @param date the date string
+   * @return the number of days since 1970-01-01
+   */
+  private static int day(String date) {
+    return (int)LocalDate.parse(date).toEpochDay();
+  }
+
+  /**
+   * Create receivables in two accounts, one reimbursed in two parts, and age them.
+   *
+   * @return the aging
+   */
+  private ReceivableAging createAging() {
+    Item first = receive("2017-01-01", 100.00D, receivables);
+    reimburse(first, "2017-02-15", 40.00D);
+    reimburse(first, "2017-06-01", 60.00D);
+    receive("2017-03-15", 50.00D, receivables);
+    receive("2016-10-01", 25.00D, advances);
+    List<Account> accounts = new ArrayList<>();
+    accounts.add(receivables);
+    accounts.add(checking);
+    accounts.add(advances);
+    accounts.add(income);
+    return new ReceivableAging(accounts);
+  }
+
+  /**
+   * Test method for {@link ReceivableAging#age(int)}. Tests that the aging includes only the
+   * receivable accounts in name order, that each receivable falls in the bucket for its age, and
+   * that only the reimbursements dated on or before the as-of date reduce the outstanding amount.
+   */
+  @Test
+  public void testAge() {
+    ReceivableAging aging = createAging();
+    assertTrue("wrong number of accounts: " + aging.getAccountCount(),
+               aging.getAccountCount() == 2);
+    assertTrue("accounts not in name order",
+               aging.getAccount(0).equals(advances) && aging.getAccount(1).equals(receivables));
+
+    // Before any receivable
+    long[][] buckets = aging.age(day("2016-09-30"));
+    for (long[] account : buckets) {
+      for (long amount : account) {
+        assertTrue("outstanding amount before any receivable", amount == 0L);
+      }
+    }
+
+    // Day 30 of the first receivable, before its first reimbursement
+    buckets = aging.age(day("2017-01-31"));
+    assertTrue("wrong 0-30 amount: " + buckets[1][0], buckets[1][0] == 10000L);
+    assertTrue("wrong over 120 advance: " + buckets[0][4], buckets[0][4] == 2500L);
+
+    // Day 89 of the first receivable, after its first reimbursement
+    buckets = aging.age(day("2017-03-31"));
+    assertTrue("wrong 0-30 amount: " + buckets[1][0], buckets[1][0] == 5000L);
+    assertTrue("wrong 61-90 amount: " + buckets[1][2], buckets[1][2] == 6000L);
+    assertTrue("wrong over 120 advance: " + buckets[0][4], buckets[0][4] == 2500L);
+
+    // After the first receivable is settled
+    buckets = aging.age(day("2017-06-01"));
+    assertTrue("settled receivable outstanding: " + buckets[1][4], buckets[1][4] == 0L);
+    assertTrue("wrong 61-90 amount: " + buckets[1][2], buckets[1][2] == 5000L);
+  }
+
+  /**
+   * Test method for {@link ReceivableAging#write(java.io.Writer, int)}. Tests the header, account,
+   * and total lines.
+   *
+   * @throws IOException when there is a problem writing the report
+   */
+  @Test
+  public void testWrite() throws IOException {
+    ReceivableAging aging = createAging();
+    StringWriter writer = new StringWriter();
+    aging.write(writer, day("2017-03-31"));
+    String[] lines = writer.toString().split("\n");
+    assertTrue("wrong number of lines: " + lines.length, lines.length == 4);
+    assertTrue("wrong header: " + lines[0],
+               lines[0].equals("As of 2017-03-31\t0-30\t31-60\t61-90\t91-120\tOver 120\tTotal"));
+    assertTrue("wrong advances line: " + lines[1],
+               lines[1].equals("Advances\t0.00\t0.00\t0.00\t0.00\t25.00\t25.00"));
+    assertTrue("wrong receivables line: " + lines[2],
+               lines[2].equals("Receivables\t50.00\t0.00\t60.00\t0.00\t0.00\t110.00"));
+    assertTrue("wrong total line: " + lines[3],
+               lines[3].equals("Total\t50.00\t0.00\t60.00\t0.00\t25.00\t135.00"));
+  }
+
+  /**
+   * Test method for {@link ReceivableAging#ReceivableAging(java.util.Collection)} and
+   * {@link ReceivableAging#write(java.io.Writer, int)} with null parameters and
+   * {@link ReceivableAging#getAccount(int)} with an ordinal out of range.
+   *
+   * @throws IOException when there is a problem writing the report
+   */
+  @Test
+  public void testNullAndNoAccount() throws IOException {
+    try {
+      new ReceivableAging(null);
+      fail("no exception for null accounts");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+    ReceivableAging aging = createAging();
+    try {
+      aging.write(null, day("2017-03-31"));
+      fail("no exception for null writer");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+    try {
+      aging.getAccount(aging.getAccountCount());
+      fail("no exception for account out of range");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+  }
+}
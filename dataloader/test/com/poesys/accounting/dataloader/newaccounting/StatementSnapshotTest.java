@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * CUT: StatementSnapshot
+ *
+ * @author Robert J. Muller
+ */
+public class StatementSnapshotTest {
+  private static final Integer YEAR = 2017;
+  private static final String DESCRIPTION = "description";
+  private static final Boolean DEBIT = Boolean.TRUE;
+  private static final Boolean CREDIT = Boolean.FALSE;
+  private static final Boolean CHECKED = Boolean.TRUE;
+  private static final Boolean NOT_CHECKED = Boolean.FALSE;
+  private static final Boolean NOT_BALANCE = Boolean.FALSE;
+  private static final Boolean NOT_RECEIVABLE = Boolean.FALSE;
+  private static final String CHECKING_ACCOUNT_NAME = "Checking";
+  private static final String INCOME_ACCOUNT_NAME = "Salary";
+  private static final String EXPENSE_ACCOUNT_NAME = "Essential Expense";
+  private static final Timestamp DATE = Timestamp.valueOf("2017-05-01 00:00:00");
+  private static final Timestamp PRIOR_DATE = Timestamp.valueOf("2016-05-01 00:00:00");
+
+  /**
+   * A small model with a checking account, an income account, and an expense account in one
+   * fiscal year
+   */
+  private static class Model {
+    final FiscalYear year = new FiscalYear(YEAR);
+    final Account checking =
+      new Account(CHECKING_ACCOUNT_NAME, DESCRIPTION, AccountType.ASSETS, DEBIT, NOT_RECEIVABLE);
+    final Account income =
+      new Account(INCOME_ACCOUNT_NAME, DESCRIPTION, AccountType.INCOME, CREDIT, NOT_RECEIVABLE);
+    final Account expense =
+      new Account(EXPENSE_ACCOUNT_NAME, DESCRIPTION, AccountType.EXPENSES, DEBIT, NOT_RECEIVABLE);
+    BigInteger nextId = BigInteger.ONE;
+
+    Model() {
+      link(checking, AccountType.ASSETS, "Cash");
+      link(income, AccountType.INCOME, "Earned Income");
+      link(expense, AccountType.EXPENSES, "Household Expenses");
+    }
+
+    void link(Account account, AccountType type, String groupName) {
+      FiscalYearAccount link =
+        new FiscalYearAccount(year, type, new AccountGroup(groupName), 1, account, 1);
+      account.addYear(link);
+      year.addAccount(link);
+    }
+
+    void transfer(Timestamp date, Double amount, Account from, Account to) {
+      Transaction transaction =
+        new Transaction(nextId, DESCRIPTION, date, NOT_CHECKED, NOT_BALANCE);
+      transaction.addItem(amount, from, CREDIT, CHECKED);
+      transaction.addItem(amount, to, DEBIT, CHECKED);
+      nextId = nextId.add(BigInteger.ONE);
+    }
+  }
+
+  /**
+   * Create the standard model with a salary deposit, a prior-year deposit, and an expense.
+   *
+   * @return the model
+   */
+  private Model createModel() {
+    Model model = new Model();
+    model.transfer(PRIOR_DATE, 50.00D, model.income, model.checking);
+    model.transfer(DATE, 1000.25D, model.income, model.checking);
+    model.transfer(DATE, 237.45D, model.checking, model.expense);
+    return model;
+  }
+
+  /**
+   * Get an entry by name from a snapshot.
+   *
+   * @param snapshot the snapshot
+   * @param name     the account name
+   * @return the entry or null if not found
+   */
+  private StatementSnapshot.Entry getEntry(StatementSnapshot snapshot, String name) {
+    for (StatementSnapshot.Entry entry : snapshot.getEntries()) {
+      if (entry.getName().equals(name)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Test method for
+   * {@link StatementSnapshot#StatementSnapshot(FiscalYear)}.
+   * Tests that totals match the statement rollups for both balance sheet and income statement
+   * accounts and that entries are in name order.
+   */
+  @Test
+  public void testStatementSnapshot() {
+    Model model = createModel();
+    StatementSnapshot snapshot = new StatementSnapshot(model.year);
+    assertTrue("wrong year: " + snapshot.getYear(), YEAR.equals(snapshot.getYear()));
+    assertTrue("wrong number of entries: " + snapshot.getEntries().size(),
+               snapshot.getEntries().size() == 3);
+    String previous = "";
+    for (StatementSnapshot.Entry entry : snapshot.getEntries()) {
+      assertTrue("entries out of order at " + entry.getName(),
+                 previous.compareTo(entry.getName()) < 0);
+      previous = entry.getName();
+    }
+
+    Statement balanceSheet =
+      new Statement(model.year, "Balance Sheet", Statement.StatementType.BALANCE_SHEET);
+    Statement incomeStatement =
+      new Statement(model.year, "Income Statement", Statement.StatementType.INCOME_STATEMENT);
+    BigDecimal checking = getEntry(snapshot, CHECKING_ACCOUNT_NAME).getAmount();
+    BigDecimal income = getEntry(snapshot, INCOME_ACCOUNT_NAME).getAmount();
+    assertTrue("wrong checking total " + checking,
+               checking.compareTo(balanceSheet.getAccountBalance(model.checking)) == 0);
+    assertTrue("wrong income total " + income,
+               income.compareTo(incomeStatement.getAccountBalance(model.income)) == 0);
+    assertTrue("prior-year income included: " + income,
+               income.compareTo(new BigDecimal("1000.25")) == 0);
+  }
+
+  /**
+   * Test method for {@link StatementSnapshot#StatementSnapshot(FiscalYear)} with a null year.
+   */
+  @Test
+  public void testStatementSnapshotNullYear() {
+    try {
+      new StatementSnapshot(null);
+      fail("null year for snapshot but no exception");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+  }
+
+  /**
+   * Test method for {@link StatementSnapshot#write(java.io.OutputStream)} and
+   * {@link StatementSnapshot#read(java.io.InputStream)}. Tests a round trip through the binary
+   * format.
+   *
+   * @throws IOException when there is a problem with the streams
+   */
+  @Test
+  public void testWriteRead() throws IOException {
+    StatementSnapshot snapshot = new StatementSnapshot(createModel().year);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    snapshot.write(out);
+    StatementSnapshot copy = StatementSnapshot.read(new ByteArrayInputStream(out.toByteArray()));
+    assertTrue("wrong year read: " + copy.getYear(), YEAR.equals(copy.getYear()));
+    assertTrue("round trip found differences",
+               StatementSnapshot.diff(snapshot, copy).isEmpty());
+    for (int i = 0; i < snapshot.getEntries().size(); i++) {
+      StatementSnapshot.Entry original = snapshot.getEntries().get(i);
+      StatementSnapshot.Entry read = copy.getEntries().get(i);
+      assertTrue("wrong entry read: " + read, original.getName().equals(read.getName()) &&
+                                              original.getType() == read.getType() &&
+                                              original.getTotal() == read.getTotal() &&
+                                              original.getDetailHash() == read.getDetailHash());
+    }
+  }
+
+  /**
+   * Test method for {@link StatementSnapshot#read(java.io.InputStream)} with data that is not a
+   * snapshot.
+   */
+  @Test
+  public void testReadInvalid() {
+    try {
+      StatementSnapshot.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+      fail("read invalid snapshot data but no exception");
+    } catch (IOException e) {
+      // success
+    }
+  }
+
+  /**
+   * Write the header and one entry of a snapshot with a given version and account type byte.
+   *
+   * @param version the format version
+   * @param type    the account type byte
+   * @return the bytes
+   * @throws IOException when there is a problem writing
+   */
+  private static byte[] createSnapshotBytes(int version, int type) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0x50534E50);
+    out.writeInt(version);
+    out.writeInt(2017);
+    out.writeInt(1);
+    out.writeUTF("Cash");
+    out.writeByte(type);
+    out.writeInt(1);
+    out.writeInt(1);
+    out.writeLong(100L);
+    out.writeLong(0L);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Test method for {@link StatementSnapshot#read(java.io.InputStream)} with an account type byte
+   * that is out of range. Tests that the read fails with an IOException giving the offset of the
+   * byte rather than an ArrayIndexOutOfBoundsException.
+   */
+  @Test
+  public void testReadInvalidType() {
+    for (int type : new int[] {AccountType.values().length, 0xFF}) {
+      try {
+        StatementSnapshot.read(new ByteArrayInputStream(createSnapshotBytes(2, type)));
+        fail("read invalid account type " + type + " but no exception");
+      } catch (IOException e) {
+        // The type byte follows the 16-byte header and the name "Cash" with its 2-byte length.
+        assertTrue("wrong message: " + e.getMessage(), e.getMessage().endsWith("offset 22"));
+      }
+    }
+  }
+
+  /**
+   * Test method for {@link StatementSnapshot#read(java.io.InputStream)} with a newer format
+   * version. Tests that the read fails with an IOException giving the offset of the version.
+   */
+  @Test
+  public void testReadUnsupportedVersion() {
+    try {
+      StatementSnapshot.read(new ByteArrayInputStream(createSnapshotBytes(3, 0)));
+      fail("read unsupported version but no exception");
+    } catch (IOException e) {
+      assertTrue("wrong message: " + e.getMessage(), e.getMessage().endsWith("offset 4"));
+    }
+  }
+
+  /**
+   * Test method for
+   * {@link StatementSnapshot#diff(StatementSnapshot, StatementSnapshot)}. Tests that two
+   * independently built but identical models have no differences.
+   */
+  @Test
+  public void testDiffSame() {
+    StatementSnapshot first = new StatementSnapshot(createModel().year);
+    StatementSnapshot second = new StatementSnapshot(createModel().year);
+    List<StatementSnapshot.Difference> differences = StatementSnapshot.diff(first, second);
+    assertTrue("differences in identical models: " + differences, differences.isEmpty());
+  }
+
+  /**
+   * Test method for
+   * {@link StatementSnapshot#diff(StatementSnapshot, StatementSnapshot)}. Tests detection of a
+   * changed total and of a detail change that leaves the total the same.
+   */
+  @Test
+  public void testDiffChanged() {
+    StatementSnapshot first = new StatementSnapshot(createModel().year);
+
+    // Move the expense to a different transaction of the same amount: same total, new details.
+    Model model = new Model();
+    model.transfer(PRIOR_DATE, 50.00D, model.income, model.checking);
+    model.transfer(DATE, 1000.25D, model.income, model.checking);
+    model.nextId = model.nextId.add(BigInteger.TEN);
+    model.transfer(DATE, 237.45D, model.checking, model.expense);
+    StatementSnapshot second = new StatementSnapshot(model.year);
+
+    List<StatementSnapshot.Difference> differences = StatementSnapshot.diff(first, second);
+    assertTrue("wrong number of differences: " + differences, differences.size() == 2);
+    for (StatementSnapshot.Difference difference : differences) {
+      assertTrue("unexpected difference " + difference,
+                 difference.getName().equals(CHECKING_ACCOUNT_NAME) ||
+                 difference.getName().equals(EXPENSE_ACCOUNT_NAME));
+      assertTrue("total changed for " + difference.getName(),
+                 difference.getOldEntry().getTotal() == difference.getNewEntry().getTotal());
+      assertTrue("wrong difference data: " + difference.toData(),
+                 difference.toData().endsWith("details changed"));
+    }
+
+    // Add one more expense: both totals change.
+    model.transfer(DATE, 10.00D, model.checking, model.expense);
+    StatementSnapshot third = new StatementSnapshot(model.year);
+    differences = StatementSnapshot.diff(second, third);
+    assertTrue("wrong number of differences after new expense: " + differences,
+               differences.size() == 2);
+    for (StatementSnapshot.Difference difference : differences) {
+      assertTrue("wrong difference data: " + difference.toData(),
+                 difference.toData().endsWith("total changed"));
+    }
+  }
+
+  /**
+   * Test method for
+   * {@link StatementSnapshot#diff(StatementSnapshot, StatementSnapshot)}. Tests detection of added
+   * and removed accounts.
+   */
+  @Test
+  public void testDiffAddedRemoved() {
+    Model model = createModel();
+    StatementSnapshot first = new StatementSnapshot(model.year);
+    Model other = createModel();
+    Account savings =
+      new Account("Savings", DESCRIPTION, AccountType.ASSETS, DEBIT, NOT_RECEIVABLE);
+    other.link(savings, AccountType.ASSETS, "Cash");
+    StatementSnapshot second = new StatementSnapshot(other.year);
+
+    List<StatementSnapshot.Difference> differences = StatementSnapshot.diff(first, second);
+    assertTrue("wrong number of differences: " + differences, differences.size() == 1);
+    assertTrue("added account not found: " + differences,
+               differences.get(0).getOldEntry() == null &&
+               differences.get(0).getName().equals("Savings"));
+
+    differences = StatementSnapshot.diff(second, first);
+    assertTrue("removed account not found: " + differences,
+               differences.size() == 1 && differences.get(0).getNewEntry() == null &&
+               differences.get(0).toData().endsWith("removed"));
+  }
+}
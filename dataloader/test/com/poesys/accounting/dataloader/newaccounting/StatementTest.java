@@ -41,6 +41,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.util.Objects;
 
 import org.apache.log4j.Logger;
@@ -672,6 +673,47 @@ public class StatementTest {
                rollup.getTotal().compareTo(total) == 0);
   }
 
+  /**
+   * Test Rollup.getTotal() for a fiscal year that doesn't start on January 1, with items before,
+   * in both calendar years of, and after the fiscal year. Tests that the balance sheet and income
+   * statement totals follow the fiscal year dates, both while the accounts are being built and
+   * once they are frozen.
+   */
+  @Test
+  public void testRollupGetTotalNonCalendarYear() {
+    FiscalYear year =
+      new FiscalYear(YEAR, LocalDate.of(YEAR, 7, 1), LocalDate.of(YEAR + 1, 6, 30));
+    year.addAccount(new FiscalYearAccount(year, AccountType.ASSETS, CASH_GROUP, 1, checkingAccount,
+                                          1));
+    year.addAccount(new FiscalYearAccount(year, AccountType.INCOME, INCOME_GROUP, 2, incomeAccount,
+                                          1));
+    String[] dates = {"2017-03-01", "2017-09-01", "2018-03-01", "2018-08-01"};
+    Double[] amounts = {100.00D, 40.00D, 10.00D, 1000.00D};
+    for (int i = 0; i < dates.length; i++) {
+      Transaction transaction =
+        new Transaction(BigInteger.valueOf(i + 1), DESCRIPTION,
+                        Timestamp.valueOf(dates[i] + " 00:00:00"), NOT_CHECKED, NOT_BALANCE);
+      transaction.addItem(amounts[i], checkingAccount, DEBIT, NOT_CHECKED);
+      transaction.addItem(amounts[i], incomeAccount, CREDIT, NOT_CHECKED);
+    }
+
+    BigDecimal checkBalance = new BigDecimal("-150.00");
+    BigDecimal checkIncome = new BigDecimal("50.00");
+    for (String step : new String[] {"before freezing", "after freezing"}) {
+      Statement balanceSheet = new Statement(year, BALANCE_SHEET_NAME, StatementType.BALANCE_SHEET);
+      Statement incomeStatement =
+        new Statement(year, INCOME_STATEMENT_NAME, StatementType.INCOME_STATEMENT);
+      BigDecimal balance = balanceSheet.getRollups().get(checkingAccount).getTotal();
+      BigDecimal income = incomeStatement.getRollups().get(incomeAccount).getTotal();
+      assertTrue("wrong balance sheet total " + step + ": " + balance,
+                 balance.compareTo(checkBalance) == 0);
+      assertTrue("wrong income statement total " + step + ": " + income,
+                 income.compareTo(checkIncome) == 0);
+      checkingAccount.freeze();
+      incomeAccount.freeze();
+    }
+  }
+
   /**
    * Test Rollup.getTotal() with no transactions from FiscalYear.
    */
@@ -20,6 +20,7 @@ package com.poesys.accounting.dataloader.newaccounting;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
@@ -27,7 +28,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
+import org.apache.log4j.SimpleLayout;
+import org.apache.log4j.WriterAppender;
 import org.junit.Test;
 
 import com.poesys.accounting.dataloader.newaccounting.Statement.StatementType;
@@ -333,6 +337,89 @@ public class StorageManagerTest {
     }
   }
 
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.StorageManager#validate(java.util.List)}
+   * . Tests that validation reuses the balances recorded for an unchanged year and recomputes them
+   * once the year changes.
+   */
+  @Test
+  public void testValidateReusesRecordedBalances() {
+    IStorageManager manager = new StorageManager();
+    FiscalYear year = createFiscalYear(2010, getNextId(null), true, true);
+    List<FiscalYear> years = new ArrayList<>(1);
+    years.add(year);
+
+    // Record deliberately wrong balances; validation should trust them.
+    year.setStatementBalances(BigDecimal.ONE, BigDecimal.ONE);
+    assertTrue("recorded balances not reused", !manager.validate(years));
+
+    // Change the model; validation should recompute from the statements.
+    Account savingsAccount = new Account("Savings", "Savings", AccountType.ASSETS, true, false);
+    addFiscalYearAccountLink(year, AccountType.ASSETS, CASH_GROUP, 3, savingsAccount);
+    assertTrue("stale balances reused", manager.validate(years));
+    assertTrue("recomputed balances not recorded", year.getStatementBalances() != null);
+  }
+
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.StorageManager#validate(java.util.List)}
+   * . Tests validation of more years than there are threads, with and without failing years.
+   */
+  @Test
+  public void testValidateManyYearsConcurrently() {
+    IStorageManager manager = new StorageManager();
+    List<FiscalYear> years = new ArrayList<>();
+    BigDecimal balance = new BigDecimal("100.00");
+    for (int year = 1990; year < 2030; year++) {
+      FiscalYear fiscalYear = new FiscalYear(year);
+      fiscalYear.setStatementBalances(balance, balance.negate());
+      years.add(fiscalYear);
+    }
+    assertTrue("balanced years not valid", manager.validate(years));
+
+    // Unbalance two years.
+    years.get(5).setStatementBalances(balance, balance);
+    years.get(30).setStatementBalances(balance.negate(), balance.negate());
+    assertTrue("unbalanced years valid", !manager.validate(years));
+  }
+
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.StorageManager#validate(java.util.List)}
+   * . Tests that every failing year is reported with its balances, not only the years validated
+   * before the first failure.
+   */
+  @Test
+  public void testValidateReportsEveryFailingYear() {
+    IStorageManager manager = new StorageManager();
+    List<FiscalYear> years = new ArrayList<>();
+    BigDecimal balance = new BigDecimal("100.00");
+    for (int year = 1990; year < 2030; year++) {
+      FiscalYear fiscalYear = new FiscalYear(year);
+      fiscalYear.setStatementBalances(balance, balance.negate());
+      years.add(fiscalYear);
+    }
+    int[] failing = {0, 1, 20, 39};
+    for (int index : failing) {
+      years.get(index).setStatementBalances(balance, balance);
+    }
+
+    StringWriter log = new StringWriter();
+    WriterAppender appender = new WriterAppender(new SimpleLayout(), log);
+    appender.setThreshold(Level.ERROR);
+    AbstractValidatingStorageManager.logger.addAppender(appender);
+    try {
+      assertTrue("unbalanced years valid", !manager.validate(years));
+    } finally {
+      AbstractValidatingStorageManager.logger.removeAppender(appender);
+    }
+    for (int index : failing) {
+      String report = "year " + years.get(index).getYear() + ": balance sheet 100.00";
+      assertTrue("failing year not reported: " + report, log.toString().contains(report));
+    }
+  }
+
   /**
    * Test method for
    * {@link com.poesys.accounting.dataloader.newaccounting.StorageManager#validate(java.util.List)}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.poesys.db.InvalidParametersException;
+
+/**
+ * CUT: StoragePipeline
+ *
+ * @author Robert J. Muller
+ */
+public class StoragePipelineTest {
+  private static final String ENTITY_NAME = "Test Entity";
+  private static final int YEARS = 5;
+
+  private final CapitalStructure structure = new CapitalStructure("Income Summary");
+  private final Set<Transaction> transactions = new HashSet<>();
+
+  /**
+   * Build a fiscal year with one transaction, adding the transaction to the set of all
+   * transactions.
+   *
+   * @param year the year
+   * @return the fiscal year
+   */
+  private FiscalYear buildYear(int year) {
+    transactions.add(new Transaction(BigInteger.valueOf(year), "description",
+                                     Timestamp.valueOf(year + "-06-01 00:00:00"), Boolean.FALSE,
+                                     Boolean.FALSE));
+    return new FiscalYear(year);
+  }
+
+  /**
+   * Test method for {@link StoragePipeline#finish()}. Tests that the consumer stores each year
+   * handed off through a queue smaller than the number of years.
+   */
+  @Test
+  public void testFinish() {
+    UnitTestNoExceptionsStorageManager manager = new UnitTestNoExceptionsStorageManager();
+    UnitTestNoExceptionDataService service = new UnitTestNoExceptionDataService();
+    StoragePipeline pipeline = new StoragePipeline(ENTITY_NAME, structure, manager, service, 1);
+    for (int year = 2010; year < 2010 + YEARS; year++) {
+      pipeline.submit(buildYear(year), transactions);
+    }
+    pipeline.finish();
+    assertTrue("wrong number of stores: " + manager.getStoreCalls(),
+               manager.getStoreCalls() == YEARS);
+    assertTrue("shared data not stored once: " + manager.getStartCalls(),
+               manager.getStartCalls() == 1);
+    assertTrue("transactions removed", service.getRemovedYears().isEmpty());
+  }
+
+  /**
+   * Test method for {@link StoragePipeline#submit(FiscalYear, Set)}. Tests that the pipeline
+   * freezes the year it hands off.
+   */
+  @Test
+  public void testSubmitFreezesYear() {
+    StoragePipeline pipeline =
+      new StoragePipeline(ENTITY_NAME, structure, new UnitTestNoExceptionsStorageManager(),
+                          new UnitTestNoExceptionDataService(), 1);
+    FiscalYear year = buildYear(2010);
+    pipeline.submit(year, transactions);
+    pipeline.finish();
+    assertTrue("year not frozen on hand-off", year.isFrozen());
+  }
+
+  /**
+   * Test method for {@link StoragePipeline#finish()}. Tests that the consumer stores each year with
+   * only the earlier receivables the year's transactions reimburse as context.
+   */
+  @Test
+  public void testFinishReimbursedContext() {
+    Account receivable =
+      new Account("Receivable", "description", AccountType.ASSETS, Boolean.TRUE, Boolean.TRUE);
+    Account cash = new Account("Cash", "description", AccountType.ASSETS, Boolean.TRUE, false);
+    Transaction loan = new Transaction(BigInteger.valueOf(1), "loan",
+                                       Timestamp.valueOf("2010-06-01 00:00:00"), Boolean.FALSE,
+                                       Boolean.FALSE);
+    Item loanItem = loan.addItem(100.00D, receivable, Boolean.TRUE, Boolean.FALSE);
+    loan.addItem(100.00D, cash, Boolean.FALSE, Boolean.FALSE);
+    transactions.add(loan);
+
+    List<Set<Transaction>> contexts = new ArrayList<>();
+    UnitTestNoExceptionsStorageManager manager = new UnitTestNoExceptionsStorageManager() {
+      @Override
+      public void storeYear(String entityName, FiscalYear year, Set<Transaction> transactions,
+                            Set<Transaction> stored, IDataAccessService storageService) {
+        super.storeYear(entityName, year, transactions, stored, storageService);
+        contexts.add(stored);
+      }
+    };
+    StoragePipeline pipeline =
+      new StoragePipeline(ENTITY_NAME, structure, manager, new UnitTestNoExceptionDataService(), 1);
+    for (int year = 2010; year < 2010 + YEARS; year++) {
+      FiscalYear fiscalYear = buildYear(year);
+      // Repay the loan in two parts, in 2011 and 2013.
+      if (year == 2011 || year == 2013) {
+        Transaction payment = new Transaction(BigInteger.valueOf(year * 10), "payment",
+                                              Timestamp.valueOf(year + "-07-01 00:00:00"),
+                                              Boolean.FALSE, Boolean.FALSE);
+        Item paymentItem = payment.addItem(50.00D, receivable, Boolean.FALSE, Boolean.FALSE);
+        payment.addItem(50.00D, cash, Boolean.TRUE, Boolean.FALSE);
+        loanItem.reimburse(paymentItem, 50.00D, 0.00D);
+        transactions.add(payment);
+      }
+      pipeline.submit(fiscalYear, transactions);
+    }
+    pipeline.finish();
+    Set<Transaction> none = Collections.emptySet();
+    Set<Transaction> repaid = Collections.singleton(loan);
+    List<Set<Transaction>> expected = Arrays.asList(none, repaid, none, repaid, none);
+    assertTrue("wrong contexts: " + contexts, contexts.equals(expected));
+  }
+
+  /**
+   * Test method for {@link StoragePipeline#finish()}. Tests that the consumer stores each year with
+   * only the transactions not handed off with an earlier year.
+   */
+  @Test
+  public void testFinishNewTransactionsOnly() {
+    List<Integer> sizes = new ArrayList<>();
+    UnitTestNoExceptionsStorageManager manager = new UnitTestNoExceptionsStorageManager() {
+      @Override
+      public void storeYear(String entityName, FiscalYear year, Set<Transaction> transactions,
+                            Set<Transaction> stored, IDataAccessService storageService) {
+        super.storeYear(entityName, year, transactions, stored, storageService);
+        sizes.add(transactions.size());
+      }
+    };
+    StoragePipeline pipeline =
+      new StoragePipeline(ENTITY_NAME, structure, manager, new UnitTestNoExceptionDataService(), 1);
+    for (int year = 2010; year < 2010 + YEARS; year++) {
+      pipeline.submit(buildYear(year), transactions);
+    }
+    pipeline.finish();
+    assertTrue("wrong number of stores: " + sizes, sizes.size() == YEARS);
+    for (Integer size : sizes) {
+      assertTrue("stored more than the new transactions: " + sizes, size == 1);
+    }
+  }
+
+  /**
+   * Test method for {@link StoragePipeline#rollback()}. Tests that the rollback removes the
+   * transactions of the year if the consumer started storing it.
+   */
+  @Test
+  public void testRollback() {
+    UnitTestNoExceptionsStorageManager manager = new UnitTestNoExceptionsStorageManager();
+    UnitTestNoExceptionDataService service = new UnitTestNoExceptionDataService();
+    StoragePipeline pipeline = new StoragePipeline(ENTITY_NAME, structure, manager, service, 2);
+    pipeline.submit(buildYear(2010), transactions);
+    pipeline.rollback();
+    Set<Integer> expected =
+      manager.getStoreCalls() == 0 ? Collections.emptySet() : Collections.singleton(2010);
+    assertTrue("wrong years removed: " + service.getRemovedYears(),
+               service.getRemovedYears().equals(expected));
+  }
+
+  /**
+   * Test method for {@link StoragePipeline#rollback()}. Tests that the rollback after a failed
+   * store removes the transactions of the years the consumer started, including the failed one, and
+   * not those of the years it never started.
+   */
+  @Test
+  public void testRollbackStartedYearsOnly() {
+    UnitTestNoExceptionsStorageManager manager = new UnitTestNoExceptionsStorageManager() {
+      @Override
+      public void storeYear(String entityName, FiscalYear year, Set<Transaction> transactions,
+                            Set<Transaction> stored, IDataAccessService storageService) {
+        if (year.getYear() == 2012) {
+          throw new RuntimeException("store failed");
+        }
+        super.storeYear(entityName, year, transactions, stored, storageService);
+      }
+    };
+    UnitTestNoExceptionDataService service = new UnitTestNoExceptionDataService();
+    StoragePipeline pipeline = new StoragePipeline(ENTITY_NAME, structure, manager, service, 1);
+    try {
+      for (int year = 2010; year < 2010 + YEARS; year++) {
+        pipeline.submit(buildYear(year), transactions);
+      }
+      pipeline.finish();
+      fail("store failed but no exception");
+    } catch (RuntimeException e) {
+      pipeline.rollback();
+    }
+    Set<Integer> expected = new TreeSet<>(Arrays.asList(2010, 2011, 2012));
+    assertTrue("wrong years removed: " + service.getRemovedYears(),
+               service.getRemovedYears().equals(expected));
+  }
+
+  /**
+   * Test method for {@link StoragePipeline#finish()}. Tests that finishing fails when a year
+   * changed after its hand-off, naming the year.
+   */
+  @Test
+  public void testFinishChangedYear() {
+    StoragePipeline pipeline =
+      new StoragePipeline(ENTITY_NAME, structure, new UnitTestNoExceptionsStorageManager(),
+                          new UnitTestNoExceptionDataService(), 1);
+    FiscalYear first = buildYear(2010);
+    pipeline.submit(first, transactions);
+    pipeline.submit(buildYear(2011), transactions);
+    // Change the first year, as adding an item dated in the year does.
+    first.modified();
+    try {
+      pipeline.finish();
+      fail("year changed after hand-off but no exception");
+    } catch (IllegalStateException e) {
+      assertTrue("wrong message: " + e.getMessage(), e.getMessage().endsWith("[2010]"));
+      pipeline.rollback();
+    }
+  }
+
+  /**
+   * Test method for {@link StoragePipeline#finish()}. Tests that a failed store comes back to the
+   * loader thread.
+   */
+  @Test
+  public void testFinishStoreFailure() {
+    StoragePipeline pipeline =
+      new StoragePipeline(ENTITY_NAME, structure, new StorageManager(),
+                          new RuntimeExceptionDataAccessService(), 1);
+    try {
+      for (int year = 2010; year < 2010 + YEARS; year++) {
+        pipeline.submit(buildYear(year), transactions);
+      }
+      pipeline.finish();
+      fail("store failed but no exception");
+    } catch (RuntimeException e) {
+      // success
+    }
+  }
+
+  /**
+   * Test method for
+   * {@link StoragePipeline#StoragePipeline(String, CapitalStructure, IStorageManager,
+   * IDataAccessService, int)} with a zero queue size.
+   */
+  @Test
+  public void testStoragePipelineZeroCapacity() {
+    try {
+      new StoragePipeline(ENTITY_NAME, structure, new UnitTestNoExceptionsStorageManager(),
+                          new UnitTestNoExceptionDataService(), 0);
+      fail("zero queue size but no exception");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.newaccounting;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+import com.poesys.db.InvalidParametersException;
+import com.poesys.db.pk.PrimaryKeyFactory;
+
+/**
+ * CUT: TransactionIdAllocator
+ *
+ * @author Robert J. Muller
+ */
+public class TransactionIdAllocatorTest {
+  /**
+   * An in-process stand-in for a JDBC connection holding the Sequence row, counting commits and
+   * rollbacks
+   */
+  private static class FakeSequence {
+    /** the current sequence value, null for no row */
+    Long sequence = 100L;
+    int commits = 0;
+    int rollbacks = 0;
+    private long increment = 0L;
+
+    Connection getConnection() {
+      PreparedStatement update = statement((proxy, method, args) -> {
+        if (method.getName().equals("setInt")) {
+          increment = ((Integer)args[1]).longValue();
+        } else if (method.getName().equals("executeUpdate")) {
+          if (sequence == null) {
+            return 0;
+          }
+          sequence += increment;
+          return 1;
+        }
+        return null;
+      });
+      PreparedStatement query = statement((proxy, method, args) -> {
+        if (method.getName().equals("executeQuery")) {
+          return resultSet();
+        }
+        return null;
+      });
+      return (Connection)Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                new Class<?>[] {Connection.class},
+                                                (proxy, method, args) -> {
+                                                  switch (method.getName()) {
+                                                    case "prepareStatement":
+                                                      return args[0].equals(
+                                                        TransactionIdAllocator.RESERVE_SQL) ?
+                                                             update : query;
+                                                    case "commit":
+                                                      commits++;
+                                                      return null;
+                                                    case "rollback":
+                                                      rollbacks++;
+                                                      return null;
+                                                    default:
+                                                      return null;
+                                                  }
+                                                });
+    }
+
+    private PreparedStatement statement(InvocationHandler handler) {
+      return (PreparedStatement)Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                       new Class<?>[] {PreparedStatement.class},
+                                                       handler);
+    }
+
+    private ResultSet resultSet() {
+      boolean[] read = {false};
+      return (ResultSet)Proxy.newProxyInstance(getClass().getClassLoader(),
+                                               new Class<?>[] {ResultSet.class},
+                                               (proxy, method, args) -> {
+                                                 switch (method.getName()) {
+                                                   case "next":
+                                                     boolean next = !read[0] && sequence != null;
+                                                     read[0] = true;
+                                                     return next;
+                                                   case "getBigDecimal":
+                                                     return BigDecimal.valueOf(sequence);
+                                                   default:
+                                                     return null;
+                                                 }
+                                               });
+    }
+  }
+
+  /**
+   * Test method for {@link TransactionIdAllocator#reserve(Connection, int)}. Tests that successive
+   * blocks are contiguous and follow the last id the sequence allocated.
+   *
+   * @throws SQLException when there is a problem reserving
+   */
+  @Test
+  public void testReserve() throws SQLException {
+    FakeSequence db = new FakeSequence();
+    TransactionIdAllocator allocator = new TransactionIdAllocator();
+    BigInteger first = allocator.reserve(db.getConnection(), 1000);
+    assertTrue("wrong first block: " + first, first.equals(BigInteger.valueOf(101L)));
+    BigInteger second = allocator.reserve(db.getConnection(), 1);
+    assertTrue("wrong second block: " + second, second.equals(BigInteger.valueOf(1101L)));
+    assertTrue("wrong sequence: " + db.sequence, db.sequence == 1101L);
+    assertTrue("wrong number of commits: " + db.commits, db.commits == 2);
+  }
+
+  /**
+   * Test method for {@link TransactionIdAllocator#reserve(Connection, int)} with no sequence row.
+   */
+  @Test
+  public void testReserveNoSequence() {
+    FakeSequence db = new FakeSequence();
+    db.sequence = null;
+    try {
+      new TransactionIdAllocator().reserve(db.getConnection(), 10);
+      fail("no sequence row but no exception");
+    } catch (SQLException e) {
+      assertTrue("no rollback", db.rollbacks == 1 && db.commits == 0);
+    }
+  }
+
+  /**
+   * Test method for {@link TransactionIdAllocator#reserve(Connection, int)} with a zero count.
+   *
+   * @throws SQLException when there is a problem reserving
+   */
+  @Test
+  public void testReserveZero() throws SQLException {
+    try {
+      new TransactionIdAllocator().reserve(new FakeSequence().getConnection(), 0);
+      fail("zero block size but no exception");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+  }
+
+  /**
+   * Test method for {@link TransactionIdAllocator#RESERVE_SQL} and
+   * {@link TransactionIdAllocator#QUERY_SQL}. Tests that the allocator uses the Sequence table the
+   * way Poesys/DB does for a MySQL sequence key, reading the SQL from the Poesys/DB jar, so a
+   * change in the jar's schema fails here rather than in a load.
+   *
+   * @throws Exception when the jar's SQL can't be read
+   */
+  @Test
+  public void testSqlMatchesPoesysDb() throws Exception {
+    String update = getPoesysDbSql("MYSQL_SEQ_UPDATE");
+    String query = getPoesysDbSql("MYSQL_SEQ_QUERY");
+    assertTrue("reserve SQL doesn't match Poesys/DB: " + update,
+               TransactionIdAllocator.RESERVE_SQL.equals(
+                 update.replace("sequence + 1", "sequence + ?")));
+    assertTrue("query SQL doesn't match Poesys/DB: " + query,
+               TransactionIdAllocator.QUERY_SQL.equals(query));
+  }
+
+  /**
+   * Get a MySQL sequence SQL constant from the Poesys/DB primary key factory.
+   *
+   * @param name the name of the constant
+   * @return the SQL
+   * @throws Exception when the constant can't be read
+   */
+  private static String getPoesysDbSql(String name) throws Exception {
+    Field field = PrimaryKeyFactory.class.getDeclaredField(name);
+    field.setAccessible(true);
+    return (String)field.get(null);
+  }
+}
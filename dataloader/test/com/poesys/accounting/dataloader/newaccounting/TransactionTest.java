@@ -22,7 +22,11 @@ import static org.junit.Assert.fail;
 
 import java.math.BigInteger;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.junit.Test;
@@ -188,6 +192,119 @@ public class TransactionTest {
     assertTrue("More than one instance of item in account item list", !(found > 1));
   }
 
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.Transaction#addItem(Money, Account, Boolean, Boolean)}
+   * . Tests that items added with amounts in cents balance with items added as doubles.
+   */
+  @Test
+  public void testItemMoney() {
+    Transaction transaction =
+      new Transaction(TRANSACTION_ID, DESCRIPTION, DATE, NOT_CHECKED, NOT_BALANCE);
+    Item item = transaction.addItem(Money.ofCents(1000L), CHECKING_ACCOUNT, DEBIT, NOT_CHECKED);
+    transaction.addItem(AMOUNT, INCOME_ACCOUNT, CREDIT, NOT_CHECKED);
+    assertTrue("money getter failed", item.getMoney().getCents() == 1000L);
+    assertTrue("amount getter failed", AMOUNT.equals(item.getAmount()));
+    assertTrue("transaction not valid", transaction.isValid());
+    assertTrue("transaction zero", !transaction.isZero());
+  }
+
+  /**
+   * Test method for {@link Transaction#getDate()}, {@link Transaction#getEpochDay()}, and
+   * {@link Transaction#getSecondOfDay()}. Tests that the date survives the conversion to a day and
+   * time of day, including a fraction of a second.
+   */
+  @Test
+  public void testDate() {
+    Timestamp date = Timestamp.valueOf("2016-02-29 13:45:30.25");
+    Transaction transaction =
+      new Transaction(TRANSACTION_ID, DESCRIPTION, date, NOT_CHECKED, NOT_BALANCE);
+    assertTrue("wrong date: " + transaction.getDate(), transaction.getDate().equals(date));
+    assertTrue("date not a copy", transaction.getDate() != transaction.getDate());
+    assertTrue("wrong epoch day", transaction.getEpochDay() == 16860);
+    assertTrue("wrong second of day",
+               transaction.getSecondOfDay() == 13 * 3600 + 45 * 60 + 30);
+    assertTrue("wrong year", transaction.getYear() == 2016);
+
+    Transaction later =
+      new Transaction(TRANSACTION_ID, DESCRIPTION, Timestamp.valueOf("2016-02-29 13:45:30.5"),
+                      NOT_CHECKED, NOT_BALANCE);
+    assertTrue("earlier transaction not before later", transaction.compareDate(later) < 0);
+    assertTrue("later transaction not after earlier", later.compareDate(transaction) > 0);
+    assertTrue("transaction not at same time as itself", later.compareDate(later) == 0);
+  }
+
+  /**
+   * Test method for {@link Transaction#DATE_ORDER}. Tests that transactions sort by date and time,
+   * then by id for the same date and time.
+   */
+  @Test
+  public void testDateOrder() {
+    Timestamp date = Timestamp.valueOf("2016-02-29 13:45:30.25");
+    Transaction second =
+      new Transaction(BigInteger.valueOf(2L), DESCRIPTION, date, NOT_CHECKED, NOT_BALANCE);
+    Transaction first =
+      new Transaction(BigInteger.valueOf(3L), DESCRIPTION, Timestamp.valueOf("2016-02-28 23:59:59"),
+                      NOT_CHECKED, NOT_BALANCE);
+    Transaction third =
+      new Transaction(BigInteger.valueOf(1L), DESCRIPTION, Timestamp.valueOf("2016-02-29 13:45:31"),
+                      NOT_CHECKED, NOT_BALANCE);
+    Transaction sameTime =
+      new Transaction(BigInteger.valueOf(4L), DESCRIPTION, date, NOT_CHECKED, NOT_BALANCE);
+    List<Transaction> transactions = new ArrayList<>();
+    transactions.add(third);
+    transactions.add(sameTime);
+    transactions.add(second);
+    transactions.add(first);
+    transactions.sort(Transaction.DATE_ORDER);
+    assertTrue("wrong order: " + transactions,
+               transactions.get(0) == first && transactions.get(1) == second &&
+               transactions.get(2) == sameTime && transactions.get(3) == third);
+  }
+
+  /**
+   * Test method for {@link Transaction#freeze()}. Tests that a frozen transaction keeps its items
+   * and reimbursements in immutable sets, and that adding to them fails.
+   */
+  @Test
+  public void testFreeze() {
+    Transaction receivableTransaction =
+      new Transaction(TRANSACTION_ID, DESCRIPTION, DATE, NOT_CHECKED, NOT_BALANCE);
+    receivableTransaction.addItem(AMOUNT, INCOME_ACCOUNT, CREDIT, NOT_CHECKED);
+    Item receivable = receivableTransaction.addItem(AMOUNT, AR_ACCOUNT, DEBIT, NOT_CHECKED);
+    Transaction reimbursingTransaction =
+      new Transaction(TRANSACTION_ID.add(BigInteger.ONE), DESCRIPTION, DATE, NOT_CHECKED,
+                      NOT_BALANCE);
+    reimbursingTransaction.addItem(AMOUNT, CHECKING_ACCOUNT, DEBIT, NOT_CHECKED);
+    Item reimbursingItem = reimbursingTransaction.addItem(AMOUNT, AR_ACCOUNT, CREDIT, NOT_CHECKED);
+    receivable.reimburse(reimbursingItem, AMOUNT, ALLOCATED_AMOUNT);
+
+    receivableTransaction.freeze();
+    reimbursingTransaction.freeze();
+    Set<Item> items = receivableTransaction.getItems();
+    assertTrue("frozen items not the same set", items == receivableTransaction.getItems());
+    assertTrue("wrong number of frozen items: " + items.size(), items.size() == 2);
+    assertTrue("frozen items missing receivable", items.contains(receivable));
+    assertTrue("wrong receivable item",
+               receivableTransaction.getItem(AR_ACCOUNT).equals(receivable));
+    assertTrue("frozen transaction not valid", receivableTransaction.isValid());
+    assertTrue("wrong number of frozen reimbursements",
+               receivable.getReimbursements().size() == 1);
+
+    try {
+      receivableTransaction.addItem(AMOUNT, CHECKING_ACCOUNT, DEBIT, NOT_CHECKED);
+      fail("added item to frozen transaction");
+    } catch (UnsupportedOperationException e) {
+      // success
+    }
+    try {
+      receivable.reimburse(reimbursingItem, ZERO, ZERO);
+      fail("reimbursed frozen receivable");
+    } catch (UnsupportedOperationException e) {
+      // success
+    }
+  }
+
   /**
    * Test method for
    * {@link com.poesys.accounting.dataloader.newaccounting.Transaction#getItem(com.poesys.accounting.dataloader.newaccounting.Account)}
@@ -505,6 +622,103 @@ public class TransactionTest {
     }
   }
 
+  /**
+   * Create a transaction that reimburses a receivable account from the checking account.
+   *
+   * @param id         the transaction id
+   * @param amount     the amount reimbursed
+   * @param receivable the receivable account
+   * @return the reimbursing item against the receivable account
+   */
+  private Item createReimbursingItem(long id, Double amount, Account receivable) {
+    Transaction transaction =
+      new Transaction(BigInteger.valueOf(id), DESCRIPTION, DATE, NOT_CHECKED, NOT_BALANCE);
+    transaction.addItem(amount, CHECKING_ACCOUNT, DEBIT, NOT_CHECKED);
+    return transaction.addItem(amount, receivable, CREDIT, NOT_CHECKED);
+  }
+
+  /**
+   * Test method for {@link Item#getRemainingCents()}, {@link Item#isOpen()}, and
+   * {@link Account#getOpenReceivables(Integer)}. Tests that partial reimbursements reduce the
+   * remaining amount, that a rejected reimbursement leaves it unchanged, and that the account
+   * drops the receivable from its open receivables when the reimbursements settle it.
+   */
+  @Test
+  public void testOpenReceivables() {
+    Account receivableAccount =
+      new Account(AR_ACCOUNT_NAME, DESCRIPTION, ASSET_TYPE, DEBIT_DEFAULT, RECEIVABLE);
+    Transaction receivableTransaction =
+      new Transaction(TRANSACTION_ID, DESCRIPTION, DATE, NOT_CHECKED, NOT_BALANCE);
+    receivableTransaction.addItem(AMOUNT, INCOME_ACCOUNT, CREDIT, NOT_CHECKED);
+    Item receivable = receivableTransaction.addItem(AMOUNT, receivableAccount, DEBIT, NOT_CHECKED);
+    Item first = createReimbursingItem(2000L, 4.00D, receivableAccount);
+    Item second = createReimbursingItem(2001L, 6.00D, receivableAccount);
+
+    assertTrue("new receivable not open", receivable.isOpen());
+    assertTrue("reimbursing item open", !first.isOpen());
+    assertTrue("income item open", !receivableTransaction.getItem(INCOME_ACCOUNT).isOpen());
+    assertTrue("receivable not in open receivables",
+               receivableAccount.getOpenReceivables(2017).contains(receivable));
+    assertTrue("reimbursing item in open receivables",
+               receivableAccount.getOpenReceivables().size() == 1);
+    assertTrue("open receivables in other year",
+               receivableAccount.getOpenReceivables(2016).isEmpty());
+
+    receivable.reimburse(first, 3.00D, 1.00D);
+    assertTrue("wrong remaining amount: " + receivable.getRemainingCents(),
+               receivable.getRemainingCents() == 600L);
+    assertTrue("partly reimbursed receivable not open", receivable.isOpen());
+    try {
+      receivable.reimburse(second, 6.00D, 0.01D);
+      fail("no exception for reimbursement over receivable amount");
+    } catch (InvalidParametersException e) {
+      // success
+    }
+    assertTrue("rejected reimbursement changed remaining amount",
+               receivable.getRemainingCents() == 600L);
+
+    receivable.reimburse(second, 6.00D, ZERO);
+    assertTrue("settled receivable has remaining amount", receivable.getRemainingCents() == 0L);
+    assertTrue("settled receivable open", !receivable.isOpen());
+    assertTrue("settled receivable in open receivables",
+               receivableAccount.getOpenReceivables(2017).isEmpty() &&
+               receivableAccount.getOpenReceivables().isEmpty());
+  }
+
+  /**
+   * Test method for {@link Item#reimburse(Item, Double, Double)}. Tests a receivable reimbursed in
+   * 100 to 10,000 one-dollar payments, checking each payment against the running total; logs the
+   * time for each size.
+   */
+  @Test
+  public void testReimburseScaling() {
+    int[] sizes = {100, 1000, 10000};
+    for (int size : sizes) {
+      Account receivableAccount =
+        new Account(AR_ACCOUNT_NAME, DESCRIPTION, ASSET_TYPE, DEBIT_DEFAULT, RECEIVABLE);
+      Transaction receivableTransaction =
+        new Transaction(TRANSACTION_ID, DESCRIPTION, DATE, NOT_CHECKED, NOT_BALANCE);
+      receivableTransaction.addItem((double)size, INCOME_ACCOUNT, CREDIT, NOT_CHECKED);
+      Item receivable =
+        receivableTransaction.addItem((double)size, receivableAccount, DEBIT, NOT_CHECKED);
+      List<Item> payments = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        payments.add(createReimbursingItem(10000L + i, 1.00D, receivableAccount));
+      }
+
+      long start = System.nanoTime();
+      for (Item payment : payments) {
+        receivable.reimburse(payment, 1.00D, ZERO);
+      }
+      long time = System.nanoTime() - start;
+      assertTrue("receivable not settled", !receivable.isOpen());
+      assertTrue("wrong number of reimbursements",
+                 receivable.getReimbursements().size() == size);
+      logger.info(
+        "Reimbursed a receivable with " + size + " payments in " + time / 1000L + " microseconds");
+    }
+  }
+
   /**
    * Test method for {@link com.poesys.accounting.dataloader.newaccounting.Transaction#hashCode()}
    * .
@@ -897,4 +1111,55 @@ public class TransactionTest {
     Transaction transaction = createTransactionWithItems(TRANSACTION_ID);
     assertTrue("transaction with 2 non-zero items has isZero true", !transaction.isZero());
   }
+
+  /**
+   * Test method for
+   * {@link com.poesys.accounting.dataloader.newaccounting.Transaction#addItem(Double, Account, Boolean, Boolean)}
+   * . Tests creation of 1,000 to 100,000 two-item transactions the way the builder creates items,
+   * adding each transaction to a set of transactions, and then looks up every item in its account
+   * and transaction as the store phase does; logs the time for each size.
+   */
+  @Test
+  public void testAddItemScaling() {
+    int[] sizes = {1000, 10000, 100000};
+    long base = DATE.getTime();
+    for (int size : sizes) {
+      Account checking =
+        new Account(CHECKING_ACCOUNT_NAME, DESCRIPTION, ASSET_TYPE, DEBIT_DEFAULT, NOT_RECEIVABLE);
+      Account income =
+        new Account(INCOME_ACCOUNT_NAME, DESCRIPTION, INCOME_TYPE, CREDIT_DEFAULT, NOT_RECEIVABLE);
+      Set<Transaction> transactions = new HashSet<>();
+
+      long start = System.nanoTime();
+      for (int i = 0; i < size; i++) {
+        Transaction transaction =
+          new Transaction(BigInteger.valueOf(i), DESCRIPTION, new Timestamp(base + i * 60000L),
+                          NOT_CHECKED, NOT_BALANCE);
+        transaction.addItem(AMOUNT, checking, DEBIT, NOT_CHECKED);
+        transaction.addItem(AMOUNT, income, CREDIT, NOT_CHECKED);
+        transactions.add(transaction);
+      }
+      long createTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int found = 0;
+      for (Transaction transaction : transactions) {
+        for (Item item : transaction.getItems()) {
+          if (transactions.contains(item.getTransaction()) &&
+              item.getAccount().getItems().contains(item)) {
+            found++;
+          }
+        }
+      }
+      long lookupTime = System.nanoTime() - start;
+      logger.info("Created " + size + " transactions in " + createTime / 1000 +
+                  " microseconds, looked up their items in " + lookupTime / 1000 + " microseconds");
+
+      assertTrue("wrong number of transactions: " + transactions.size(),
+                 transactions.size() == size);
+      assertTrue("wrong number of checking items: " + checking.getItems().size(),
+                 checking.getItems().size() == size);
+      assertTrue("wrong number of items found: " + found, found == size * 2);
+    }
+  }
 }
@@ -19,6 +19,7 @@ package com.poesys.accounting.dataloader.newaccounting;
 
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Implementation of the IDataAccessService interface for unit testing; throws no exceptions and
@@ -31,6 +32,7 @@ public class UnitTestNoExceptionDataService implements IDataAccessService {
   private int storeFiscalYearsCalls = 0;
   private int storeEntityCalls = 0;
   private int storeTransactionCalls = 0;
+  private final Set<Integer> removedYears = new TreeSet<>();
 
   @Override
   public void storeCapitalStructure(CapitalStructure structure) {
@@ -52,6 +54,16 @@ public class UnitTestNoExceptionDataService implements IDataAccessService {
     storeTransactionCalls++;
   }
 
+  @Override
+  public void storeTransactions(Set<Transaction> transactions, Set<Transaction> stored) {
+    storeTransactionCalls++;
+  }
+
+  @Override
+  public void removeTransactions(String entityName, Set<Integer> years) {
+    removedYears.addAll(years);
+  }
+
   /**
    * Get the count of storeCapitalStructure calls.
    *
@@ -87,4 +99,13 @@ public class UnitTestNoExceptionDataService implements IDataAccessService {
   public int getStoreFiscalYearsCalls() {
     return storeFiscalYearsCalls;
   }
+
+  /**
+   * Get the years passed to removeTransactions calls.
+   *
+   * @return the sorted set of removed years
+   */
+  public Set<Integer> getRemovedYears() {
+    return removedYears;
+  }
 }
@@ -29,6 +29,7 @@ import java.util.Set;
 public class UnitTestNoExceptionsStorageManager implements IStorageManager {
   private int validateCalls = 0;
   private int storeCalls = 0;
+  private int startCalls = 0;
 
   @Override
   public Boolean validate(List<FiscalYear> years) {
@@ -42,6 +43,18 @@ public class UnitTestNoExceptionsStorageManager implements IStorageManager {
     storeCalls++;
   }
 
+  @Override
+  public void startYears(String entityName, CapitalStructure structure,
+                         IDataAccessService storageService) {
+    startCalls++;
+  }
+
+  @Override
+  public void storeYear(String entityName, FiscalYear year, Set<Transaction> transactions,
+                        Set<Transaction> stored, IDataAccessService storageService) {
+    storeCalls++;
+  }
+
   /**
    * Get the count of the calls to validate().
    *
@@ -52,7 +65,16 @@ public class UnitTestNoExceptionsStorageManager implements IStorageManager {
   }
 
   /**
-   * Get the count of the calls to store().
+   * Get the count of the calls to startYears().
+   *
+   * @return a count
+   */
+  public int getStartCalls() {
+    return startCalls;
+  }
+
+  /**
+   * Get the count of the calls to store() and storeYear().
    *
    * @return a count
    */
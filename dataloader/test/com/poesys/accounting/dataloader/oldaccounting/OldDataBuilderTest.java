@@ -23,6 +23,7 @@ import static org.junit.Assert.fail;
 import java.io.BufferedReader;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -142,6 +143,37 @@ public class OldDataBuilderTest {
     assertTrue("wrong number of years built: " + years.size(), years.size() == 3);
   }
 
+  /**
+   * Test method for {@link OldDataBuilder#getStringPool()}. Tests that building several years
+   * pools the repeated names and that transactions with equal descriptions share one string.
+   */
+  @Test
+  public void testStringPool() {
+    UnitTestParametersReimbursementDifferentYear parameters =
+      new UnitTestParametersReimbursementDifferentYear();
+    OldDataBuilder builder = new OldDataBuilder(parameters);
+    for (int i = parameters.getStartYear(); i <= parameters.getEndYear(); i++) {
+      parameters.setCurrentYear(i);
+      builder.buildFiscalYear(i);
+      builder.buildAccountGroups();
+      builder.buildAccountMap();
+      builder.buildAccounts();
+      builder.buildBalances();
+      builder.buildTransactions();
+    }
+    StringPool pool = builder.getStringPool();
+    assertTrue("no strings pooled: " + pool, pool.size() > 0);
+    assertTrue("no duplicates across years: " + pool, pool.getHits() > 0);
+    assertTrue("no bytes saved: " + pool, pool.getBytesSaved() > 0L);
+
+    Map<String, String> descriptions = new HashMap<>();
+    for (Transaction transaction : builder.getTransactions()) {
+      String description = transaction.getDescription();
+      String first = descriptions.putIfAbsent(description, description);
+      assertTrue("description not shared: " + description, first == null || first == description);
+    }
+  }
+
   /**
    * Test method for
    * {@link com.poesys.accounting.dataloader.oldaccounting.OldDataBuilder#buildFiscalYear(java.lang.Integer)}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2018 Poesys Associates. All rights reserved.
+ *
+ * This file is part of Poesys/Dataloader.
+ *
+ * Poesys/Dataloader is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Poesys/Dataloader is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Poesys/Dataloader. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.poesys.accounting.dataloader.oldaccounting;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * CUT: StringPool
+ *
+ * @author Robert J. Muller
+ */
+public class StringPoolTest {
+  private static final String DESCRIPTION = "Transfer";
+
+  /**
+   * Test method for {@link StringPool#canonicalize(String)}. Tests that equal strings become one
+   * instance and that the pool counts the duplicates and the bytes they took.
+   */
+  @Test
+  public void testCanonicalize() {
+    StringPool pool = new StringPool();
+    String first = new String(DESCRIPTION);
+    String second = new String(DESCRIPTION);
+    assertTrue("first string not canonical", pool.canonicalize(first) == first);
+    assertTrue("second string not replaced", pool.canonicalize(second) == first);
+    assertTrue("same string counted as duplicate", pool.canonicalize(first) == first);
+    assertTrue("wrong size: " + pool, pool.size() == 1);
+    assertTrue("wrong lookups: " + pool, pool.getLookups() == 3L);
+    assertTrue("wrong hits: " + pool, pool.getHits() == 1L);
+    assertTrue("wrong bytes saved: " + pool,
+               pool.getBytesSaved() == StringPool.estimateBytes(DESCRIPTION));
+    assertTrue("wrong estimate for 8 characters", StringPool.estimateBytes(DESCRIPTION) == 56L);
+    assertTrue("wrong estimate for empty string", StringPool.estimateBytes("") == 40L);
+  }
+
+  /**
+   * Test method for {@link StringPool#canonicalize(String)}. Tests a null string.
+   */
+  @Test
+  public void testCanonicalizeNull() {
+    StringPool pool = new StringPool();
+    assertTrue("null not null", pool.canonicalize(null) == null);
+    assertTrue("null counted as lookup", pool.getLookups() == 0L);
+    assertTrue("null pooled", pool.size() == 0);
+  }
+}